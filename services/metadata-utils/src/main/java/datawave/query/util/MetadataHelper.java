@@ -66,7 +66,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -1245,6 +1247,44 @@ public class MetadataHelper {
         return datatypeToCounts;
     }
     
+    /**
+     * Return the {@link ColumnFamilyConstants#COLF_F} counts of a field for every day and datatype, so that the cardinality of the field over a date range can
+     * be estimated without a scan per day.
+     *
+     * @param fieldName
+     * @return the counts keyed by yyyyMMdd day and then by datatype
+     * @throws TableNotFoundException
+     */
+    @Cacheable(value = "getCountsByDayAndType", key = "{#root.target.auths,#root.target.metadataTableName,#p0}", cacheManager = "metadataHelperCacheManager")
+    public SortedMap<String,Map<String,Long>> getCountsByDayAndType(String fieldName) throws TableNotFoundException {
+        Preconditions.checkNotNull(fieldName);
+        
+        Scanner scanner = ScannerHelper.createScanner(connector, metadataTableName, auths);
+        scanner.fetchColumnFamily(ColumnFamilyConstants.COLF_F);
+        scanner.setRange(Range.exact(fieldName));
+        
+        final Text holder = new Text();
+        final SortedMap<String,Map<String,Long>> dayToCounts = new TreeMap<>();
+        for (Entry<Key,Value> countEntry : scanner) {
+            countEntry.getKey().getColumnQualifier(holder);
+            int offset = holder.find(NULL_BYTE);
+            
+            Preconditions.checkArgument(-1 != offset, "Could not find nullbyte separator in column qualifier for: " + countEntry.getKey());
+            
+            try {
+                long sum = WritableUtils.readVLong(new DataInputStream(new ByteArrayInputStream(countEntry.getValue().get())));
+                String datatype = Text.decode(holder.getBytes(), 0, offset);
+                String date = Text.decode(holder.getBytes(), offset + 1, holder.getLength() - (offset + 1));
+                
+                dayToCounts.computeIfAbsent(date, k -> new HashMap<>()).merge(datatype, sum, Long::sum);
+            } catch (IOException e) {
+                log.warn("Could not read the count for " + countEntry.getKey(), e);
+            }
+        }
+        
+        return dayToCounts;
+    }
+    
     /**
      * Transform an Iterable of MetadataEntry's to just fieldName. This does not de-duplicate field names
      *
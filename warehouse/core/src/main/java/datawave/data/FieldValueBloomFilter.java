@@ -0,0 +1,217 @@
+package datawave.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * A bloom filter of the values of one field within one shard. Filters of the same size can be merged by a combiner, so ingest writes a filter holding the
+ * values of a single event and the table combines them into the filter for the shard.
+ * 
+ * A filter with few bits set is serialized as the positions of its bits, and one with many as its bit set, so that the filters written for single events are a
+ * few bytes and the combined filter of a shard is bounded by its number of bits.
+ * 
+ * A filter whose values are not known, such as the combination of filters that could not be read or merged, is kept as an unknown filter. It might contain
+ * any value, and anything merged with it is unknown as well, so that a shard is never pruned on a filter that is missing some of its values.
+ */
+public class FieldValueBloomFilter {
+    
+    public static final int DEFAULT_NUM_BITS = 1 << 20;
+    public static final int DEFAULT_NUM_HASHES = 5;
+    
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+    private static final byte UNKNOWN = 2;
+    
+    private final int numBits;
+    private final int numHashes;
+    private final BitSet bits;
+    private boolean unknown = false;
+    
+    public FieldValueBloomFilter() {
+        this(DEFAULT_NUM_BITS, DEFAULT_NUM_HASHES);
+    }
+    
+    /**
+     * @param numBits
+     *            the size of the filter
+     * @param numHashes
+     *            the number of bits set for each value
+     */
+    public FieldValueBloomFilter(int numBits, int numHashes) {
+        if (numBits <= 0 || numHashes <= 0) {
+            throw new IllegalArgumentException("The number of bits and hashes must be positive: " + numBits + ", " + numHashes);
+        }
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = new BitSet(numBits);
+    }
+    
+    /**
+     * @param numBits
+     * @param numHashes
+     * @return a filter whose values are not known, which might contain any value
+     */
+    public static FieldValueBloomFilter unknown(int numBits, int numHashes) {
+        FieldValueBloomFilter filter = new FieldValueBloomFilter(numBits, numHashes);
+        filter.unknown = true;
+        return filter;
+    }
+    
+    public void add(String value) {
+        if (unknown) {
+            return;
+        }
+        ByteBuffer hash = hash(value);
+        long combined = hash.getLong();
+        long increment = hash.getLong();
+        for (int i = 0; i < numHashes; i++) {
+            bits.set(position(combined));
+            combined += increment;
+        }
+    }
+    
+    /**
+     * @param value
+     * @return false if the value was never added to the filter, or true if it may have been
+     */
+    public boolean mightContain(String value) {
+        if (unknown) {
+            return true;
+        }
+        ByteBuffer hash = hash(value);
+        long combined = hash.getLong();
+        long increment = hash.getLong();
+        for (int i = 0; i < numHashes; i++) {
+            if (!bits.get(position(combined))) {
+                return false;
+            }
+            combined += increment;
+        }
+        return true;
+    }
+    
+    /**
+     * The positions of a value are derived from the two halves of a 128 bit hash, as in the bloom filters of Guava
+     */
+    private static ByteBuffer hash(String value) {
+        return ByteBuffer.wrap(Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    private int position(long combined) {
+        return (int) ((combined & Long.MAX_VALUE) % numBits);
+    }
+    
+    /**
+     * Add the values of another filter of the same size to this one. Merging an unknown filter makes this one unknown, whatever its size.
+     * 
+     * @param other
+     */
+    public void merge(FieldValueBloomFilter other) {
+        if (unknown || other.unknown) {
+            unknown = true;
+            bits.clear();
+            return;
+        }
+        if (numBits != other.numBits || numHashes != other.numHashes) {
+            throw new IllegalArgumentException("Cannot merge a filter of " + other.numBits + " bits and " + other.numHashes + " hashes into one of " + numBits
+                            + " bits and " + numHashes + " hashes");
+        }
+        bits.or(other.bits);
+    }
+    
+    public int getNumBits() {
+        return numBits;
+    }
+    
+    public int getNumHashes() {
+        return numHashes;
+    }
+    
+    public int getCardinality() {
+        return bits.cardinality();
+    }
+    
+    public boolean isUnknown() {
+        return unknown;
+    }
+    
+    public Value toValue() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int cardinality = bits.cardinality();
+            if (unknown) {
+                out.writeByte(UNKNOWN);
+                WritableUtils.writeVInt(out, numBits);
+                WritableUtils.writeVInt(out, numHashes);
+            } else if (cardinality * 4L < numBits / 8) {
+                // a position takes at most 4 bytes as a delta
+                out.writeByte(SPARSE);
+                WritableUtils.writeVInt(out, numBits);
+                WritableUtils.writeVInt(out, numHashes);
+                WritableUtils.writeVInt(out, cardinality);
+                int last = 0;
+                for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                    WritableUtils.writeVInt(out, i - last);
+                    last = i;
+                }
+            } else {
+                out.writeByte(DENSE);
+                WritableUtils.writeVInt(out, numBits);
+                WritableUtils.writeVInt(out, numHashes);
+                long[] words = bits.toLongArray();
+                WritableUtils.writeVInt(out, words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+            out.close();
+        } catch (IOException e) {
+            // not thrown when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+        return new Value(bytes.toByteArray());
+    }
+    
+    public static FieldValueBloomFilter fromValue(Value value) throws IOException {
+        return fromBytes(value.get());
+    }
+    
+    public static FieldValueBloomFilter fromBytes(byte[] value) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        byte type = in.readByte();
+        if (type != SPARSE && type != DENSE && type != UNKNOWN) {
+            throw new IOException("Unknown bloom filter encoding " + type);
+        }
+        FieldValueBloomFilter filter = new FieldValueBloomFilter(WritableUtils.readVInt(in), WritableUtils.readVInt(in));
+        if (type == UNKNOWN) {
+            filter.unknown = true;
+        } else if (type == SPARSE) {
+            int cardinality = WritableUtils.readVInt(in);
+            int position = 0;
+            for (int i = 0; i < cardinality; i++) {
+                position += WritableUtils.readVInt(in);
+                filter.bits.set(position);
+            }
+        } else {
+            long[] words = new long[WritableUtils.readVInt(in)];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            filter.bits.or(BitSet.valueOf(words));
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,72 @@
+package datawave.iterators;
+
+import datawave.data.FieldValueBloomFilter;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Combiner;
+import org.apache.log4j.Logger;
+
+import java.util.Iterator;
+
+/**
+ * Combines the field value bloom filters written for each event into the filter for the shard.
+ * 
+ * A value that cannot be decoded, or a filter that cannot be merged with the others such as one written after the size of the filters was changed, would leave
+ * the combined filter without its values. The combined filter is then unknown instead, so that the shard is never pruned, and stays unknown as it is compacted
+ * with later filters.
+ */
+public class FieldValueBloomFilterCombiner extends Combiner {
+    
+    private static final Logger log = Logger.getLogger(FieldValueBloomFilterCombiner.class);
+    
+    /**
+     * Reduces a list of Values into a single Value.
+     * 
+     * @param key
+     *            The most recent version of the Key being reduced.
+     * 
+     * @param iter
+     *            An iterator over the Values for different versions of the key.
+     * 
+     * @return The combined Value.
+     */
+    @Override
+    public Value reduce(Key key, Iterator<Value> iter) {
+        
+        FieldValueBloomFilter filter = null;
+        Value singletonValue = null;
+        boolean unknown = false;
+        
+        while (iter.hasNext()) {
+            Value value = iter.next();
+            if (unknown) {
+                continue;
+            }
+            try {
+                FieldValueBloomFilter newFilter = FieldValueBloomFilter.fromValue(value);
+                if (filter == null) {
+                    filter = newFilter;
+                    singletonValue = value;
+                } else {
+                    filter.merge(newFilter);
+                    singletonValue = null;
+                }
+            } catch (Exception e) {
+                log.error("Unable to decode or merge bloom filter from " + key + ", the combined filter will be unknown", e);
+                unknown = true;
+            }
+        }
+        
+        if (unknown) {
+            return FieldValueBloomFilter.unknown(filter == null ? FieldValueBloomFilter.DEFAULT_NUM_BITS : filter.getNumBits(),
+                            filter == null ? FieldValueBloomFilter.DEFAULT_NUM_HASHES : filter.getNumHashes()).toValue();
+        } else if (singletonValue != null) {
+            return singletonValue;
+        } else if (filter != null) {
+            return filter.toValue();
+        } else {
+            return new Value();
+        }
+    }
+    
+}
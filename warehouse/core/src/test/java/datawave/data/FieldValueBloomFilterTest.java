@@ -0,0 +1,127 @@
+package datawave.data;
+
+import java.io.IOException;
+
+import datawave.iterators.FieldValueBloomFilterCombiner;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class FieldValueBloomFilterTest {
+    
+    @Test
+    public void testMightContain() {
+        FieldValueBloomFilter filter = new FieldValueBloomFilter(1 << 16, 5);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("value" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(filter.mightContain("value" + i));
+        }
+        
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) {
+            if (filter.mightContain("value" + i)) {
+                falsePositives++;
+            }
+        }
+        // about 0.01% for 1000 values in 64K bits with 5 hashes
+        Assert.assertTrue("Too many false positives: " + falsePositives, falsePositives < 50);
+    }
+    
+    @Test
+    public void testSerialization() throws IOException {
+        FieldValueBloomFilter sparse = new FieldValueBloomFilter(1 << 16, 3);
+        sparse.add("a");
+        sparse.add("b");
+        Value value = sparse.toValue();
+        // 2 values with 3 hashes are a few bytes each rather than the 8K of the bit set
+        Assert.assertTrue(value.getSize() < 40);
+        FieldValueBloomFilter copy = FieldValueBloomFilter.fromValue(value);
+        Assert.assertEquals(sparse.getNumBits(), copy.getNumBits());
+        Assert.assertEquals(sparse.getNumHashes(), copy.getNumHashes());
+        Assert.assertEquals(sparse.getCardinality(), copy.getCardinality());
+        Assert.assertTrue(copy.mightContain("a"));
+        Assert.assertTrue(copy.mightContain("b"));
+        
+        FieldValueBloomFilter dense = new FieldValueBloomFilter(1024, 3);
+        for (int i = 0; i < 500; i++) {
+            dense.add("value" + i);
+        }
+        copy = FieldValueBloomFilter.fromValue(dense.toValue());
+        Assert.assertEquals(dense.getCardinality(), copy.getCardinality());
+        for (int i = 0; i < 500; i++) {
+            Assert.assertTrue(copy.mightContain("value" + i));
+        }
+    }
+    
+    @Test
+    public void testCombine() throws IOException {
+        FieldValueBloomFilter a = new FieldValueBloomFilter(1 << 16, 5);
+        a.add("a");
+        FieldValueBloomFilter b = new FieldValueBloomFilter(1 << 16, 5);
+        b.add("b");
+        
+        FieldValueBloomFilterCombiner combiner = new FieldValueBloomFilterCombiner();
+        FieldValueBloomFilter combined = FieldValueBloomFilter.fromValue(combiner.reduce(new Key("20190101_0"), Lists.newArrayList(a.toValue(), b.toValue())
+                        .iterator()));
+        Assert.assertFalse(combined.isUnknown());
+        Assert.assertTrue(combined.mightContain("a"));
+        Assert.assertTrue(combined.mightContain("b"));
+        Assert.assertFalse(combined.mightContain("c"));
+        
+        Value single = a.toValue();
+        Assert.assertSame(single, combiner.reduce(new Key("20190101_0"), Lists.newArrayList(single).iterator()));
+        
+        // the values of a filter that cannot be read are lost, so the combined filter might contain anything
+        combined = FieldValueBloomFilter.fromValue(combiner.reduce(new Key("20190101_0"), Lists.newArrayList(a.toValue(), new Value("garbage".getBytes()),
+                        b.toValue()).iterator()));
+        Assert.assertTrue(combined.isUnknown());
+        Assert.assertTrue(combined.mightContain("c"));
+    }
+    
+    @Test
+    public void testCombineMixedSizes() throws IOException {
+        // the filters written before and after the size of the filters was changed
+        FieldValueBloomFilter before = new FieldValueBloomFilter(1 << 16, 5);
+        before.add("a");
+        FieldValueBloomFilter after = new FieldValueBloomFilter(1 << 10, 3);
+        after.add("b");
+        
+        FieldValueBloomFilterCombiner combiner = new FieldValueBloomFilterCombiner();
+        Value value = combiner.reduce(new Key("20190101_0"), Lists.newArrayList(before.toValue(), after.toValue()).iterator());
+        FieldValueBloomFilter combined = FieldValueBloomFilter.fromValue(value);
+        Assert.assertTrue(combined.isUnknown());
+        Assert.assertTrue(combined.mightContain("a"));
+        Assert.assertTrue(combined.mightContain("b"));
+        Assert.assertTrue(combined.mightContain("c"));
+        
+        // a later compaction keeps the filter unknown whichever size the new filters are
+        FieldValueBloomFilter later = new FieldValueBloomFilter(1 << 10, 3);
+        later.add("d");
+        combined = FieldValueBloomFilter.fromValue(combiner.reduce(new Key("20190101_0"), Lists.newArrayList(later.toValue(), value).iterator()));
+        Assert.assertTrue(combined.isUnknown());
+        Assert.assertTrue(combined.mightContain("c"));
+    }
+    
+    @Test
+    public void testUnknown() throws IOException {
+        FieldValueBloomFilter unknown = FieldValueBloomFilter.unknown(1024, 3);
+        Assert.assertTrue(unknown.mightContain("anything"));
+        Assert.assertTrue(FieldValueBloomFilter.fromValue(unknown.toValue()).isUnknown());
+        
+        FieldValueBloomFilter filter = new FieldValueBloomFilter(2048, 3);
+        filter.add("a");
+        filter.merge(unknown);
+        Assert.assertTrue(filter.isUnknown());
+        Assert.assertTrue(filter.mightContain("b"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentSizes() {
+        new FieldValueBloomFilter(1024, 3).merge(new FieldValueBloomFilter(2048, 3));
+    }
+}
@@ -134,7 +134,7 @@ public abstract class BaseIngestHelper extends AbstractIngestHelper implements C
     
     private Multimap<String,datawave.data.type.Type<?>> typeFieldMap = null;
     private Multimap<String,datawave.data.type.Type<?>> typePatternMap = null;
-    private Multimap<Matcher,datawave.data.type.Type<?>> typeCompiledPatternMap = null;
+    private volatile Multimap<Matcher,datawave.data.type.Type<?>> typeCompiledPatternMap = null;
     protected Set<String> indexOnlyFields = Sets.newHashSet();
     
     protected Set<String> indexedFields = Sets.newHashSet();
@@ -592,11 +592,13 @@ public abstract class BaseIngestHelper extends AbstractIngestHelper implements C
             if (typeCompiledPatternMap == null) {
                 compilePatterns();
             }
+            Multimap<Matcher,datawave.data.type.Type<?>> patterns = typeCompiledPatternMap;
             
-            for (Matcher patternMatcher : typeCompiledPatternMap.keySet()) {
+            for (Matcher patternMatcher : patterns.keySet()) {
                 
-                if (patternMatcher.reset(fieldName).matches()) {
-                    types.addAll(typeCompiledPatternMap.get(patternMatcher));
+                // the types are looked up by the normalizing and the handler threads of a pipelined mapper, so the shared matcher is not reset
+                if (patternMatcher.pattern().matcher(fieldName).matches()) {
+                    types.addAll(patterns.get(patternMatcher));
                 }
             }
         }
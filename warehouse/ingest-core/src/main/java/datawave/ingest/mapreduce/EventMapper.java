@@ -3,6 +3,7 @@ package datawave.ingest.mapreduce;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import datawave.data.normalizer.DateNormalizer;
 import datawave.ingest.data.RawRecordContainer;
 import datawave.ingest.data.Type;
@@ -43,21 +44,27 @@ import datawave.util.time.TraceStopwatch;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Value;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.CounterGroup;
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.log4j.Logger;
 import org.apache.log4j.NDC;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -65,6 +72,11 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.Stack;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -77,9 +89,12 @@ import java.util.concurrent.TimeUnit;
  * is within the window, then the map will parse the Event into a map of field names and field values, the map method will call the process() method on each
  * DataTypeHandler implementation that has been configured for the Type of Event.
  *
- * This class no longer supports processing events in a multi-threaded fashion as that was proven to NOT be beneficial in the long run (i.e. The bulk of the
- * time is spent in the ContextWriter which is synchronized. Also multithreading mean potentially more memory use which we should already be maximizing per
- * machine in the hadoop map-reduce cluster.)
+ * By default events are processed serially, as processing them in a multi-threaded fashion was proven to NOT be beneficial in the long run for many small
+ * mappers (i.e. The bulk of the time is spent in the ContextWriter which is synchronized. Also multithreading mean potentially more memory use which we should
+ * already be maximizing per machine in the hadoop map-reduce cluster.) For fewer, larger mappers, setting PIPELINE_ENABLED runs the mapper as a pipeline
+ * instead: the records are read and the output is written on the map thread, while the fields of the events are gathered on a normalization thread and each
+ * handler runs on a thread of its own. The handlers of an event run in parallel, a bounded number of events are in flight, and the output of the events is
+ * written in the same order as it would be serially.
  *
  *
  *
@@ -126,6 +141,13 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
     
     public static final String ID_FILTER_FSTS = "ingest.event.mapper.id.filter.fsts";
     
+    /**
+     * whether to run the mapper as a pipeline, and the max number of events in the pipeline at once
+     */
+    public static final String PIPELINE_ENABLED = "ingest.event.mapper.pipeline.enabled";
+    public static final String PIPELINE_DEPTH = "ingest.event.mapper.pipeline.depth";
+    public static final int DEFAULT_PIPELINE_DEPTH = 100;
+    
     protected Map<String,List<DataTypeHandler<K1>>> typeMap = new HashMap<>();
     
     /**
@@ -159,6 +181,9 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
     private MetricsService<K2,V2> metricsService;
     private ReusableMetricsLabels metricsLabels;
     
+    // the pipeline when running as one
+    private EventPipeline pipeline = null;
+    
     /**
      * Set up the datatype handlers
      */
@@ -376,6 +401,40 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
         return filters;
     }
     
+    /**
+     * Runs the mapper as a pipeline when PIPELINE_ENABLED is set, otherwise maps each record in turn
+     */
+    @Override
+    public void run(Context context) throws IOException, InterruptedException {
+        if (!context.getConfiguration().getBoolean(PIPELINE_ENABLED, false)) {
+            super.run(context);
+            return;
+        }
+        setup(context);
+        try {
+            if (metricsEnabled) {
+                // the metrics service is not thread safe
+                log.warn("Metrics are enabled, so the events will be processed serially rather than as a pipeline");
+                while (context.nextKeyValue()) {
+                    map(context.getCurrentKey(), context.getCurrentValue(), context);
+                }
+            } else {
+                pipeline = new EventPipeline(context.getConfiguration());
+                try {
+                    while (context.nextKeyValue()) {
+                        pipeline.submit(context.getCurrentKey(), context.getCurrentValue(), context);
+                    }
+                    pipeline.drain(context);
+                } finally {
+                    pipeline.close();
+                    pipeline = null;
+                }
+            }
+        } finally {
+            cleanup(context);
+        }
+    }
+    
     public void map(K1 key, V1 value, Context context) throws IOException, InterruptedException {
         
         TraceStopwatch eventMapperTimer = null;
@@ -385,6 +444,54 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
             eventMapperTimer.start();
         }
         
+        // a reprocessed event pushes its original file on to the NDC
+        int ndcDepth = NDC.getDepth();
+        
+        List<DataTypeHandler<K1>> handlers = prepareEvent(value, context);
+        if (handlers == null) {
+            NDC.setMaxDepth(ndcDepth);
+            return;
+        }
+        
+        Multimap<String,NormalizedContentInterface> fields = HashMultimap.create();
+        try {
+            processEvent(key, value, handlers, fields, context);
+        } catch (Exception e) {
+            handleEventError(key, value, fields, e, context);
+        } finally {
+            // Remove ORIG_FILE from NDC that was populated by reprocessing events from the error tables
+            NDC.setMaxDepth(ndcDepth);
+            // cleanup the context writer
+            contextWriter.commit(context);
+            context.progress();
+        }
+        
+        getCounter(context, IngestOutput.EVENTS_PROCESSED.name(), value.getDataType().typeName().toUpperCase()).increment(1);
+        
+        offset++;
+        
+        if (metricsEnabled && eventMapperTimer != null) {
+            eventMapperTimer.stop();
+            long timeInEventMapper = eventMapperTimer.elapsed(TimeUnit.MILLISECONDS);
+            
+            metricsLabels.clear();
+            metricsLabels.put("dataType", value.getDataType().typeName());
+            metricsService.collect(Metric.MILLIS_IN_EVENT_MAPPER, metricsLabels.get(), fields, timeInEventMapper);
+        }
+    }
+    
+    /**
+     * Counts an event, purges it from the error table if it is being reprocessed, and gathers the handlers to apply to it.
+     *
+     * @param value
+     *            The event
+     * @param context
+     *            The context
+     * @return the handlers to apply, or null if the event is older than the discard interval
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private List<DataTypeHandler<K1>> prepareEvent(V1 value, Context context) throws IOException, InterruptedException {
         // ensure this datatype's handlers etc are loaded such that the dataTypeDiscardIntervalCache and validators are filled as well
         List<DataTypeHandler<K1>> typeHandlers = loadDataType(value.getDataType().typeName(), context);
         
@@ -399,9 +506,6 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
         // this is automatically done by the sequence reader....
         // value.setConf(context.getConfiguration());
         
-        // Flag to control whether a reprocessed event caused an NDC.push
-        boolean reprocessedNDCPush = false;
-        
         byte[] rawData = value.getRawData();
         if (rawData != null) {
             long rawDataBytes = rawData.length;
@@ -436,7 +540,6 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
                 Collection<String> origFiles = errorSummary.getEventFields().get(SEQUENCE_FILE_FIELDNAME);
                 if (!origFiles.isEmpty()) {
                     NDC.push(origFiles.iterator().next());
-                    reprocessedNDCPush = true;
                 }
                 
             } catch (Exception e) {
@@ -454,7 +557,7 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
             if (log.isInfoEnabled())
                 log.info("Event with time " + value.getDate() + " older than specified interval of " + (now.get() - myInterval) + ", skipping...");
             getCounter(context, IngestInput.OLD_EVENT).increment(1);
-            return;
+            return null;
         }
         
         // Add the list of handlers with the ALL specified handlers
@@ -485,70 +588,69 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
             context.progress();
         }
         
-        Multimap<String,NormalizedContentInterface> fields = HashMultimap.create();
-        try {
-            processEvent(key, value, handlers, fields, context);
-        } catch (Exception e) {
-            // Rollback anything written for this event
-            contextWriter.rollback();
-            
-            // Fail job on constraint violations
-            if (e instanceof ConstraintChecker.ConstraintViolationException) {
-                throw ((RuntimeException) e);
-            }
-            
-            // ensure they know we are still working on it
-            context.progress();
-            
-            // log error
-            log.error("Runtime exception processing event", e);
+        return handlers;
+    }
             
-            // now lets dump to the errors table
-            // first set the exception on the event if not a field normalization error in which case the fields contain the errors
-            if (!(e instanceof FieldNormalizationError)) {
-                value.setAuxData(e);
-            }
-            for (DataTypeHandler<K1> handler : loadDataType(TypeRegistry.ERROR_PREFIX, context)) {
-                if (log.isTraceEnabled())
-                    log.trace("executing handler: " + handler.getClass().getName());
-                try {
-                    executeHandler(key, value, fields, handler, context);
-                    context.progress();
-                } catch (Exception e2) {
-                    // This is a real bummer, we had a critical exception attempting to throw the event into the error table.
-                    // lets terminate this job
-                    log.error("Failed to process error data handlers for an event", e2);
-                    throw new IOException("Failed to process error data handlers for an event", e2);
-                }
-            }
+    /**
+     * Rolls back the output of an event that failed and sends it to the error handlers instead
+     *
+     * @param key
+     *            The key of the map process
+     * @param value
+     *            The event
+     * @param fields
+     *            The last set of fields gathered for the event
+     * @param e
+     *            The failure
+     * @param context
+     *            The context
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void handleEventError(K1 key, V1 value, Multimap<String,NormalizedContentInterface> fields, Exception e, Context context) throws IOException,
+                    InterruptedException {
+        // Rollback anything written for this event
+        contextWriter.rollback();
             
-            // now create some counters
-            getCounter(context, IngestProcess.RUNTIME_EXCEPTION).increment(1);
-            List<String> exceptions = getExceptionSynopsis(e);
-            for (String exception : exceptions) {
-                getCounter(context, IngestProcess.RUNTIME_EXCEPTION.name(), exception).increment(1);
-            }
-        } finally {
-            // Remove ORIG_FILE from NDC that was populated by reprocessing events from the error tables
-            if (reprocessedNDCPush) {
-                NDC.pop();
-            }
-            // cleanup the context writer
-            contextWriter.commit(context);
-            context.progress();
+        // Fail job on constraint violations
+        if (e instanceof ConstraintChecker.ConstraintViolationException) {
+            throw ((RuntimeException) e);
         }
         
-        getCounter(context, IngestOutput.EVENTS_PROCESSED.name(), value.getDataType().typeName().toUpperCase()).increment(1);
+        // ensure they know we are still working on it
+        context.progress();
         
-        offset++;
+        // log error
+        log.error("Runtime exception processing event", e);
         
-        if (metricsEnabled && eventMapperTimer != null) {
-            eventMapperTimer.stop();
-            long timeInEventMapper = eventMapperTimer.elapsed(TimeUnit.MILLISECONDS);
+        // now lets dump to the errors table
+        // first set the exception on the event if not a field normalization error in which case the fields contain the errors
+        if (!(e instanceof FieldNormalizationError)) {
+            value.setAuxData(e);
+        }
+        for (DataTypeHandler<K1> handler : loadDataType(TypeRegistry.ERROR_PREFIX, context)) {
+            if (log.isTraceEnabled())
+                log.trace("executing handler: " + handler.getClass().getName());
+            try {
+                if (pipeline != null) {
+                    pipeline.executeHandler(key, value, fields, handler, context);
+                } else {
+                    executeHandler(key, value, fields, handler, context);
+                }
+                context.progress();
+            } catch (Exception e2) {
+                // This is a real bummer, we had a critical exception attempting to throw the event into the error table.
+                // lets terminate this job
+                log.error("Failed to process error data handlers for an event", e2);
+                throw new IOException("Failed to process error data handlers for an event", e2);
+            }
+        }
             
-            metricsLabels.clear();
-            metricsLabels.put("dataType", value.getDataType().typeName());
-            metricsService.collect(Metric.MILLIS_IN_EVENT_MAPPER, metricsLabels.get(), fields, timeInEventMapper);
+        // now create some counters
+        getCounter(context, IngestProcess.RUNTIME_EXCEPTION).increment(1);
+        List<String> exceptions = getExceptionSynopsis(e);
+        for (String exception : exceptions) {
+            getCounter(context, IngestProcess.RUNTIME_EXCEPTION.name(), exception).increment(1);
         }
     }
     
@@ -602,6 +704,29 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
         return synopsis;
     }
     
+    /**
+     * Writes the metadata that the handlers have gathered so far, and clears it. The metadata is otherwise only written when the mapper is cleaned up, so a
+     * long running ingest of one input, such as the StreamingIngestJob, calls this before it checkpoints the events processed so far, which also makes their
+     * new fields queryable before the end of the input.
+     * 
+     * @param context
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void flushMetadata(Context context) throws IOException, InterruptedException {
+        for (List<DataTypeHandler<K1>> handlers : typeMap.values()) {
+            for (DataTypeHandler<K1> h : handlers)
+                if (h.getMetadata() != null) {
+                    try {
+                        contextWriter.write(h.getMetadata().getBulkMetadata(), context);
+                    } finally {
+                        contextWriter.commit(context);
+                    }
+                    h.getMetadata().clear();
+                }
+        }
+    }
+    
     @Override
     public void cleanup(Context context) throws IOException, InterruptedException {
         
@@ -731,6 +856,15 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
     }
     
     public Multimap<String,NormalizedContentInterface> getFields(RawRecordContainer value, DataTypeHandler<K1> handler) throws Exception {
+        return getFields(value, handler, NDC.peek(), offset);
+    }
+    
+    /**
+     * Gets the fields of an event, given the NDC and the offset of the event, for when the fields are gathered on a thread other than the one that read the
+     * event.
+     */
+    protected Multimap<String,NormalizedContentInterface> getFields(RawRecordContainer value, DataTypeHandler<K1> handler, String ndc, long eventOffset)
+                    throws Exception {
         Multimap<String,NormalizedContentInterface> newFields;
         // Parse the event into its field names and field values using the DataTypeHandler's BaseIngestHelper object.
         newFields = handler.getHelper(value.getDataType()).getEventFields(value);
@@ -765,7 +899,7 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
         
         // place the sequence filename into the event
         if (createSequenceFileName) {
-            seqFileName = NDC.peek();
+            seqFileName = ndc;
             
             if (trimSequenceFileName) {
                 seqFileName = StringUtils.substringAfterLast(seqFileName, "/");
@@ -774,7 +908,7 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
             if (null != seqFileName) {
                 StringBuilder seqFile = new StringBuilder(seqFileName);
                 
-                seqFile.append(SRC_FILE_DEL).append(offset);
+                seqFile.append(SRC_FILE_DEL).append(eventOffset);
                 
                 if (null != splitStart) {
                     seqFile.append(SRC_FILE_DEL).append(splitStart);
@@ -857,6 +991,369 @@ public class EventMapper<K1,V1 extends RawRecordContainer,K2,V2> extends StatsDE
         }
     }
     
+    /**
+     * The output of a handler for an event, kept until it can be written in order
+     */
+    private static class HandlerOutput {
+        private Multimap<BulkIngestKey,Value> entries;
+        private long count;
+    }
+    
+    /**
+     * Applies a handler to an event like {@link #executeHandler}, but keeps the output rather than writing it, so that the handler can run on a thread other
+     * than the one writing the output.
+     */
+    @SuppressWarnings("unchecked")
+    private HandlerOutput runHandler(K1 key, RawRecordContainer event, Multimap<String,NormalizedContentInterface> fields, DataTypeHandler<K1> handler,
+                    Context context) throws Exception {
+        HandlerOutput output = new HandlerOutput();
+        if (!(handler instanceof ExtendedDataTypeHandler)) {
+            output.entries = handler.processBulk(key, event, fields, new ContextWrappedStatusReporter(getContext(context)));
+            output.count = (output.entries == null ? 0 : output.entries.size());
+        } else {
+            BufferingContextWriter<K2,V2> buffer = new BufferingContextWriter<>();
+            output.count = ((ExtendedDataTypeHandler<K1,K2,V2>) handler).process(key, event, fields, context, buffer);
+            output.entries = buffer.entries;
+        }
+        return output;
+    }
+    
+    /**
+     * Writes the output of a handler and updates the counters as {@link #executeHandler} would
+     */
+    private void writeOutput(DataTypeHandler<K1> handler, HandlerOutput output, Context context) throws IOException, InterruptedException {
+        long count = output.count;
+        if (!(handler instanceof ExtendedDataTypeHandler)) {
+            if (output.entries == null) {
+                getCounter(context, IngestInput.EVENT_FATAL_ERROR).increment(1);
+                getCounter(context, IngestInput.EVENT_FATAL_ERROR.name(), "NullMultiMap").increment(1);
+            } else {
+                contextWriter.write(output.entries, context);
+            }
+        } else {
+            contextWriter.write(output.entries, context);
+            if (count == -1) {
+                getCounter(context, IngestInput.EVENT_FATAL_ERROR).increment(1);
+                getCounter(context, IngestInput.EVENT_FATAL_ERROR.name(), "NegOneCount").increment(1);
+            }
+        }
+        
+        // Update the counters
+        if (count > 0) {
+            getCounter(context, IngestOutput.ROWS_CREATED.name(), handler.getClass().getSimpleName()).increment(count);
+            getCounter(context, IngestOutput.ROWS_CREATED).increment(count);
+        }
+    }
+    
+    /**
+     * Collects what an extended handler writes, so that it can be written in order later
+     */
+    private static class BufferingContextWriter<OK,OV> implements ContextWriter<OK,OV> {
+        
+        private final Multimap<BulkIngestKey,Value> entries = HashMultimap.create();
+        
+        @Override
+        public void setup(Configuration conf, boolean outputTableCounters) throws IOException, InterruptedException {}
+        
+        @Override
+        public void write(BulkIngestKey key, Value value, TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {
+            entries.put(key, value);
+        }
+        
+        @Override
+        public void write(Multimap<BulkIngestKey,Value> entries, TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {
+            this.entries.putAll(entries);
+        }
+        
+        @Override
+        public void commit(TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {}
+        
+        @Override
+        public void rollback() throws IOException, InterruptedException {
+            entries.clear();
+        }
+        
+        @Override
+        public void cleanup(TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {}
+    }
+    
+    /**
+     * An event in the pipeline
+     */
+    private class PipelinedEvent {
+        private final K1 key;
+        private final V1 value;
+        private final List<DataTypeHandler<K1>> handlers;
+        private final Collection<FieldValidator> validators;
+        private final String ndc;
+        private final long offset;
+        
+        // the fields for each handler, or null for a handler without a helper for the event
+        private CompletableFuture<List<Multimap<String,NormalizedContentInterface>>> fields;
+        private final List<CompletableFuture<HandlerOutput>> outputs = new ArrayList<>();
+        
+        // the last set of fields gathered, for the error handlers
+        private volatile Multimap<String,NormalizedContentInterface> lastFields = HashMultimap.create();
+        
+        private PipelinedEvent(K1 key, V1 value, List<DataTypeHandler<K1>> handlers, Collection<FieldValidator> validators, String ndc, long offset) {
+            this.key = key;
+            this.value = value;
+            this.handlers = handlers;
+            this.validators = validators;
+            this.ndc = ndc;
+            this.offset = offset;
+        }
+        
+        private boolean isDone() {
+            for (CompletableFuture<HandlerOutput> output : outputs) {
+                if (!output.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Runs the stages of the mapper on separate threads. The map thread reads the events and writes their output, in the order in which they were read. In
+     * between, the fields of each event are gathered on a normalization thread and each handler runs on a thread of its own, so the handlers of an event run in
+     * parallel. A handler only ever runs on its own thread, and sees the events in order.
+     * 
+     * The stages share the ingest helpers, as a handler and the normalization thread get the same helper for a datatype. Gathering the fields and updating the
+     * metadata of the handlers use a helper for more than reading its configuration, so both run on the normalization thread: the metadata of an event is
+     * updated there once its handler is done, in between gathering the fields of the events behind it. The handler threads still read the helpers while the
+     * normalization thread uses them, so those reads must be thread safe.
+     */
+    private class EventPipeline {
+        
+        private final Configuration conf;
+        private final int depth;
+        private final ExecutorService normalizer;
+        private final Map<DataTypeHandler<K1>,ExecutorService> handlerThreads = new IdentityHashMap<>();
+        private final Deque<PipelinedEvent> events = new ArrayDeque<>();
+        private long nextOffset;
+        private boolean warnedCopy = false;
+        
+        private EventPipeline(Configuration conf) {
+            this.conf = conf;
+            this.depth = Math.max(1, conf.getInt(PIPELINE_DEPTH, DEFAULT_PIPELINE_DEPTH));
+            this.normalizer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("EventMapper normalizer").build());
+            this.nextOffset = offset;
+        }
+        
+        /**
+         * Puts an event into the pipeline, writing the output of the events ahead of it that are done, and waiting for the oldest event if the pipeline is
+         * full.
+         */
+        @SuppressWarnings("unchecked")
+        private void submit(K1 key, V1 value, Context context) throws IOException, InterruptedException {
+            // the record reader may reuse the key and value
+            V1 event;
+            try {
+                event = (V1) value.copy();
+            } catch (UnsupportedOperationException e) {
+                if (!warnedCopy) {
+                    log.warn("Unable to copy a " + value.getClass() + ", so those events will be processed serially");
+                    warnedCopy = true;
+                }
+                drain(context);
+                map(key, value, context);
+                nextOffset = offset;
+                return;
+            }
+            if (key instanceof Writable) {
+                key = (K1) WritableUtils.clone((Writable) key, conf);
+            }
+            
+            // purging a reprocessed event uses the handlers, so wait until they are idle
+            if (event.getAuxData() instanceof EventErrorSummary) {
+                drain(context);
+            }
+            
+            int ndcDepth = NDC.getDepth();
+            List<DataTypeHandler<K1>> handlers = prepareEvent(event, context);
+            String ndc = NDC.peek();
+            NDC.setMaxDepth(ndcDepth);
+            if (handlers == null) {
+                return;
+            }
+            
+            PipelinedEvent pipelined = new PipelinedEvent(key, event, handlers, new ArrayList<>(validators.get(event.getDataType().outputName())), ndc,
+                            nextOffset++);
+            pipelined.fields = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return normalize(pipelined);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, normalizer);
+            for (int i = 0; i < handlers.size(); i++) {
+                final int index = i;
+                final DataTypeHandler<K1> handler = handlers.get(i);
+                CompletableFuture<HandlerOutput> output = pipelined.fields.thenApplyAsync(fields -> {
+                    if (fields.get(index) == null) {
+                        return null;
+                    }
+                    try {
+                        return runHandler(pipelined.key, pipelined.value, fields.get(index), handler, context);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, getThread(handler));
+                pipelined.outputs.add(output.thenApplyAsync(o -> addMetadata(handler, pipelined.value, pipelined.fields.join().get(index), o), normalizer));
+            }
+            events.add(pipelined);
+            
+            while (!events.isEmpty() && (events.size() > depth || events.peek().isDone())) {
+                complete(events.poll(), context);
+            }
+        }
+        
+        /**
+         * Gathers the fields of an event for each of its handlers, as {@link #processEvent} would. Each handler gets its own copy of the fields, as the
+         * handlers of the event run in parallel.
+         */
+        private List<Multimap<String,NormalizedContentInterface>> normalize(PipelinedEvent event) throws Exception {
+            List<Multimap<String,NormalizedContentInterface>> handlerFields = new ArrayList<>(event.handlers.size());
+            IngestHelperInterface previousHelper = null;
+            Multimap<String,NormalizedContentInterface> fields = null;
+            for (DataTypeHandler<K1> handler : event.handlers) {
+                IngestHelperInterface thisHelper = handler.getHelper(event.value.getDataType());
+                if (thisHelper == null) {
+                    handlerFields.add(null);
+                    continue;
+                }
+                
+                if (null == previousHelper || !previousHelper.getClass().getName().equals(thisHelper.getClass().getName())) {
+                    fields = HashMultimap.create();
+                    event.lastFields = fields;
+                    Throwable e = null;
+                    for (Map.Entry<String,NormalizedContentInterface> entry : getFields(event.value, handler, event.ndc, event.offset).entries()) {
+                        if (entry.getValue().getError() != null) {
+                            e = entry.getValue().getError();
+                        }
+                        fields.put(entry.getKey(), entry.getValue());
+                    }
+                    if (e != null) {
+                        throw new FieldNormalizationError("Failed getting all fields", e);
+                    }
+                    for (FieldValidator validator : event.validators) {
+                        validator.validate(event.value, fields);
+                    }
+                    previousHelper = thisHelper;
+                    handlerFields.add(fields);
+                } else {
+                    handlerFields.add(HashMultimap.create(fields));
+                }
+            }
+            return handlerFields;
+        }
+        
+        /**
+         * Writes the output of an event, in the order of its handlers, or sends the event to the error handlers if any of them failed
+         */
+        private void complete(PipelinedEvent event, Context context) throws IOException, InterruptedException {
+            Multimap<String,NormalizedContentInterface> fields = event.lastFields;
+            try {
+                for (int i = 0; i < event.handlers.size(); i++) {
+                    HandlerOutput output = getOutput(event.outputs.get(i));
+                    if (output != null) {
+                        writeOutput(event.handlers.get(i), output, context);
+                    }
+                    context.progress();
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (event.fields.isDone() && !event.fields.isCompletedExceptionally()) {
+                    // use the fields of the handler that failed
+                    for (int i = 0; i < event.handlers.size(); i++) {
+                        if (event.outputs.get(i).isCompletedExceptionally() && event.fields.join().get(i) != null) {
+                            fields = event.fields.join().get(i);
+                            break;
+                        }
+                    }
+                }
+                handleEventError(event.key, event.value, fields, e, context);
+            } finally {
+                // cleanup the context writer
+                contextWriter.commit(context);
+                context.progress();
+            }
+            
+            getCounter(context, IngestOutput.EVENTS_PROCESSED.name(), event.value.getDataType().typeName().toUpperCase()).increment(1);
+            
+            offset++;
+        }
+        
+        /**
+         * Runs an error handler on its own thread, waiting for it, and writes its output
+         */
+        private void executeHandler(K1 key, RawRecordContainer event, Multimap<String,NormalizedContentInterface> fields, DataTypeHandler<K1> handler,
+                        Context context) throws Exception {
+            HandlerOutput output = getOutput(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return runHandler(key, event, fields, handler, context);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, getThread(handler)).thenApplyAsync(o -> addMetadata(handler, event, fields, o), normalizer));
+            writeOutput(handler, output, context);
+        }
+        
+        /**
+         * Adds an event to the metadata of its handler once the handler is done with it, as {@link EventMapper#executeHandler} would. This runs on the
+         * normalization thread, as the metadata uses the helper of the event.
+         */
+        private HandlerOutput addMetadata(DataTypeHandler<K1> handler, RawRecordContainer event, Multimap<String,NormalizedContentInterface> fields,
+                        HandlerOutput output) {
+            if (output != null && handler.getMetadata() != null) {
+                handler.getMetadata().addEvent(handler.getHelper(event.getDataType()), event, fields, now.get());
+            }
+            return output;
+        }
+        
+        private HandlerOutput getOutput(CompletableFuture<HandlerOutput> future) throws Exception {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+        
+        private ExecutorService getThread(DataTypeHandler<K1> handler) {
+            ExecutorService thread = handlerThreads.get(handler);
+            if (thread == null) {
+                thread = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                .setNameFormat("EventMapper " + handler.getClass().getSimpleName() + " " + handlerThreads.size()).build());
+                handlerThreads.put(handler, thread);
+            }
+            return thread;
+        }
+        
+        /**
+         * Writes the output of every event in the pipeline
+         */
+        private void drain(Context context) throws IOException, InterruptedException {
+            while (!events.isEmpty()) {
+                complete(events.poll(), context);
+            }
+        }
+        
+        private void close() {
+            normalizer.shutdownNow();
+            for (ExecutorService thread : handlerThreads.values()) {
+                thread.shutdownNow();
+            }
+        }
+    }
+    
     public ContextWriter<K2,V2> getContextWriter() {
         return this.contextWriter;
     }
@@ -3,8 +3,12 @@ package datawave.ingest.mapreduce.handler.shard;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.data.Key;
@@ -27,6 +31,7 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.hash.BloomFilter;
 
+import datawave.data.FieldValueBloomFilter;
 import datawave.ingest.config.IngestConfiguration;
 import datawave.ingest.config.IngestConfigurationFactory;
 import datawave.ingest.data.RawRecordContainer;
@@ -162,6 +167,16 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
     public static final String SHARD_DINDX_RLABEL_LOCALITY_NAME = "reverse";
     public static final int SHARD_DINDEX_CACHE_DEFAULT_SIZE = 1024;
     
+    /**
+     * table of a bloom filter of the values of each field in each shard, used by the query planner to skip the shards that cannot contain a value
+     */
+    public static final String SHARD_FIELD_BLOOM_TNAME = "shard.field.bloom.table.name";
+    public static final String SHARD_FIELD_BLOOM_LPRIORITY = "shard.field.bloom.table.loader.priority";
+    public static final String SHARD_FIELD_BLOOM_BITS = "shard.field.bloom.bits";
+    public static final String SHARD_FIELD_BLOOM_HASHES = "shard.field.bloom.hashes";
+    // comma separated fields to write filters for, or all fields if not set
+    public static final String SHARD_FIELD_BLOOM_FIELDS = "shard.field.bloom.fields";
+    
     /**
      * Enable/Disable term frequency calcuation for fields in the metadata
      */
@@ -189,6 +204,10 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
     private Text metadataTableName = null;
     private Text loadDatesTableName = null;
     private Text shardDictionaryName = null;
+    private Text shardFieldBloomTableName = null;
+    private int shardFieldBloomBits = FieldValueBloomFilter.DEFAULT_NUM_BITS;
+    private int shardFieldBloomHashes = FieldValueBloomFilter.DEFAULT_NUM_HASHES;
+    private Set<String> shardFieldBloomFields = null;
     private RawRecordMetadata metadata = null;
     private ShardIdFactory shardIdFactory = null;
     private LoadingCache<String,String> dCache = null;
@@ -267,6 +286,17 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
             
         }
         
+        tableName = conf.get(SHARD_FIELD_BLOOM_TNAME, null);
+        if (null != tableName) {
+            setShardFieldBloomTableName(new Text(tableName));
+            this.shardFieldBloomBits = conf.getInt(SHARD_FIELD_BLOOM_BITS, FieldValueBloomFilter.DEFAULT_NUM_BITS);
+            this.shardFieldBloomHashes = conf.getInt(SHARD_FIELD_BLOOM_HASHES, FieldValueBloomFilter.DEFAULT_NUM_HASHES);
+            String fields = conf.get(SHARD_FIELD_BLOOM_FIELDS, null);
+            if (null != fields) {
+                this.shardFieldBloomFields = new HashSet<>(Arrays.asList(StringUtils.split(fields, ',')));
+            }
+        }
+        
         setupToReindexIfEnabled(conf);
         
         // enabled by default
@@ -327,6 +357,10 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
         if (null != tableName)
             tableNames.add(tableName);
         
+        tableName = conf.get(SHARD_FIELD_BLOOM_TNAME, null);
+        if (null != tableName)
+            tableNames.add(tableName);
+        
         if (LoadDateTableConfigHelper.isLoadDatesEnabled(conf)) {
             tableNames.add(LoadDateTableConfigHelper.getLoadDatesTableName(conf));
         }
@@ -336,7 +370,7 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
     
     @Override
     public int[] getTableLoaderPriorities(Configuration conf) {
-        int[] priorities = new int[6];
+        int[] priorities = new int[7];
         int index = 0;
         String tableName = conf.get(SHARD_TNAME, null);
         if (null != tableName)
@@ -358,6 +392,10 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
         if (null != tableName)
             priorities[index++] = conf.getInt(SHARD_DINDX_LPRIORITY, 40);
         
+        tableName = conf.get(SHARD_FIELD_BLOOM_TNAME, null);
+        if (null != tableName)
+            priorities[index++] = conf.getInt(SHARD_FIELD_BLOOM_LPRIORITY, 40);
+        
         if (LoadDateTableConfigHelper.isLoadDatesEnabled(conf)) {
             priorities[index++] = LoadDateTableConfigHelper.getLoadDatesTableLoaderPriority(conf);
         }
@@ -476,8 +514,75 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
                 
             }
             
+            if (null != getShardFieldBloomTableName()) {
+                values.putAll(createFieldBloomFilterColumns(helper, event, fields, shardId));
+            }
+            
+        }
+        
+        return values;
+    }
+    
+    /**
+     * Creates the field bloom filter entries of an event, one for each field and visibility holding the values of the field in the event. The table combines
+     * the filters of the events of a shard.
+     * 
+     * Row: shard id
+     * 
+     * Colf: FieldName
+     * 
+     * Colq: DataType
+     * 
+     * Value: FieldValueBloomFilter of the normalized and original values, so that a query literal matches whether or not the planner normalized it
+     * 
+     * Nothing is written in delete mode. A bloom filter cannot forget a value, and the filter of the shard still holds every value that remains in it, while a
+     * delete marker would remove the whole filter of the field and visibility and leave the shard to be pruned on the filters of the other events alone.
+     * 
+     * @param helper
+     * @param event
+     * @param fields
+     * @param shardId
+     */
+    protected Multimap<BulkIngestKey,Value> createFieldBloomFilterColumns(IngestHelperInterface helper, RawRecordContainer event,
+                    Multimap<String,NormalizedContentInterface> fields, byte[] shardId) {
+        if (helper.getDeleteMode()) {
+            return HashMultimap.create();
+        }
+        
+        Map<String,Map<Text,FieldValueBloomFilter>> filters = new HashMap<>();
+        for (NormalizedContentInterface value : fields.values()) {
+            String fieldName = value.getIndexedFieldName();
+            String fieldValue = value.getIndexedFieldValue();
+            if (null == fieldValue || (null != shardFieldBloomFields && !shardFieldBloomFields.contains(fieldName))) {
+                continue;
+            }
+            
+            Map<Text,FieldValueBloomFilter> filtersByVisibility = filters.get(fieldName);
+            if (null == filtersByVisibility) {
+                filtersByVisibility = new HashMap<>();
+                filters.put(fieldName, filtersByVisibility);
+            }
+            Text visibility = new Text(getVisibility(event, value));
+            FieldValueBloomFilter filter = filtersByVisibility.get(visibility);
+            if (null == filter) {
+                filter = new FieldValueBloomFilter(shardFieldBloomBits, shardFieldBloomHashes);
+                filtersByVisibility.put(visibility, filter);
+            }
+            filter.add(fieldValue);
+            if (null != value.getEventFieldValue() && !fieldValue.equals(value.getEventFieldValue())) {
+                filter.add(value.getEventFieldValue());
+            }
         }
         
+        Multimap<BulkIngestKey,Value> values = HashMultimap.create();
+        Text colq = new Text(event.getDataType().outputName());
+        for (Entry<String,Map<Text,FieldValueBloomFilter>> field : filters.entrySet()) {
+            Text colf = new Text(field.getKey());
+            for (Entry<Text,FieldValueBloomFilter> filter : field.getValue().entrySet()) {
+                Key key = createKey(shardId, colf, colq, filter.getKey().copyBytes(), event.getDate(), false);
+                values.put(new BulkIngestKey(getShardFieldBloomTableName(), key), filter.getValue().toValue());
+            }
+        }
         return values;
     }
     
@@ -1278,6 +1383,14 @@ public abstract class ShardedDataTypeHandler<KEYIN> extends StatsDEnabledDataTyp
         this.shardDictionaryName = shardDXName;
     }
     
+    public Text getShardFieldBloomTableName() {
+        return shardFieldBloomTableName;
+    }
+    
+    public void setShardFieldBloomTableName(Text shardFieldBloomTableName) {
+        this.shardFieldBloomTableName = shardFieldBloomTableName;
+    }
+    
     public Text getShardTableName() {
         return shardTableName;
     }
@@ -2,6 +2,7 @@ package datawave.ingest.mapreduce.job;
 
 import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import datawave.ingest.data.TypeRegistry;
 import datawave.ingest.mapreduce.StandaloneStatusReporter;
 import datawave.util.cli.PasswordConverter;
@@ -21,6 +22,7 @@ import org.apache.accumulo.core.master.thrift.MasterClientService.Iface;
 import org.apache.accumulo.core.master.thrift.MasterMonitorInfo;
 import org.apache.accumulo.core.master.thrift.TableInfo;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -52,26 +54,42 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A processor whose job is to watch for completed Bulk Ingest jobs and bring the map files produced by them online in accumulo. This class attempts to bring
  * multiple map files online at once if many jobs have completed, and also attempts to throttle itself to prevent queuing up too many major compactions on the
  * various tablet servers.
+ * <p>
+ * By default one job directory is loaded at a time. With {@code -maxConcurrentJobs} greater than one, several job directories are loaded at once, oldest first
+ * unless running LIFO, and the copying and cleaning up of some jobs overlaps with the imports of others. The time from a job completing to its data being
+ * online, and the time, files and bytes of the imports into each table, are written out with the other metrics of the loader.
  */
-public final class BulkIngestMapFileLoader implements Runnable {
+public class BulkIngestMapFileLoader implements Runnable {
     private static Logger log = Logger.getLogger(BulkIngestMapFileLoader.class);
     private static int SLEEP_TIME = 30000;
     private static int FAILURE_SLEEP_TIME = 10 * 60 * 1000; // 10 minutes
     private static int MAX_DIRECTORIES = 1;
+    private static int MAX_CONCURRENT_JOBS = 1;
+    // 0 imports up to half of the concurrent jobs at once
+    private static int MAX_CONCURRENT_IMPORTS = 0;
     private static int MAJC_CHECK_INTERVAL = 1;
     private static int MAJC_THRESHOLD = 3000;
     private static int MAJC_WAIT_TIMEOUT = 0;// 2 * 60 * 1000;
@@ -99,6 +117,7 @@ public final class BulkIngestMapFileLoader implements Runnable {
     private StandaloneStatusReporter reporter = new StandaloneStatusReporter();
     private volatile boolean running;
     private ExecutorService executor;
+    private AtomicInteger fsAccessFailures = new AtomicInteger();
     
     public static void main(String[] args) throws AccumuloSecurityException, IOException {
         
@@ -110,7 +129,7 @@ public final class BulkIngestMapFileLoader implements Runnable {
         ArrayList<String[]> properties = new ArrayList<>();
         
         if (args.length < 6) {
-            log.error("usage: BulkIngestMapFileLoader hdfsWorkDir jobDirPattern instanceName zooKeepers username password [-sleepTime sleepTime] [-majcThreshold threshold] [-majcCheckInterval count] [-majcDelay majcDelay] [-seqFileHdfs seqFileSystemUri] [-srcHdfs srcFileSystemURI] [-destHdfs destFileSystemURI] [-jt jobTracker] [-shutdownPort portNum] confFile [{confFile}]");
+            log.error("usage: BulkIngestMapFileLoader hdfsWorkDir jobDirPattern instanceName zooKeepers username password [-sleepTime sleepTime] [-majcThreshold threshold] [-majcCheckInterval count] [-majcDelay majcDelay] [-maxConcurrentJobs count] [-maxConcurrentImports count] [-seqFileHdfs seqFileSystemUri] [-srcHdfs srcFileSystemURI] [-destHdfs destFileSystemURI] [-jt jobTracker] [-shutdownPort portNum] confFile [{confFile}]");
             System.exit(-1);
         }
         
@@ -176,6 +195,28 @@ public final class BulkIngestMapFileLoader implements Runnable {
                         log.error("-maxDirectories must be followed a number of directories", e);
                         System.exit(-2);
                     }
+                } else if ("-maxConcurrentJobs".equalsIgnoreCase(args[i])) {
+                    if (i + 2 > args.length) {
+                        log.error("-maxConcurrentJobs must be followed by the number of job directories to load concurrently");
+                        System.exit(-2);
+                    }
+                    try {
+                        MAX_CONCURRENT_JOBS = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        log.error("-maxConcurrentJobs must be followed by the number of job directories to load concurrently", e);
+                        System.exit(-2);
+                    }
+                } else if ("-maxConcurrentImports".equalsIgnoreCase(args[i])) {
+                    if (i + 2 > args.length) {
+                        log.error("-maxConcurrentImports must be followed by the number of concurrent job directories to import at once");
+                        System.exit(-2);
+                    }
+                    try {
+                        MAX_CONCURRENT_IMPORTS = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        log.error("-maxConcurrentImports must be followed by the number of concurrent job directories to import at once", e);
+                        System.exit(-2);
+                    }
                 } else if ("-numThreads".equalsIgnoreCase(args[i])) {
                     if (i + 2 > args.length) {
                         log.error("-numThreads must be followed by the number of bulk import threads");
@@ -293,6 +334,7 @@ public final class BulkIngestMapFileLoader implements Runnable {
         log.info("Will not bring map files online unless at least " + MAJC_WAIT_TIMEOUT + "ms have passed since last time.");
         log.info("Will check the majcThreshold and majcDelay every " + MAJC_CHECK_INTERVAL + " bulk loads.");
         log.info("Processing a max of " + MAX_DIRECTORIES + " directories");
+        log.info("Loading a max of " + MAX_CONCURRENT_JOBS + " job directories concurrently");
         log.info("Using " + numBulkThreads + " bulk load threads");
         log.info("Using " + numHdfsThreads + " HDFS operation threads");
         log.info("Using " + numBulkAssignThreads + " bulk assign threads");
@@ -378,10 +420,13 @@ public final class BulkIngestMapFileLoader implements Runnable {
         log.info("Starting process to monitor map files.");
         long lastOnlineTime = 0;
         long lastLoadMessageTime = 0;
-        int fsAccessFailures = 0;
         Path[] jobDirectories = new Path[0];
         int nextJobIndex = 0;
         try {
+            if (MAX_CONCURRENT_JOBS > 1) {
+                runConcurrently();
+                return;
+            }
             while (true) {
                 try {
                     if (!running)
@@ -402,7 +447,7 @@ public final class BulkIngestMapFileLoader implements Runnable {
                     }
                     List<Path> processedDirectories = new ArrayList<>();
                     if (nextJobIndex >= jobDirectories.length) {
-                        jobDirectories = getJobDirectories();
+                        jobDirectories = getJobDirectories(MAX_DIRECTORIES);
                         nextJobIndex = 0;
                     }
                     if (jobDirectories.length > 0) {
@@ -413,55 +458,20 @@ public final class BulkIngestMapFileLoader implements Runnable {
                             // take ownership of the job directory if we can
                             if (takeOwnershipJobDirectory(srcJobDirectory)) {
                                 processedDirectories.add(srcJobDirectory);
-                                Path mapFilesDir = new Path(srcJobDirectory, "mapFiles");
-                                reporter.getCounter("MapFileLoader.StartTimes", srcJobDirectory.getName()).increment(System.currentTimeMillis());
-                                Path dstJobDirectory = srcJobDirectory;
-                                URI workingHdfs = srcHdfs;
-                                
+                                JobLoad load = new JobLoad(srcJobDirectory);
                                 try {
-                                    log.info("Started processing " + mapFilesDir);
-                                    long start = System.currentTimeMillis();
-                                    
-                                    // copy the data if needed
-                                    dstJobDirectory = distCpDirectory(srcJobDirectory);
-                                    workingHdfs = destHdfs;
-                                    
-                                    // recreate the map files directory reference in case it moved filesystems
-                                    mapFilesDir = new Path(dstJobDirectory, "mapFiles");
-                                    
-                                    // now if we have a destination work directory, then move then move the files
-                                    bringMapFilesOnline(mapFilesDir);
-                                    
-                                    // ensure everything got loaded
-                                    verifyNothingLeftBehind(mapFilesDir);
-                                    
-                                    cleanUpJobDirectory(mapFilesDir);
-                                    long end = System.currentTimeMillis();
-                                    log.info("Finished processing " + mapFilesDir + ", duration (sec): " + ((end - start) / 1000));
+                                    load.copy();
+                                    load.bringOnline();
+                                    load.finish();
                                     
                                     // now that we actually processed something, reset the last load message time to force a message on the next round
                                     lastLoadMessageTime = 0;
                                 } catch (Exception e) {
-                                    log.error("Failed to process " + mapFilesDir, e);
-                                    boolean marked = markJobDirectoryFailed(workingHdfs, dstJobDirectory);
-                                    if (!marked) {
-                                        ++fsAccessFailures;
-                                        if (fsAccessFailures >= 3) {
-                                            log.error("Too many failures updating marker files.  Exiting...");
-                                            shutdown();
-                                        } else {
-                                            log.warn("Failed to mark " + dstJobDirectory + " as failed. Sleeping in case this was a transient failure.");
-                                            try {
-                                                Thread.sleep(FAILURE_SLEEP_TIME);
-                                            } catch (InterruptedException ie) {
-                                                log.warn("Interrupted while sleeping.", ie);
-                                            }
-                                        }
-                                    }
+                                    load.fail(e);
                                 }
                             }
                             if (nextJobIndex >= jobDirectories.length) {
-                                jobDirectories = getJobDirectories();
+                                jobDirectories = getJobDirectories(MAX_DIRECTORIES);
                                 nextJobIndex = 0;
                             }
                             
@@ -478,8 +488,218 @@ public final class BulkIngestMapFileLoader implements Runnable {
         } finally {
             log.info("Shutting down executor service");
             executor.shutdown();
+            log.info("Bulk map file loader shutting down.");
+        }
+    }
+    
+    /**
+     * Loads up to {@code MAX_CONCURRENT_JOBS} job directories at once. New job directories are started in the order returned by
+     * {@link #getJobDirectories(int)}, so the data of the oldest completed jobs is brought online first unless running LIFO. The copy, import and clean up
+     * stages of each job run on separate executors, so that while up to {@code MAX_CONCURRENT_IMPORTS} jobs are being imported, the job directories of others
+     * are being copied, verified and cleaned up.
+     */
+    private void runConcurrently() {
+        int maxImports = (MAX_CONCURRENT_IMPORTS > 0 ? MAX_CONCURRENT_IMPORTS : Math.max(1, MAX_CONCURRENT_JOBS / 2));
+        log.info("Loading up to " + MAX_CONCURRENT_JOBS + " job directories concurrently, importing up to " + maxImports + " of them at once");
+        ExecutorService hdfsStage = Executors.newFixedThreadPool(MAX_CONCURRENT_JOBS, new ThreadFactoryBuilder().setNameFormat("map-file-loader-hdfs-%d")
+                        .build());
+        ExecutorService importStage = Executors.newFixedThreadPool(maxImports, new ThreadFactoryBuilder().setNameFormat("map-file-loader-import-%d").build());
+        Map<Path,CompletableFuture<Void>> loads = new LinkedHashMap<>();
+        long lastOnlineTime = 0;
+        long lastLoadMessageTime = 0;
+        boolean wait = true;
+        try {
+            while (running) {
+                try {
+                    if (wait) {
+                        waitForLoads(loads.values());
+                    }
+                    wait = true;
+                    if (!running)
+                        break;
+                    
+                    // write out the metrics of the loads that are done
+                    List<Path> processedDirectories = new ArrayList<>();
+                    for (Iterator<Map.Entry<Path,CompletableFuture<Void>>> it = loads.entrySet().iterator(); it.hasNext();) {
+                        Map.Entry<Path,CompletableFuture<Void>> load = it.next();
+                        if (load.getValue().isDone()) {
+                            processedDirectories.add(load.getKey());
+                            it.remove();
+                        }
+                    }
+                    if (!processedDirectories.isEmpty()) {
+                        writeStats(processedDirectories.toArray(new Path[processedDirectories.size()]));
+                        // now that we actually processed something, reset the last load message time to force a message on the next round
+                        lastLoadMessageTime = 0;
+                    }
+                    
+                    if (loads.size() >= MAX_CONCURRENT_JOBS) {
+                        continue;
+                    }
+                    long loadMessageDelta = System.currentTimeMillis() - lastLoadMessageTime;
+                    boolean logMessages = (loadMessageDelta > (5 * 60 * 1000));
+                    if (logMessages) {
+                        lastLoadMessageTime = System.currentTimeMillis();
+                    }
+                    if (!canBringMapFilesOnline(lastOnlineTime, logMessages)) {
+                        if (logMessages) {
+                            log.info("Waiting for load to decrease before bringing more map files online.");
+                        }
+                        continue;
+                    }
+                    int started = 0;
+                    for (Path srcJobDirectory : getJobDirectories(Math.max(MAX_DIRECTORIES, MAX_CONCURRENT_JOBS))) {
+                        if (!running || loads.size() >= MAX_CONCURRENT_JOBS || started >= MAJC_CHECK_INTERVAL)
+                            break;
+                        // take ownership of the job directory if we can
+                        if (!loads.containsKey(srcJobDirectory) && takeOwnershipJobDirectory(srcJobDirectory)) {
+                            loads.put(srcJobDirectory, startLoad(new JobLoad(srcJobDirectory), hdfsStage, importStage));
+                            started++;
+                        }
+                    }
+                    if (started > 0) {
+                        lastOnlineTime = System.currentTimeMillis();
+                        // look for more job directories right away if there is still room for them
+                        wait = (loads.size() >= MAX_CONCURRENT_JOBS);
+                    }
+                } catch (Exception e) {
+                    log.error("Error: " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            // let the loads that were started finish rather than leaving their job directories marked as loading
+            log.info("Waiting for " + loads.size() + " job directories to finish loading");
+            try {
+                CompletableFuture.allOf(loads.values().toArray(new CompletableFuture[loads.size()])).join();
+            } catch (CompletionException e) {
+                log.error("Error: " + e.getMessage(), e);
+            }
+            if (!loads.isEmpty()) {
+                try {
+                    writeStats(loads.keySet().toArray(new Path[loads.size()]));
+                } catch (IOException e) {
+                    log.error("Unable to write the metrics of the last job directories loaded", e);
+                }
+            }
+            hdfsStage.shutdown();
+            importStage.shutdown();
+        }
+    }
+    
+    /**
+     * Chains the stages of a job load, copying the job directory and cleaning it up on the HDFS executor and bringing its map files online on the import
+     * executor. The returned future completes once the job directory is loaded or marked as failed.
+     */
+    private CompletableFuture<Void> startLoad(JobLoad load, Executor hdfsStage, Executor importStage) {
+        return CompletableFuture.runAsync(stage(load::copy), hdfsStage).thenRunAsync(stage(load::bringOnline), importStage)
+                        .thenRunAsync(stage(load::finish), hdfsStage).handleAsync((result, t) -> {
+                            if (null != t) {
+                                load.fail(t instanceof CompletionException && null != t.getCause() ? t.getCause() : t);
+                            }
+                            return null;
+                        }, hdfsStage);
+    }
+    
+    private static Runnable stage(JobLoad.Stage stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+    
+    /**
+     * Waits until one of the loads is done, for at most the sleep time
+     */
+    private void waitForLoads(Collection<CompletableFuture<Void>> loads) {
+        if (loads.isEmpty()) {
+            sleep();
+            return;
+        }
+        try {
+            CompletableFuture.anyOf(loads.toArray(new CompletableFuture[loads.size()])).get(SLEEP_TIME, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // failures are handled by the load itself
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for job directories to load.", e);
+        }
+    }
+    
+    /**
+     * The loading of a job directory that this loader took ownership of. The loading is split into stages that copy the job directory to the destination file
+     * system, bring its map files online, and then verify and clean it up, so that the stages of different jobs can overlap when loading concurrently.
+     */
+    private class JobLoad {
+        
+        private final Path srcJobDirectory;
+        private final long completeTime;
+        private Path dstJobDirectory;
+        private URI workingHdfs;
+        private long start;
+        
+        private JobLoad(Path srcJobDirectory) {
+            this.srcJobDirectory = srcJobDirectory;
+            this.dstJobDirectory = srcJobDirectory;
+            this.workingHdfs = srcHdfs;
+            this.completeTime = getCompleteTime(srcJobDirectory);
+            countMetric("MapFileLoader.StartTimes", srcJobDirectory.getName(), System.currentTimeMillis());
+        }
+        
+        private Path getMapFilesDir() {
+            // the map files directory is in the destination file system once the job directory has been copied
+            return new Path(dstJobDirectory, "mapFiles");
+        }
+        
+        private void copy() throws Exception {
+            log.info("Started processing " + getMapFilesDir());
+            start = System.currentTimeMillis();
+            
+            // copy the data if needed
+            dstJobDirectory = distCpDirectory(srcJobDirectory);
+            workingHdfs = destHdfs;
+        }
+        
+        private void bringOnline() throws Exception {
+            bringMapFilesOnline(getMapFilesDir());
+        }
+        
+        private void finish() throws IOException {
+            Path mapFilesDir = getMapFilesDir();
+            
+            // ensure everything got loaded
+            verifyNothingLeftBehind(mapFilesDir);
+            
+            cleanUpJobDirectory(mapFilesDir);
+            long end = System.currentTimeMillis();
+            log.info("Finished processing " + mapFilesDir + ", duration (sec): " + ((end - start) / 1000));
+            if (completeTime > 0) {
+                countMetric("MapFileLoader.LoadLatency", srcJobDirectory.getName(), end - completeTime);
+            }
+        }
+        
+        private void fail(Throwable e) {
+            log.error("Failed to process " + getMapFilesDir(), e);
+            boolean marked = markJobDirectoryFailed(workingHdfs, dstJobDirectory);
+            if (!marked) {
+                if (fsAccessFailures.incrementAndGet() >= 3) {
+                    log.error("Too many failures updating marker files.  Exiting...");
+                    shutdown();
+                } else {
+                    log.warn("Failed to mark " + dstJobDirectory + " as failed. Sleeping in case this was a transient failure.");
+                    try {
+                        Thread.sleep(FAILURE_SLEEP_TIME);
+                    } catch (InterruptedException ie) {
+                        log.warn("Interrupted while sleeping.", ie);
+                    }
+                }
+            }
+        }
+        
+        private interface Stage {
+            void run() throws Exception;
         }
-        log.info("Bulk map file loader shutting down.");
     }
     
     protected void shutdown() {
@@ -525,7 +745,7 @@ public final class BulkIngestMapFileLoader implements Runnable {
         return (uri == null ? FileSystem.get(conf) : FileSystem.get(uri, conf));
     }
     
-    private Path distCpDirectory(Path jobDirectory) throws Exception {
+    protected Path distCpDirectory(Path jobDirectory) throws Exception {
         // if the src filesystem is not the same as our local file system, then move the files using distcp
         FileSystem src = getFileSystem(srcHdfs);
         FileSystem dest = getFileSystem(destHdfs);
@@ -632,7 +852,7 @@ public final class BulkIngestMapFileLoader implements Runnable {
      * Gets a list of job directories that are marked as completed. That is, these are job directories for which the MapReduce jobs have completed and there are
      * map files ready to be loaded.
      */
-    private Path[] getJobDirectories() throws IOException {
+    protected Path[] getJobDirectories(int maxDirectories) throws IOException {
         log.debug("Checking for completed job directories.");
         FileSystem fs = getFileSystem(srcHdfs);
         FileStatus[] files = fs.globStatus(new Path(workDir, jobDirPattern + '/' + COMPLETE_FILE_MARKER));
@@ -644,7 +864,7 @@ public final class BulkIngestMapFileLoader implements Runnable {
                 long m2 = o2.getModificationTime();
                 return order * ((m1 < m2) ? -1 : ((m1 > m2) ? 1 : 0));
             });
-            jobDirectories = new Path[Math.min(MAX_DIRECTORIES, files.length)];
+            jobDirectories = new Path[Math.min(maxDirectories, files.length)];
             for (int i = 0; i < jobDirectories.length; i++) {
                 jobDirectories[i] = files[i].getPath().getParent();
             }
@@ -822,9 +1042,17 @@ public final class BulkIngestMapFileLoader implements Runnable {
                 
                 // import the directory
                 log.info("Bringing Map Files online for " + tableName);
+                ContentSummary summary = fileSystem.getContentSummary(tableDir);
+                long start = System.currentTimeMillis();
                 tops.importDirectory(tableName, tableDir.toString(), failuresDir, false);
+                long duration = System.currentTimeMillis() - start;
                 log.info("Completed bringing map files online for " + tableName);
                 validateComplete();
+                
+                // the import rate of each table can be derived from its import times, files and bytes
+                countMetric("MapFileLoader.TableImportTimes", tableName, duration);
+                countMetric("MapFileLoader.TableImportFiles", tableName, summary.getFileCount());
+                countMetric("MapFileLoader.TableImportBytes", tableName, summary.getLength());
             } catch (Exception e) {
                 log.error("Error importing files into table " + tableName + " from directory " + mapFilesDir, e);
                 this.exception = e;
@@ -1119,10 +1347,35 @@ public final class BulkIngestMapFileLoader implements Runnable {
         }
     }
     
+    /**
+     * Adds to a counter of the metrics written out by {@link #writeStats(Path[])}, which may be called from the import and loading threads
+     */
+    private synchronized void countMetric(String group, String name, long value) {
+        reporter.getCounter(group, name).increment(value);
+    }
+    
+    /**
+     * @return the time the job of a job directory that this loader took ownership of completed, which is kept by its loading marker, or -1 if unknown
+     */
+    private long getCompleteTime(Path jobDirectory) {
+        try {
+            return getFileSystem(srcHdfs).getFileStatus(new Path(jobDirectory, LOADING_FILE_MARKER)).getModificationTime();
+        } catch (IOException e) {
+            log.warn("Unable to get the completion time of " + jobDirectory + ": " + e.getMessage());
+            return -1;
+        }
+    }
+    
     private void writeStats(Path[] jobDirectories) throws IOException {
         long now = System.currentTimeMillis();
-        for (Path p : jobDirectories)
-            reporter.getCounter("MapFileLoader.EndTimes", p.getName()).increment(now);
+        StandaloneStatusReporter reporter;
+        synchronized (this) {
+            for (Path p : jobDirectories)
+                this.reporter.getCounter("MapFileLoader.EndTimes", p.getName()).increment(now);
+            // reset reporter so that old metrics don't persist over time
+            reporter = this.reporter;
+            this.reporter = new StandaloneStatusReporter();
+        }
         // Write out the metrics.
         // We are going to serialize the counters into a file in HDFS.
         // The context was set in the processKeyValues method below, and should not be null. We'll guard against NPE anyway
@@ -1158,9 +1411,6 @@ public final class BulkIngestMapFileLoader implements Runnable {
                 // If an error occurs in the copy, then we will leave in the local metrics directory.
                 log.error("Error copying metrics file into HDFS, will remain in metrics directory.");
             }
-            
-            // reset reporter so that old metrics don't persist over time
-            this.reporter = new StandaloneStatusReporter();
         }
         
     }
@@ -734,7 +734,7 @@ public class IngestJob implements Tool {
      * @throws TableNotFoundException
      * @throws ClassNotFoundException
      */
-    private boolean configureTables(AccumuloHelper cbHelper, Configuration conf) throws AccumuloSecurityException, AccumuloException, TableNotFoundException,
+    protected boolean configureTables(AccumuloHelper cbHelper, Configuration conf) throws AccumuloSecurityException, AccumuloException, TableNotFoundException,
                     ClassNotFoundException {
         // Check to see if the tables exist
         TableOperations tops = cbHelper.getConnector().tableOperations();
@@ -749,7 +749,7 @@ public class IngestJob implements Tool {
      *            configuration file that contains data handler types and other information necessary for determining the set of tables required
      * @return true if a non-empty comma separated list of table names was properly set to conf's job table.names property
      */
-    private boolean registerTableNames(Configuration conf) {
+    protected boolean registerTableNames(Configuration conf) {
         Set<String> tables = getTables(conf);
         
         if (tables.isEmpty()) {
@@ -1006,7 +1006,7 @@ public class IngestJob implements Tool {
         }
     }
     
-    private void updateConfWithOverrides(Configuration conf) {
+    protected void updateConfWithOverrides(Configuration conf) {
         for (String[] conOverride : confOverrides) {
             conf.set(conOverride[0], conOverride[1]);
         }
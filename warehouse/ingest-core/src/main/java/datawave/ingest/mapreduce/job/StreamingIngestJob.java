@@ -0,0 +1,521 @@
+package datawave.ingest.mapreduce.job;
+
+import datawave.ingest.data.TypeRegistry;
+import datawave.ingest.data.config.ingest.AccumuloHelper;
+import datawave.ingest.mapreduce.EventMapper;
+import datawave.ingest.mapreduce.StandaloneStatusReporter;
+import datawave.ingest.mapreduce.job.writer.TableCachingContextWriter;
+import datawave.marking.MarkingFunctions;
+import datawave.util.StringUtils;
+
+import com.google.common.hash.Hashing;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.MultiTableBatchWriter;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long running alternative to the flag maker, ingest job and map file loader cycle for near real time feeds. Input files matching the input paths are
+ * ingested one at a time, oldest first, by the same input format, mapper and live context writer chain that an {@code IngestJob -outputMutations -mapOnly}
+ * job would use, and with the same configuration. The mutations are written to accumulo through a single multi table batch writer.
+ * <p>
+ * The records of each file are written in micro batches of {@code -batchRecords} records or {@code -batchLatency} milliseconds. At the end of each batch the
+ * metadata that the event mapper gathered for the batch is written, the batch writer is flushed and the number of records of the file written so far is
+ * checkpointed in the checkpoints directory under the work directory, so that after a restart a partially ingested file resumes from its last checkpoint. The
+ * batch writer blocks once {@code -batchMemory} bytes of mutations are waiting to be written, and the flushes wait for accumulo to take each batch, so the
+ * ingest slows down to the rate accumulo can sustain. Records written after the last checkpoint of a file are written again after a failure or restart, so
+ * the ingest is at least once. The checkpoint of a file is named for its path, length and modification time, so that another file of the same name is never
+ * taken for it.
+ * <p>
+ * Files that are still being written must be hidden, with a name starting with '_' or '.', until they are complete. Once a file is ingested it is moved to the
+ * loaded directory. Handlers that write outside of the context writers, and only flush what they wrote when the mapper is cleaned up, are not covered by the
+ * checkpoints before the end of a file.
+ */
+public class StreamingIngestJob extends IngestJob {
+    
+    public static final String CHECKPOINTS_DIR = "checkpoints";
+    public static final String LOADED_DIR = "loaded";
+    
+    protected int batchRecords = 1000;
+    protected long batchLatency = 5000;
+    protected long batchMemory = 50 * 1024 * 1024;
+    protected int batchWriteThreads = 4;
+    protected long pollTime = 10000;
+    protected long failureSleepTime = 60000;
+    protected String loadedDir = null;
+    
+    private volatile boolean running = true;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    protected MultiTableBatchWriter writer = null;
+    private int taskId = 0;
+    
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(null, new StreamingIngestJob(), args));
+    }
+    
+    @Override
+    protected void printUsage() {
+        super.printUsage();
+        System.out.println("Streaming options:   [-batchRecords records] [-batchLatency ms]");
+        System.out.println("                     [-batchMemory bytes] [-batchWriteThreads threads]");
+        System.out.println("                     [-pollTime ms] [-loadedDir directoryName]");
+    }
+    
+    @Override
+    protected Configuration parseArguments(String[] args, Configuration conf) throws ClassNotFoundException, URISyntaxException, IllegalArgumentException {
+        List<String> jobArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-batchRecords")) {
+                batchRecords = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-batchLatency")) {
+                batchLatency = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-batchMemory")) {
+                batchMemory = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-batchWriteThreads")) {
+                batchWriteThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-pollTime")) {
+                pollTime = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-loadedDir")) {
+                loadedDir = args[++i];
+            } else {
+                jobArgs.add(args[i]);
+            }
+        }
+        // streaming ingest always writes mutations from the map phase
+        jobArgs.add("-outputMutations");
+        jobArgs.add("-mapOnly");
+        return super.parseArguments(jobArgs.toArray(new String[jobArgs.size()]), conf);
+    }
+    
+    @Override
+    public int run(String[] args) throws Exception {
+        // Initialize the markings file helper so we get the right markings file
+        MarkingFunctions.Factory.createMarkingFunctions();
+        TypeRegistry.reset();
+        
+        // Parse the job arguments
+        Configuration conf = parseArguments(args, this.getConf());
+        if (conf == null) {
+            printUsage();
+            return -1;
+        }
+        
+        updateConfWithOverrides(conf);
+        AccumuloHelper cbHelper = new AccumuloHelper();
+        cbHelper.setup(conf);
+        
+        TypeRegistry.getInstance(conf);
+        if (TypeRegistry.getTypes().isEmpty()) {
+            log.error("No data types were configured");
+            return -1;
+        }
+        if (!registerTableNames(conf) || !configureTables(cbHelper, conf)) {
+            return -1;
+        }
+        try {
+            serializeAggregatorConfiguration(cbHelper, conf, log);
+        } catch (TableNotFoundException tnf) {
+            log.error("One or more configured DataWave tables are missing in Accumulo", tnf);
+            return -1;
+        }
+        
+        FileSystem inputFs = getFileSystem(conf, srcHdfs);
+        Path workDirPath = inputFs.makeQualified(new Path(workDir));
+        Path checkpointDir = new Path(workDirPath, CHECKPOINTS_DIR);
+        Path loadedPath = (loadedDir == null ? new Path(workDirPath, LOADED_DIR) : inputFs.makeQualified(new Path(loadedDir)));
+        if (!inputFs.mkdirs(checkpointDir) || !inputFs.mkdirs(loadedPath)) {
+            log.error("Unable to create " + checkpointDir + " and " + loadedPath);
+            return -1;
+        }
+        
+        // configure the mapper and its context writers exactly as a map only live ingest job would be
+        Job job = Job.getInstance(conf);
+        conf = job.getConfiguration();
+        configureInputFormat(job, cbHelper, conf);
+        configureJob(job, conf, workDirPath, inputFs);
+        configureStreaming(conf);
+        
+        log.info("Types: " + TypeRegistry.getTypeNames());
+        log.info("Tables: " + Arrays.toString(tableNames));
+        log.info("InputFormat: " + inputFormat.getName());
+        log.info("Mapper: " + mapper.getName());
+        log.info("Ingesting " + inputPaths + " in batches of " + batchRecords + " records or " + batchLatency + "ms");
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "streaming-ingest-shutdown"));
+        writer = createWriter(cbHelper);
+        try {
+            while (running) {
+                List<FileStatus> files = getStreamingFiles(inputFs);
+                if (files.isEmpty()) {
+                    sleep(pollTime);
+                }
+                for (FileStatus file : files) {
+                    if (!running) {
+                        break;
+                    }
+                    try {
+                        if (ingestFile(conf, inputFs, file, checkpointDir)) {
+                            markFileLoaded(inputFs, file, loadedPath, checkpointDir);
+                        }
+                    } catch (Exception e) {
+                        // retry the file from its last checkpoint on the next poll, with a new writer since a batch writer is unusable once it failed
+                        log.error("Failed to ingest " + file.getPath() + ", will retry from its last checkpoint", e);
+                        closeWriter();
+                        sleep(failureSleepTime);
+                        writer = createWriter(cbHelper);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            closeWriter();
+            stopped.countDown();
+        }
+        log.info("Streaming ingest shutting down.");
+        return 0;
+    }
+    
+    /**
+     * Stops ingesting once the current batch is written and checkpointed
+     */
+    protected void shutdown() {
+        running = false;
+        try {
+            if (!stopped.await(10, TimeUnit.MINUTES)) {
+                log.warn("Timed out waiting for the current batch to be checkpointed");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for the current batch to be checkpointed", e);
+        }
+    }
+    
+    /**
+     * Adjusts the configuration of a map only live ingest job for streaming. Checkpoints are only valid if everything the mapper wrote for the records before
+     * them has been written to accumulo, so the event mapper must process the records serially and the context writers must not hold entries across events.
+     */
+    protected void configureStreaming(Configuration conf) {
+        conf.setBoolean(EventMapper.PIPELINE_ENABLED, false);
+        List<String> cachedTables = new ArrayList<>();
+        for (Map.Entry<String,String> prop : conf) {
+            if (prop.getKey().endsWith(TableCachingContextWriter.TABLES_TO_CACHE_SUFFIX)
+                            || prop.getKey().endsWith(TableCachingContextWriter.TABLES_TO_CACHE_BYTES_SUFFIX)) {
+                cachedTables.add(prop.getKey());
+            }
+        }
+        for (String cachedTable : cachedTables) {
+            log.info("Ignoring " + cachedTable + " since cached tables are only written at the end of a file");
+            conf.unset(cachedTable);
+        }
+    }
+    
+    private MultiTableBatchWriter createWriter(AccumuloHelper cbHelper) throws AccumuloSecurityException, AccumuloException {
+        BatchWriterConfig config = new BatchWriterConfig().setMaxMemory(batchMemory).setMaxLatency(batchLatency, TimeUnit.MILLISECONDS)
+                        .setMaxWriteThreads(batchWriteThreads);
+        return cbHelper.getConnector().createMultiTableBatchWriter(config);
+    }
+    
+    private void closeWriter() {
+        if (null != writer) {
+            try {
+                writer.close();
+            } catch (AccumuloException e) {
+                log.error("Unable to close the batch writer", e);
+            }
+            writer = null;
+        }
+    }
+    
+    /**
+     * @return the files to ingest, oldest first
+     */
+    protected List<FileStatus> getStreamingFiles(FileSystem fs) throws IOException {
+        List<FileStatus> files = new ArrayList<>();
+        for (String inputPath : StringUtils.trimAndRemoveEmptyStrings(StringUtils.split(inputPaths, ','))) {
+            FileStatus[] statuses = fs.globStatus(new Path(inputPath));
+            if (null != statuses) {
+                for (FileStatus status : statuses) {
+                    String name = status.getPath().getName();
+                    if (status.isFile() && !name.startsWith("_") && !name.startsWith(".")) {
+                        files.add(status);
+                    }
+                }
+            }
+        }
+        files.sort((f1, f2) -> Long.compare(f1.getModificationTime(), f2.getModificationTime()));
+        return files;
+    }
+    
+    /**
+     * Runs the mapper over a file as a map task would, resuming from the checkpoint of the file if any.
+     * 
+     * @return true if the whole file was ingested, or false if ingest was stopped before the end of the file
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected boolean ingestFile(Configuration conf, FileSystem fs, FileStatus file, Path checkpointDir) throws Exception {
+        Path checkpoint = new Path(checkpointDir, getCheckpointName(file));
+        long committed = readCheckpoint(fs, checkpoint);
+        log.info("Started ingesting " + file.getPath() + (committed > 0 ? " from record " + committed : ""));
+        long start = System.currentTimeMillis();
+        
+        TaskAttemptID id = new TaskAttemptID(getClass().getSimpleName(), 0, TaskType.MAP, taskId++, 0);
+        TaskAttemptContext taskContext = new TaskAttemptContextImpl(conf, id);
+        FileSplit split = new FileSplit(file.getPath(), 0, file.getLen(), null);
+        InputFormat format = ReflectionUtils.newInstance(inputFormat, conf);
+        CheckpointingRecordReader reader = new CheckpointingRecordReader(format.createRecordReader(split, taskContext), fs, checkpoint, committed);
+        try {
+            reader.initialize(split, taskContext);
+            MapContext mapContext = new MapContextImpl(conf, id, reader, new BatchRecordWriter(), null, new StandaloneStatusReporter(), split);
+            Mapper.Context context = new WrappedMapper().getMapContext(mapContext);
+            Mapper fileMapper = ReflectionUtils.newInstance(mapper, conf);
+            if (fileMapper instanceof EventMapper) {
+                reader.setMetadataFlusher(() -> ((EventMapper) fileMapper).flushMetadata(context));
+            }
+            fileMapper.run(context);
+            
+            // the mapper flushes its context writers when cleaned up, so the last batch is only complete now
+            reader.checkpoint();
+        } finally {
+            reader.close();
+        }
+        log.info((reader.isComplete() ? "Finished" : "Stopped") + " ingesting " + reader.getRecords() + " records of " + file.getPath() + ", duration (sec): "
+                        + ((System.currentTimeMillis() - start) / 1000));
+        return reader.isComplete();
+    }
+    
+    /**
+     * Drops the checkpoint of an ingested file, and then moves the file to the loaded directory. If the process dies between the two, the file is ingested
+     * again from the start rather than a later file being taken for it. A file whose name is already in the loaded directory is moved under the name of its
+     * checkpoint.
+     */
+    protected void markFileLoaded(FileSystem fs, FileStatus file, Path loadedPath, Path checkpointDir) throws IOException {
+        Path checkpoint = new Path(checkpointDir, getCheckpointName(file));
+        if (fs.exists(checkpoint) && !fs.delete(checkpoint, false)) {
+            throw new IOException("Unable to delete " + checkpoint);
+        }
+        Path dst = new Path(loadedPath, file.getPath().getName());
+        if (fs.exists(dst)) {
+            dst = new Path(loadedPath, getCheckpointName(file));
+        }
+        if (!fs.rename(file.getPath(), dst)) {
+            throw new IOException("Unable to rename " + file.getPath() + " to " + dst);
+        }
+    }
+    
+    /**
+     * @return the name of the checkpoint of a file, which is the name of the file followed by a hash of its full path, length and modification time
+     */
+    protected String getCheckpointName(FileStatus file) {
+        String id = file.getPath().toUri().getPath() + '\0' + file.getLen() + '\0' + file.getModificationTime();
+        return file.getPath().getName() + '.' + Hashing.murmur3_128().hashString(id, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @return the number of records of a file that were written, or 0 if the file has no checkpoint
+     */
+    protected long readCheckpoint(FileSystem fs, Path checkpoint) throws IOException {
+        if (!fs.exists(checkpoint)) {
+            return 0;
+        }
+        try (BufferedReader rdr = new BufferedReader(new InputStreamReader(fs.open(checkpoint), StandardCharsets.UTF_8))) {
+            String line = rdr.readLine();
+            return (null == line ? 0 : Long.parseLong(line.trim()));
+        }
+    }
+    
+    /**
+     * Writes a checkpoint to a temporary file which is then renamed over the previous checkpoint. If the process dies between the delete and the rename, the
+     * file is ingested again from the start, which at worst writes its records twice.
+     */
+    protected void writeCheckpoint(FileSystem fs, Path checkpoint, long records) throws IOException {
+        Path tmp = new Path(checkpoint.getParent(), '.' + checkpoint.getName() + ".tmp");
+        try (FSDataOutputStream out = fs.create(tmp, true)) {
+            out.write((records + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        fs.delete(checkpoint, false);
+        if (!fs.rename(tmp, checkpoint)) {
+            throw new IOException("Unable to rename " + tmp + " to " + checkpoint);
+        }
+    }
+    
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while sleeping.", e);
+        }
+    }
+    
+    /**
+     * Writes the mutations of the mapper to the shared batch writer. Adding a mutation blocks while the batch writer is full, which holds the mapper back
+     * until accumulo catches up.
+     */
+    private class BatchRecordWriter extends RecordWriter<Text,Mutation> {
+        
+        @Override
+        public void write(Text table, Mutation mutation) throws IOException {
+            try {
+                writer.getBatchWriter(table.toString()).addMutation(mutation);
+            } catch (AccumuloException | AccumuloSecurityException | TableNotFoundException e) {
+                throw new IOException("Unable to write a mutation to " + table, e);
+            }
+        }
+        
+        @Override
+        public void close(TaskAttemptContext context) {
+            // the batch writer is shared by all of the files
+        }
+    }
+    
+    /**
+     * Writes the metadata gathered by the mapper for the records mapped so far
+     */
+    private interface MetadataFlusher {
+        void flush() throws IOException, InterruptedException;
+    }
+    
+    /**
+     * Wraps the record reader of a file to divide its records into batches. Skips the records up to the checkpoint of the file, and when the mapper asks for
+     * the record after a full batch, all of the records of the batch have been mapped, so their metadata is written, the batch writer is flushed and the batch
+     * is checkpointed.
+     */
+    private class CheckpointingRecordReader<K,V> extends RecordReader<K,V> {
+        
+        private final RecordReader<K,V> delegate;
+        private final FileSystem fs;
+        private final Path checkpoint;
+        private long committed;
+        private long records = 0;
+        private long batchStart = System.currentTimeMillis();
+        private boolean complete = false;
+        private MetadataFlusher metadataFlusher = null;
+        
+        private CheckpointingRecordReader(RecordReader<K,V> delegate, FileSystem fs, Path checkpoint, long committed) {
+            this.delegate = delegate;
+            this.fs = fs;
+            this.checkpoint = checkpoint;
+            this.committed = committed;
+        }
+        
+        private void setMetadataFlusher(MetadataFlusher metadataFlusher) {
+            this.metadataFlusher = metadataFlusher;
+        }
+        
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            delegate.initialize(split, context);
+        }
+        
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            // skip the records written before the last checkpoint
+            while (records < committed) {
+                if (!delegate.nextKeyValue()) {
+                    complete = true;
+                    return false;
+                }
+                records++;
+            }
+            if (records - committed >= batchRecords || (records > committed && System.currentTimeMillis() - batchStart >= batchLatency)) {
+                if (null != metadataFlusher) {
+                    metadataFlusher.flush();
+                }
+                checkpoint();
+            }
+            if (!running) {
+                return false;
+            }
+            if (delegate.nextKeyValue()) {
+                records++;
+                return true;
+            }
+            complete = true;
+            return false;
+        }
+        
+        /**
+         * Flushes the records mapped so far to accumulo and checkpoints them. Their metadata must have been written to the context writers first.
+         */
+        private void checkpoint() throws IOException {
+            if (records > committed) {
+                long flushStart = System.currentTimeMillis();
+                try {
+                    writer.flush();
+                } catch (AccumuloException e) {
+                    throw new IOException("Unable to write the batch of " + checkpoint.getName() + " ending at record " + records, e);
+                }
+                long flushTime = System.currentTimeMillis() - flushStart;
+                if (flushTime > batchLatency) {
+                    log.info("Writing a batch of " + (records - committed) + " records of " + checkpoint.getName() + " took " + flushTime + "ms");
+                }
+                writeCheckpoint(fs, checkpoint, records);
+                committed = records;
+            }
+            batchStart = System.currentTimeMillis();
+        }
+        
+        private long getRecords() {
+            return records;
+        }
+        
+        private boolean isComplete() {
+            return complete;
+        }
+        
+        @Override
+        public K getCurrentKey() throws IOException, InterruptedException {
+            return delegate.getCurrentKey();
+        }
+        
+        @Override
+        public V getCurrentValue() throws IOException, InterruptedException {
+            return delegate.getCurrentValue();
+        }
+        
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return delegate.getProgress();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package datawave.ingest.mapreduce.job.writer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import datawave.ingest.mapreduce.job.BulkIngestKey;
+
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.QuickSort;
+
+/**
+ * A buffer of entries that are kept serialized in large arenas rather than as objects on the heap. Each entry is written to the current arena as the lengths
+ * of its key and value followed by their bytes, and is referenced by a single long holding the arena and the offset of the entry. Like the map output buffer
+ * of a hadoop task, the references are sorted by the bytes of their keys when the buffer is flushed, so that the values of equal keys can be combined before
+ * they are written out.
+ */
+public class SerializedKeyValueBuffer {
+    
+    // the size of the arenas, which are only larger when a single entry does not fit in one
+    public static final int DEFAULT_ARENA_SIZE = 4 * 1024 * 1024;
+    
+    // the bytes taken by each entry beyond its key and value: the two lengths and the reference
+    private static final int ENTRY_OVERHEAD = 16;
+    
+    /**
+     * Receives the values of each key when the buffer is flushed
+     */
+    public interface EntryVisitor {
+        void visit(BulkIngestKey key, List<Value> values) throws IOException, InterruptedException;
+    }
+    
+    private final int arenaSize;
+    private final boolean offHeap;
+    
+    // the arenas are kept across flushes so that they are only allocated once
+    private final List<ByteBuffer> arenas = new ArrayList<>();
+    private int currentArena = -1;
+    
+    // the arena of an entry in the upper 32 bits, and its offset in the arena in the lower 32 bits
+    private long[] entries = new long[1024];
+    private int numEntries = 0;
+    private long sizeInBytes = 0;
+    
+    private final DataOutputBuffer out = new DataOutputBuffer();
+    
+    /**
+     * @param arenaSize
+     *            the size of the arenas to allocate
+     * @param offHeap
+     *            whether to allocate the arenas as direct buffers outside of the heap
+     */
+    public SerializedKeyValueBuffer(int arenaSize, boolean offHeap) {
+        if (arenaSize <= 0) {
+            throw new IllegalArgumentException("The arena size must be positive: " + arenaSize);
+        }
+        this.arenaSize = arenaSize;
+        this.offHeap = offHeap;
+    }
+    
+    public void add(BulkIngestKey key, Value value) throws IOException {
+        out.reset();
+        key.write(out);
+        int keyLength = out.getLength();
+        byte[] valueBytes = value.get();
+        int entryLength = 8 + keyLength + valueBytes.length;
+        
+        ByteBuffer arena = (currentArena < 0 ? null : arenas.get(currentArena));
+        if (null == arena || arena.remaining() < entryLength) {
+            arena = nextArena(entryLength);
+        }
+        int offset = arena.position();
+        arena.putInt(keyLength);
+        arena.putInt(valueBytes.length);
+        arena.put(out.getData(), 0, keyLength);
+        arena.put(valueBytes);
+        
+        if (numEntries == entries.length) {
+            entries = Arrays.copyOf(entries, numEntries * 2);
+        }
+        entries[numEntries++] = ((long) currentArena << 32) | offset;
+        sizeInBytes += ENTRY_OVERHEAD + keyLength + valueBytes.length;
+    }
+    
+    private ByteBuffer nextArena(int entryLength) {
+        currentArena++;
+        if (currentArena < arenas.size() && arenas.get(currentArena).capacity() >= entryLength) {
+            ByteBuffer arena = arenas.get(currentArena);
+            arena.clear();
+            return arena;
+        }
+        int capacity = Math.max(arenaSize, entryLength);
+        ByteBuffer arena = (offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity));
+        // the arenas past the current one are unused until the buffer is cleared, so the new arena can take the place of one of them
+        if (currentArena < arenas.size()) {
+            arenas.set(currentArena, arena);
+        } else {
+            arenas.add(arena);
+        }
+        return arena;
+    }
+    
+    /**
+     * @return the number of entries in the buffer
+     */
+    public int size() {
+        return numEntries;
+    }
+    
+    public boolean isEmpty() {
+        return numEntries == 0;
+    }
+    
+    /**
+     * @return the bytes taken by the entries in the buffer, which does not include the unused space of the arenas
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+    
+    /**
+     * @return the bytes allocated for the arenas
+     */
+    public long getCapacity() {
+        long capacity = 0;
+        for (ByteBuffer arena : arenas) {
+            capacity += arena.capacity();
+        }
+        return capacity;
+    }
+    
+    /**
+     * Sorts the entries and passes the values of each distinct key to the visitor, in the order of the serialized keys, then clears the buffer.
+     * 
+     * @param visitor
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void flush(EntryVisitor visitor) throws IOException, InterruptedException {
+        new QuickSort().sort(new IndexedSortable() {
+            @Override
+            public int compare(int i, int j) {
+                return compareKeys(entries[i], entries[j]);
+            }
+            
+            @Override
+            public void swap(int i, int j) {
+                long entry = entries[i];
+                entries[i] = entries[j];
+                entries[j] = entry;
+            }
+        }, 0, numEntries);
+        
+        DataInputBuffer in = new DataInputBuffer();
+        int start = 0;
+        while (start < numEntries) {
+            int end = start + 1;
+            while (end < numEntries && compareKeys(entries[start], entries[end]) == 0) {
+                end++;
+            }
+            
+            BulkIngestKey key = new BulkIngestKey();
+            byte[] keyBytes = readKey(entries[start]);
+            in.reset(keyBytes, keyBytes.length);
+            key.readFields(in);
+            
+            List<Value> values = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                values.add(new Value(readValue(entries[i]), false));
+            }
+            visitor.visit(key, values);
+            start = end;
+        }
+        clear();
+    }
+    
+    /**
+     * Drops the entries in the buffer, keeping the arenas for reuse
+     */
+    public void clear() {
+        numEntries = 0;
+        sizeInBytes = 0;
+        currentArena = -1;
+    }
+    
+    /**
+     * Compares the serialized keys of two entries as unsigned bytes. Equal keys serialize to the same bytes, so this is all that is needed to group them.
+     */
+    private int compareKeys(long entry1, long entry2) {
+        ByteBuffer arena1 = arenas.get((int) (entry1 >>> 32));
+        ByteBuffer arena2 = arenas.get((int) (entry2 >>> 32));
+        int offset1 = (int) entry1;
+        int offset2 = (int) entry2;
+        int length1 = arena1.getInt(offset1);
+        int length2 = arena2.getInt(offset2);
+        offset1 += 8;
+        offset2 += 8;
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            int diff = (arena1.get(offset1 + i) & 0xff) - (arena2.get(offset2 + i) & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length1 - length2;
+    }
+    
+    private byte[] readKey(long entry) {
+        ByteBuffer arena = arenas.get((int) (entry >>> 32));
+        int offset = (int) entry;
+        return read(arena, offset + 8, arena.getInt(offset));
+    }
+    
+    private byte[] readValue(long entry) {
+        ByteBuffer arena = arenas.get((int) (entry >>> 32));
+        int offset = (int) entry;
+        int keyLength = arena.getInt(offset);
+        return read(arena, offset + 8 + keyLength, arena.getInt(offset + 4));
+    }
+    
+    private static byte[] read(ByteBuffer arena, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = arena.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+}
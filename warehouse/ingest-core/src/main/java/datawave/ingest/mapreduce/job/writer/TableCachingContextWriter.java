@@ -21,6 +21,10 @@ import org.apache.hadoop.mapreduce.TaskInputOutputContext;
  * aggregated as the entries are received. This cache will cache values across calls to commit, which means that entries are aggregated across events (see
  * EventMapper contextWriter commit calls).
  * 
+ * A table can instead be cached up to a number of bytes, in which case its entries are kept serialized in large arenas (off of the heap by default) rather
+ * than as objects. That cache is sorted and aggregated when it is flushed, in the way that the map output buffer of a hadoop task is sorted and combined when
+ * it spills.
+ * 
  */
 public class TableCachingContextWriter extends AbstractContextWriter<BulkIngestKey,Value> implements ChainedContextWriter<BulkIngestKey,Value> {
     
@@ -41,9 +45,25 @@ public class TableCachingContextWriter extends AbstractContextWriter<BulkIngestK
     // entries
     public static final String TABLES_TO_CACHE_SUFFIX = ".table.context.writer.cache";
     
+    // alternatively the tables to cache can be configured by setting a <tablename>.table.context.writer.cache.bytes property where the value is the max size
+    // of the cache in bytes. These tables are cached in serialized form, and only aggregated when the cache is flushed.
+    public static final String TABLES_TO_CACHE_BYTES_SUFFIX = ".table.context.writer.cache.bytes";
+    
+    // whether the serialized caches are allocated outside of the heap
+    public static final String OFF_HEAP_CACHE = "ingest.table.caching.context.writer.offheap";
+    
+    // the size of the arenas that the serialized caches are allocated in
+    public static final String CACHE_ARENA_SIZE = "ingest.table.caching.context.writer.arena.size";
+    
     // This is the cache
     private final Map<Text,Multimap<BulkIngestKey,Value>> aggregatedCache = new HashMap<>();
     
+    // This is the serialized cache configuration and the caches
+    private final Map<Text,Long> tableBufferConf = new HashMap<>();
+    private final Map<Text,SerializedKeyValueBuffer> bufferedCache = new HashMap<>();
+    private boolean offHeap = true;
+    private int arenaSize = SerializedKeyValueBuffer.DEFAULT_ARENA_SIZE;
+    
     // This is the combiner used to aggregate values
     private CachingContextWriter combinerCache = new CachingContextWriter();
     private BulkIngestKeyDedupeCombiner<BulkIngestKey,Value> combiner = new BulkIngestKeyDedupeCombiner<BulkIngestKey,Value>() {
@@ -70,12 +90,18 @@ public class TableCachingContextWriter extends AbstractContextWriter<BulkIngestK
         
         // get the tables to cache configuration
         for (Map.Entry<String,String> prop : conf) {
-            if (prop.getKey().endsWith(TABLES_TO_CACHE_SUFFIX)) {
+            if (prop.getKey().endsWith(TABLES_TO_CACHE_BYTES_SUFFIX)) {
+                String tableName = prop.getKey().substring(0, prop.getKey().length() - TABLES_TO_CACHE_BYTES_SUFFIX.length());
+                long maxCacheBytes = Long.parseLong(prop.getValue());
+                tableBufferConf.put(new Text(tableName), maxCacheBytes);
+            } else if (prop.getKey().endsWith(TABLES_TO_CACHE_SUFFIX)) {
                 String tableName = prop.getKey().substring(0, prop.getKey().length() - TABLES_TO_CACHE_SUFFIX.length());
                 int maxCacheSize = Integer.parseInt(prop.getValue());
                 tableCacheConf.put(new Text(tableName), maxCacheSize);
             }
         }
+        offHeap = conf.getBoolean(OFF_HEAP_CACHE, true);
+        arenaSize = conf.getInt(CACHE_ARENA_SIZE, SerializedKeyValueBuffer.DEFAULT_ARENA_SIZE);
         
         // create and setup the chained context writer
         Class<ContextWriter<BulkIngestKey,Value>> contextWriterClass = null;
@@ -105,7 +131,9 @@ public class TableCachingContextWriter extends AbstractContextWriter<BulkIngestK
         Multimap<BulkIngestKey,Value> residual = HashMultimap.create();
         for (BulkIngestKey key : entries.keySet()) {
             Collection<Value> values = entries.get(key);
-            if (tableCacheConf.containsKey(key.getTableName())) {
+            if (tableBufferConf.containsKey(key.getTableName())) {
+                buffer(key, values, context);
+            } else if (tableCacheConf.containsKey(key.getTableName())) {
                 cache(key, values, context);
             } else {
                 residual.putAll(key, values);
@@ -139,6 +167,12 @@ public class TableCachingContextWriter extends AbstractContextWriter<BulkIngestK
             }
         }
         aggregatedCache.clear();
+        
+        for (Map.Entry<Text,SerializedKeyValueBuffer> buffer : bufferedCache.entrySet()) {
+            if (!buffer.getValue().isEmpty()) {
+                flushBuffer(buffer.getKey(), buffer.getValue(), context);
+            }
+        }
     }
     
     private void cache(BulkIngestKey key, Collection<Value> values, TaskInputOutputContext<?,?,BulkIngestKey,Value> context) throws IOException,
@@ -171,6 +205,50 @@ public class TableCachingContextWriter extends AbstractContextWriter<BulkIngestK
         }
     }
     
+    private void buffer(BulkIngestKey key, Collection<Value> values, TaskInputOutputContext<?,?,BulkIngestKey,Value> context) throws IOException,
+                    InterruptedException {
+        Text tableName = key.getTableName();
+        long maxCacheBytes = tableBufferConf.get(tableName);
+        SerializedKeyValueBuffer buffer = bufferedCache.get(tableName);
+        if (buffer == null) {
+            // no need for arenas larger than the cache itself
+            buffer = new SerializedKeyValueBuffer((int) Math.max(1, Math.min(arenaSize, maxCacheBytes)), offHeap);
+            bufferedCache.put(tableName, buffer);
+        }
+        for (Value value : values) {
+            buffer.add(key, value);
+        }
+        
+        // now flush this tables cache if needed
+        if (buffer.getSizeInBytes() >= maxCacheBytes) {
+            flushBuffer(tableName, buffer, context);
+        }
+    }
+    
+    /**
+     * Sort the serialized cache of a table, reducing the values of each key, and pass the reduced entries through the delegate.
+     * 
+     * @param tableName
+     * @param buffer
+     * @param context
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void flushBuffer(Text tableName, SerializedKeyValueBuffer buffer, TaskInputOutputContext<?,?,BulkIngestKey,Value> context) throws IOException,
+                    InterruptedException {
+        final long[] flushed = new long[1];
+        buffer.flush((key, values) -> {
+            Collection<Value> reduced = (values.size() > 1 ? reduceValues(key, values, context) : values);
+            for (Value value : reduced) {
+                contextWriter.write(key, value, context);
+            }
+            flushed[0] += reduced.size();
+        });
+        // register that we overran the cache for this table
+        getCounter(context, FLUSHED_BUFFER_TOTAL, tableName.toString()).increment(flushed[0]);
+        getCounter(context, FLUSHED_BUFFER_COUNTER, tableName.toString()).increment(1);
+    }
+    
     /**
      * Reduce the list of values for a key.
      * 
@@ -1,32 +1,54 @@
 package datawave.ingest.table.aggregator;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.apache.log4j.Logger;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 
-import datawave.ingest.protobuf.Uid;
-
 /**
  * Implementation of an Aggregator that aggregates objects of the type Uid.List. This is an optimization for the shardIndex and shardReverseIndex, where the
  * list of UIDs for events will be maintained in the global index for low cardinality terms.
  * 
- * 
+ * The Uid.List values are read and written at the level of the protobuf wire format. The UIDs are kept as sorted arrays of their bytes, so no String is
+ * created for a UID and no protobuf message or builder is created for a value.
  * 
  */
 public class GlobalIndexUidAggregator extends PropogatingCombiner {
     private static final Logger log = Logger.getLogger(GlobalIndexUidAggregator.class);
-    private Uid.List.Builder builder = Uid.List.newBuilder();
+    
+    /**
+     * The field numbers of Uid.List
+     */
+    private static final int IGNORE_FIELD = 1;
+    private static final int COUNT_FIELD = 2;
+    private static final int UID_FIELD = 3;
+    private static final int REMOVEDUID_FIELD = 4;
+    private static final int QUARANTINEUID_FIELD = 5;
+    
+    /**
+     * The tags of the fields of Uid.List, which are the field number shifted left three bits plus the wire type: 0 for a varint, 2 for bytes.
+     */
+    private static final int IGNORE_TAG = IGNORE_FIELD << 3;
+    private static final int COUNT_TAG = COUNT_FIELD << 3;
+    private static final int UID_TAG = (UID_FIELD << 3) | 2;
+    private static final int REMOVEDUID_TAG = (REMOVEDUID_FIELD << 3) | 2;
+    private static final int QUARANTINEUID_TAG = (QUARANTINEUID_FIELD << 3) | 2;
     
     /**
      * Using a set instead of a list so that duplicate UIDs are filtered out of the list. This might happen in the case of rows with masked fields that share a
      * UID.
      */
-    private HashSet<String> uids = new HashSet<>();
+    private UidSet uids = new UidSet();
     
     public GlobalIndexUidAggregator(int max) {
         this.maxUids = max;
@@ -39,17 +61,17 @@ public class GlobalIndexUidAggregator extends PropogatingCombiner {
     /**
      * List of UIDs to remove.
      */
-    private HashSet<String> uidsToRemove = new HashSet<>();
+    private UidSet uidsToRemove = new UidSet();
     
     /**
-     * List of UIDs to remove.
+     * List of UIDs that are quarantined.
      */
-    private HashSet<String> quarantinedIds = new HashSet<>();
+    private UidSet quarantinedIds = new UidSet();
     
     /**
-     * List of UIDs to remove.
+     * List of UIDs released from quarantine.
      */
-    private HashSet<String> releasedUids = new HashSet<>();
+    private UidSet releasedUids = new UidSet();
     
     /**
      * flag for whether or not we have seen ignore
@@ -72,25 +94,24 @@ public class GlobalIndexUidAggregator extends PropogatingCombiner {
     private long count = 0;
     
     /**
-     * temporary set for removals.
+     * The fields of the value being collected, reused across values.
      */
-    protected HashSet<String> tempSet;
+    private boolean valueIgnore;
+    private long valueCount;
+    private final List<ByteString> valueUids = new ArrayList<>();
+    private final List<ByteString> valueRemovedUids = new ArrayList<>();
+    private final List<ByteString> valueQuarantinedUids = new ArrayList<>();
     
     public Value aggregate() {
         
         // as a backup, we remove the intersection of the UID sets
         
-        builder.setCOUNT(count);
-        
-        if (seenIgnore || count > maxUids) {
-            builder.setIGNORE(true);
-            builder.clearUID();
+        boolean ignore = seenIgnore || count > maxUids;
+        if (ignore) {
             // if we catch seenIgnore, then there is
             // no need to propogate removals.
             propogate = false;
         } else {
-            builder.setIGNORE(false);
-            
             uidsToRemove.removeAll(quarantinedIds);
             uidsToRemove.removeAll(releasedUids);
             quarantinedIds.removeAll(releasedUids);
@@ -103,25 +124,92 @@ public class GlobalIndexUidAggregator extends PropogatingCombiner {
                     log.debug("Adding released UIDS");
                 uids.addAll(releasedUids);
             }
-            
-            builder.addAllUID(uids);
         }
         
         if (log.isDebugEnabled())
             log.debug("Propogating: " + propogate);
         
-        // clear all removals
-        builder.clearREMOVEDUID();
-        
+        // the fields are written in the order of their field numbers, as a protobuf builder would write them
+        int size = CodedOutputStream.computeBoolSize(IGNORE_FIELD, ignore) + CodedOutputStream.computeUInt64Size(COUNT_FIELD, count);
+        if (!ignore) {
+            size += uids.computeSize(UID_FIELD);
+        }
         if (propogate) {
-            
-            builder.addAllREMOVEDUID(uidsToRemove);
-            builder.addAllQUARANTINEUID(quarantinedIds);
+            size += uidsToRemove.computeSize(REMOVEDUID_FIELD) + quarantinedIds.computeSize(QUARANTINEUID_FIELD);
         }
+        
+        byte[] bytes = new byte[size];
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        try {
+            out.writeBool(IGNORE_FIELD, ignore);
+            out.writeUInt64(COUNT_FIELD, count);
+            if (!ignore) {
+                uids.write(out, UID_FIELD);
+            }
+            if (propogate) {
+                uidsToRemove.write(out, REMOVEDUID_FIELD);
+                quarantinedIds.write(out, QUARANTINEUID_FIELD);
+            }
+            out.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write the aggregated Uid.List", e);
+        }
+        
         if (log.isDebugEnabled())
-            log.debug("Building aggregate. Count is " + count + ", uids.size() is " + uids.size() + ". builder size is " + builder.getUIDList().size());
-        return new Value(builder.build().toByteArray());
+            log.debug("Building aggregate. Count is " + count + ", uids.size() is " + uids.size() + ". ignore is " + ignore);
+        return new Value(bytes, false);
+        
+    }
+    
+    /**
+     * Reads the fields of a serialized Uid.List into the value fields.
+     * 
+     * @param bytes
+     * @throws IOException
+     *             if the bytes are not a Uid.List
+     */
+    private void parse(byte[] bytes) throws IOException {
+        valueUids.clear();
+        valueRemovedUids.clear();
+        valueQuarantinedUids.clear();
+        boolean hasIgnore = false;
+        boolean hasCount = false;
+        
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        boolean done = false;
+        while (!done) {
+            int tag = in.readTag();
+            switch (tag) {
+                case 0:
+                    done = true;
+                    break;
+                case IGNORE_TAG:
+                    valueIgnore = in.readBool();
+                    hasIgnore = true;
+                    break;
+                case COUNT_TAG:
+                    valueCount = in.readUInt64();
+                    hasCount = true;
+                    break;
+                case UID_TAG:
+                    valueUids.add(in.readBytes());
+                    break;
+                case REMOVEDUID_TAG:
+                    valueRemovedUids.add(in.readBytes());
+                    break;
+                case QUARANTINEUID_TAG:
+                    valueQuarantinedUids.add(in.readBytes());
+                    break;
+                default:
+                    // skip unknown fields, as a parsed message would
+                    done = !in.skipField(tag);
+                    break;
+            }
+        }
         
+        if (!hasIgnore || !hasCount) {
+            throw new InvalidProtocolBufferException("Message missing required fields: " + (hasIgnore ? "COUNT" : "IGNORE"));
+        }
     }
     
     /**
@@ -145,83 +233,77 @@ public class GlobalIndexUidAggregator extends PropogatingCombiner {
             
             // Collect the values, which are serialized Uid.List objects
             try {
-                Uid.List v = Uid.List.parseFrom(value.get());
-                
-                long delta = v.getCOUNT();
-                
-                count += delta;
-                /**
-                 * Fail fast approach.
-                 */
-                if (v.getIGNORE()) {
-                    seenIgnore = true;
-                    if (log.isDebugEnabled())
-                        log.debug("SeenIgnore is true. Skipping collections");
+                parse(value.get());
+            } catch (IOException e) {
+                if (key.isDeleted()) {
+                    log.warn("Value passed to aggregator for a delete key was not of type Uid.List");
+                } else {
+                    log.error("Value passed to aggregator was not of type Uid.List", e);
                 }
+                continue;
+            }
+            
+            long delta = valueCount;
+            
+            count += delta;
+            /**
+             * Fail fast approach.
+             */
+            if (valueIgnore) {
+                seenIgnore = true;
+                if (log.isDebugEnabled())
+                    log.debug("SeenIgnore is true. Skipping collections");
+            }
+            
+            // if delta > 0, we are collecting the uid list
+            // in the protobuf into our object's uid list.
+            if (delta > 0) {
                 
-                // if delta > 0, we are collecting the uid list
-                // in the protobuf into our object's uid list.
-                if (delta > 0) {
+                for (ByteString uid : valueQuarantinedUids) {
                     
-                    for (String uid : v.getQUARANTINEUIDList()) {
-                        
-                        quarantinedIds.remove(uid);
-                        releasedUids.add(uid);
-                    }
+                    quarantinedIds.remove(uid);
+                    releasedUids.add(uid);
+                }
+                
+                for (ByteString uid : valueUids) {
                     
-                    for (String uid : v.getUIDList()) {
+                    // check that a removal has not occurred
+                    // if it has, we decrement the count, from above.
+                    if (!uidsToRemove.contains(uid) && !quarantinedIds.contains(uid)) {
                         
-                        // check that a removal has not occurred
-                        // if it has, we decrement the count, from above.
-                        if (!uidsToRemove.contains(uid) && !quarantinedIds.contains(uid)) {
-                            
-                            // add the UID iff we are under our MAX
-                            if (uids.size() < maxUids)
-                                uids.add(uid);
-                            
-                        }
+                        // add the UID iff we are under our MAX
+                        if (uids.size() < maxUids)
+                            uids.add(uid);
                         
                     }
                     
-                    if (log.isDebugEnabled())
-                        log.debug("Adding uids " + delta + " " + count);
-                    
-                    // if our delta is < 0, then we can remove, iff seenIgnore is false. If it is true, there is no need to proceed with removals
-                } else if (delta < 0 && !seenIgnore) {
-                    
-                    // so that we can perform the decrement
-                    for (String uid : v.getREMOVEDUIDList()) {
-                        
-                        uidsToRemove.add(uid);
-                        
-                        if (uids.contains(uid)) {
-                            
-                            uids.remove(uid);
-                        }
-                        
-                    }
+                }
+                
+                if (log.isDebugEnabled())
+                    log.debug("Adding uids " + delta + " " + count);
+                
+                // if our delta is < 0, then we can remove, iff seenIgnore is false. If it is true, there is no need to proceed with removals
+            } else if (delta < 0 && !seenIgnore) {
+                
+                // so that we can perform the decrement
+                for (ByteString uid : valueRemovedUids) {
                     
-                    quarantinedIds.addAll(v.getQUARANTINEUIDList());
+                    uidsToRemove.add(uid);
+                    uids.remove(uid);
                     
-                    /**
-                     * This is added for backwards compatability. The removal list was added to ensure that removals are propogated across compactions. In the
-                     * case where compactions did not occur, and the indices are converted into the newer protobuff, we must use the UID list to maintain
-                     * removals for deltas less than 0
-                     */
-                    for (String uid : v.getUIDList()) {
-                        // add to uidsToRemove, and decrement count if the uid is in UIDS
-                        uidsToRemove.add(uid);
-                        if (uids.contains(uid)) {
-                            uids.remove(uid);
-                        }
-                    }
                 }
                 
-            } catch (InvalidProtocolBufferException e) {
-                if (key.isDeleted()) {
-                    log.warn("Value passed to aggregator for a delete key was not of type Uid.List");
-                } else {
-                    log.error("Value passed to aggregator was not of type Uid.List", e);
+                quarantinedIds.addAll(valueQuarantinedUids);
+                
+                /**
+                 * This is added for backwards compatability. The removal list was added to ensure that removals are propogated across compactions. In the case
+                 * where compactions did not occur, and the indices are converted into the newer protobuff, we must use the UID list to maintain removals for
+                 * deltas less than 0
+                 */
+                for (ByteString uid : valueUids) {
+                    // add to uidsToRemove, and decrement count if the uid is in UIDS
+                    uidsToRemove.add(uid);
+                    uids.remove(uid);
                 }
             }
         }
@@ -233,7 +315,6 @@ public class GlobalIndexUidAggregator extends PropogatingCombiner {
             log.debug("Resetting GlobalIndexUidAggregator");
         count = 0;
         seenIgnore = false;
-        builder = Uid.List.newBuilder();
         uids.clear();
         uidsToRemove.clear();
         releasedUids.clear();
@@ -254,18 +335,186 @@ public class GlobalIndexUidAggregator extends PropogatingCombiner {
         if ((seenIgnore && count > maxUids) || !quarantinedIds.isEmpty())
             return true;
         
-        HashSet<String> uidsCopy = new HashSet<>(uids);
-        uidsCopy.removeAll(uidsToRemove);
+        // the number of uids that have not been removed
+        int remaining = 0;
+        for (int i = 0; i < uids.size(); i++) {
+            if (!uidsToRemove.contains(uids.get(i))) {
+                remaining++;
+            }
+        }
         
         if (log.isDebugEnabled()) {
-            log.debug(count + " " + uids.size() + " " + uidsToRemove.size() + " " + uidsCopy.size() + " removing " + (count == 0 && uidsCopy.isEmpty()));
+            log.debug(count + " " + uids.size() + " " + uidsToRemove.size() + " " + remaining + " removing " + (count == 0 && remaining == 0));
         }
         
         // if <= 0 and uids is empty, we can safely remove
-        if (count <= 0 && uidsCopy.isEmpty())
+        if (count <= 0 && remaining == 0)
             return false;
         else
             return true;
     }
     
+    /**
+     * A set of UIDs kept as a sorted array of their bytes. Membership is a binary search, and sets are added to and removed from each other with a single
+     * merge over both arrays.
+     */
+    static class UidSet {
+        
+        private ByteString[] uids = new ByteString[8];
+        private int size = 0;
+        
+        int size() {
+            return size;
+        }
+        
+        boolean isEmpty() {
+            return size == 0;
+        }
+        
+        ByteString get(int index) {
+            return uids[index];
+        }
+        
+        void clear() {
+            Arrays.fill(uids, 0, size, null);
+            size = 0;
+        }
+        
+        boolean contains(ByteString uid) {
+            return find(uid) >= 0;
+        }
+        
+        boolean add(ByteString uid) {
+            int index = find(uid);
+            if (index >= 0) {
+                return false;
+            }
+            index = -(index + 1);
+            if (size == uids.length) {
+                uids = Arrays.copyOf(uids, size * 2);
+            }
+            System.arraycopy(uids, index, uids, index + 1, size - index);
+            uids[index] = uid;
+            size++;
+            return true;
+        }
+        
+        boolean remove(ByteString uid) {
+            int index = find(uid);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(uids, index + 1, uids, index, size - index - 1);
+            uids[--size] = null;
+            return true;
+        }
+        
+        void addAll(List<ByteString> other) {
+            if (other.size() == 1) {
+                add(other.get(0));
+            } else if (!other.isEmpty()) {
+                ByteString[] sorted = other.toArray(new ByteString[other.size()]);
+                Arrays.sort(sorted, UidSet::compare);
+                merge(sorted, sorted.length, true);
+            }
+        }
+        
+        void addAll(UidSet other) {
+            if (!other.isEmpty()) {
+                merge(other.uids, other.size, true);
+            }
+        }
+        
+        void removeAll(UidSet other) {
+            if (!isEmpty() && !other.isEmpty()) {
+                merge(other.uids, other.size, false);
+            }
+        }
+        
+        /**
+         * Merges sorted uids into this set
+         * 
+         * @param other
+         *            sorted uids, which may hold duplicates
+         * @param otherSize
+         * @param union
+         *            true to add the other uids, false to remove them
+         */
+        private void merge(ByteString[] other, int otherSize, boolean union) {
+            ByteString[] merged = new ByteString[union ? Math.max(uids.length, size + otherSize) : uids.length];
+            int i = 0, j = 0, n = 0;
+            while (i < size && j < otherSize) {
+                int cmp = compare(uids[i], other[j]);
+                if (cmp < 0) {
+                    merged[n++] = uids[i++];
+                } else if (cmp > 0) {
+                    if (union && (n == 0 || compare(merged[n - 1], other[j]) != 0)) {
+                        merged[n++] = other[j];
+                    }
+                    j++;
+                } else {
+                    if (union) {
+                        merged[n++] = uids[i];
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            while (i < size) {
+                merged[n++] = uids[i++];
+            }
+            while (union && j < otherSize) {
+                if (n == 0 || compare(merged[n - 1], other[j]) != 0) {
+                    merged[n++] = other[j];
+                }
+                j++;
+            }
+            uids = merged;
+            size = n;
+        }
+        
+        private int find(ByteString uid) {
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(uids[mid], uid);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+        
+        int computeSize(int field) {
+            int bytes = 0;
+            for (int i = 0; i < size; i++) {
+                bytes += CodedOutputStream.computeBytesSize(field, uids[i]);
+            }
+            return bytes;
+        }
+        
+        void write(CodedOutputStream out, int field) throws IOException {
+            for (int i = 0; i < size; i++) {
+                out.writeBytes(field, uids[i]);
+            }
+        }
+        
+        /**
+         * Compares uids as unsigned bytes
+         */
+        static int compare(ByteString a, ByteString b) {
+            int length = Math.min(a.size(), b.size());
+            for (int i = 0; i < length; i++) {
+                int diff = (a.byteAt(i) & 0xff) - (b.byteAt(i) & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return a.size() - b.size();
+        }
+    }
 }
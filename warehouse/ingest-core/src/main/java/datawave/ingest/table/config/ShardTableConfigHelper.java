@@ -11,6 +11,7 @@ import datawave.ingest.table.aggregator.CombinerConfiguration;
 import datawave.ingest.table.balancer.ShardedTableTabletBalancer;
 import datawave.ingest.table.bloomfilter.ShardKeyFunctor;
 import datawave.ingest.table.bloomfilter.ShardIndexKeyFunctor;
+import datawave.iterators.FieldValueBloomFilterCombiner;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
@@ -49,7 +50,7 @@ public class ShardTableConfigHelper extends AbstractTableConfigHelper {
     protected Logger log;
     
     public enum ShardTableType {
-        SHARD, GIDX, GRIDX, DINDX
+        SHARD, GIDX, GRIDX, DINDX, FIELD_BLOOM
     }
     
     protected Configuration conf;
@@ -58,6 +59,7 @@ public class ShardTableConfigHelper extends AbstractTableConfigHelper {
     protected String shardGidxTableName; // global index
     protected String shardGridxTableName; // global reverse index
     protected String shardDictionaryTableName;
+    protected String shardFieldBloomTableName; // field value bloom filters
     protected ShardTableType tableType;
     
     @Override
@@ -70,6 +72,7 @@ public class ShardTableConfigHelper extends AbstractTableConfigHelper {
         shardGidxTableName = conf.get(ShardedDataTypeHandler.SHARD_GIDX_TNAME, null);
         shardGridxTableName = conf.get(ShardedDataTypeHandler.SHARD_GRIDX_TNAME, null);
         shardDictionaryTableName = conf.get(ShardedDataTypeHandler.SHARD_DINDX_NAME, null);
+        shardFieldBloomTableName = conf.get(ShardedDataTypeHandler.SHARD_FIELD_BLOOM_TNAME, null);
         markingsSetupIteratorEnabled = conf.getBoolean(MARKINGS_SETUP_ITERATOR_ENABLED, markingsSetupIteratorEnabled);
         markingsSetupIteratorConfig = conf.get(MARKINGS_SETUP_ITERATOR_CONFIG, markingsSetupIteratorConfig);
         
@@ -126,6 +129,8 @@ public class ShardTableConfigHelper extends AbstractTableConfigHelper {
             this.tableType = ShardTableType.GRIDX;
         } else if (shardDictionaryTableName != null && tableName.equals(shardDictionaryTableName)) {
             this.tableType = ShardTableType.DINDX;
+        } else if (shardFieldBloomTableName != null && tableName.equals(shardFieldBloomTableName)) {
+            this.tableType = ShardTableType.FIELD_BLOOM;
         } else {
             throw new IllegalArgumentException("Invalid Shard Table Definition For: " + tableName);
         }
@@ -149,6 +154,9 @@ public class ShardTableConfigHelper extends AbstractTableConfigHelper {
             case DINDX:
                 configureDictionaryTable(tops);
                 
+                break;
+            case FIELD_BLOOM:
+                configureFieldBloomTable(tops);
                 break;
             default:
                 // Technically, this is dead code. If 'Configure' is called prior to 'Setup'
@@ -238,4 +246,16 @@ public class ShardTableConfigHelper extends AbstractTableConfigHelper {
         setLocalityGroupConfigurationIfNecessary(tableName, localityGroups, tops, log);
         
     }
+    
+    protected void configureFieldBloomTable(TableOperations tops) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        // Merge the filters of each event into the filter of the shard, the column families being the field names
+        for (IteratorScope scope : IteratorScope.values()) {
+            String stem = String.format("%s%s.%s", Property.TABLE_ITERATOR_PREFIX, scope.name(), "FieldBloomCombiner");
+            setPropertyIfNecessary(tableName, stem, "19," + FieldValueBloomFilterCombiner.class.getName(), tops, log);
+            setPropertyIfNecessary(tableName, stem + ".opt.all", "true", tops, log);
+        }
+        
+        // Set up the table balancer for shards
+        setPropertyIfNecessary(tableName, Property.TABLE_LOAD_BALANCER.getKey(), shardTableBalancerClass, tops, log);
+    }
 }
@@ -2,11 +2,13 @@ package datawave.ingest.mapreduce;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import datawave.ingest.data.RawRecordContainer;
 import datawave.ingest.data.Type;
 import datawave.ingest.data.TypeRegistry;
 import datawave.ingest.data.config.BaseNormalizedContent;
 import datawave.ingest.data.config.NormalizedContentInterface;
+import datawave.ingest.input.reader.event.EventErrorSummary;
 import datawave.ingest.mapreduce.job.BulkIngestKey;
 import datawave.ingest.mapreduce.job.metrics.Metric;
 import datawave.ingest.mapreduce.job.metrics.MetricsConfiguration;
@@ -14,8 +16,12 @@ import datawave.ingest.mapreduce.job.metrics.TestEventCountMetricsReceiver;
 import datawave.ingest.mapreduce.job.writer.ContextWriter;
 import org.apache.accumulo.core.data.Value;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.accumulo.core.data.Key;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.easymock.EasyMockRule;
 import org.easymock.Mock;
 import org.junit.After;
@@ -27,7 +33,15 @@ import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class EventMapperTest {
     
@@ -39,6 +53,8 @@ public class EventMapperTest {
     
     private Configuration conf;
     private SimpleRawRecord record;
+    private Deque<SimpleRawRecord> records = new ArrayDeque<>();
+    private SimpleRawRecord currentRecord;
     private EventMapper<LongWritable,RawRecordContainer,BulkIngestKey,Value> eventMapper;
     
     @Before
@@ -76,6 +92,11 @@ public class EventMapperTest {
         mapContext.write(anyObject(BulkIngestKey.class), anyObject(Value.class));
         expectLastCall().andDelegateTo(testContextWriter).anyTimes();
         
+        // the records read by run()
+        expect(mapContext.nextKeyValue()).andAnswer(() -> (currentRecord = records.poll()) != null).anyTimes();
+        expect(mapContext.getCurrentKey()).andAnswer(() -> new LongWritable(1)).anyTimes();
+        expect(mapContext.getCurrentValue()).andAnswer(() -> currentRecord).anyTimes();
+        
         expect(mapContext.getInputSplit()).andReturn(null);
         expect(mapContext.getMapOutputValueClass()).andReturn(null);
         
@@ -172,6 +193,113 @@ public class EventMapperTest {
         assertEquals(4, written.size());
     }
     
+    @Test
+    public void shouldProcessEventsAsPipeline() throws IOException, InterruptedException {
+        conf.setBoolean(EventMapper.PIPELINE_ENABLED, true);
+        conf.setInt(EventMapper.PIPELINE_DEPTH, 2);
+        // the same record is read each time, as a record reader reusing its value would
+        for (int i = 0; i < 5; i++) {
+            records.add(record);
+        }
+        eventMapper.run(mapContext);
+        
+        Multimap<BulkIngestKey,Value> written = TestContextWriter.getWritten();
+        
+        // each event is written with the offset it would have had serially
+        Set<String> offsets = new HashSet<>();
+        for (Map.Entry<BulkIngestKey,Value> entry : written.entries()) {
+            assertEquals(SimpleDataTypeHandler.TABLE, entry.getKey().getTableName());
+            if (entry.getKey().getKey().getColumnFamily().toString().equals(EventMapper.SEQUENCE_FILE_FIELDNAME)) {
+                String origFile = entry.getKey().getKey().getColumnQualifier().toString();
+                offsets.add(origFile.substring(origFile.lastIndexOf('|') + 1));
+            }
+        }
+        assertEquals(Sets.newHashSet("0", "1", "2", "3", "4"), offsets);
+        assertNotNull(getRawFileName(written));
+    }
+    
+    @Test
+    public void shouldRollBackFailedEventsSerially() throws IOException, InterruptedException {
+        assertEquals(expectedWithFailures(), runWithFailures(false));
+    }
+    
+    @Test
+    public void shouldRollBackFailedEventsAsPipeline() throws IOException, InterruptedException {
+        // the pipeline writes the same output, in the same order, as the events are processed serially
+        assertEquals(expectedWithFailures(), runWithFailures(true));
+    }
+    
+    @Test
+    public void shouldProcessUncopyableEventsSerially() throws IOException, InterruptedException {
+        registerHandlers(RecordingHandler.class);
+        
+        // the uncopyable event is only processed once the slow event ahead of it has been written
+        List<String> committed = run(true, newRecord(new SimpleRawRecord(), "slow0"), newRecord(new UncopyableRecord(), "uncopyable1"),
+                        newRecord(new SimpleRawRecord(), "ok2"));
+        assertEquals(Arrays.asList("slow0 RecordingHandler 0", "uncopyable1 RecordingHandler 1", "ok2 RecordingHandler 2"), committed);
+    }
+    
+    @Test
+    public void shouldDrainPipelineBeforePurgingReprocessedEvent() throws IOException, InterruptedException {
+        registerHandlers(RecordingHandler.class);
+        
+        SimpleRawRecord reprocessed = newRecord(new SimpleRawRecord(), "reprocessed2");
+        RecordingErrorSummary errorSummary = new RecordingErrorSummary();
+        reprocessed.setAuxData(errorSummary);
+        
+        List<String> committed = run(true, newRecord(new SimpleRawRecord(), "slow0"), newRecord(new SimpleRawRecord(), "slow1"), reprocessed);
+        
+        // the events ahead of the reprocessed event were written before it was purged from the error table
+        assertEquals(Arrays.asList("slow0 RecordingHandler 0", "slow1 RecordingHandler 1"), errorSummary.committedBeforePurge);
+        assertEquals(Arrays.asList("slow0 RecordingHandler 0", "slow1 RecordingHandler 1", "reprocessed2 RecordingHandler 2"), committed);
+    }
+    
+    private List<String> runWithFailures(boolean pipelined) throws IOException, InterruptedException {
+        registerHandlers(RecordingHandler.class, FailingHandler.class);
+        Type errorType = new Type(TypeRegistry.ERROR_PREFIX, null, null, new String[] {ErrorHandler.class.getName()}, 10, null);
+        TypeRegistry.getInstance(conf).put(errorType.typeName(), errorType);
+        try {
+            return run(pipelined, newRecord(new SimpleRawRecord(), "slow0"), newRecord(new SimpleRawRecord(), "fail1"),
+                            newRecord(new SimpleRawRecord(), "ok2"), newRecord(new SimpleRawRecord(), "fail3"), newRecord(new SimpleRawRecord(), "ok4"));
+        } finally {
+            TypeRegistry.getInstance(conf).remove(TypeRegistry.ERROR_PREFIX);
+        }
+    }
+    
+    private List<String> expectedWithFailures() {
+        // the output of the handler ahead of the failing one is rolled back, and the failed events are written by the error handler instead
+        return Arrays.asList("slow0 RecordingHandler 0", "slow0 FailingHandler 0", "fail1 ErrorHandler 1", "ok2 RecordingHandler 2", "ok2 FailingHandler 2",
+                        "fail3 ErrorHandler 3", "ok4 RecordingHandler 4", "ok4 FailingHandler 4");
+    }
+    
+    private void registerHandlers(Class<?>... handlerClasses) {
+        String[] handlers = new String[handlerClasses.length];
+        for (int i = 0; i < handlerClasses.length; i++) {
+            handlers[i] = handlerClasses[i].getName();
+        }
+        Type type = new Type("file", null, null, handlers, 10, null);
+        TypeRegistry.getInstance(conf).put(type.typeName(), type);
+    }
+    
+    private SimpleRawRecord newRecord(SimpleRawRecord event, String rawData) {
+        event.setRawFileTimestamp(record.getRawFileTimestamp());
+        event.setDataType(record.getDataType());
+        event.setDate(record.getDate());
+        event.setRawFileName(record.getRawFileName());
+        event.setRawData(rawData.getBytes());
+        event.generateId(null);
+        return event;
+    }
+    
+    private List<String> run(boolean pipelined, SimpleRawRecord... events) throws IOException, InterruptedException {
+        conf.setClass(EventMapper.CONTEXT_WRITER_CLASS, RecordingContextWriter.class, ContextWriter.class);
+        conf.setBoolean(EventMapper.PIPELINE_ENABLED, pipelined);
+        conf.setInt(EventMapper.PIPELINE_DEPTH, 4);
+        records.addAll(Arrays.asList(events));
+        eventMapper.run(mapContext);
+        return RecordingContextWriter.committed;
+    }
+    
     private Map.Entry<BulkIngestKey,Value> getMetric(Multimap<BulkIngestKey,Value> written) {
         return getFieldEntry(written, Metric.EVENT_COUNT.toString());
     }
@@ -190,4 +318,125 @@ public class EventMapperTest {
         return null;
     }
     
+    /**
+     * Writes a single entry for each event, with the raw data of the event as the row, the name of the handler as the column family, and the offset of the
+     * event as the column qualifier. Events whose raw data starts with "slow" take a while to process.
+     */
+    public static class RecordingHandler<IK> extends SimpleDataTypeHandler<IK> {
+        
+        @Override
+        public Multimap<BulkIngestKey,Value> processBulk(IK key, RawRecordContainer event, Multimap<String,NormalizedContentInterface> fields,
+                        StatusReporter reporter) {
+            String data = new String(event.getRawData());
+            if (data.startsWith("slow")) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (fails(data)) {
+                throw new IllegalStateException("Failed to process " + data);
+            }
+            
+            String offset = "";
+            Collection<NormalizedContentInterface> origFile = fields.get(EventMapper.SEQUENCE_FILE_FIELDNAME);
+            if (!origFile.isEmpty()) {
+                String value = origFile.iterator().next().getEventFieldValue();
+                offset = value.substring(value.lastIndexOf('|') + 1);
+            }
+            
+            String name = getClass().getSimpleName();
+            Multimap<BulkIngestKey,Value> pairs = HashMultimap.create();
+            pairs.put(new BulkIngestKey(new Text(name), new Key(data, name, offset)), new Value("1".getBytes()));
+            return pairs;
+        }
+        
+        protected boolean fails(String data) {
+            return false;
+        }
+    }
+    
+    /**
+     * Fails the events whose raw data starts with "fail"
+     */
+    public static class FailingHandler<IK> extends RecordingHandler<IK> {
+        
+        @Override
+        protected boolean fails(String data) {
+            return data.startsWith("fail");
+        }
+    }
+    
+    public static class ErrorHandler<IK> extends RecordingHandler<IK> {}
+    
+    /**
+     * Keeps what is written for an event until it is committed, and drops it if it is rolled back
+     */
+    public static class RecordingContextWriter<OK,OV> implements ContextWriter<OK,OV> {
+        
+        private static final List<String> committed = new ArrayList<>();
+        
+        private final List<String> pending = new ArrayList<>();
+        
+        public RecordingContextWriter() {
+            committed.clear();
+        }
+        
+        @Override
+        public void setup(Configuration conf, boolean outputTableCounters) throws IOException, InterruptedException {}
+        
+        @Override
+        public void write(BulkIngestKey key, Value value, TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {
+            Key k = key.getKey();
+            pending.add(k.getRow() + " " + k.getColumnFamily() + " " + k.getColumnQualifier());
+        }
+        
+        @Override
+        public void write(Multimap<BulkIngestKey,Value> entries, TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {
+            for (Map.Entry<BulkIngestKey,Value> entry : entries.entries()) {
+                write(entry.getKey(), entry.getValue(), context);
+            }
+        }
+        
+        @Override
+        public void commit(TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {
+            committed.addAll(pending);
+            pending.clear();
+        }
+        
+        @Override
+        public void rollback() throws IOException, InterruptedException {
+            pending.clear();
+        }
+        
+        @Override
+        public void cleanup(TaskInputOutputContext<?,?,OK,OV> context) throws IOException, InterruptedException {}
+    }
+    
+    /**
+     * Records what had been committed when the event was purged from the error table
+     */
+    private static class RecordingErrorSummary extends EventErrorSummary {
+        
+        private List<String> committedBeforePurge;
+        
+        @SuppressWarnings({"rawtypes"})
+        @Override
+        public void purge(ContextWriter writer, TaskInputOutputContext context, RawRecordContainer event, Map typeMap) throws IOException,
+                        InterruptedException {
+            committedBeforePurge = new ArrayList<>(RecordingContextWriter.committed);
+        }
+    }
+    
+    /**
+     * A record that cannot be copied, so the pipeline has to process it serially
+     */
+    private static class UncopyableRecord extends SimpleRawRecord {
+        
+        @Override
+        public RawRecordContainer copy() {
+            throw new UnsupportedOperationException("Cannot copy this record");
+        }
+    }
 }
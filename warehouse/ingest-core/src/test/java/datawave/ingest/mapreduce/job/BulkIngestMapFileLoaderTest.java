@@ -11,10 +11,19 @@ import java.net.ServerSocket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import datawave.common.test.integration.IntegrationTest;
 import datawave.common.test.logging.CommonTestAppender;
@@ -47,6 +56,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.contrib.java.lang.system.ExpectedSystemExit;
+import org.junit.rules.TemporaryFolder;
 import org.junit.experimental.categories.Category;
 import org.powermock.api.easymock.PowerMock;
 import org.powermock.reflect.Whitebox;
@@ -68,6 +78,12 @@ public class BulkIngestMapFileLoaderTest {
     @Rule
     public final ExpectedSystemExit exit = ExpectedSystemExit.none();
     
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    // the static settings of the loader changed by a test, to be restored afterwards
+    private final Map<String,Object> loaderSettings = new HashMap<>();
+    
     @Test
     public void testShutdownPortAlreadyInUse() throws IOException {
         exit.expectSystemExitWithStatus(-3);
@@ -403,6 +419,212 @@ public class BulkIngestMapFileLoaderTest {
         Logger.getLogger(BulkIngestMapFileLoader.class).removeAppender(uutAppender);
         BulkIngestMapFileLoaderTest.logger.setLevel(testDriverLevel);
         
+        for (Map.Entry<String,Object> setting : loaderSettings.entrySet()) {
+            Whitebox.setInternalState(BulkIngestMapFileLoader.class, setting.getKey(), setting.getValue());
+        }
+    }
+    
+    /**
+     * A loader whose copy, import and finish stages are stubbed out, recording the thread each stage of a job directory ran on and how many job directories
+     * were being loaded and imported at once
+     */
+    private static class StubbedLoader extends BulkIngestMapFileLoader {
+        
+        private final Deque<Path> completed = new ArrayDeque<>();
+        private final Set<Path> failCopy = new HashSet<>();
+        private final Set<Path> failImport = new HashSet<>();
+        private final Map<Path,List<String>> stages = new ConcurrentHashMap<>();
+        private final Set<Path> finished = ConcurrentHashMap.newKeySet();
+        private final Set<Path> failed = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger loading = new AtomicInteger();
+        private final AtomicInteger importing = new AtomicInteger();
+        private final AtomicInteger maxLoading = new AtomicInteger();
+        private final AtomicInteger maxImporting = new AtomicInteger();
+        private final CountDownLatch release;
+        private final long importMillis;
+        
+        private StubbedLoader(String workDir, List<Path> jobDirectories, long importMillis, CountDownLatch release) {
+            super(workDir, "job*", null, null, null, null, null, null, null, null, new Configuration(), 0);
+            this.completed.addAll(jobDirectories);
+            this.importMillis = importMillis;
+            this.release = release;
+        }
+        
+        private void stage(Path jobDirectory, String stage) {
+            stages.computeIfAbsent(jobDirectory, k -> Collections.synchronizedList(new ArrayList<>())).add(stage + " " + Thread.currentThread().getName());
+        }
+        
+        @Override
+        protected Path[] getJobDirectories(int maxDirectories) {
+            synchronized (completed) {
+                List<Path> jobDirectories = new ArrayList<>(completed);
+                return jobDirectories.subList(0, Math.min(maxDirectories, jobDirectories.size())).toArray(new Path[0]);
+            }
+        }
+        
+        @Override
+        public boolean takeOwnershipJobDirectory(Path jobDirectory) {
+            synchronized (completed) {
+                return completed.remove(jobDirectory);
+            }
+        }
+        
+        @Override
+        public boolean canBringMapFilesOnline(long lastOnlineTime, boolean logInfo) {
+            return true;
+        }
+        
+        @Override
+        protected Path distCpDirectory(Path jobDirectory) throws Exception {
+            stage(jobDirectory, "copy");
+            maxLoading.accumulateAndGet(loading.incrementAndGet(), Math::max);
+            if (failCopy.contains(jobDirectory)) {
+                throw new IOException("Failed to copy " + jobDirectory);
+            }
+            return jobDirectory;
+        }
+        
+        @Override
+        public void bringMapFilesOnline(Path mapFilesDir) throws IOException {
+            Path jobDirectory = mapFilesDir.getParent();
+            stage(jobDirectory, "import");
+            maxImporting.accumulateAndGet(importing.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(importMillis);
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted importing " + mapFilesDir, e);
+            } finally {
+                importing.decrementAndGet();
+            }
+            if (failImport.contains(jobDirectory)) {
+                throw new IOException("Failed to import " + mapFilesDir);
+            }
+        }
+        
+        @Override
+        public void verifyNothingLeftBehind(Path mapFilesDir) {}
+        
+        @Override
+        public void cleanUpJobDirectory(Path mapFilesDir) {
+            Path jobDirectory = mapFilesDir.getParent();
+            stage(jobDirectory, "finish");
+            finished.add(jobDirectory);
+            loading.decrementAndGet();
+        }
+        
+        @Override
+        public boolean markJobDirectoryFailed(URI workingHdfs, Path jobDirectory) {
+            failed.add(jobDirectory);
+            loading.decrementAndGet();
+            return true;
+        }
+    }
+    
+    private void setLoaderSetting(String name, Object value) {
+        if (!loaderSettings.containsKey(name)) {
+            loaderSettings.put(name, Whitebox.getInternalState(BulkIngestMapFileLoader.class, name));
+        }
+        Whitebox.setInternalState(BulkIngestMapFileLoader.class, name, value);
+    }
+    
+    private StubbedLoader createStubbedLoader(int maxConcurrentJobs, int maxConcurrentImports, int jobs, long importMillis, CountDownLatch release)
+                    throws IOException {
+        setLoaderSetting("SLEEP_TIME", 50);
+        setLoaderSetting("MAX_CONCURRENT_JOBS", maxConcurrentJobs);
+        setLoaderSetting("MAX_CONCURRENT_IMPORTS", maxConcurrentImports);
+        setLoaderSetting("MAJC_CHECK_INTERVAL", maxConcurrentJobs);
+        
+        String workDir = temporaryFolder.newFolder().getAbsolutePath();
+        List<Path> jobDirectories = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            jobDirectories.add(new Path(workDir, "job" + i));
+        }
+        return new StubbedLoader(workDir, jobDirectories, importMillis, release);
+    }
+    
+    private static void waitForLoads(StubbedLoader loader, int jobs) throws InterruptedException {
+        for (int i = 0; i < 200 && loader.finished.size() + loader.failed.size() < jobs; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(jobs, loader.finished.size() + loader.failed.size());
+    }
+    
+    private static void stop(StubbedLoader loader, Thread thread) throws InterruptedException {
+        loader.shutdown();
+        thread.join(10000);
+        Assert.assertFalse("The loader failed to stop", thread.isAlive());
+    }
+    
+    @Test
+    public void testConcurrentLoadsAreBounded() throws Exception {
+        StubbedLoader loader = createStubbedLoader(4, 2, 12, 50, new CountDownLatch(0));
+        Thread thread = new Thread(loader);
+        thread.start();
+        waitForLoads(loader, 12);
+        stop(loader, thread);
+        
+        Assert.assertEquals(12, loader.finished.size());
+        Assert.assertTrue(loader.failed.isEmpty());
+        Assert.assertTrue("Loaded " + loader.maxLoading + " job directories at once", loader.maxLoading.get() > 1 && loader.maxLoading.get() <= 4);
+        Assert.assertTrue("Imported " + loader.maxImporting + " job directories at once", loader.maxImporting.get() <= 2);
+        
+        // each job directory is copied and finished on the hdfs threads, and imported on the import threads, in that order
+        for (Path jobDirectory : loader.finished) {
+            List<String> stages = loader.stages.get(jobDirectory);
+            Assert.assertEquals(3, stages.size());
+            Assert.assertTrue(stages.get(0), stages.get(0).startsWith("copy map-file-loader-hdfs-"));
+            Assert.assertTrue(stages.get(1), stages.get(1).startsWith("import map-file-loader-import-"));
+            Assert.assertTrue(stages.get(2), stages.get(2).startsWith("finish map-file-loader-hdfs-"));
+        }
+    }
+    
+    @Test
+    public void testFailedStageMarksJobDirectoryFailed() throws Exception {
+        StubbedLoader loader = createStubbedLoader(4, 2, 4, 0, new CountDownLatch(0));
+        Path workDir = loader.completed.peek().getParent();
+        Path copyFailure = new Path(workDir, "job1");
+        Path importFailure = new Path(workDir, "job2");
+        loader.failCopy.add(copyFailure);
+        loader.failImport.add(importFailure);
+        
+        Thread thread = new Thread(loader);
+        thread.start();
+        waitForLoads(loader, 4);
+        stop(loader, thread);
+        
+        Assert.assertEquals(new HashSet<>(Arrays.asList(copyFailure, importFailure)), loader.failed);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(new Path(workDir, "job0"), new Path(workDir, "job3"))), loader.finished);
+        
+        // the stages after the one that failed are not run
+        Assert.assertEquals(1, loader.stages.get(copyFailure).size());
+        Assert.assertEquals(2, loader.stages.get(importFailure).size());
+    }
+    
+    @Test
+    public void testInFlightLoadsFinishOnShutdown() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StubbedLoader loader = createStubbedLoader(2, 2, 3, 0, release);
+        Thread thread = new Thread(loader);
+        thread.start();
+        for (int i = 0; i < 200 && loader.importing.get() < 2; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, loader.importing.get());
+        
+        // the loader waits for the imports that were started rather than leaving their job directories marked as loading
+        loader.shutdown();
+        thread.join(500);
+        Assert.assertTrue(thread.isAlive());
+        
+        release.countDown();
+        thread.join(10000);
+        Assert.assertFalse("The loader failed to stop", thread.isAlive());
+        Assert.assertEquals(2, loader.finished.size());
+        Assert.assertTrue(loader.failed.isEmpty());
+        
+        // no more job directories are started once the loader is shut down
+        Assert.assertEquals(1, loader.completed.size());
     }
     
     @Test
@@ -500,6 +722,12 @@ public class BulkIngestMapFileLoaderTest {
             cmdList.add("-maxDirectories");
             cmdList.add("15");
             
+            cmdList.add("-maxConcurrentJobs");
+            cmdList.add("4");
+            
+            cmdList.add("-maxConcurrentImports");
+            cmdList.add("2");
+            
             cmdList.add("-numThreads");
             cmdList.add("9");
             
@@ -946,6 +1174,87 @@ public class BulkIngestMapFileLoaderTest {
         }
     }
     
+    @Test
+    public void testMainWithBadMaxConcurrentJobs() throws IOException, InterruptedException {
+        
+        BulkIngestMapFileLoaderTest.logger.info("testMainWithBadMaxConcurrentJobs called...");
+        
+        try {
+            
+            List<String> cmdList = ProcessUtils.buildApplicationCommandLine(BulkIngestMapFileLoader.class.getName(), systemProperties, false);
+            
+            for (int counter = 0; counter < 6; counter++) {
+                
+                cmdList.add(String.format("%d", counter));
+            }
+            
+            cmdList.add("-maxConcurrentJobs");
+            cmdList.add("hello, world");
+            
+            String[] cmdArray = ProcessUtils.convertCommandLine(cmdList);
+            
+            Map<String,String> newEnvironment = new HashMap<>();
+            List<String> dropFromEnvironment = new ArrayList<>();
+            File workingDirectory = new File(System.getProperty("user.dir"));
+            
+            Process proc = ProcessUtils.runInstance(cmdArray, newEnvironment, dropFromEnvironment, workingDirectory);
+            
+            int procResults = proc.waitFor();
+            
+            Assert.assertEquals("BulkIngestMapLoader#main failed to return the expected value.", ProcessUtils.SYSTEM_EXIT_MINUS_TWO, procResults);
+            
+            List<String> stdOut = ProcessUtils.getStandardOutDumps(proc);
+            
+            Assert.assertTrue("BulkIngestMapLoader#main failed to generate the expected error message",
+                            processOutputContains(stdOut, "-maxConcurrentJobs must be followed by the number of job directories to load concurrently"));
+            
+        } finally {
+            
+            BulkIngestMapFileLoaderTest.logger.info("testMainWithBadMaxConcurrentJobs completed.");
+            
+        }
+    }
+    
+    @Test
+    public void testMainWithMissingMaxConcurrentJobs() throws IOException, InterruptedException {
+        
+        BulkIngestMapFileLoaderTest.logger.info("testMainWithMissingMaxConcurrentJobs called...");
+        
+        try {
+            
+            List<String> cmdList = ProcessUtils.buildApplicationCommandLine(BulkIngestMapFileLoader.class.getName(), systemProperties, false);
+            
+            for (int counter = 0; counter < 6; counter++) {
+                
+                cmdList.add(String.format("%d", counter));
+            }
+            
+            cmdList.add("-maxConcurrentJobs");
+            
+            String[] cmdArray = ProcessUtils.convertCommandLine(cmdList);
+            
+            Map<String,String> newEnvironment = new HashMap<>();
+            List<String> dropFromEnvironment = new ArrayList<>();
+            File workingDirectory = new File(System.getProperty("user.dir"));
+            
+            Process proc = ProcessUtils.runInstance(cmdArray, newEnvironment, dropFromEnvironment, workingDirectory);
+            
+            int procResults = proc.waitFor();
+            
+            Assert.assertEquals("BulkIngestMapLoader#main failed to return the expected value.", ProcessUtils.SYSTEM_EXIT_MINUS_TWO, procResults);
+            
+            List<String> stdOut = ProcessUtils.getStandardOutDumps(proc);
+            
+            Assert.assertTrue("BulkIngestMapLoader#main failed to generate the expected error message",
+                            processOutputContains(stdOut, "-maxConcurrentJobs must be followed by the number of job directories to load concurrently"));
+            
+        } finally {
+            
+            BulkIngestMapFileLoaderTest.logger.info("testMainWithMissingMaxConcurrentJobs completed.");
+            
+        }
+    }
+    
     @Test
     public void testMainWithBadNumThreads() throws IOException, InterruptedException {
         
@@ -0,0 +1,211 @@
+package datawave.ingest.mapreduce.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Iterables;
+
+public class StreamingIngestJobTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private FileSystem fs;
+    private Path dir;
+    
+    @Before
+    public void setup() throws Exception {
+        fs = FileSystem.getLocal(new Configuration());
+        dir = new Path(folder.getRoot().toURI());
+    }
+    
+    private Path createFile(String name, long modificationTime) throws Exception {
+        Path file = new Path(dir, name);
+        fs.create(file).close();
+        fs.setTimes(file, modificationTime, -1);
+        return file;
+    }
+    
+    @Test
+    public void testCheckpoints() throws Exception {
+        StreamingIngestJob job = new StreamingIngestJob();
+        Path checkpoint = new Path(dir, "input.seq");
+        Assert.assertEquals(0, job.readCheckpoint(fs, checkpoint));
+        
+        job.writeCheckpoint(fs, checkpoint, 1000);
+        Assert.assertEquals(1000, job.readCheckpoint(fs, checkpoint));
+        
+        // a later checkpoint replaces the earlier one
+        job.writeCheckpoint(fs, checkpoint, 2500);
+        Assert.assertEquals(2500, job.readCheckpoint(fs, checkpoint));
+        Assert.assertEquals(1, fs.listStatus(dir).length);
+    }
+    
+    @Test
+    public void testStreamingFilesAreOldestFirst() throws Exception {
+        createFile("b.seq", 2000000L);
+        createFile("a.seq", 3000000L);
+        createFile("c.seq", 1000000L);
+        // files that are still being written are hidden
+        createFile("_d.seq", 500000L);
+        createFile(".e.seq", 500000L);
+        new File(folder.getRoot(), "subdir").mkdir();
+        
+        StreamingIngestJob job = new StreamingIngestJob();
+        job.inputPaths = dir + "/*";
+        List<FileStatus> files = job.getStreamingFiles(fs);
+        Assert.assertEquals(3, files.size());
+        Assert.assertEquals("c.seq", files.get(0).getPath().getName());
+        Assert.assertEquals("b.seq", files.get(1).getPath().getName());
+        Assert.assertEquals("a.seq", files.get(2).getPath().getName());
+    }
+    
+    @Test
+    public void testMarkFileLoaded() throws Exception {
+        Path input = new Path(dir, "input");
+        Path loaded = new Path(dir, StreamingIngestJob.LOADED_DIR);
+        Path checkpoints = new Path(dir, StreamingIngestJob.CHECKPOINTS_DIR);
+        fs.mkdirs(input);
+        fs.mkdirs(loaded);
+        fs.mkdirs(checkpoints);
+        Path file = new Path(input, "input.seq");
+        fs.create(file).close();
+        FileStatus status = fs.getFileStatus(file);
+        
+        StreamingIngestJob job = new StreamingIngestJob();
+        job.writeCheckpoint(fs, new Path(checkpoints, job.getCheckpointName(status)), 10);
+        job.markFileLoaded(fs, status, loaded, checkpoints);
+        
+        Assert.assertFalse(fs.exists(file));
+        Assert.assertTrue(fs.exists(new Path(loaded, "input.seq")));
+        Assert.assertEquals(0, fs.listStatus(checkpoints).length);
+        
+        // a later file of the same name is neither taken for the loaded one nor overwrites it
+        fs.create(file).close();
+        fs.setTimes(file, status.getModificationTime() + 1000, -1);
+        FileStatus later = fs.getFileStatus(file);
+        Assert.assertNotEquals(job.getCheckpointName(status), job.getCheckpointName(later));
+        job.markFileLoaded(fs, later, loaded, checkpoints);
+        Assert.assertTrue(fs.exists(new Path(loaded, "input.seq")));
+        Assert.assertTrue(fs.exists(new Path(loaded, job.getCheckpointName(later))));
+    }
+    
+    @Test
+    public void testCheckpointNames() throws Exception {
+        fs.mkdirs(new Path(dir, "a"));
+        fs.mkdirs(new Path(dir, "b"));
+        fs.create(new Path(dir, "a/input.seq")).close();
+        fs.create(new Path(dir, "b/input.seq")).close();
+        
+        // files of the same name under different input paths have their own checkpoints
+        StreamingIngestJob job = new StreamingIngestJob();
+        String a = job.getCheckpointName(fs.getFileStatus(new Path(dir, "a/input.seq")));
+        String b = job.getCheckpointName(fs.getFileStatus(new Path(dir, "b/input.seq")));
+        Assert.assertTrue(a.startsWith("input.seq."));
+        Assert.assertNotEquals(a, b);
+        Assert.assertEquals(a, job.getCheckpointName(fs.getFileStatus(new Path(dir, "a/input.seq"))));
+    }
+    
+    /**
+     * Writes a mutation for each line, and fails on the line given by {@link #failAt}
+     */
+    public static class LineMapper extends Mapper<LongWritable,Text,Text,Mutation> {
+        private static final List<String> lines = new ArrayList<>();
+        private static int failAt = -1;
+        
+        @Override
+        protected void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            lines.add(value.toString());
+            if (lines.size() == failAt) {
+                throw new IOException("Failing at " + value);
+            }
+            Mutation mutation = new Mutation(value.toString());
+            mutation.put("cf", "cq", new Value(new byte[0]));
+            context.write(new Text(TABLE), mutation);
+        }
+    }
+    
+    private static final String TABLE = "streamingTable";
+    
+    private int countRows(Connector connector) throws Exception {
+        return Iterables.size(connector.createScanner(TABLE, new Authorizations()));
+    }
+    
+    @Test
+    public void testIngestFileResumesFromCheckpoint() throws Exception {
+        Path input = new Path(dir, "input.txt");
+        try (FSDataOutputStream out = fs.create(input)) {
+            for (int i = 1; i <= 10; i++) {
+                out.write(("line" + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Path checkpoints = new Path(dir, StreamingIngestJob.CHECKPOINTS_DIR);
+        fs.mkdirs(checkpoints);
+        FileStatus status = fs.getFileStatus(input);
+        Path checkpoint = new Path(checkpoints, new StreamingIngestJob().getCheckpointName(status));
+        
+        Connector connector = new InMemoryInstance().getConnector("root", new PasswordToken(new byte[0]));
+        connector.tableOperations().create(TABLE);
+        StreamingIngestJob job = new StreamingIngestJob();
+        job.inputFormat = TextInputFormat.class;
+        job.mapper = LineMapper.class;
+        job.batchRecords = 3;
+        job.batchLatency = TimeUnit.HOURS.toMillis(1);
+        job.writer = connector.createMultiTableBatchWriter(new BatchWriterConfig());
+        
+        // the mapper fails on the 8th line, after the batches of the first 6 lines were checkpointed
+        LineMapper.lines.clear();
+        LineMapper.failAt = 8;
+        try {
+            job.ingestFile(new Configuration(), fs, status, checkpoints);
+            Assert.fail("Expected the ingest to fail");
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertEquals(6, job.readCheckpoint(fs, checkpoint));
+        // the 7th line may have been written as well, and is written again
+        Assert.assertTrue(countRows(connector) >= 6);
+        
+        // the next attempt skips the checkpointed lines and resumes with the 7th
+        LineMapper.lines.clear();
+        LineMapper.failAt = -1;
+        Assert.assertTrue(job.ingestFile(new Configuration(), fs, status, checkpoints));
+        Assert.assertEquals(Arrays.asList("line7", "line8", "line9", "line10"), LineMapper.lines);
+        Assert.assertEquals(10, job.readCheckpoint(fs, checkpoint));
+        Assert.assertEquals(10, countRows(connector));
+        
+        Path loaded = new Path(dir, StreamingIngestJob.LOADED_DIR);
+        fs.mkdirs(loaded);
+        job.markFileLoaded(fs, status, loaded, checkpoints);
+        Assert.assertFalse(fs.exists(checkpoint));
+        job.writer.close();
+    }
+}
@@ -0,0 +1,91 @@
+package datawave.ingest.mapreduce.job.writer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import datawave.ingest.mapreduce.job.BulkIngestKey;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerializedKeyValueBufferTest {
+    
+    private static BulkIngestKey key(String row, String cf) {
+        return new BulkIngestKey(new Text("table"), new Key(row, cf, "cq", "vis", 1L));
+    }
+    
+    private static Value value(String value) {
+        return new Value(value.getBytes());
+    }
+    
+    private static List<String> flush(SerializedKeyValueBuffer buffer) throws Exception {
+        List<String> flushed = new ArrayList<>();
+        buffer.flush((key, values) -> {
+            StringBuilder entry = new StringBuilder(key.getKey().getRow().toString()).append(':');
+            for (Value value : values) {
+                entry.append(value.toString());
+            }
+            flushed.add(entry.toString());
+        });
+        return flushed;
+    }
+    
+    @Test
+    public void testSortAndGroup() throws Exception {
+        for (boolean offHeap : new boolean[] {true, false}) {
+            SerializedKeyValueBuffer buffer = new SerializedKeyValueBuffer(64, offHeap);
+            buffer.add(key("c", "cf"), value("1"));
+            buffer.add(key("a", "cf"), value("2"));
+            buffer.add(key("b", "cf"), value("3"));
+            buffer.add(key("a", "cf"), value("4"));
+            buffer.add(key("c", "cf"), value("5"));
+            Assert.assertEquals(5, buffer.size());
+            // the entries do not all fit in one arena
+            Assert.assertTrue(buffer.getCapacity() > 64);
+            
+            List<String> flushed = flush(buffer);
+            Assert.assertEquals(3, flushed.size());
+            Assert.assertTrue(flushed.get(0).equals("a:24") || flushed.get(0).equals("a:42"));
+            Assert.assertEquals("b:3", flushed.get(1));
+            Assert.assertTrue(flushed.get(2).equals("c:15") || flushed.get(2).equals("c:51"));
+            Assert.assertTrue(buffer.isEmpty());
+            Assert.assertEquals(0, buffer.getSizeInBytes());
+        }
+    }
+    
+    @Test
+    public void testDifferentColumnsAreNotGrouped() throws Exception {
+        SerializedKeyValueBuffer buffer = new SerializedKeyValueBuffer(1024, true);
+        buffer.add(key("a", "cf1"), value("1"));
+        buffer.add(key("a", "cf2"), value("2"));
+        Assert.assertEquals(2, flush(buffer).size());
+    }
+    
+    @Test
+    public void testReuseAndLargeEntries() throws Exception {
+        SerializedKeyValueBuffer buffer = new SerializedKeyValueBuffer(64, true);
+        buffer.add(key("a", "cf"), value("1"));
+        long capacity = buffer.getCapacity();
+        long size = buffer.getSizeInBytes();
+        Assert.assertTrue(size > 0);
+        flush(buffer);
+        
+        // the arenas are reused once the buffer is flushed
+        buffer.add(key("a", "cf"), value("1"));
+        Assert.assertEquals(capacity, buffer.getCapacity());
+        Assert.assertEquals(size, buffer.getSizeInBytes());
+        
+        // an entry larger than an arena gets an arena of its own
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append('x');
+        }
+        buffer.add(key("b", "cf"), value(large.toString()));
+        List<String> flushed = flush(buffer);
+        Assert.assertEquals(2, flushed.size());
+        Assert.assertEquals("b:" + large, flushed.get(1));
+    }
+}
@@ -1,11 +1,13 @@
 package datawave.ingest.table.aggregator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,6 +22,7 @@ import org.junit.Test;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 
 public class GlobalIndexUidAggregatorTest {
     
@@ -228,4 +231,96 @@ public class GlobalIndexUidAggregatorTest {
         assertEquals(1, resultList.getUIDCount());
         
     }
+    
+    private static Value toValue(long count, List<String> uids, List<String> removed, List<String> quarantined) {
+        Builder b = Uid.List.newBuilder();
+        b.setIGNORE(false);
+        b.setCOUNT(count);
+        b.addAllUID(uids);
+        b.addAllREMOVEDUID(removed);
+        b.addAllQUARANTINEUID(quarantined);
+        return new Value(b.build().toByteArray());
+    }
+    
+    @Test
+    public void testSortedOutputMatchesBuilder() throws Exception {
+        agg.reset();
+        Collection<Value> values = Lists.newArrayList();
+        values.add(toValue(2, Lists.newArrayList("c", "a"), Collections.emptyList(), Collections.emptyList()));
+        values.add(toValue(2, Lists.newArrayList("b", "a"), Collections.emptyList(), Collections.emptyList()));
+        values.add(toValue(-1, Collections.emptyList(), Lists.newArrayList("d"), Collections.emptyList()));
+        Value result = agg.reduce(new Key("key"), values.iterator());
+        
+        // the uids are written in sorted order, byte for byte as a builder would write them
+        Value expected = toValue(3, Lists.newArrayList("a", "b", "c"), Lists.newArrayList("d"), Collections.emptyList());
+        assertEquals(0, expected.compareTo(result.get()));
+        assertTrue(agg.propogateKey());
+    }
+    
+    @Test
+    public void testQuarantineAndRelease() throws Exception {
+        agg.reset();
+        Collection<Value> values = Lists.newArrayList();
+        values.add(toValue(-1, Collections.emptyList(), Collections.emptyList(), Lists.newArrayList("q1", "q2")));
+        values.add(toValue(1, Lists.newArrayList("q1"), Collections.emptyList(), Collections.emptyList()));
+        values.add(toValue(1, Lists.newArrayList("u1"), Collections.emptyList(), Lists.newArrayList("q2")));
+        Uid.List resultList = Uid.List.parseFrom(agg.reduce(new Key("key"), values.iterator()).get());
+        
+        // q1 is still quarantined, while q2 was released
+        assertEquals(Lists.newArrayList("q2", "u1"), resultList.getUIDList());
+        assertEquals(Lists.newArrayList("q1"), resultList.getQUARANTINEUIDList());
+        assertEquals(0, resultList.getREMOVEDUIDCount());
+        assertTrue(agg.propogateKey());
+    }
+    
+    @Test
+    public void testRemovalOfAllUids() throws Exception {
+        agg.reset();
+        Collection<Value> values = Lists.newArrayList();
+        values.add(toValue(2, Lists.newArrayList("a", "b"), Collections.emptyList(), Collections.emptyList()));
+        values.add(toValue(-2, Collections.emptyList(), Lists.newArrayList("b", "a"), Collections.emptyList()));
+        Uid.List resultList = Uid.List.parseFrom(agg.reduce(new Key("key"), values.iterator()).get());
+        assertEquals(0, resultList.getCOUNT());
+        assertEquals(0, resultList.getUIDCount());
+        assertEquals(Lists.newArrayList("a", "b"), resultList.getREMOVEDUIDList());
+        assertFalse(agg.propogateKey());
+    }
+    
+    @Test
+    public void testMissingRequiredField() throws Exception {
+        agg.reset();
+        // a UID field alone is well formed, but is missing the required IGNORE and COUNT
+        Value invalid = new Value(new byte[] {0x1a, 0x01, 'a'});
+        Collection<Value> values = Lists.newArrayList(invalid, toValue(1, Lists.newArrayList("b"), Collections.emptyList(), Collections.emptyList()));
+        Uid.List resultList = Uid.List.parseFrom(agg.reduce(new Key("key"), values.iterator()).get());
+        assertEquals(1, resultList.getCOUNT());
+        assertEquals(Lists.newArrayList("b"), resultList.getUIDList());
+    }
+    
+    @Test
+    public void testUidSet() {
+        GlobalIndexUidAggregator.UidSet set = new GlobalIndexUidAggregator.UidSet();
+        for (String uid : new String[] {"m", "c", "x", "a", "c", "\u00ff"}) {
+            set.add(ByteString.copyFromUtf8(uid));
+        }
+        assertEquals(5, set.size());
+        set.addAll(Lists.newArrayList(ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("z"), ByteString.copyFromUtf8("b")));
+        
+        GlobalIndexUidAggregator.UidSet other = new GlobalIndexUidAggregator.UidSet();
+        other.add(ByteString.copyFromUtf8("a"));
+        other.add(ByteString.copyFromUtf8("x"));
+        other.add(ByteString.copyFromUtf8("y"));
+        set.removeAll(other);
+        assertTrue(set.remove(ByteString.copyFromUtf8("m")));
+        assertFalse(set.remove(ByteString.copyFromUtf8("m")));
+        
+        List<String> uids = new ArrayList<>();
+        for (int i = 0; i < set.size(); i++) {
+            uids.add(set.get(i).toStringUtf8());
+        }
+        // sorted as unsigned bytes, so the multi-byte character sorts last
+        assertEquals(Lists.newArrayList("b", "c", "z", "\u00ff"), uids);
+        assertTrue(set.contains(ByteString.copyFromUtf8("z")));
+        assertFalse(set.contains(ByteString.copyFromUtf8("a")));
+    }
 }
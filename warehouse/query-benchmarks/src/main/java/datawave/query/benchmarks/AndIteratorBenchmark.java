@@ -0,0 +1,82 @@
+package datawave.query.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.iterator.NestedIterator;
+import datawave.query.iterator.logic.AndIterator;
+import datawave.query.iterator.logic.OrIterator;
+
+import org.apache.accumulo.core.data.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Intersection and union of field index terms by the AndIterator and OrIterator. Each invocation builds the iterator tree over one term per field and drains
+ * it, as the QueryIterator does for a shard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AndIteratorBenchmark {
+    
+    @Param({"10000"})
+    public int documents;
+    
+    @Param({"2", "4", "8"})
+    public int terms;
+    
+    @Param({"4"})
+    public int cardinality;
+    
+    private List<List<Key>> sources;
+    
+    @Setup
+    public void setup() {
+        ShardData data = new ShardData(documents, 0, terms, cardinality);
+        sources = new ArrayList<>();
+        for (int i = 0; i < terms; i++) {
+            sources.add(data.getDocumentKeys(ShardData.field(i), ShardData.value(0)));
+        }
+    }
+    
+    private List<NestedIterator<Key>> iterators() {
+        List<NestedIterator<Key>> iterators = new ArrayList<>(sources.size());
+        for (List<Key> source : sources) {
+            iterators.add(new KeyListIterator(source));
+        }
+        return iterators;
+    }
+    
+    @Benchmark
+    public void intersect(Blackhole blackhole) {
+        AndIterator<Key> and = new AndIterator<>(iterators());
+        and.initialize();
+        while (and.hasNext()) {
+            blackhole.consume(and.next());
+        }
+    }
+    
+    @Benchmark
+    public void union(Blackhole blackhole) {
+        OrIterator<Key> or = new OrIterator<>(iterators(), true);
+        or.initialize();
+        while (or.hasNext()) {
+            blackhole.consume(or.next());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package datawave.query.benchmarks;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares a JMH json result file (as written by {@code java -jar benchmarks.jar -rf json -rff results.json}) against a checked in baseline, and fails if any
+ * benchmark regressed by more than the allowed percentage. Benchmarks are matched on their name, mode and parameters; benchmarks that are missing from either
+ * file are reported but do not fail the comparison.
+ * 
+ * Usage: {@code BaselineComparator <baseline.json> <results.json> [maxRegressionPercent]}
+ */
+public class BaselineComparator {
+    public static final double DEFAULT_MAX_REGRESSION_PERCENT = 10.0;
+    
+    /**
+     * The primary metric of one benchmark run
+     */
+    public static class Result {
+        private final String name;
+        private final String mode;
+        private final double score;
+        private final String unit;
+        
+        public Result(String name, String mode, double score, String unit) {
+            this.name = name;
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public String getMode() {
+            return mode;
+        }
+        
+        public double getScore() {
+            return score;
+        }
+        
+        public String getUnit() {
+            return unit;
+        }
+        
+        /**
+         * @return true if a higher score is better (throughput), false if a lower score is better (average time, sample time and single shot)
+         */
+        public boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+        
+        @Override
+        public String toString() {
+            return name + " (" + mode + ") " + score + ' ' + unit;
+        }
+    }
+    
+    /**
+     * Read a JMH json result file
+     * 
+     * @param reader
+     * @return the results keyed on the benchmark name and parameters
+     */
+    public static Map<String,Result> read(Reader reader) {
+        Map<String,Result> results = new TreeMap<>();
+        JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+        for (JsonElement element : runs) {
+            JsonObject run = element.getAsJsonObject();
+            StringBuilder name = new StringBuilder(run.get("benchmark").getAsString());
+            if (run.has("params")) {
+                // order the parameters so that the key does not depend on the order they were written in
+                Map<String,String> params = new TreeMap<>();
+                for (Map.Entry<String,JsonElement> param : run.getAsJsonObject("params").entrySet()) {
+                    params.put(param.getKey(), param.getValue().getAsString());
+                }
+                name.append(params);
+            }
+            JsonObject metric = run.getAsJsonObject("primaryMetric");
+            Result result = new Result(name.toString(), run.get("mode").getAsString(), metric.get("score").getAsDouble(), metric.get("scoreUnit")
+                            .getAsString());
+            results.put(result.getName() + ' ' + result.getMode(), result);
+        }
+        return results;
+    }
+    
+    /**
+     * Compare the results against the baseline
+     * 
+     * @param baseline
+     * @param results
+     * @param maxRegressionPercent
+     *            the largest allowed change in score in the wrong direction, as a percentage of the baseline score
+     * @return a description of each regression, empty if there were none
+     */
+    public static List<String> compare(Map<String,Result> baseline, Map<String,Result> results, double maxRegressionPercent) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String,Result> entry : results.entrySet()) {
+            Result expected = baseline.get(entry.getKey());
+            Result actual = entry.getValue();
+            if (expected == null || expected.getScore() == 0 || !expected.getUnit().equals(actual.getUnit())) {
+                continue;
+            }
+            double change = 100.0 * (actual.getScore() - expected.getScore()) / expected.getScore();
+            double regression = (actual.isHigherBetter() ? -change : change);
+            if (regression > maxRegressionPercent) {
+                regressions.add(String.format("%s regressed %.1f%% (baseline %.3f, now %.3f %s)", actual.getName(), regression, expected.getScore(),
+                                actual.getScore(), actual.getUnit()));
+            }
+        }
+        return regressions;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: " + BaselineComparator.class.getName() + " <baseline.json> <results.json> [maxRegressionPercent]");
+            System.exit(2);
+        }
+        double maxRegressionPercent = (args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_MAX_REGRESSION_PERCENT);
+        
+        Map<String,Result> baseline;
+        Map<String,Result> results;
+        try (Reader baselineReader = new FileReader(args[0]); Reader resultsReader = new FileReader(args[1])) {
+            baseline = read(baselineReader);
+            results = read(resultsReader);
+        }
+        
+        for (String key : results.keySet()) {
+            if (!baseline.containsKey(key)) {
+                System.out.println("No baseline for " + key);
+            }
+        }
+        for (String key : baseline.keySet()) {
+            if (!results.containsKey(key)) {
+                System.out.println("No result for " + key);
+            }
+        }
+        
+        List<String> regressions = compare(baseline, results, maxRegressionPercent);
+        for (String regression : regressions) {
+            System.out.println(regression);
+        }
+        System.out.println(results.size() + " benchmarks compared, " + regressions.size() + " regressed by more than " + maxRegressionPercent + '%');
+        System.exit(regressions.isEmpty() ? 0 : 1);
+    }
+}
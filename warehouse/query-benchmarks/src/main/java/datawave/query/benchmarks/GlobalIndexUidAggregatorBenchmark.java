@@ -0,0 +1,104 @@
+package datawave.query.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import datawave.ingest.protobuf.Uid;
+import datawave.ingest.table.aggregator.GlobalIndexUidAggregator;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Compaction of global index entries with the GlobalIndexUidAggregator. Each invocation combines the values of the next global index key, as a compaction of
+ * the shardIndex would, so the throughput is in keys per second. The baseline is the HashSetUidAggregator, a copy of the aggregator from before it merged the
+ * uid lists at the byte level. Parsing the same values into protobuf messages is the floor of that baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlobalIndexUidAggregatorBenchmark {
+    
+    @Param({"1000"})
+    public int keys;
+    
+    // the number of values combined for each key
+    @Param({"5", "50"})
+    public int valuesPerKey;
+    
+    // the uids in each value, where 1 is a newly ingested entry and more is an entry that was already combined
+    @Param({"1", "10"})
+    public int uidsPerValue;
+    
+    private List<List<Value>> values;
+    private GlobalIndexUidAggregator aggregator;
+    private HashSetUidAggregator hashSetAggregator;
+    private Key key;
+    private int index = 0;
+    
+    @Setup
+    public void setup() {
+        values = new ArrayList<>(keys);
+        for (int i = 0; i < keys; i++) {
+            List<Value> keyValues = new ArrayList<>(valuesPerKey);
+            for (int j = 0; j < valuesPerKey; j++) {
+                Uid.List.Builder builder = Uid.List.newBuilder();
+                builder.setIGNORE(false);
+                builder.setCOUNT(uidsPerValue);
+                for (int k = 0; k < uidsPerValue; k++) {
+                    builder.addUID(UUID.randomUUID().toString());
+                }
+                keyValues.add(new Value(builder.build().toByteArray()));
+            }
+            values.add(keyValues);
+        }
+        aggregator = new GlobalIndexUidAggregator();
+        hashSetAggregator = new HashSetUidAggregator(GlobalIndexUidAggregator.MAX);
+        key = new Key(ShardData.value(0), ShardData.field(0), ShardData.SHARD + '\u0000' + ShardData.DATATYPE);
+    }
+    
+    private int nextIndex() {
+        int next = index;
+        index = (index + 1) % values.size();
+        return next;
+    }
+    
+    @Benchmark
+    public Value aggregate() {
+        aggregator.reset();
+        return aggregator.reduce(key, values.get(nextIndex()).iterator());
+    }
+    
+    @Benchmark
+    public Value hashSetAggregate() {
+        hashSetAggregator.reset();
+        return hashSetAggregator.reduce(key, values.get(nextIndex()).iterator());
+    }
+    
+    @Benchmark
+    public int parse() throws InvalidProtocolBufferException {
+        int uids = 0;
+        for (Value value : values.get(nextIndex())) {
+            uids += Uid.List.parseFrom(value.get()).getUIDCount();
+        }
+        return uids;
+    }
+}
@@ -0,0 +1,127 @@
+package datawave.query.benchmarks;
+
+import java.util.HashSet;
+import java.util.Iterator;
+
+import datawave.ingest.protobuf.Uid;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.log4j.Logger;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * A copy of the reduce of the GlobalIndexUidAggregator from before it merged the uid lists at the byte level. It parses every value into a Uid.List and
+ * collects the uids and removals in HashSets. It is kept as the baseline of the GlobalIndexUidAggregatorBenchmark, and is not used outside of the benchmarks.
+ */
+public class HashSetUidAggregator {
+    private static final Logger log = Logger.getLogger(HashSetUidAggregator.class);
+    
+    private Uid.List.Builder builder = Uid.List.newBuilder();
+    private HashSet<String> uids = new HashSet<>();
+    private HashSet<String> uidsToRemove = new HashSet<>();
+    private HashSet<String> quarantinedIds = new HashSet<>();
+    private HashSet<String> releasedUids = new HashSet<>();
+    private boolean seenIgnore = false;
+    private boolean propogate = true;
+    private long count = 0;
+    private final int maxUids;
+    
+    public HashSetUidAggregator(int maxUids) {
+        this.maxUids = maxUids;
+    }
+    
+    private Value aggregate() {
+        builder.setCOUNT(count);
+        
+        if (seenIgnore || count > maxUids) {
+            builder.setIGNORE(true);
+            builder.clearUID();
+            propogate = false;
+        } else {
+            builder.setIGNORE(false);
+            
+            uidsToRemove.removeAll(quarantinedIds);
+            uidsToRemove.removeAll(releasedUids);
+            quarantinedIds.removeAll(releasedUids);
+            
+            uids.removeAll(uidsToRemove);
+            uids.removeAll(quarantinedIds);
+            
+            if (!releasedUids.isEmpty()) {
+                uids.addAll(releasedUids);
+            }
+            
+            builder.addAllUID(uids);
+        }
+        
+        builder.clearREMOVEDUID();
+        
+        if (propogate) {
+            builder.addAllREMOVEDUID(uidsToRemove);
+            builder.addAllQUARANTINEUID(quarantinedIds);
+        }
+        return new Value(builder.build().toByteArray());
+    }
+    
+    public Value reduce(Key key, Iterator<Value> iter) {
+        while (iter.hasNext()) {
+            Value value = iter.next();
+            try {
+                Uid.List v = Uid.List.parseFrom(value.get());
+                
+                long delta = v.getCOUNT();
+                count += delta;
+                if (v.getIGNORE()) {
+                    seenIgnore = true;
+                }
+                
+                if (delta > 0) {
+                    for (String uid : v.getQUARANTINEUIDList()) {
+                        quarantinedIds.remove(uid);
+                        releasedUids.add(uid);
+                    }
+                    
+                    for (String uid : v.getUIDList()) {
+                        if (!uidsToRemove.contains(uid) && !quarantinedIds.contains(uid)) {
+                            if (uids.size() < maxUids) {
+                                uids.add(uid);
+                            }
+                        }
+                    }
+                } else if (delta < 0 && !seenIgnore) {
+                    for (String uid : v.getREMOVEDUIDList()) {
+                        uidsToRemove.add(uid);
+                        if (uids.contains(uid)) {
+                            uids.remove(uid);
+                        }
+                    }
+                    
+                    quarantinedIds.addAll(v.getQUARANTINEUIDList());
+                    
+                    for (String uid : v.getUIDList()) {
+                        uidsToRemove.add(uid);
+                        if (uids.contains(uid)) {
+                            uids.remove(uid);
+                        }
+                    }
+                }
+            } catch (InvalidProtocolBufferException e) {
+                log.error("Value passed to aggregator was not of type Uid.List", e);
+            }
+        }
+        return aggregate();
+    }
+    
+    public void reset() {
+        count = 0;
+        seenIgnore = false;
+        propogate = true;
+        builder = Uid.List.newBuilder();
+        uids.clear();
+        uidsToRemove.clear();
+        releasedUids.clear();
+        quarantinedIds.clear();
+    }
+}
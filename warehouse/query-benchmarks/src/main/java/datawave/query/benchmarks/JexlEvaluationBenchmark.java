@@ -0,0 +1,91 @@
+package datawave.query.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.attributes.Document;
+import datawave.query.function.JexlEvaluation;
+import datawave.query.jexl.DatawaveJexlContext;
+import datawave.query.util.Tuple3;
+
+import org.apache.accumulo.core.data.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluation of a query against documents with JexlEvaluation. The contexts are built up front, so each invocation measures only the evaluation of the script
+ * against the next document in the shard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JexlEvaluationBenchmark {
+    
+    @Param({"1000"})
+    public int documents;
+    
+    @Param({"10"})
+    public int fields;
+    
+    @Param({"eq", "and", "or", "regex"})
+    public String query;
+    
+    private JexlEvaluation evaluation;
+    private List<Tuple3<Key,Document,DatawaveJexlContext>> inputs;
+    private int index = 0;
+    
+    /**
+     * @param name
+     *            the name of one of the benchmark queries
+     * @return the query
+     */
+    static String getQuery(String name) {
+        switch (name) {
+            case "eq":
+                return "FIELD0 == 'v1'";
+            case "and":
+                return "FIELD0 == 'v1' && FIELD1 == 'v2' && FIELD2 != 'v3'";
+            case "or":
+                return "FIELD0 == 'v1' || FIELD1 == 'v2' || FIELD2 == 'v3' || FIELD3 == 'v4'";
+            case "regex":
+                return "FIELD0 =~ 'v[1-3]' && FIELD1 =~ 'v.*'";
+            default:
+                throw new IllegalArgumentException("Unknown query " + name);
+        }
+    }
+    
+    @Setup
+    public void setup() {
+        ShardData data = new ShardData(documents, 0, fields, 10);
+        List<Key> documentKeys = data.getDocumentKeys();
+        List<Document> docs = data.createDocuments();
+        inputs = new ArrayList<>(docs.size());
+        for (int i = 0; i < docs.size(); i++) {
+            Document document = docs.get(i);
+            DatawaveJexlContext context = new DatawaveJexlContext();
+            document.visit(document.getDictionary().keySet(), context);
+            inputs.add(new Tuple3<>(documentKeys.get(i), document, context));
+        }
+        evaluation = new JexlEvaluation(getQuery(query));
+    }
+    
+    @Benchmark
+    public boolean evaluate() {
+        Tuple3<Key,Document,DatawaveJexlContext> input = inputs.get(index);
+        index = (index + 1) % inputs.size();
+        return evaluation.apply(input);
+    }
+}
@@ -0,0 +1,71 @@
+package datawave.query.benchmarks;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import datawave.query.attributes.Document;
+import datawave.query.iterator.NestedIterator;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+
+/**
+ * A leaf NestedIterator over a sorted list of document keys, standing in for an index iterator. It does not allocate as it moves so that a benchmark over it
+ * measures the nested iterator above it.
+ */
+public class KeyListIterator implements NestedIterator<Key> {
+    private final List<Key> keys;
+    private final Document document = new Document();
+    private int index = 0;
+    
+    public KeyListIterator(List<Key> keys) {
+        this.keys = keys;
+    }
+    
+    @Override
+    public void initialize() {
+        index = 0;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        return index < keys.size();
+    }
+    
+    @Override
+    public Key next() {
+        return keys.get(index++);
+    }
+    
+    @Override
+    public Key move(Key minimum) {
+        while (index < keys.size()) {
+            Key key = keys.get(index++);
+            if (key.compareTo(minimum, PartialKey.ROW_COLFAM) >= 0) {
+                return key;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public Collection<NestedIterator<Key>> leaves() {
+        return Collections.singletonList(this);
+    }
+    
+    @Override
+    public Collection<NestedIterator<Key>> children() {
+        return Collections.emptyList();
+    }
+    
+    @Override
+    public Document document() {
+        return document;
+    }
+    
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,75 @@
+package datawave.query.benchmarks;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.attributes.Document;
+import datawave.query.composite.CompositeMetadata;
+import datawave.query.function.Aggregation;
+import datawave.query.function.KeyToDocumentData;
+import datawave.query.iterator.aggregation.DocumentData;
+import datawave.query.predicate.TimeFilter;
+
+import org.apache.accumulo.core.data.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Document construction from the shard: seeking to a document and collecting its attributes with KeyToDocumentData, and then turning them into a Document
+ * with the Aggregation function. Each invocation handles the next document in the shard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyToDocumentDataBenchmark {
+    
+    @Param({"1000"})
+    public int documents;
+    
+    @Param({"10", "50"})
+    public int fields;
+    
+    private List<Key> documentKeys;
+    private KeyToDocumentData keyToDocumentData;
+    private Aggregation aggregation;
+    private int index = 0;
+    
+    @Setup
+    public void setup() {
+        ShardData data = new ShardData(documents, 0, fields, 10);
+        documentKeys = data.getDocumentKeys();
+        keyToDocumentData = new KeyToDocumentData(data.createSource());
+        aggregation = new Aggregation(TimeFilter.alwaysTrue(), data.getTypeMetadata(), new CompositeMetadata(), false, true, false, null);
+    }
+    
+    private Entry<Key,Document> nextDocument() {
+        Key documentKey = documentKeys.get(index);
+        index = (index + 1) % documentKeys.size();
+        return Maps.immutableEntry(documentKey, new Document());
+    }
+    
+    @Benchmark
+    public Entry<DocumentData,Document> collect() {
+        return keyToDocumentData.apply(nextDocument());
+    }
+    
+    @Benchmark
+    public Entry<Key,Document> construct() {
+        return aggregation.apply(keyToDocumentData.apply(nextDocument()));
+    }
+}
@@ -0,0 +1,74 @@
+package datawave.query.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.attributes.Document;
+import datawave.query.function.deserializer.KryoDocumentDeserializer;
+import datawave.query.function.serializer.KryoDocumentSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of result documents with the KryoDocumentSerializer, and the matching KryoDocumentDeserializer on the web server side. Each invocation handles
+ * the next document in the shard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KryoDocumentSerializerBenchmark {
+    
+    @Param({"1000"})
+    public int documents;
+    
+    @Param({"10", "50"})
+    public int fields;
+    
+    private List<Document> docs;
+    private byte[][] serialized;
+    private KryoDocumentSerializer serializer;
+    private KryoDocumentDeserializer deserializer;
+    private int index = 0;
+    
+    @Setup
+    public void setup() {
+        ShardData data = new ShardData(documents, 0, fields, 10);
+        docs = data.createDocuments();
+        serializer = new KryoDocumentSerializer();
+        deserializer = new KryoDocumentDeserializer();
+        serialized = new byte[docs.size()][];
+        for (int i = 0; i < docs.size(); i++) {
+            serialized[i] = serializer.serialize(docs.get(i));
+        }
+    }
+    
+    private int nextIndex() {
+        int next = index;
+        index = (index + 1) % docs.size();
+        return next;
+    }
+    
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(docs.get(nextIndex()));
+    }
+    
+    @Benchmark
+    public Document deserialize() {
+        return deserializer.deserialize(new ByteArrayInputStream(serialized[nextIndex()]));
+    }
+}
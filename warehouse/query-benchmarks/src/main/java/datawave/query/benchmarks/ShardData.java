@@ -0,0 +1,235 @@
+package datawave.query.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import datawave.accumulo.inmemory.InMemoryInstance;
+import datawave.data.type.LcNoDiacriticsType;
+import datawave.query.attributes.Document;
+import datawave.query.composite.CompositeMetadata;
+import datawave.query.function.Aggregation;
+import datawave.query.function.KeyToDocumentData;
+import datawave.query.predicate.TimeFilter;
+import datawave.query.util.TypeMetadata;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Synthetic shard table data for the benchmarks. A single shard row is populated with top level documents, each with a number of children, in the same layout
+ * the ingest writes: event keys of the form {@code shard : datatype\0uid : FIELD\0value} and field index keys of the form
+ * {@code shard : fi\0FIELD : value\0datatype\0uid}. The data is written to an InMemoryAccumulo instance and scanned back out so the benchmarks run over the
+ * same keys (and visibilities) a tserver would hand to the query iterators.
+ * 
+ * Field values are drawn from a small vocabulary ({@code v0} .. {@code vN}) so that the intersection of terms is neither empty nor the whole shard. The data
+ * is generated from a fixed seed, so two runs with the same parameters see the same keys.
+ */
+public class ShardData {
+    private static final Logger log = Logger.getLogger(ShardData.class);
+    
+    public static final String TABLE = "shard";
+    public static final String SHARD = "20190101_0";
+    public static final String DATATYPE = "datatype";
+    public static final String VISIBILITY = "PUBLIC";
+    public static final String FIELD_PREFIX = "FIELD";
+    public static final String VALUE_PREFIX = "v";
+    
+    private static final long SEED = 1234567L;
+    
+    private final int numDocuments;
+    private final int numChildren;
+    private final int numFields;
+    private final int cardinality;
+    
+    private final SortedMap<Key,Value> data = new TreeMap<>();
+    private final List<Key> documentKeys = new ArrayList<>();
+    private final List<String> rootUids = new ArrayList<>();
+    private final TypeMetadata typeMetadata = new TypeMetadata();
+    
+    /**
+     * @param numDocuments
+     *            the number of top level documents
+     * @param numChildren
+     *            the number of children per top level document
+     * @param numFields
+     *            the number of fields per document
+     * @param cardinality
+     *            the number of distinct values per field
+     */
+    public ShardData(int numDocuments, int numChildren, int numFields, int cardinality) {
+        this.numDocuments = numDocuments;
+        this.numChildren = numChildren;
+        this.numFields = numFields;
+        this.cardinality = cardinality;
+        
+        for (int i = 0; i < numFields; i++) {
+            typeMetadata.put(field(i), DATATYPE, LcNoDiacriticsType.class.getName());
+        }
+        
+        try {
+            load();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create the synthetic shard data", e);
+        }
+    }
+    
+    public static String field(int index) {
+        return FIELD_PREFIX + index;
+    }
+    
+    public static String value(int index) {
+        return VALUE_PREFIX + index;
+    }
+    
+    private void load() throws Exception {
+        InMemoryInstance instance = new InMemoryInstance(ShardData.class.getName());
+        Connector connector = instance.getConnector("root", new PasswordToken(new byte[0]));
+        connector.securityOperations().changeUserAuthorizations("root", new Authorizations(VISIBILITY));
+        if (!connector.tableOperations().exists(TABLE)) {
+            connector.tableOperations().create(TABLE);
+        }
+        
+        Random random = new Random(SEED);
+        ColumnVisibility visibility = new ColumnVisibility(VISIBILITY);
+        BatchWriter writer = connector.createBatchWriter(TABLE, new BatchWriterConfig());
+        try {
+            for (int i = 0; i < numDocuments; i++) {
+                String rootUid = String.format("-%08x.%08x.%08x", random.nextInt(), random.nextInt(), i);
+                rootUids.add(rootUid);
+                
+                Mutation m = new Mutation(SHARD);
+                writeDocument(m, rootUid, visibility, random);
+                for (int child = 1; child <= numChildren; child++) {
+                    writeDocument(m, rootUid + '.' + child, visibility, random);
+                }
+                writer.addMutation(m);
+            }
+        } finally {
+            writer.close();
+        }
+        
+        Scanner scanner = connector.createScanner(TABLE, new Authorizations(VISIBILITY));
+        for (Map.Entry<Key,Value> entry : scanner) {
+            data.put(entry.getKey(), entry.getValue());
+        }
+        Collections.sort(rootUids);
+        Collections.sort(documentKeys);
+        
+        if (log.isDebugEnabled()) {
+            log.debug("Created " + data.size() + " keys for " + documentKeys.size() + " documents");
+        }
+    }
+    
+    private void writeDocument(Mutation m, String uid, ColumnVisibility visibility, Random random) {
+        String cf = DATATYPE + '\0' + uid;
+        documentKeys.add(new Key(SHARD, cf));
+        for (int i = 0; i < numFields; i++) {
+            String field = field(i);
+            String value = value(random.nextInt(cardinality));
+            m.put(cf, field + '\0' + value, visibility, new Value(new byte[0]));
+            m.put("fi\0" + field, value + '\0' + cf, visibility, new Value(new byte[0]));
+        }
+    }
+    
+    /**
+     * @return all of the keys in the shard
+     */
+    public SortedMap<Key,Value> getData() {
+        return Collections.unmodifiableSortedMap(data);
+    }
+    
+    /**
+     * @return a new iterator over all of the keys in the shard
+     */
+    public SortedKeyValueIterator<Key,Value> createSource() {
+        return new SortedMapIterator(data);
+    }
+    
+    /**
+     * @return the document keys ({@code shard : datatype\0uid}) of every top level document and child, in sorted order
+     */
+    public List<Key> getDocumentKeys() {
+        return Collections.unmodifiableList(documentKeys);
+    }
+    
+    /**
+     * @return the uids of the top level documents, in sorted order
+     */
+    public List<String> getRootUids() {
+        return Collections.unmodifiableList(rootUids);
+    }
+    
+    /**
+     * Get the document keys that contain a term, as an index iterator would return them
+     * 
+     * @param field
+     * @param value
+     * @return the sorted document keys ({@code shard : datatype\0uid}) with the term
+     */
+    public List<Key> getDocumentKeys(String field, String value) {
+        List<Key> keys = new ArrayList<>();
+        String prefix = value + '\0';
+        for (Key key : data.subMap(new Key(SHARD, "fi\0" + field, prefix), new Key(SHARD, "fi\0" + field, prefix + '\uffff')).keySet()) {
+            String cq = key.getColumnQualifier().toString();
+            keys.add(new Key(SHARD, cq.substring(prefix.length())));
+        }
+        return keys;
+    }
+    
+    /**
+     * Get the uids that contain a term, as the global index would return them
+     * 
+     * @param field
+     * @param value
+     * @return the sorted uids with the term
+     */
+    public List<String> getUids(String field, String value) {
+        List<String> uids = new ArrayList<>();
+        for (Key key : getDocumentKeys(field, value)) {
+            String cf = key.getColumnFamily().toString();
+            uids.add(cf.substring(cf.indexOf('\0') + 1));
+        }
+        return uids;
+    }
+    
+    /**
+     * Build the documents in the shard the way the QueryIterator does, via the KeyToDocumentData and Aggregation functions
+     * 
+     * @return a document for every top level document and child, in sorted order
+     */
+    public List<Document> createDocuments() {
+        KeyToDocumentData keyToDocumentData = new KeyToDocumentData(createSource());
+        Aggregation aggregation = new Aggregation(TimeFilter.alwaysTrue(), typeMetadata, new CompositeMetadata(), false, true, false, null);
+        List<Document> documents = new ArrayList<>(documentKeys.size());
+        for (Key documentKey : documentKeys) {
+            documents.add(aggregation.apply(keyToDocumentData.apply(Maps.immutableEntry(documentKey, new Document()))).getValue());
+        }
+        return documents;
+    }
+    
+    public TypeMetadata getTypeMetadata() {
+        return typeMetadata;
+    }
+    
+    public int getNumFields() {
+        return numFields;
+    }
+}
@@ -0,0 +1,79 @@
+package datawave.query.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.jexl.JexlASTHelper;
+import datawave.query.predicate.TLDEventDataFilter;
+
+import org.apache.accumulo.core.data.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TLDEventDataFilter.keep() over every event key of a top level document and its children, as the TLD query iterator calls it while aggregating a document.
+ * Each invocation handles the next top level document in the shard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLDEventDataFilterBenchmark {
+    
+    @Param({"1000"})
+    public int documents;
+    
+    @Param({"5", "50"})
+    public int children;
+    
+    @Param({"10"})
+    public int fields;
+    
+    private TLDEventDataFilter filter;
+    private List<Key> rootKeys;
+    private List<List<Key>> documentKeys;
+    private int index = 0;
+    
+    @Setup
+    public void setup() throws Exception {
+        ShardData data = new ShardData(documents, children, fields, 10);
+        rootKeys = new ArrayList<>();
+        documentKeys = new ArrayList<>();
+        for (String uid : data.getRootUids()) {
+            String cf = ShardData.DATATYPE + '\0' + uid;
+            rootKeys.add(new Key(ShardData.SHARD, cf));
+            // the root and all of its children share the root column family as a prefix
+            documentKeys.add(new ArrayList<>(data.getData().subMap(new Key(ShardData.SHARD, cf), new Key(ShardData.SHARD, cf + '\uffff')).keySet()));
+        }
+        
+        // FIELD1 is also treated as a non-event field so that the child keys go through the query field filter
+        filter = new TLDEventDataFilter(JexlASTHelper.parseJexlQuery("FIELD0 == 'v1' && FIELD1 == 'v2'"), data.getTypeMetadata(), null, null, -1, -1,
+                        Collections.<String,Integer> emptyMap(), null, Collections.singleton(ShardData.field(1)));
+    }
+    
+    @Benchmark
+    public int keep() {
+        int kept = 0;
+        filter.startNewDocument(rootKeys.get(index));
+        for (Key key : documentKeys.get(index)) {
+            if (filter.keep(key)) {
+                kept++;
+            }
+        }
+        index = (index + 1) % rootKeys.size();
+        return kept;
+    }
+}
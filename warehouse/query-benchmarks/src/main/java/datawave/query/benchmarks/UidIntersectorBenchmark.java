@@ -0,0 +1,70 @@
+package datawave.query.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.ancestor.AncestorUidIntersector;
+import datawave.query.index.lookup.IndexInfo;
+import datawave.query.jexl.JexlNodeFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Intersection of the uid lists of two global index terms for a shard, with the default IndexInfo intersector and with the AncestorUidIntersector used by the
+ * ancestor query logic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UidIntersectorBenchmark {
+    
+    @Param({"1000", "10000"})
+    public int documents;
+    
+    @Param({"2"})
+    public int children;
+    
+    @Param({"4"})
+    public int cardinality;
+    
+    private IndexInfo left;
+    private IndexInfo right;
+    private AncestorUidIntersector ancestorUidIntersector;
+    
+    @Setup
+    public void setup() {
+        ShardData data = new ShardData(documents, children, 2, cardinality);
+        left = createIndexInfo(data, ShardData.field(0), ShardData.value(0));
+        right = createIndexInfo(data, ShardData.field(1), ShardData.value(0));
+        ancestorUidIntersector = new AncestorUidIntersector();
+    }
+    
+    private static IndexInfo createIndexInfo(ShardData data, String field, String value) {
+        IndexInfo info = new IndexInfo(data.getUids(field, value));
+        info.applyNode(JexlNodeFactory.buildEQNode(field, value));
+        return info;
+    }
+    
+    @Benchmark
+    public IndexInfo intersect() {
+        return left.intersect(right);
+    }
+    
+    @Benchmark
+    public IndexInfo intersectAncestors() {
+        return left.intersect(right, new ArrayList<>(), ancestorUidIntersector);
+    }
+}
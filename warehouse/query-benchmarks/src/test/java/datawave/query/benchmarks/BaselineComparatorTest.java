@@ -0,0 +1,41 @@
+package datawave.query.benchmarks;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BaselineComparatorTest {
+    
+    private static String run(String benchmark, String mode, String params, double score, String unit) {
+        return "{\"benchmark\":\"" + benchmark + "\",\"mode\":\"" + mode + "\",\"params\":{" + params + "},\"primaryMetric\":{\"score\":" + score
+                        + ",\"scoreUnit\":\"" + unit + "\"}}";
+    }
+    
+    @Test
+    public void testCompare() {
+        Map<String,BaselineComparator.Result> baseline = BaselineComparator.read(new StringReader("["
+                        + run("a.Bench.time", "avgt", "\"terms\":\"2\",\"documents\":\"10\"", 100.0, "us/op") + ","
+                        + run("a.Bench.time", "avgt", "\"terms\":\"4\",\"documents\":\"10\"", 100.0, "us/op") + ","
+                        + run("a.Bench.ops", "thrpt", "", 100.0, "ops/s") + "]"));
+        assertEquals(3, baseline.size());
+        
+        // the parameters are written in a different order, and only one of the runs is slower than allowed
+        Map<String,BaselineComparator.Result> results = BaselineComparator.read(new StringReader("["
+                        + run("a.Bench.time", "avgt", "\"documents\":\"10\",\"terms\":\"2\"", 105.0, "us/op") + ","
+                        + run("a.Bench.time", "avgt", "\"documents\":\"10\",\"terms\":\"4\"", 150.0, "us/op") + ","
+                        + run("a.Bench.ops", "thrpt", "", 95.0, "ops/s") + "," + run("a.Bench.other", "avgt", "", 1.0, "us/op") + "]"));
+        
+        List<String> regressions = BaselineComparator.compare(baseline, results, 10.0);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0), regressions.get(0).startsWith("a.Bench.time{documents=10, terms=4} regressed 50.0%"));
+        
+        // a lower throughput is a regression
+        regressions = BaselineComparator.compare(baseline, results, 1.0);
+        assertEquals(3, regressions.size());
+    }
+}
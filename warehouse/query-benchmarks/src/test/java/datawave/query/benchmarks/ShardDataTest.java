@@ -0,0 +1,48 @@
+package datawave.query.benchmarks;
+
+import java.util.List;
+
+import datawave.query.attributes.Document;
+
+import org.apache.accumulo.core.data.Key;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardDataTest {
+    
+    @Test
+    public void testLayout() {
+        ShardData data = new ShardData(20, 2, 3, 4);
+        
+        // each document has one event key and one field index key per field
+        assertEquals(60, data.getDocumentKeys().size());
+        assertEquals(20, data.getRootUids().size());
+        assertEquals(60 * 3 * 2, data.getData().size());
+        
+        int total = 0;
+        for (int i = 0; i < 4; i++) {
+            List<Key> keys = data.getDocumentKeys(ShardData.field(0), ShardData.value(i));
+            for (Key key : keys) {
+                assertTrue(data.getDocumentKeys().contains(key));
+            }
+            total += keys.size();
+        }
+        assertEquals(60, total);
+    }
+    
+    @Test
+    public void testDocuments() {
+        ShardData data = new ShardData(10, 0, 5, 4);
+        List<Document> documents = data.createDocuments();
+        assertEquals(10, documents.size());
+        for (Document document : documents) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(document.containsKey(ShardData.field(i)));
+            }
+            assertFalse(document.containsKey(ShardData.field(5)));
+        }
+    }
+}
@@ -12,8 +12,13 @@ import datawave.query.iterator.profile.QuerySpanCollector;
 import datawave.query.iterator.profile.SourceTrackingIterator;
 import datawave.query.predicate.TimeFilter;
 import datawave.query.util.TypeMetadata;
+import datawave.query.util.sortedset.BufferedFileBackedSortedSet;
+import datawave.query.util.sortedset.BufferedFileBackedSortedSet.SortedSetBufferFactory;
 import datawave.query.util.sortedset.HdfsBackedSortedSet;
 import datawave.query.util.sortedset.KeyValueSerializable;
+import datawave.query.util.sortedset.LocalMappedBackedSortedSet;
+import datawave.query.util.sortedset.MappedFileSortedSet;
+import datawave.query.util.sortedset.OffHeapKeyValueSortedSet;
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.PartialKey;
@@ -30,6 +35,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -74,6 +80,8 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
         private boolean allowDirReuse;
         private long scanThreshold = 10000;
         private int hdfsBackedSetBufferSize = 10000;
+        private boolean offHeapBackedSetBuffer = false;
+        private boolean mappedBackedSetFiles = false;
         private int maxOpenFiles = 100;
         private boolean sortedUIDs = true;
         protected QuerySpanCollector querySpanCollector = null;
@@ -136,6 +144,16 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
             return self();
         }
         
+        public B withOffHeapBackedSetBuffer(boolean offHeapBackedSetBuffer) {
+            this.offHeapBackedSetBuffer = offHeapBackedSetBuffer;
+            return self();
+        }
+        
+        public B withMappedBackedSetFiles(boolean mappedBackedSetFiles) {
+            this.mappedBackedSetFiles = mappedBackedSetFiles;
+            return self();
+        }
+        
         public B withMaxRangeSplit(int maxRangeSplit) {
             this.maxRangeSplit = maxRangeSplit;
             return self();
@@ -245,6 +263,10 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
     private final long scanThreshold;
     // the number of entries to cache in memory before flushing to hdfs
     private final int hdfsBackedSetBufferSize;
+    // buffer the entries off heap instead of in a TreeSet
+    private boolean offHeapBackedSetBuffer = false;
+    // spill to memory mapped block files when the cache dir is on the local file system
+    private boolean mappedBackedSetFiles = false;
     // the max number of files to open simultaneously during a merge source
     private final int maxOpenFiles;
     
@@ -261,8 +283,8 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
     // an fiSource used when not doing sorted UIDs
     private SortedKeyValueIterator<Key,Value> fiSource = null;
     
-    // the hdfs backed sorted set
-    private HdfsBackedSortedSet<KeyValueSerializable> set = null;
+    // the hdfs (or local disk) backed sorted set
+    private BufferedFileBackedSortedSet<KeyValueSerializable> set = null;
     // a thread safe wrapper around the sorted set used by the scan threads
     private SortedSet<KeyValueSerializable> threadSafeSet = null;
     // the iterator (merge sort) of key values once the sorted set has been filled
@@ -334,6 +356,8 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
                         builder.hdfsBackedSetBufferSize, builder.maxRangeSplit, builder.maxOpenFiles, builder.fs, builder.uniqueDir, builder.queryLock,
                         builder.allowDirReuse, builder.returnKeyType, builder.sortedUIDs, builder.compositeMetadata, builder.compositeSeekThreshold,
                         builder.typeMetadata);
+        this.offHeapBackedSetBuffer = builder.offHeapBackedSetBuffer;
+        this.mappedBackedSetFiles = builder.mappedBackedSetFiles;
     }
     
     @SuppressWarnings("hiding")
@@ -398,6 +422,8 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
         this.scanThreshold = other.scanThreshold;
         this.scanTimeout = other.scanTimeout;
         this.hdfsBackedSetBufferSize = other.hdfsBackedSetBufferSize;
+        this.offHeapBackedSetBuffer = other.offHeapBackedSetBuffer;
+        this.mappedBackedSetFiles = other.mappedBackedSetFiles;
         this.maxOpenFiles = other.maxOpenFiles;
         
         this.set = other.set;
@@ -803,7 +829,7 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
         
         // create a set if needed (does not actually need to be thread safe as we are only using one thread in this case)
         if (this.threadSafeSet == null) {
-            this.threadSafeSet = new TreeSet<>();
+            this.threadSafeSet = (offHeapBackedSetBuffer ? new OffHeapKeyValueSortedSet() : new TreeSet<>());
         } else {
             this.threadSafeSet.clear();
         }
@@ -1073,6 +1099,15 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
         return new Path(this.uniqueDir, row);
     }
     
+    /**
+     * Is the cache dir on the local file system
+     * 
+     * @return true if the file system is local
+     */
+    protected boolean isLocalFileSystem() {
+        return "file".equals(this.fs.getUri().getScheme());
+    }
+    
     /**
      * Clear out the current row based hdfs backed set
      * 
@@ -1113,7 +1148,16 @@ public abstract class DatawaveFieldIndexCachingIteratorJexl extends WrappingIter
                 this.createdRowDir = false;
             }
             
-            this.set = new HdfsBackedSortedSet<>(null, hdfsBackedSetBufferSize, fs, rowDir, maxOpenFiles);
+            SortedSetBufferFactory<KeyValueSerializable> bufferFactory = null;
+            if (offHeapBackedSetBuffer) {
+                bufferFactory = comparator -> new OffHeapKeyValueSortedSet(hdfsBackedSetBufferSize);
+            }
+            if (mappedBackedSetFiles && isLocalFileSystem()) {
+                this.set = new LocalMappedBackedSortedSet<>(null, hdfsBackedSetBufferSize, new File(rowDir.toUri().getPath()), maxOpenFiles,
+                                new MappedFileSortedSet.KeyValueCodec(), MappedFileSortedSet.DEFAULT_BLOCK_SIZE, bufferFactory);
+            } else {
+                this.set = new HdfsBackedSortedSet<>(null, hdfsBackedSetBufferSize, fs, rowDir, maxOpenFiles, bufferFactory);
+            }
             this.threadSafeSet = Collections.synchronizedSortedSet(this.set);
             this.currentRow = row;
             this.setControl.takeOwnership(row, this);
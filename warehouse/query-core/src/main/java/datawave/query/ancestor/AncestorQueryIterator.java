@@ -129,7 +129,7 @@ public class AncestorQueryIterator extends QueryIterator {
     
     @Override
     protected JexlEvaluation getJexlEvaluation(NestedQueryIterator<Key> documentSource) {
-        return new JexlEvaluation(query, getArithmetic()) {
+        JexlEvaluation evaluation = new JexlEvaluation(query, getArithmetic()) {
             private Key currentKey = null;
             
             private boolean isCurrentDoc(Key key) {
@@ -166,6 +166,7 @@ public class AncestorQueryIterator extends QueryIterator {
                 return super.apply(input);
             }
         };
+        return (isCompiledEvaluation() ? evaluation.compile() : evaluation);
     }
     
     @SuppressWarnings({"rawtypes", "unchecked"})
@@ -41,13 +41,25 @@ public class AttributeFactory {
     
     private final TypeMetadata typeMetadata;
     
+    private final NormalizedValueCache normalizedValueCache;
+    
     private String defaultType = NoOpType.class.getName();
     private Class<?> mostGeneralType = LcNoDiacriticsType.class;
     private static final List<Class<?>> mostGeneralTypes = Collections
                     .unmodifiableList(Lists.<Class<?>> newArrayList(NoOpType.class, LcNoDiacriticsType.class));
     
     public AttributeFactory(TypeMetadata typeMetadata) {
+        this(typeMetadata, (NormalizedValueCache) null);
+    }
+    
+    /**
+     * @param typeMetadata
+     * @param normalizedValueCache
+     *            a cache of normalized values to share across factories, may be null
+     */
+    public AttributeFactory(TypeMetadata typeMetadata, NormalizedValueCache normalizedValueCache) {
         this.typeMetadata = typeMetadata;
+        this.normalizedValueCache = normalizedValueCache;
     }
     
     public AttributeFactory(TypeMetadata typeMetadata, String defaultType) {
@@ -133,9 +145,18 @@ public class AttributeFactory {
     }
     
     protected Attribute<?> getAttribute(Class<?> dataTypeClass, String fieldName, String data, Key key, boolean toKeep) throws Exception {
+        if (normalizedValueCache != null) {
+            Type<?> type = normalizedValueCache.get(dataTypeClass, data);
+            if (type != null) {
+                return new TypeAttribute(type, key, toKeep);
+            }
+        }
         Type<?> type = (Type<?>) dataTypeClass.newInstance();
         try {
             type.setDelegateFromString(data);
+            if (normalizedValueCache != null) {
+                normalizedValueCache.put(dataTypeClass, data, type);
+            }
             return new TypeAttribute(type, key, toKeep);
         } catch (Exception ex) {
             
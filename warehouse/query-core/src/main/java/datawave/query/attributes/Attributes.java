@@ -86,6 +86,10 @@ public class Attributes extends AttributeBag<Attributes> implements Serializable
         return _bytes;
     }
     
+    boolean isTrackSizes() {
+        return trackSizes;
+    }
+    
     public void add(Attribute<? extends Comparable<?>> attr) {
         if (!this.attributes.contains(attr)) {
             this.attributes.add(attr);
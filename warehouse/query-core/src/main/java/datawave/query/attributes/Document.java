@@ -31,6 +31,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -52,6 +53,11 @@ public class Document extends AttributeBag<Document> implements Serializable {
      */
     private boolean trackSizes;
     
+    /**
+     * raw attributes that have not been consumed yet, see {@link #deferRawData}
+     */
+    private transient DeferredRawData deferredRawData = null;
+    
     private static final long ONE_DAY_MS = 1000l * 60 * 60 * 24;
     
     public MarkingFunctions getMarkingFunctions() {
@@ -127,6 +133,20 @@ public class Document extends AttributeBag<Document> implements Serializable {
      */
     public Document consumeRawData(Key docKey, Set<Key> docKeys, Iterator<Entry<Key,Value>> iter, TypeMetadata typeMetadata,
                     CompositeMetadata compositeMetadata, boolean includeGroupingContext, boolean keepRecordId, EventDataQueryFilter attrFilter) {
+        return consumeRawData(docKey, docKeys, iter, typeMetadata, compositeMetadata, includeGroupingContext, keepRecordId, attrFilter, null);
+    }
+    
+    /**
+     * As {@link #consumeRawData(Key, Set, Iterator, TypeMetadata, CompositeMetadata, boolean, boolean, EventDataQueryFilter)}, sharing normalized values
+     * through a cache
+     *
+     * @param normalizedValueCache
+     *            may be null
+     * @return
+     */
+    public Document consumeRawData(Key docKey, Set<Key> docKeys, Iterator<Entry<Key,Value>> iter, TypeMetadata typeMetadata,
+                    CompositeMetadata compositeMetadata, boolean includeGroupingContext, boolean keepRecordId, EventDataQueryFilter attrFilter,
+                    NormalizedValueCache normalizedValueCache) {
         invalidateMetadata();
         // extract the sharded time from the dockey if possible
         try {
@@ -137,12 +157,28 @@ public class Document extends AttributeBag<Document> implements Serializable {
             this.shardTimestamp = Long.MAX_VALUE;
         }
         
+        consumeAttributes(iter, typeMetadata, compositeMetadata, includeGroupingContext, attrFilter, normalizedValueCache);
+        
+        // now add the dockeys as attributes
+        Attribute<?> docKeyAttributes = toDocKeyAttributes(docKeys, keepRecordId);
+        if (docKeyAttributes != null) {
+            this.put(DOCKEY_FIELD_NAME, docKeyAttributes);
+        }
+        
+        // a little debugging here to track large documents
+        debugDocumentSize(docKey);
+        
+        return this;
+    }
+    
+    private void consumeAttributes(Iterator<Entry<Key,Value>> iter, TypeMetadata typeMetadata, CompositeMetadata compositeMetadata,
+                    boolean includeGroupingContext, EventDataQueryFilter attrFilter, NormalizedValueCache normalizedValueCache) {
         // Extract the fieldName from the Key
         Iterator<Entry<Key,String>> extractedFieldNames = Iterators.transform(iter, new KeyToFieldName(includeGroupingContext));
         
         // Transform the remaining entries back into Attributes
         Iterator<Iterable<Entry<String,Attribute<? extends Comparable<?>>>>> attributes = Iterators.transform(extractedFieldNames, new ValueToAttributes(
-                        compositeMetadata, typeMetadata, attrFilter, MarkingFunctions.Factory.createMarkingFunctions()));
+                        compositeMetadata, typeMetadata, attrFilter, MarkingFunctions.Factory.createMarkingFunctions(), normalizedValueCache));
         
         // Add all of the String=>Attribute pairs to this Document
         while (attributes.hasNext()) {
@@ -151,16 +187,50 @@ public class Document extends AttributeBag<Document> implements Serializable {
                 this.put(entry, includeGroupingContext);
             }
         }
+    }
         
-        // now add the dockeys as attributes
-        Attribute<?> docKeyAttributes = toDocKeyAttributes(docKeys, keepRecordId);
-        if (docKeyAttributes != null) {
-            this.put(DOCKEY_FIELD_NAME, docKeyAttributes);
+    /**
+     * Hold on to raw attributes without consuming them. They are not part of this Document until {@link #consumeDeferredRawData()} is called, which is
+     * expected to happen once the Document has passed evaluation. This way a Document that fails evaluation never pays for the normalization of the fields
+     * that the query does not use.
+     * 
+     * @param data
+     *            the raw attributes, as would be passed to consumeRawData
+     * @param typeMetadata
+     * @param compositeMetadata
+     * @param includeGroupingContext
+     * @param attrFilter
+     * @param normalizedValueCache
+     *            may be null
+     */
+    public void deferRawData(List<Entry<Key,Value>> data, TypeMetadata typeMetadata, CompositeMetadata compositeMetadata, boolean includeGroupingContext,
+                    EventDataQueryFilter attrFilter, NormalizedValueCache normalizedValueCache) {
+        if (data.isEmpty()) {
+            return;
+        }
+        if (this.deferredRawData != null) {
+            throw new IllegalStateException("Raw data has already been deferred for this document");
         }
+        this.deferredRawData = new DeferredRawData(data, typeMetadata, compositeMetadata, includeGroupingContext, attrFilter, normalizedValueCache);
+    }
         
-        // a little debugging here to track large documents
-        debugDocumentSize(docKey);
+    public boolean hasDeferredRawData() {
+        return this.deferredRawData != null;
+    }
         
+    /**
+     * Consume the raw attributes held by {@link #deferRawData}, if any
+     * 
+     * @return this Document
+     */
+    public Document consumeDeferredRawData() {
+        if (this.deferredRawData != null) {
+            DeferredRawData deferred = this.deferredRawData;
+            this.deferredRawData = null;
+            invalidateMetadata();
+            consumeAttributes(deferred.data.iterator(), deferred.typeMetadata, deferred.compositeMetadata, deferred.includeGroupingContext,
+                            deferred.attrFilter, deferred.normalizedValueCache);
+        }
         return this;
     }
     
@@ -462,6 +532,29 @@ public class Document extends AttributeBag<Document> implements Serializable {
         return _count;
     }
     
+    boolean isTrackSizes() {
+        return trackSizes;
+    }
+    
+    /**
+     * Restore the state of a document read back by the FlatDocumentReader, as readFields() would
+     * 
+     * @param dict
+     * @param count
+     * @param trackSizes
+     * @param bytes
+     * @param shardTimestamp
+     */
+    void restore(TreeMap<String,Attribute<? extends Comparable<?>>> dict, int count, boolean trackSizes, long bytes, long shardTimestamp) {
+        this.dict = dict;
+        this._count = count;
+        this.trackSizes = trackSizes;
+        this._bytes = bytes;
+        this.shardTimestamp = shardTimestamp;
+        
+        invalidateMetadata();
+    }
+    
     @Override
     public long sizeInBytes() {
         if (trackSizes) {
@@ -836,8 +929,30 @@ public class Document extends AttributeBag<Document> implements Serializable {
         }
         
         d.shardTimestamp = this.shardTimestamp;
+        d.deferredRawData = this.deferredRawData;
         
         return d;
     }
     
+    /**
+     * The arguments of a deferred consumeRawData
+     */
+    private static class DeferredRawData {
+        private final List<Entry<Key,Value>> data;
+        private final TypeMetadata typeMetadata;
+        private final CompositeMetadata compositeMetadata;
+        private final boolean includeGroupingContext;
+        private final EventDataQueryFilter attrFilter;
+        private final NormalizedValueCache normalizedValueCache;
+        
+        private DeferredRawData(List<Entry<Key,Value>> data, TypeMetadata typeMetadata, CompositeMetadata compositeMetadata, boolean includeGroupingContext,
+                        EventDataQueryFilter attrFilter, NormalizedValueCache normalizedValueCache) {
+            this.data = data;
+            this.typeMetadata = typeMetadata;
+            this.compositeMetadata = compositeMetadata;
+            this.includeGroupingContext = includeGroupingContext;
+            this.attrFilter = attrFilter;
+            this.normalizedValueCache = normalizedValueCache;
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package datawave.query.attributes;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A lazy view of a document in a batch read by the FlatDocumentReader. Nothing is read until it is asked for: the field names come from the document's field
+ * table, and {@link #get(String)} reads only the requested field. Use {@link #toDocument()} to read the whole document.
+ */
+public class FlatDocument {
+    private final FlatDocumentReader reader;
+    private final int position;
+    
+    FlatDocument(FlatDocumentReader reader, int position) {
+        this.reader = reader;
+        this.position = position;
+    }
+    
+    /**
+     * @return the number of fields in the document
+     */
+    public int size() {
+        return reader.readInt(position + FlatDocumentWriter.DOCUMENT_HEADER_SIZE - 4);
+    }
+    
+    /**
+     * @return the number of attributes in the document, as {@link Document#size()}
+     */
+    public int getAttributeCount() {
+        return reader.readInt(position);
+    }
+    
+    public long getShardTimestamp() {
+        return reader.readLong(position + 13);
+    }
+    
+    /**
+     * @param index
+     * @return the name of a field, the fields are in sorted order
+     */
+    public String getFieldName(int index) {
+        return reader.field(reader.readInt(entry(index)));
+    }
+    
+    /**
+     * @return the field names of the document in sorted order
+     */
+    public List<String> getFieldNames() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return getFieldName(index);
+            }
+            
+            @Override
+            public int size() {
+                return FlatDocument.this.size();
+            }
+        };
+    }
+    
+    public boolean containsKey(String field) {
+        return find(field) >= 0;
+    }
+    
+    /**
+     * Read a single field of the document
+     * 
+     * @param field
+     * @return the value of the field, or null if the document does not contain it
+     */
+    public Attribute<? extends Comparable<?>> get(String field) {
+        int index = find(field);
+        if (index < 0) {
+            return null;
+        }
+        int entry = entry(index);
+        int start = position + reader.readInt(entry + 4);
+        try {
+            return reader.readAttribute(reader.input(start, reader.readInt(entry + 8)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read field " + field, e);
+        }
+    }
+    
+    /**
+     * @return the whole document
+     */
+    public Document toDocument() {
+        try {
+            return reader.readDocument(position, new Document());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read document", e);
+        }
+    }
+    
+    private int entry(int index) {
+        return position + FlatDocumentWriter.DOCUMENT_HEADER_SIZE + index * FlatDocumentWriter.FIELD_ENTRY_SIZE;
+    }
+    
+    /**
+     * Binary search of the field table, which is in field name order
+     * 
+     * @param field
+     * @return the index of the field, or -1 if it is not in the document
+     */
+    private int find(String field) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = getFieldName(mid).compareTo(field);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,272 @@
+package datawave.query.attributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Reads a batch of documents written by the FlatDocumentWriter directly from the serialized bytes. The dictionaries are read up front, but a document is only
+ * read when it is asked for, and through a FlatDocument a single field can be read without reading the rest of the document.
+ */
+public class FlatDocumentReader {
+    private final byte[] data;
+    private final int documentsStart;
+    private final int end;
+    
+    private final String[] fields;
+    private final byte[][] visibilityExpressions;
+    private final ColumnVisibility[] visibilities;
+    private final Class<?>[] classes;
+    private final int[] documentOffsets;
+    private final Key[] keys;
+    
+    public FlatDocumentReader(byte[] data) throws IOException {
+        this(data, 0, data.length);
+    }
+    
+    /**
+     * @param data
+     *            the serialized batch, which is not copied
+     * @param offset
+     * @param length
+     * @throws IOException
+     *             if the batch is not in the flat document format
+     */
+    public FlatDocumentReader(byte[] data, int offset, int length) throws IOException {
+        this.data = data;
+        this.end = offset + length;
+        
+        ByteArrayInputStream bytes = new ByteArrayInputStream(data, offset, length);
+        DataInputStream in = new DataInputStream(bytes);
+        byte version = in.readByte();
+        if (version != FlatDocumentWriter.VERSION) {
+            throw new IOException("Unknown flat document version " + version);
+        }
+        
+        fields = new String[WritableUtils.readVInt(in)];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = WritableUtils.readString(in);
+        }
+        
+        visibilityExpressions = new byte[WritableUtils.readVInt(in)][];
+        visibilities = new ColumnVisibility[visibilityExpressions.length];
+        for (int i = 0; i < visibilityExpressions.length; i++) {
+            visibilityExpressions[i] = new byte[WritableUtils.readVInt(in)];
+            in.readFully(visibilityExpressions[i]);
+        }
+        
+        classes = new Class<?>[WritableUtils.readVInt(in)];
+        for (int i = 0; i < classes.length; i++) {
+            String className = WritableUtils.readString(in);
+            try {
+                classes[i] = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+            if (!Attribute.class.isAssignableFrom(classes[i])) {
+                throw new ClassCastException("Found class that was not an instance of Attribute");
+            }
+        }
+        
+        documentOffsets = new int[in.readInt()];
+        for (int i = 0; i < documentOffsets.length; i++) {
+            documentOffsets[i] = in.readInt();
+        }
+        if (in.readBoolean()) {
+            keys = new Key[documentOffsets.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new Key();
+                keys[i].readFields(in);
+            }
+        } else {
+            keys = null;
+        }
+        this.documentsStart = end - bytes.available();
+    }
+    
+    /**
+     * @return the number of documents in the batch
+     */
+    public int size() {
+        return documentOffsets.length;
+    }
+    
+    /**
+     * @param index
+     * @return a lazy view of a document in the batch
+     */
+    public FlatDocument get(int index) {
+        return new FlatDocument(this, documentsStart + documentOffsets[index]);
+    }
+    
+    /**
+     * @param index
+     * @return the key that the document was added with, or null if the batch was written without keys
+     */
+    public Key getKey(int index) {
+        return (keys == null ? null : keys[index]);
+    }
+    
+    /**
+     * @return lazy views of all of the documents in the batch
+     */
+    public List<FlatDocument> documents() {
+        return new AbstractList<FlatDocument>() {
+            @Override
+            public FlatDocument get(int index) {
+                return FlatDocumentReader.this.get(index);
+            }
+            
+            @Override
+            public int size() {
+                return FlatDocumentReader.this.size();
+            }
+        };
+    }
+    
+    String field(int index) {
+        return fields[index];
+    }
+    
+    int readInt(int position) {
+        return ((data[position] & 0xff) << 24) | ((data[position + 1] & 0xff) << 16) | ((data[position + 2] & 0xff) << 8) | (data[position + 3] & 0xff);
+    }
+    
+    long readLong(int position) {
+        return ((long) readInt(position) << 32) | (readInt(position + 4) & 0xffffffffL);
+    }
+    
+    boolean readBoolean(int position) {
+        return data[position] != 0;
+    }
+    
+    FlatInput input(int position, int length) {
+        return new FlatInput(data, position, length);
+    }
+    
+    private ColumnVisibility visibility(int index) {
+        if (visibilities[index] == null) {
+            visibilities[index] = new ColumnVisibility(visibilityExpressions[index]);
+        }
+        return visibilities[index];
+    }
+    
+    private Attribute<?> newInstance(int classIndex) throws IOException {
+        try {
+            return (Attribute<?>) classes[classIndex].newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+    
+    /**
+     * Read a whole document
+     * 
+     * @param position
+     *            the start of the document
+     * @param document
+     *            the document to restore
+     * @return the document
+     * @throws IOException
+     */
+    Document readDocument(int position, Document document) throws IOException {
+        int numFields = readInt(position + FlatDocumentWriter.DOCUMENT_HEADER_SIZE - 4);
+        TreeMap<String,Attribute<? extends Comparable<?>>> dict = new TreeMap<>();
+        for (int i = 0; i < numFields; i++) {
+            int entry = position + FlatDocumentWriter.DOCUMENT_HEADER_SIZE + i * FlatDocumentWriter.FIELD_ENTRY_SIZE;
+            int start = position + readInt(entry + 4);
+            dict.put(fields[readInt(entry)], readAttribute(input(start, readInt(entry + 8))));
+        }
+        document.restore(dict, readInt(position), readBoolean(position + 4), readLong(position + 5), readLong(position + 13));
+        return document;
+    }
+    
+    /**
+     * Read the attribute that starts at the current position of the input
+     * 
+     * @param in
+     * @return the attribute
+     * @throws IOException
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Attribute<? extends Comparable<?>> readAttribute(FlatInput in) throws IOException {
+        byte kind = in.readByte();
+        if (kind == FlatDocumentWriter.LEAF) {
+            Attribute attribute = newInstance(WritableUtils.readVInt(in));
+            int visibility = WritableUtils.readVInt(in);
+            long timestamp = (visibility > 0 ? WritableUtils.readVLong(in) : 0);
+            attribute.readFields(in);
+            if (visibility > 0) {
+                attribute.setMetadata(visibility(visibility - 1), timestamp);
+            }
+            return attribute;
+        } else if (kind == FlatDocumentWriter.ATTRIBUTES) {
+            Attributes attributes = new Attributes(true, in.readBoolean());
+            int count = WritableUtils.readVInt(in);
+            for (int i = 0; i < count; i++) {
+                attributes.add(readAttribute(in));
+            }
+            return attributes;
+        } else if (kind == FlatDocumentWriter.DOCUMENT) {
+            Document document = (Document) newInstance(WritableUtils.readVInt(in));
+            int visibility = WritableUtils.readVInt(in);
+            long timestamp = (visibility > 0 ? WritableUtils.readVLong(in) : 0);
+            int length = in.readInt();
+            // the nested document is read in place, and then skipped over
+            int start = in.position();
+            readDocument(start, document);
+            in.seek(start + length);
+            if (visibility > 0) {
+                document.setMetadata(visibility(visibility - 1), timestamp);
+            }
+            return document;
+        } else {
+            throw new IOException("Unknown attribute kind " + kind);
+        }
+    }
+    
+    /**
+     * A DataInputStream over a range of the data that knows its position in the data
+     */
+    static class FlatInput extends DataInputStream {
+        private final PositionedInputStream bytes;
+        
+        FlatInput(byte[] data, int offset, int length) {
+            this(new PositionedInputStream(data, offset, length));
+        }
+        
+        private FlatInput(PositionedInputStream bytes) {
+            super(bytes);
+            this.bytes = bytes;
+        }
+        
+        int position() {
+            return bytes.position();
+        }
+        
+        void seek(int position) {
+            bytes.seek(position);
+        }
+    }
+    
+    private static class PositionedInputStream extends ByteArrayInputStream {
+        PositionedInputStream(byte[] data, int offset, int length) {
+            super(data, offset, length);
+        }
+        
+        int position() {
+            return pos;
+        }
+        
+        void seek(int position) {
+            pos = position;
+        }
+    }
+}
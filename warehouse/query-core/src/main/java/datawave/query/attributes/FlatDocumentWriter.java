@@ -0,0 +1,303 @@
+package datawave.query.attributes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Writes a batch of documents in the flat document format. Unlike the Writable and Kryo serializations, which write the class name of every attribute and the
+ * full visibility expression of every value, the flat format writes a dictionary of field names, visibilities and attribute classes once per batch and refers
+ * to them by index. Each document starts with a fixed width table of its fields, so that a reader can find and decode a single field without reading the rest
+ * of the document (see FlatDocumentReader).
+ * 
+ * The layout of a batch is:
+ * 
+ * <pre>
+ * byte     version
+ * vint     field name count, then each field name
+ * vint     visibility count, then each visibility expression
+ * vint     attribute class count, then each class name
+ * int      document count
+ * int[]    the offset of each document, relative to the end of this table
+ * boolean  whether the batch has keys, then the Writable form of the key of each document
+ * document...
+ * </pre>
+ * 
+ * and the layout of a document is:
+ * 
+ * <pre>
+ * int      attribute count
+ * boolean  track sizes
+ * long     size in bytes
+ * long     shard timestamp
+ * int      field count
+ * (int field index, int offset, int length)... one entry per field in field name order, the offset is relative to the start of the document
+ * attribute...
+ * </pre>
+ * 
+ * An attribute is a kind byte followed by a leaf value (the class index, visibility index + 1 or 0 if the metadata is not set, the timestamp, and the
+ * attribute's own Writable form without its metadata), a list of attributes (track sizes, the count, and each attribute) or a nested document (the class index,
+ * the visibility index + 1 and timestamp as for a leaf value, the int length of the document, and the document).
+ */
+public class FlatDocumentWriter {
+    public static final byte VERSION = 2;
+    
+    static final byte LEAF = 0;
+    static final byte ATTRIBUTES = 1;
+    static final byte DOCUMENT = 2;
+    
+    // the size of the fixed width part of a document before the field table, and of each field table entry
+    static final int DOCUMENT_HEADER_SIZE = 4 + 1 + 8 + 8 + 4;
+    static final int FIELD_ENTRY_SIZE = 4 + 4 + 4;
+    
+    private final boolean reducedResponse;
+    
+    private final Map<String,Integer> fieldIndex = new HashMap<>();
+    private final List<String> fields = new ArrayList<>();
+    private final Map<ByteSequence,Integer> visibilityIndex = new HashMap<>();
+    private final List<ByteSequence> visibilities = new ArrayList<>();
+    private final Map<Class<?>,Integer> classIndex = new HashMap<>();
+    private final List<Class<?>> classes = new ArrayList<>();
+    
+    private final List<Integer> documentOffsets = new ArrayList<>();
+    private final List<Key> keys = new ArrayList<>();
+    private final ByteArrayOutputStream documents = new ByteArrayOutputStream(4096);
+    private final DataOutputStream documentsOut = new DataOutputStream(documents);
+    
+    // reused for the field data of top level documents
+    private final ByteArrayOutputStream fieldData = new ByteArrayOutputStream(4096);
+    private final DataOutputStream fieldDataOut = new DataOutputStream(fieldData);
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream(1024);
+    
+    /**
+     * @param reducedResponse
+     *            if true the visibility and timestamp of each value are not written
+     */
+    public FlatDocumentWriter(boolean reducedResponse) {
+        this.reducedResponse = reducedResponse;
+    }
+    
+    /**
+     * @return the number of documents in the current batch
+     */
+    public int size() {
+        return documentOffsets.size();
+    }
+    
+    /**
+     * @return the number of bytes written for the documents in the current batch, not including the dictionaries
+     */
+    public int documentBytes() {
+        return documents.size();
+    }
+    
+    /**
+     * Start a new batch
+     */
+    public void reset() {
+        fieldIndex.clear();
+        fields.clear();
+        visibilityIndex.clear();
+        visibilities.clear();
+        classIndex.clear();
+        classes.clear();
+        documentOffsets.clear();
+        keys.clear();
+        documents.reset();
+    }
+    
+    /**
+     * Add a document to the current batch
+     * 
+     * @param document
+     */
+    public void add(Document document) {
+        add(null, document);
+    }
+    
+    /**
+     * Add a document and its key to the current batch. The keys of a batch must either all be set or all be null.
+     * 
+     * @param key
+     * @param document
+     */
+    public void add(Key key, Document document) {
+        if (key != null ? keys.size() != documentOffsets.size() : !keys.isEmpty()) {
+            throw new IllegalArgumentException("The keys of a batch must either all be set or all be null");
+        }
+        if (key != null) {
+            keys.add(key);
+        }
+        documentOffsets.add(documents.size());
+        try {
+            fieldData.reset();
+            writeDocument(document, documentsOut, fieldData, fieldDataOut);
+        } catch (IOException e) {
+            // these are all in memory streams
+            throw new IllegalStateException("Unable to write document", e);
+        }
+    }
+    
+    /**
+     * Write the current batch
+     * 
+     * @param out
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public int writeTo(OutputStream out) throws IOException {
+        header.reset();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeByte(VERSION);
+        WritableUtils.writeVInt(headerOut, fields.size());
+        for (String field : fields) {
+            WritableUtils.writeString(headerOut, field);
+        }
+        WritableUtils.writeVInt(headerOut, visibilities.size());
+        for (ByteSequence visibility : visibilities) {
+            WritableUtils.writeVInt(headerOut, visibility.length());
+            headerOut.write(visibility.getBackingArray(), visibility.offset(), visibility.length());
+        }
+        WritableUtils.writeVInt(headerOut, classes.size());
+        for (Class<?> clz : classes) {
+            WritableUtils.writeString(headerOut, clz.getName());
+        }
+        headerOut.writeInt(documentOffsets.size());
+        for (Integer offset : documentOffsets) {
+            headerOut.writeInt(offset);
+        }
+        headerOut.writeBoolean(!keys.isEmpty());
+        for (Key key : keys) {
+            key.write(headerOut);
+        }
+        headerOut.flush();
+        
+        header.writeTo(out);
+        documents.writeTo(out);
+        return header.size() + documents.size();
+    }
+    
+    /**
+     * @return the current batch
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(documents.size() + 1024);
+        try {
+            writeTo(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write documents", e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private void writeDocument(Document document, DataOutputStream out, ByteArrayOutputStream data, DataOutputStream dataOut) throws IOException {
+        int numFields = document.dict.size();
+        int tableSize = DOCUMENT_HEADER_SIZE + numFields * FIELD_ENTRY_SIZE;
+        
+        out.writeInt(document.size());
+        out.writeBoolean(document.isTrackSizes());
+        out.writeLong(document._bytes);
+        out.writeLong(document.shardTimestamp);
+        out.writeInt(numFields);
+        
+        // write the field data first so that the offsets for the field table are known
+        int[] starts = new int[numFields];
+        int[] lengths = new int[numFields];
+        int i = 0;
+        for (Entry<String,Attribute<? extends Comparable<?>>> entry : document.dict.entrySet()) {
+            starts[i] = data.size();
+            writeAttribute(entry.getValue(), dataOut);
+            dataOut.flush();
+            lengths[i] = data.size() - starts[i];
+            i++;
+        }
+        
+        i = 0;
+        for (String field : document.dict.keySet()) {
+            out.writeInt(index(fieldIndex, fields, field));
+            out.writeInt(tableSize + starts[i]);
+            out.writeInt(lengths[i]);
+            i++;
+        }
+        data.writeTo(out);
+    }
+    
+    private void writeAttribute(Attribute<?> attribute, DataOutputStream out) throws IOException {
+        if (attribute instanceof Document) {
+            Document document = (Document) attribute;
+            out.writeByte(DOCUMENT);
+            WritableUtils.writeVInt(out, index(classIndex, classes, attribute.getClass()));
+            if (!reducedResponse && !document.dict.isEmpty()) {
+                // a document computes its visibility and timestamp from its attributes when they are asked for
+                document.getColumnVisibility();
+            }
+            writeMetadata(document, out);
+            // nested documents are rare, so they are written to their own buffers to find their length
+            ByteArrayOutputStream nested = new ByteArrayOutputStream();
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            writeDocument(document, new DataOutputStream(nested), data, new DataOutputStream(data));
+            out.writeInt(nested.size());
+            nested.writeTo(out);
+        } else if (attribute instanceof Attributes) {
+            Attributes attributes = (Attributes) attribute;
+            out.writeByte(ATTRIBUTES);
+            out.writeBoolean(attributes.isTrackSizes());
+            WritableUtils.writeVInt(out, attributes.getAttributes().size());
+            for (Attribute<?> child : attributes.getAttributes()) {
+                writeAttribute(child, out);
+            }
+        } else {
+            out.writeByte(LEAF);
+            WritableUtils.writeVInt(out, index(classIndex, classes, attribute.getClass()));
+            writeMetadata(attribute, out);
+            // the metadata has been written above, so write the attribute as a reduced response
+            attribute.write(out, true);
+        }
+    }
+    
+    /**
+     * Write the visibility index + 1 and the timestamp of an attribute, or 0 if the metadata is not set or this is a reduced response
+     * 
+     * @param attribute
+     * @param out
+     * @throws IOException
+     */
+    private void writeMetadata(Attribute<?> attribute, DataOutputStream out) throws IOException {
+        if (reducedResponse || !attribute.isMetadataSet()) {
+            WritableUtils.writeVInt(out, 0);
+        } else {
+            ByteSequence visibility = attribute.getMetadata().getColumnVisibilityData();
+            Integer index = visibilityIndex.get(visibility);
+            if (index == null) {
+                // copy the visibility out of the key that it is backed by
+                visibility = new ArrayByteSequence(visibility.toArray());
+                index = visibilities.size();
+                visibilityIndex.put(visibility, index);
+                visibilities.add(visibility);
+            }
+            WritableUtils.writeVInt(out, index + 1);
+            WritableUtils.writeVLong(out, attribute.getTimestamp());
+        }
+    }
+    
+    private static <T> int index(Map<T,Integer> indexes, List<T> values, T value) {
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = values.size();
+            indexes.put(value, index);
+            values.add(value);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,123 @@
+package datawave.query.attributes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import datawave.data.type.Type;
+import datawave.query.iterator.profile.QuerySpan;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * A bounded cache of normalized Type instances by Type class and raw value, shared by the AttributeFactory instances of a query iterator so that a value that
+ * repeats across the documents of a scan session is only normalized once. The cache is bounded by the approximate number of bytes held by its entries.
+ * 
+ * The cached Type instances are shared by the TypeAttributes created from them, which is safe as nothing changes the delegate of a Type once it has been set.
+ */
+public class NormalizedValueCache {
+    
+    // the approximate size of an entry beyond its strings: the entry, the key, the Type and their references
+    private static final int ENTRY_OVERHEAD = 128;
+    
+    private final Cache<TypeKey,Type<?>> cache;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    /**
+     * @param maxBytes
+     *            the approximate max number of bytes to hold
+     */
+    public NormalizedValueCache(long maxBytes) {
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher(new Weigher<TypeKey,Type<?>>() {
+            @Override
+            public int weigh(TypeKey key, Type<?> type) {
+                String normalized = type.getNormalizedValue();
+                return ENTRY_OVERHEAD + 2 * (key.value.length() + (normalized == null ? 0 : normalized.length()));
+            }
+        }).build();
+    }
+    
+    /**
+     * @param typeClass
+     * @param value
+     *            the raw value
+     * @return the cached Type for the value, or null if it is not cached
+     */
+    public Type<?> get(Class<?> typeClass, String value) {
+        Type<?> type = cache.getIfPresent(new TypeKey(typeClass, value));
+        if (type == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return type;
+    }
+    
+    /**
+     * @param typeClass
+     * @param value
+     *            the raw value
+     * @param type
+     *            the Type with its delegate set from the value
+     */
+    public void put(Class<?> typeClass, String value, Type<?> type) {
+        cache.put(new TypeKey(typeClass, value), type);
+    }
+    
+    /**
+     * @return the hits since the last call to recordStats
+     */
+    public long getHits() {
+        return hits.get();
+    }
+    
+    /**
+     * @return the misses since the last call to recordStats
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    public long size() {
+        return cache.size();
+    }
+    
+    /**
+     * Add the hits and misses since the last call to a QuerySpan
+     * 
+     * @param querySpan
+     */
+    public void recordStats(QuerySpan querySpan) {
+        long newHits = hits.getAndSet(0);
+        long newMisses = misses.getAndSet(0);
+        if (newHits > 0 || newMisses > 0) {
+            querySpan.addNormalizedValueCacheStats(newHits, newMisses);
+        }
+    }
+    
+    private static class TypeKey {
+        private final Class<?> typeClass;
+        private final String value;
+        
+        private TypeKey(Class<?> typeClass, String value) {
+            this.typeClass = typeClass;
+            this.value = value;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TypeKey)) {
+                return false;
+            }
+            TypeKey other = (TypeKey) o;
+            return typeClass == other.typeClass && value.equals(other.value);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * typeClass.hashCode() + value.hashCode();
+        }
+    }
+}
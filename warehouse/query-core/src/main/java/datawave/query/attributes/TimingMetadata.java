@@ -8,6 +8,8 @@ public class TimingMetadata extends Metadata {
     private static final String NEXT_COUNT = "NEXT_COUNT";
     private static final String SOURCE_COUNT = "SOURCE_COUNT";
     private static final String SEEK_COUNT = "SEEK_COUNT";
+    private static final String NORMALIZED_VALUE_CACHE_HITS = "NORMALIZED_VALUE_CACHE_HITS";
+    private static final String NORMALIZED_VALUE_CACHE_MISSES = "NORMALIZED_VALUE_CACHE_MISSES";
     private static final String STAGE_TIMERS = "STAGE_TIMERS";
     private static final String HOST = "HOST";
     
@@ -65,6 +67,32 @@ public class TimingMetadata extends Metadata {
         }
     }
     
+    public void setNormalizedValueCacheHits(long hits) {
+        put(NORMALIZED_VALUE_CACHE_HITS, new Numeric(hits, this.getMetadata(), this.isToKeep()));
+    }
+    
+    public long getNormalizedValueCacheHits() {
+        Numeric numericValue = (Numeric) get(NORMALIZED_VALUE_CACHE_HITS);
+        if (numericValue != null) {
+            return ((Number) numericValue.getData()).longValue();
+        } else {
+            return 0;
+        }
+    }
+    
+    public void setNormalizedValueCacheMisses(long misses) {
+        put(NORMALIZED_VALUE_CACHE_MISSES, new Numeric(misses, this.getMetadata(), this.isToKeep()));
+    }
+    
+    public long getNormalizedValueCacheMisses() {
+        Numeric numericValue = (Numeric) get(NORMALIZED_VALUE_CACHE_MISSES);
+        if (numericValue != null) {
+            return ((Number) numericValue.getData()).longValue();
+        } else {
+            return 0;
+        }
+    }
+    
     public void addStageTimer(String stageName, Numeric elapsed) {
         Metadata stageTimers = (Metadata) get(STAGE_TIMERS);
         if (stageTimers == null) {
@@ -17,8 +17,10 @@ import datawave.query.QueryParameters;
 import datawave.query.UnindexType;
 import datawave.query.function.DocumentPermutation;
 import datawave.query.iterator.QueryIterator;
+import datawave.query.jexl.lookups.TermDictionaryCache;
 import datawave.query.model.QueryModel;
 import datawave.query.tables.ShardQueryLogic;
+import datawave.query.tables.async.FairShareIndexLookupScheduler;
 import datawave.query.tld.TLDQueryIterator;
 import datawave.query.util.QueryStopwatch;
 import datawave.util.TableName;
@@ -258,6 +260,10 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
     private List<String> ivaratorCacheBaseURIs = null;
     private String ivaratorFstHdfsBaseURIs = null;
     private int ivaratorCacheBufferSize = 10000;
+    // buffer the ivarator cache entries off heap instead of in TreeSets
+    private boolean ivaratorCacheOffHeapBuffer = false;
+    // spill the ivarator cache to memory mapped block files when the cache dir is on the local file system
+    private boolean ivaratorCacheMappedFiles = false;
     private long ivaratorCacheScanPersistThreshold = 100000L;
     private long ivaratorCacheScanTimeout = 1000L * 60 * 60;
     private int maxFieldIndexRangeSplit = 11;
@@ -265,6 +271,8 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
     private int maxIvaratorSources = 33;
     private int maxEvaluationPipelines = 25;
     private int maxPipelineCachedResults = 25;
+    // allow evaluation pipelines to complete out of order, re-sorting the results before they are returned
+    private boolean outOfOrderEvaluationPipeline = false;
     private boolean expandAllTerms = false;
     // Adding the ability to pre-cache the query model for performance sake. If this is null
     // then the query model will be pulled from the MetadataHelper
@@ -276,6 +284,64 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
     private boolean shouldLimitTermExpansionToModel = false;
     private Query query = null;
     private boolean compressServerSideResults = false;
+    // the max number of documents and serialized bytes to pack into each returned value, only used with the flat return type
+    private int resultBatchSize = 1;
+    private int resultBatchMaxBytes = 1024 * 1024;
+    // compile the query into Java predicates for evaluation instead of interpreting it for every document
+    private boolean compiledEvaluation = false;
+    // only assemble the fields needed for evaluation before a document is evaluated, and the rest once it has passed
+    private boolean lazyDocumentAssembly = false;
+    // the approximate max bytes of normalized values to cache across the documents of a scan session, 0 to disable the cache
+    private long normalizedValueCacheBytes = 0;
+    // the number of days of the date range to plan at a time, so that scanning the first days overlaps planning the rest, 0 to plan the whole range at once
+    private int pipelinedPlanningDays = 0;
+    // the max number of date windows to plan ahead of the window being scanned
+    private int pipelinedPlanningWindowsAhead = 1;
+    // order the terms of each intersection by the cardinality of their fields over the date range
+    private boolean orderTermsByCardinality = false;
+    // when ordering by cardinality, delay equality terms whose cardinality is more than this many times that of the cheapest term of their intersection, 0 to
+    // delay nothing
+    private double maxTermCardinalityRatio = 0;
+    // the table of per shard field value bloom filters used to prune shards for delayed and unindexed terms, or null to not prune
+    private String shardFieldBloomFilterTableName = null;
+    // the first day (yyyyMMdd) whose shards had field bloom filters written for all of the day, or null if the filters were written since before the data
+    private String shardFieldBloomFilterStartDate = null;
+    // the threads of the process wide scheduler shared by the index lookups of all queries, or 0 for each query to use its own threads. The shard scans
+    // always use the threads of their query
+    private int indexLookupSchedulerThreads = 0;
+    private String indexLookupSchedulerClass = FairShareIndexLookupScheduler.class.getName();
+    // the time in milliseconds that an index lookup should take, which the scheduler adapts its concurrency to, or 0 to not adapt
+    private long indexLookupSchedulerTargetLatency = 0;
+    // the weight of this query against the other queries of its user in the schedulers
+    private int indexLookupPriority = 1;
+    // expand the regexes and ranges of fielded terms from the process wide cache of the terms of each field and day rather than by scanning the index
+    private boolean termDictionaryCacheEnabled = false;
+    // the most terms of a field on a day to cache, beyond which the terms are looked up in the index
+    private int termDictionaryMaxTerms = 100000;
+    // how long the cached terms of a day are used before the day is scanned again
+    private long termDictionaryExpireMinutes = 60;
+    // how long the cached terms of the current and previous day, which are still being ingested, are used
+    private long termDictionaryRecentExpireMinutes = 5;
+    // the most bytes of terms to hold in the process wide cache, which is emptied when a query asks for another size
+    private long termDictionaryMaxBytes = TermDictionaryCache.DEFAULT_MAX_BYTES;
+    // the most terms of a top level OR to plan and scan together when using the BooleanChunkingQueryPlanner, or 0 to not split the query into chunks
+    private int booleanChunkSize = 0;
+    // the number of chunks to plan and scan at once
+    private int booleanChunkThreads = 4;
+    // the most documents to return from all of the chunks together, or 0 for no limit. A query that reaches it returns partial results, which is logged
+    private long booleanChunkResultBudget = 0;
+    // a speculative scan is hedged once it has waited longer than this percentile of the latencies of the table, or 0 to start every scan at once. Note that
+    // with speculativeScanning on, the default delays the second scan of each chunk, which used to start at once; set this to 0 to keep the old behavior
+    private double hedgedScanPercentile = 0.95;
+    // the largest fraction of the scans of a session that are hedged
+    private double hedgedScanMaxRate = 0.05;
+    // the least time to wait before hedging a scan, in milliseconds
+    private long hedgedScanMinDelay = 10;
+    // bundle the shard ranges of a query by the tablet server that hosts them
+    private boolean bundleRangesByServer = false;
+    private int maxRangesPerBundle = 32;
+    // the most documents counted by the global index for the ranges of a bundle, or 0 for no limit
+    private long maxBundleWork = 100000;
     private boolean indexOnlyFilterFunctionsEnabled = false;
     private boolean compositeFilterFunctionsEnabled = false;
     
@@ -424,6 +490,8 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
         this.setIvaratorCacheBaseURIs(other.getIvaratorCacheBaseURIs());
         this.setIvaratorFstHdfsBaseURIs(other.getIvaratorFstHdfsBaseURIs());
         this.setIvaratorCacheBufferSize(other.getIvaratorCacheBufferSize());
+        this.setIvaratorCacheOffHeapBuffer(other.isIvaratorCacheOffHeapBuffer());
+        this.setIvaratorCacheMappedFiles(other.isIvaratorCacheMappedFiles());
         this.setIvaratorCacheScanPersistThreshold(other.getIvaratorCacheScanPersistThreshold());
         this.setIvaratorCacheScanTimeout(other.getIvaratorCacheScanTimeout());
         this.setMaxFieldIndexRangeSplit(other.getMaxFieldIndexRangeSplit());
@@ -431,6 +499,7 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
         this.setMaxIvaratorSources(other.getMaxIvaratorSources());
         this.setMaxEvaluationPipelines(other.getMaxEvaluationPipelines());
         this.setMaxPipelineCachedResults(other.getMaxPipelineCachedResults());
+        this.setOutOfOrderEvaluationPipeline(other.isOutOfOrderEvaluationPipeline());
         this.setExpandAllTerms(other.isExpandAllTerms());
         this.setQueryModel(null == other.getQueryModel() ? null : new QueryModel(other.getQueryModel()));
         this.setModelName(other.getModelName());
@@ -438,6 +507,35 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
         this.setLimitTermExpansionToModel(other.isExpansionLimitedToModelContents());
         this.setQuery(null == other.getQuery() ? null : other.getQuery().duplicate(other.getQuery().getQueryName()));
         this.setCompressServerSideResults(other.isCompressServerSideResults());
+        this.setResultBatchSize(other.getResultBatchSize());
+        this.setResultBatchMaxBytes(other.getResultBatchMaxBytes());
+        this.setCompiledEvaluation(other.isCompiledEvaluation());
+        this.setLazyDocumentAssembly(other.isLazyDocumentAssembly());
+        this.setNormalizedValueCacheBytes(other.getNormalizedValueCacheBytes());
+        this.setPipelinedPlanningDays(other.getPipelinedPlanningDays());
+        this.setPipelinedPlanningWindowsAhead(other.getPipelinedPlanningWindowsAhead());
+        this.setOrderTermsByCardinality(other.isOrderTermsByCardinality());
+        this.setMaxTermCardinalityRatio(other.getMaxTermCardinalityRatio());
+        this.setShardFieldBloomFilterTableName(other.getShardFieldBloomFilterTableName());
+        this.setShardFieldBloomFilterStartDate(other.getShardFieldBloomFilterStartDate());
+        this.setIndexLookupSchedulerThreads(other.getIndexLookupSchedulerThreads());
+        this.setIndexLookupSchedulerClass(other.getIndexLookupSchedulerClass());
+        this.setIndexLookupSchedulerTargetLatency(other.getIndexLookupSchedulerTargetLatency());
+        this.setIndexLookupPriority(other.getIndexLookupPriority());
+        this.setTermDictionaryCacheEnabled(other.isTermDictionaryCacheEnabled());
+        this.setTermDictionaryMaxTerms(other.getTermDictionaryMaxTerms());
+        this.setTermDictionaryExpireMinutes(other.getTermDictionaryExpireMinutes());
+        this.setTermDictionaryRecentExpireMinutes(other.getTermDictionaryRecentExpireMinutes());
+        this.setTermDictionaryMaxBytes(other.getTermDictionaryMaxBytes());
+        this.setBooleanChunkSize(other.getBooleanChunkSize());
+        this.setBooleanChunkThreads(other.getBooleanChunkThreads());
+        this.setBooleanChunkResultBudget(other.getBooleanChunkResultBudget());
+        this.setHedgedScanPercentile(other.getHedgedScanPercentile());
+        this.setHedgedScanMaxRate(other.getHedgedScanMaxRate());
+        this.setHedgedScanMinDelay(other.getHedgedScanMinDelay());
+        this.setBundleRangesByServer(other.isBundleRangesByServer());
+        this.setMaxRangesPerBundle(other.getMaxRangesPerBundle());
+        this.setMaxBundleWork(other.getMaxBundleWork());
         this.setIndexOnlyFilterFunctionsEnabled(other.isIndexOnlyFilterFunctionsEnabled());
         this.setCompositeFilterFunctionsEnabled(other.isCompositeFilterFunctionsEnabled());
         this.setGroupFieldsBatchSize(other.getGroupFieldsBatchSize());
@@ -1085,6 +1183,22 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
         this.ivaratorCacheBufferSize = ivaratorCacheBufferSize;
     }
     
+    public boolean isIvaratorCacheOffHeapBuffer() {
+        return ivaratorCacheOffHeapBuffer;
+    }
+    
+    public void setIvaratorCacheOffHeapBuffer(boolean ivaratorCacheOffHeapBuffer) {
+        this.ivaratorCacheOffHeapBuffer = ivaratorCacheOffHeapBuffer;
+    }
+    
+    public boolean isIvaratorCacheMappedFiles() {
+        return ivaratorCacheMappedFiles;
+    }
+    
+    public void setIvaratorCacheMappedFiles(boolean ivaratorCacheMappedFiles) {
+        this.ivaratorCacheMappedFiles = ivaratorCacheMappedFiles;
+    }
+    
     public long getIvaratorCacheScanPersistThreshold() {
         return ivaratorCacheScanPersistThreshold;
     }
@@ -1141,6 +1255,14 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
         this.maxPipelineCachedResults = maxCachedResults;
     }
     
+    public boolean isOutOfOrderEvaluationPipeline() {
+        return outOfOrderEvaluationPipeline;
+    }
+    
+    public void setOutOfOrderEvaluationPipeline(boolean outOfOrderEvaluationPipeline) {
+        this.outOfOrderEvaluationPipeline = outOfOrderEvaluationPipeline;
+    }
+    
     public boolean isExpandAllTerms() {
         return expandAllTerms;
     }
@@ -1599,6 +1721,238 @@ public class ShardQueryConfiguration extends GenericQueryConfiguration implement
         this.compressServerSideResults = compressServerSideResults;
     }
     
+    public int getResultBatchSize() {
+        return resultBatchSize;
+    }
+    
+    public void setResultBatchSize(int resultBatchSize) {
+        this.resultBatchSize = resultBatchSize;
+    }
+    
+    public int getResultBatchMaxBytes() {
+        return resultBatchMaxBytes;
+    }
+    
+    public void setResultBatchMaxBytes(int resultBatchMaxBytes) {
+        this.resultBatchMaxBytes = resultBatchMaxBytes;
+    }
+    
+    public boolean isCompiledEvaluation() {
+        return compiledEvaluation;
+    }
+    
+    public void setCompiledEvaluation(boolean compiledEvaluation) {
+        this.compiledEvaluation = compiledEvaluation;
+    }
+    
+    public boolean isLazyDocumentAssembly() {
+        return lazyDocumentAssembly;
+    }
+    
+    public void setLazyDocumentAssembly(boolean lazyDocumentAssembly) {
+        this.lazyDocumentAssembly = lazyDocumentAssembly;
+    }
+    
+    public long getNormalizedValueCacheBytes() {
+        return normalizedValueCacheBytes;
+    }
+    
+    public void setNormalizedValueCacheBytes(long normalizedValueCacheBytes) {
+        this.normalizedValueCacheBytes = normalizedValueCacheBytes;
+    }
+    
+    public int getPipelinedPlanningDays() {
+        return pipelinedPlanningDays;
+    }
+    
+    public void setPipelinedPlanningDays(int pipelinedPlanningDays) {
+        this.pipelinedPlanningDays = pipelinedPlanningDays;
+    }
+    
+    public int getPipelinedPlanningWindowsAhead() {
+        return pipelinedPlanningWindowsAhead;
+    }
+    
+    public void setPipelinedPlanningWindowsAhead(int pipelinedPlanningWindowsAhead) {
+        this.pipelinedPlanningWindowsAhead = pipelinedPlanningWindowsAhead;
+    }
+    
+    public boolean isOrderTermsByCardinality() {
+        return orderTermsByCardinality;
+    }
+    
+    public void setOrderTermsByCardinality(boolean orderTermsByCardinality) {
+        this.orderTermsByCardinality = orderTermsByCardinality;
+    }
+    
+    public double getMaxTermCardinalityRatio() {
+        return maxTermCardinalityRatio;
+    }
+    
+    public void setMaxTermCardinalityRatio(double maxTermCardinalityRatio) {
+        this.maxTermCardinalityRatio = maxTermCardinalityRatio;
+    }
+    
+    public String getShardFieldBloomFilterTableName() {
+        return shardFieldBloomFilterTableName;
+    }
+    
+    public void setShardFieldBloomFilterTableName(String shardFieldBloomFilterTableName) {
+        this.shardFieldBloomFilterTableName = shardFieldBloomFilterTableName;
+    }
+    
+    public String getShardFieldBloomFilterStartDate() {
+        return shardFieldBloomFilterStartDate;
+    }
+    
+    public void setShardFieldBloomFilterStartDate(String shardFieldBloomFilterStartDate) {
+        this.shardFieldBloomFilterStartDate = shardFieldBloomFilterStartDate;
+    }
+    
+    public int getIndexLookupSchedulerThreads() {
+        return indexLookupSchedulerThreads;
+    }
+    
+    public void setIndexLookupSchedulerThreads(int indexLookupSchedulerThreads) {
+        this.indexLookupSchedulerThreads = indexLookupSchedulerThreads;
+    }
+    
+    public String getIndexLookupSchedulerClass() {
+        return indexLookupSchedulerClass;
+    }
+    
+    public void setIndexLookupSchedulerClass(String indexLookupSchedulerClass) {
+        this.indexLookupSchedulerClass = indexLookupSchedulerClass;
+    }
+    
+    public long getIndexLookupSchedulerTargetLatency() {
+        return indexLookupSchedulerTargetLatency;
+    }
+    
+    public void setIndexLookupSchedulerTargetLatency(long indexLookupSchedulerTargetLatency) {
+        this.indexLookupSchedulerTargetLatency = indexLookupSchedulerTargetLatency;
+    }
+    
+    public int getIndexLookupPriority() {
+        return indexLookupPriority;
+    }
+    
+    public void setIndexLookupPriority(int indexLookupPriority) {
+        this.indexLookupPriority = indexLookupPriority;
+    }
+    
+    public boolean isTermDictionaryCacheEnabled() {
+        return termDictionaryCacheEnabled;
+    }
+    
+    public void setTermDictionaryCacheEnabled(boolean termDictionaryCacheEnabled) {
+        this.termDictionaryCacheEnabled = termDictionaryCacheEnabled;
+    }
+    
+    public int getTermDictionaryMaxTerms() {
+        return termDictionaryMaxTerms;
+    }
+    
+    public void setTermDictionaryMaxTerms(int termDictionaryMaxTerms) {
+        this.termDictionaryMaxTerms = termDictionaryMaxTerms;
+    }
+    
+    public long getTermDictionaryExpireMinutes() {
+        return termDictionaryExpireMinutes;
+    }
+    
+    public void setTermDictionaryExpireMinutes(long termDictionaryExpireMinutes) {
+        this.termDictionaryExpireMinutes = termDictionaryExpireMinutes;
+    }
+    
+    public long getTermDictionaryRecentExpireMinutes() {
+        return termDictionaryRecentExpireMinutes;
+    }
+    
+    public void setTermDictionaryRecentExpireMinutes(long termDictionaryRecentExpireMinutes) {
+        this.termDictionaryRecentExpireMinutes = termDictionaryRecentExpireMinutes;
+    }
+    
+    public long getTermDictionaryMaxBytes() {
+        return termDictionaryMaxBytes;
+    }
+    
+    public void setTermDictionaryMaxBytes(long termDictionaryMaxBytes) {
+        this.termDictionaryMaxBytes = termDictionaryMaxBytes;
+    }
+    
+    public int getBooleanChunkSize() {
+        return booleanChunkSize;
+    }
+    
+    public void setBooleanChunkSize(int booleanChunkSize) {
+        this.booleanChunkSize = booleanChunkSize;
+    }
+    
+    public int getBooleanChunkThreads() {
+        return booleanChunkThreads;
+    }
+    
+    public void setBooleanChunkThreads(int booleanChunkThreads) {
+        this.booleanChunkThreads = booleanChunkThreads;
+    }
+    
+    public long getBooleanChunkResultBudget() {
+        return booleanChunkResultBudget;
+    }
+    
+    public void setBooleanChunkResultBudget(long booleanChunkResultBudget) {
+        this.booleanChunkResultBudget = booleanChunkResultBudget;
+    }
+    
+    public double getHedgedScanPercentile() {
+        return hedgedScanPercentile;
+    }
+    
+    public void setHedgedScanPercentile(double hedgedScanPercentile) {
+        this.hedgedScanPercentile = hedgedScanPercentile;
+    }
+    
+    public double getHedgedScanMaxRate() {
+        return hedgedScanMaxRate;
+    }
+    
+    public void setHedgedScanMaxRate(double hedgedScanMaxRate) {
+        this.hedgedScanMaxRate = hedgedScanMaxRate;
+    }
+    
+    public long getHedgedScanMinDelay() {
+        return hedgedScanMinDelay;
+    }
+    
+    public void setHedgedScanMinDelay(long hedgedScanMinDelay) {
+        this.hedgedScanMinDelay = hedgedScanMinDelay;
+    }
+    
+    public boolean isBundleRangesByServer() {
+        return bundleRangesByServer;
+    }
+    
+    public void setBundleRangesByServer(boolean bundleRangesByServer) {
+        this.bundleRangesByServer = bundleRangesByServer;
+    }
+    
+    public int getMaxRangesPerBundle() {
+        return maxRangesPerBundle;
+    }
+    
+    public void setMaxRangesPerBundle(int maxRangesPerBundle) {
+        this.maxRangesPerBundle = maxRangesPerBundle;
+    }
+    
+    public long getMaxBundleWork() {
+        return maxBundleWork;
+    }
+    
+    public void setMaxBundleWork(long maxBundleWork) {
+        this.maxBundleWork = maxBundleWork;
+    }
+    
     /**
      * Returns a value indicating whether index-only filter functions (e.g., #INCLUDE, #EXCLUDE) should be enabled. If true, the use of such filters can
      * potentially consume a LOT of memory.
@@ -5,15 +5,21 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import datawave.query.attributes.Document;
+import datawave.query.attributes.NormalizedValueCache;
 import datawave.query.composite.CompositeMetadata;
 import datawave.query.iterator.aggregation.DocumentData;
 import datawave.query.predicate.EventDataQueryFilter;
 import datawave.query.predicate.TimeFilter;
 import datawave.query.util.TypeMetadata;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 
 public class Aggregation implements Function<Entry<DocumentData,Document>,Entry<Key,Document>> {
     private static final Logger log = Logger.getLogger(Aggregation.class);
@@ -33,6 +39,14 @@ public class Aggregation implements Function<Entry<DocumentData,Document>,Entry<
      */
     private boolean trackSizes = true;
     
+    /**
+     * if set, only the attributes of these fields are consumed up front and the rest are deferred, see {@link Document#deferRawData}
+     */
+    private Set<String> evaluationFields = null;
+    private KeyToFieldName fieldNames = new KeyToFieldName(false);
+    
+    private NormalizedValueCache normalizedValueCache = null;
+    
     // Need to provide the mapping
     @SuppressWarnings("unused")
     private Aggregation() {}
@@ -44,6 +58,17 @@ public class Aggregation implements Function<Entry<DocumentData,Document>,Entry<
     
     public Aggregation(TimeFilter timeFilter, TypeMetadata typeMetadata, CompositeMetadata compositeMetadata, boolean includeGroupingContext,
                     boolean includeRecordId, boolean disableIndexOnlyDocuments, EventDataQueryFilter attrFilter, boolean trackSizes) {
+        this(timeFilter, typeMetadata, compositeMetadata, includeGroupingContext, includeRecordId, disableIndexOnlyDocuments, attrFilter, trackSizes, null);
+    }
+    
+    /**
+     * @param evaluationFields
+     *            the fields needed to evaluate the query, the attributes of any other field are deferred until the Document has passed evaluation, or null to
+     *            consume all of the attributes up front
+     */
+    public Aggregation(TimeFilter timeFilter, TypeMetadata typeMetadata, CompositeMetadata compositeMetadata, boolean includeGroupingContext,
+                    boolean includeRecordId, boolean disableIndexOnlyDocuments, EventDataQueryFilter attrFilter, boolean trackSizes,
+                    Set<String> evaluationFields) {
         Preconditions.checkNotNull(timeFilter);
         
         this.timeFilter = timeFilter;
@@ -54,6 +79,15 @@ public class Aggregation implements Function<Entry<DocumentData,Document>,Entry<
         this.attrFilter = attrFilter;
         this.disableIndexOnlyDocuments = disableIndexOnlyDocuments;
         this.trackSizes = trackSizes;
+        this.evaluationFields = evaluationFields;
+    }
+    
+    /**
+     * @param normalizedValueCache
+     *            a cache of normalized values to share across the documents of a scan session, may be null
+     */
+    public void setNormalizedValueCache(NormalizedValueCache normalizedValueCache) {
+        this.normalizedValueCache = normalizedValueCache;
     }
     
     @Override
@@ -66,14 +100,34 @@ public class Aggregation implements Function<Entry<DocumentData,Document>,Entry<
         }
         
         // Only load attributes for this document that fall within the expected date range
-        Document d = new Document(docData.getKey(), docData.getDocKeys(), Iterators.filter(docData.getData().iterator(), timeFilter.getKeyValueTimeFilter()),
-                        this.typeMetadata, this.compositeMetadata, this.includeGroupingContext, this.includeRecordId, this.attrFilter, true, trackSizes);
+        Iterator<Entry<Key,Value>> data = Iterators.filter(docData.getData().iterator(), timeFilter.getKeyValueTimeFilter());
+        List<Entry<Key,Value>> deferred = null;
+        if (evaluationFields != null) {
+            // split off the attributes of the fields that evaluation does not need
+            List<Entry<Key,Value>> needed = new ArrayList<>();
+            deferred = new ArrayList<>();
+            while (data.hasNext()) {
+                Entry<Key,Value> entry = data.next();
+                if (evaluationFields.contains(fieldNames.getFieldName(entry.getKey()))) {
+                    needed.add(entry);
+                } else {
+                    deferred.add(entry);
+                }
+            }
+            data = needed.iterator();
+        }
+        
+        Document d = new Document(docData.getKey(), true, trackSizes).consumeRawData(docData.getKey(), docData.getDocKeys(), data, this.typeMetadata,
+                        this.compositeMetadata, this.includeGroupingContext, this.includeRecordId, this.attrFilter, this.normalizedValueCache);
+        if (deferred != null) {
+            d.deferRawData(deferred, this.typeMetadata, this.compositeMetadata, this.includeGroupingContext, this.attrFilter, this.normalizedValueCache);
+        }
         
         if (log.isTraceEnabled()) {
             log.trace("disable index only docs? " + disableIndexOnlyDocuments + " , size is " + d.size());
         }
         
-        if (null != from.getValue() && from.getValue().size() > 0 && (!disableIndexOnlyDocuments || d.size() > 0)) {
+        if (null != from.getValue() && from.getValue().size() > 0 && (!disableIndexOnlyDocuments || d.size() > 0 || d.hasDeferredRawData())) {
             d.putAll(from.getValue(), this.includeGroupingContext);
         }
         
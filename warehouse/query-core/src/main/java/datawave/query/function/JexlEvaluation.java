@@ -3,9 +3,11 @@ package datawave.query.function;
 import datawave.query.attributes.Attributes;
 import datawave.query.jexl.ArithmeticJexlEngines;
 import datawave.query.jexl.DefaultArithmetic;
+import datawave.query.jexl.JexlPredicateCompiler;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.Script;
 import org.apache.commons.jexl2.parser.ASTJexlScript;
 import org.apache.log4j.Logger;
@@ -31,6 +33,11 @@ public class JexlEvaluation implements Predicate<Tuple3<Key,Document,DatawaveJex
      */
     protected Script script;
     
+    /**
+     * The query compiled into Java predicates, or null if the script is interpreted
+     */
+    protected Predicate<JexlContext> compiledScript;
+    
     public JexlEvaluation(String query) {
         this(query, new DefaultArithmetic());
     }
@@ -46,6 +53,21 @@ public class JexlEvaluation implements Predicate<Tuple3<Key,Document,DatawaveJex
         this.script = this.engine.createScript(query);
     }
     
+    /**
+     * Compile the query into Java predicates (see JexlPredicateCompiler) to be evaluated instead of the script. The parts of the query that cannot be compiled
+     * are still interpreted.
+     * 
+     * @return this evaluation
+     */
+    public JexlEvaluation compile() {
+        this.compiledScript = JexlPredicateCompiler.compile(engine, arithmetic, parse(query));
+        return this;
+    }
+    
+    public boolean isCompiled() {
+        return compiledScript != null;
+    }
+    
     public JexlArithmetic getArithmetic() {
         return arithmetic;
     }
@@ -65,7 +87,7 @@ public class JexlEvaluation implements Predicate<Tuple3<Key,Document,DatawaveJex
     @Override
     public boolean apply(Tuple3<Key,Document,DatawaveJexlContext> input) {
         
-        Object o = script.execute(input.third());
+        Object o = (compiledScript != null ? compiledScript.apply(input.third()) : script.execute(input.third()));
         
         if (log.isTraceEnabled()) {
             log.trace("Evaluation of " + query + " against " + input.third() + " returned " + o);
@@ -52,6 +52,10 @@ public class LogTiming implements Function<Entry<Key,Document>,Entry<Key,Documen
                 timingMetadata.setSourceCount(querySpan.getSourceCount());
                 timingMetadata.setSeekCount(querySpan.getSeekCount());
                 timingMetadata.setNextCount(querySpan.getNextCount());
+                if (querySpan.getNormalizedValueCacheHits() > 0 || querySpan.getNormalizedValueCacheMisses() > 0) {
+                    timingMetadata.setNormalizedValueCacheHits(querySpan.getNormalizedValueCacheHits());
+                    timingMetadata.setNormalizedValueCacheMisses(querySpan.getNormalizedValueCacheMisses());
+                }
                 long totalStageTimers = querySpan.getStageTimerTotal();
                 // do not report timers that are less than 5% of the total
                 double threshold = totalStageTimers * 0.05;
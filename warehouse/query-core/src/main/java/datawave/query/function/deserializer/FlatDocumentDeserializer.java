@@ -0,0 +1,83 @@
+package datawave.query.function.deserializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import datawave.query.DocumentSerialization;
+import datawave.query.attributes.Document;
+import datawave.query.attributes.FlatDocumentReader;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Transform bytes in the flat document format back into a Document. Use {@link #read(Value)} instead to read the documents lazily, without copying the bytes
+ * of an uncompressed value, and {@link #deserializeBatch(Entry)} to read every document of a batched value.
+ */
+public class FlatDocumentDeserializer extends DocumentDeserializer implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    @Override
+    public Document deserialize(InputStream data) {
+        try {
+            FlatDocumentReader reader = new FlatDocumentReader(ByteStreams.toByteArray(data));
+            if (reader.size() == 0) {
+                throw new RuntimeException("Deserialized no Documents");
+            }
+            return reader.get(0).toDocument();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read flat Document", e);
+        }
+    }
+    
+    /**
+     * Read all of the documents packed into a value. The documents are read as the list is accessed.
+     * 
+     * @param from
+     * @return the documents with their keys, or with the key of the value if the batch was written without keys
+     */
+    public List<Entry<Key,Document>> deserializeBatch(final Entry<Key,Value> from) {
+        final FlatDocumentReader reader = read(from.getValue());
+        return new AbstractList<Entry<Key,Document>>() {
+            @Override
+            public Entry<Key,Document> get(int index) {
+                Key key = reader.getKey(index);
+                return Maps.immutableEntry(null == key ? from.getKey() : key, reader.get(index).toDocument());
+            }
+            
+            @Override
+            public int size() {
+                return reader.size();
+            }
+        };
+    }
+    
+    /**
+     * Open the documents in a serialized value
+     * 
+     * @param value
+     * @return a reader over the documents in the value
+     */
+    public FlatDocumentReader read(Value value) {
+        byte[] bytes = value.get();
+        InputStream is = DocumentSerialization.consumeHeader(bytes);
+        try {
+            if (bytes[2] == DocumentSerialization.NONE) {
+                // read straight out of the value
+                return new FlatDocumentReader(bytes, 3, bytes.length - 3);
+            } else {
+                return new FlatDocumentReader(ByteStreams.toByteArray(is));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read flat Documents", e);
+        }
+    }
+    
+}
@@ -0,0 +1,98 @@
+package datawave.query.function.serializer;
+
+import java.util.Map.Entry;
+
+import datawave.query.attributes.Document;
+import datawave.query.attributes.FlatDocumentWriter;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.trace.instrument.Span;
+import org.apache.accumulo.trace.instrument.Trace;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Convert a Document to a Value in the flat document format (see FlatDocumentWriter). Field names, visibilities and attribute classes are written once in a
+ * dictionary, and the document can be read back lazily with the FlatDocumentDeserializer.
+ * 
+ * Documents may also be packed into a batch with {@link #add(Entry)} and written to a single Value with {@link #flush(Key)}, so that the batch shares one
+ * dictionary and one compression stream. Calls to {@link #apply(Entry)} discard the current batch.
+ */
+public class FlatDocumentSerializer extends DocumentSerializer {
+    FlatDocumentWriter writer;
+    
+    public FlatDocumentSerializer(boolean reducedResponse) {
+        this(reducedResponse, false);
+    }
+    
+    public FlatDocumentSerializer(boolean reducedResponse, boolean compress) {
+        super(reducedResponse, compress);
+        this.writer = new FlatDocumentWriter(reducedResponse);
+    }
+    
+    @Override
+    public void setReducedResponse(boolean reducedResponse) {
+        super.setReducedResponse(reducedResponse);
+        this.writer = new FlatDocumentWriter(reducedResponse);
+    }
+    
+    @Override
+    public byte[] serialize(Document doc) {
+        writer.reset();
+        writer.add(doc);
+        return writer.toByteArray();
+    }
+    
+    /**
+     * Add a document to the current batch
+     * 
+     * @param entry
+     *            the document and its key
+     */
+    public void add(Entry<Key,Document> entry) {
+        writer.add(entry.getKey(), entry.getValue());
+    }
+    
+    /**
+     * @return the number of documents in the current batch
+     */
+    public int getBatchSize() {
+        return writer.size();
+    }
+    
+    /**
+     * @return the number of serialized bytes in the current batch
+     */
+    public int getBatchBytes() {
+        return writer.documentBytes();
+    }
+    
+    /**
+     * Write the current batch to a Value, and start a new batch
+     * 
+     * @param key
+     *            the key to return the batch under, which should be the key of the last document in the batch
+     * @return the batch
+     */
+    public Entry<Key,Value> flush(Key key) {
+        Span s = null;
+        try {
+            s = Trace.start("Document Batch Serialization");
+            s.data("Serialization type", this.concreteName);
+            s.data("Batch size", Integer.toString(writer.size()));
+            
+            byte[] bytes = writer.toByteArray();
+            writer.reset();
+            
+            s.data("Raw size", Integer.toString(bytes.length));
+            
+            return Maps.immutableEntry(key, getValue(bytes, s));
+        } finally {
+            if (null != s) {
+                s.stop();
+            }
+        }
+    }
+    
+}
@@ -8,6 +8,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
 
 import org.apache.commons.jexl2.parser.ASTDelayedPredicate;
 import org.apache.commons.jexl2.parser.ASTOrNode;
@@ -350,29 +351,10 @@ public class IndexInfo implements Writable, UidIntersector {
             merged.count = count + o.count;
             merged.uids = ImmutableSortedSet.of();
         } else {
-            HashMultimap<String,JexlNode> ids = HashMultimap.create();
-            
             /*
-             * Concatenate all UIDs and merge the individual nodes
+             * Merge the sorted UIDs and the individual nodes
              */
-            for (IndexMatch match : Iterables.concat(uids, o.uids)) {
-                
-                JexlNode newNode = match.getNode();
-                if (null != newNode)
-                    ids.put(match.uid, newNode);
-            }
-            
-            Set<IndexMatch> matches = Sets.newHashSet();
-            
-            for (String uid : ids.keySet()) {
-                Set<JexlNode> nodes = Sets.newHashSet(ids.get(uid));
-                if (!nodes.isEmpty()) {
-                    nodes.addAll(delayedNodes);
-                    matches.add(new IndexMatch(nodes, uid, IndexMatchType.OR));
-                }
-                
-            }
-            merged.uids = ImmutableSortedSet.copyOf(matches);
+            merged.uids = SortedIndexMatches.union(uids, o.uids, delayedNodes);
             merged.count = merged.uids.size();
         }
         
@@ -442,14 +424,7 @@ public class IndexInfo implements Writable, UidIntersector {
      * @return
      */
     protected IndexInfo intersect(long maxPossibilities, Iterable<IndexMatch> matchIterable, List<JexlNode> otherInfiniteNodes, List<JexlNode> delayedNodes) {
-        HashMultimap<String,JexlNode> ids = HashMultimap.create();
-        Set<IndexMatch> matches = Sets.newHashSet();
-        
-        for (IndexMatch match : matchIterable) {
-            JexlNode newNode = match.getNode();
-            if (null != newNode)
-                ids.put(match.uid, newNode);
-        }
+        List<IndexMatch> matches = Lists.newArrayList();
         
         List<JexlNode> infiniteNodes = Lists.newArrayList(delayedNodes);
         for (JexlNode node : otherInfiniteNodes) {
@@ -460,14 +435,20 @@ public class IndexInfo implements Writable, UidIntersector {
         IndexInfo merged = new IndexInfo();
         Set<JexlNode> allNodes = Sets.newHashSet();
         Multimap<TreeHashNode,JexlNode> nodesMap = ArrayListMultimap.create();
-        if (ids.keySet().isEmpty()) {
-            merged.count = maxPossibilities;
-        } else {
-            for (String uid : ids.keySet()) {
-                Set<JexlNode> nodes = Sets.newHashSet(ids.get(uid));
+        // the infinite nodes are shared by every uid, so only hash each node the first time it is seen
+        Set<JexlNode> hashedNodes = Sets.newIdentityHashSet();
+        boolean hasIds = false;
+        for (IndexMatch match : matchIterable) {
+            JexlNode newNode = match.getNode();
+            if (null != newNode) {
+                hasIds = true;
+                Set<JexlNode> nodes = Sets.newHashSet(newNode);
                 if ((nodes.size() + infiniteNodes.size()) > 1) {
                     nodes.addAll(infiniteNodes);
                     for (JexlNode node : nodes) {
+                        if (!hashedNodes.add(node)) {
+                            continue;
+                        }
                         JexlNode sourceNode = getSourceNode(node);
                         JexlNode topLevelOr = getOrNode(sourceNode);
                         if (null == topLevelOr) {
@@ -481,12 +462,12 @@ public class IndexInfo implements Writable, UidIntersector {
                             }
                         }
                     }
-                    IndexMatch currentMatch = new IndexMatch(nodes, uid, IndexMatchType.AND);
+                    IndexMatch currentMatch = new IndexMatch(nodes, match.uid, IndexMatchType.AND);
                     matches.add(currentMatch);
                 }
             }
-            merged.count = matches.size();
         }
+        merged.count = hasIds ? matches.size() : maxPossibilities;
         
         for (JexlNode node : infiniteNodes) {
             JexlNode baseNode = getSourceNode(node);
@@ -584,42 +565,25 @@ public class IndexInfo implements Writable, UidIntersector {
                      */
                     merged.count = count;
                     
-                    HashMultimap<String,JexlNode> ids = HashMultimap.create();
-                    for (IndexMatch match : uids) {
-                        JexlNode newNode = match.getNode();
-                        if (null != newNode)
-                            ids.put(match.uid, newNode);
-                    }
-                    
                     List<JexlNode> ourDelayedNodes = Lists.newArrayList();
                     ourDelayedNodes.addAll(delayedNodes);
                     // we may actually have no node on o
                     if (null != o.getNode())
                         ourDelayedNodes.add(o.getNode());
                     
-                    Set<IndexMatch> matches = buildNodeList(ids, IndexMatchType.AND, true, ourDelayedNodes);
-                    
-                    merged.uids = ImmutableSortedSet.copyOf(matches);
+                    merged.uids = SortedIndexMatches.intersect(uids, ourDelayedNodes);
                     merged.count = merged.uids.size();
                 } else if (o.onlyEvents()) {
                     /*
                      * E) We have LARGE AND SMALL
                      */
-                    HashMultimap<String,JexlNode> ids = HashMultimap.create();
-                    for (IndexMatch match : o.uids) {
-                        JexlNode newNode = match.getNode();
-                        if (null != newNode)
-                            ids.put(match.uid, newNode);
-                    }
-                    
                     List<JexlNode> ourDelayedNodes = Lists.newArrayList();
                     ourDelayedNodes.addAll(delayedNodes);
                     // possible, depending on how query is processed that we have no node.
                     if (null != getNode())
                         ourDelayedNodes.add(getNode());
                     
-                    Set<IndexMatch> matches = buildNodeList(ids, IndexMatchType.AND, true, ourDelayedNodes);
-                    merged.uids = ImmutableSortedSet.copyOf(matches);
+                    merged.uids = SortedIndexMatches.intersect(o.uids, ourDelayedNodes);
                     merged.count = merged.uids.size();
                 } else {
                     
@@ -639,6 +603,10 @@ public class IndexInfo implements Writable, UidIntersector {
     
     @Override
     public Set<IndexMatch> intersect(Set<IndexMatch> uids1, Set<IndexMatch> uids2, List<JexlNode> delayedNodes) {
+        if (SortedIndexMatches.isSortedByUid(uids1) && SortedIndexMatches.isSortedByUid(uids2)) {
+            return SortedIndexMatches.intersect((SortedSet<IndexMatch>) uids1, (SortedSet<IndexMatch>) uids2, delayedNodes);
+        }
+        
         HashMultimap<String,JexlNode> ids = HashMultimap.create();
         for (IndexMatch match : Iterables.concat(uids1, uids2)) {
             JexlNode newNode = match.getNode();
@@ -31,6 +31,7 @@ import datawave.query.planner.QueryPlan;
 import datawave.query.tables.RangeStreamScanner;
 import datawave.query.tables.ScannerFactory;
 import datawave.query.tables.SessionOptions;
+import datawave.query.tables.async.IndexLookupScheduler;
 import datawave.query.tld.CreateTLDUidsIterator;
 import datawave.query.util.MetadataHelper;
 import datawave.query.util.QueryScannerHelper;
@@ -150,8 +151,12 @@ public class RangeStream extends BaseVisitor implements CloseableIterable<QueryP
         int maxLookup = (int) Math.max(Math.ceil(config.getNumIndexLookupThreads()), 1);
         executor = Executors.newFixedThreadPool(maxLookup);
         runnables = new LinkedBlockingDeque<>();
-        int executeLookupMin = (int) Math.max(maxLookup / 2, 1);
-        streamExecutor = new ThreadPoolExecutor(executeLookupMin, maxLookup, 100, TimeUnit.MILLISECONDS, runnables);
+        // the scanner initializers wait on the lookups, so only the lookups can be run by the shared scheduler
+        streamExecutor = IndexLookupScheduler.Factory.newLane(config, IndexLookupScheduler.INDEX, maxLookup);
+        if (null == streamExecutor) {
+            int executeLookupMin = (int) Math.max(maxLookup / 2, 1);
+            streamExecutor = new ThreadPoolExecutor(executeLookupMin, maxLookup, 100, TimeUnit.MILLISECONDS, runnables);
+        }
         fieldDataTypes = config.getQueryFieldsDatatypes();
         collapseUids = config.getCollapseUids();
         try {
@@ -0,0 +1,209 @@
+package datawave.query.index.lookup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+
+import org.apache.commons.jexl2.parser.JexlNode;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+
+/**
+ * Merges the uid sorted sets of IndexMatch held by IndexInfo objects. The sets are walked in uid order, galloping through the larger set of an intersection, so
+ * that merging the uids of a shard or day costs a pass over the smaller set rather than a hash of every uid to its nodes.
+ */
+final class SortedIndexMatches {
+    
+    private SortedIndexMatches() {}
+    
+    /**
+     * @param uids
+     * @return true if the set is sorted by the natural ordering of IndexMatch, which is by uid
+     */
+    static boolean isSortedByUid(Set<IndexMatch> uids) {
+        if (!(uids instanceof SortedSet)) {
+            return false;
+        }
+        Comparator<?> comparator = ((SortedSet<IndexMatch>) uids).comparator();
+        return null == comparator || Ordering.natural().equals(comparator);
+    }
+    
+    /**
+     * Intersect two sets of matches. A uid in both sets is kept if the two matches have distinct nodes, in which case the match is the AND of those nodes and the
+     * delayed nodes.
+     * 
+     * @param uids1
+     *            sorted by uid
+     * @param uids2
+     *            sorted by uid
+     * @param delayedNodes
+     * @return the intersected matches
+     */
+    static ImmutableSortedSet<IndexMatch> intersect(SortedSet<IndexMatch> uids1, SortedSet<IndexMatch> uids2, List<JexlNode> delayedNodes) {
+        List<IndexMatch> smaller = asList(uids1);
+        List<IndexMatch> larger = asList(uids2);
+        if (smaller.size() > larger.size()) {
+            List<IndexMatch> swap = smaller;
+            smaller = larger;
+            larger = swap;
+        }
+        
+        List<IndexMatch> matches = new ArrayList<>(smaller.size());
+        int position = 0;
+        for (int i = 0; i < smaller.size() && position < larger.size(); i++) {
+            IndexMatch match = smaller.get(i);
+            position = gallop(larger, position, match.uid);
+            if (position < larger.size() && larger.get(position).uid.equals(match.uid)) {
+                Set<JexlNode> nodes = nodes(match, larger.get(position));
+                if (nodes.size() > 1) {
+                    nodes.addAll(delayedNodes);
+                    matches.add(new IndexMatch(nodes, match.uid, IndexMatchType.AND));
+                }
+                position++;
+            }
+        }
+        return build(matches);
+    }
+    
+    /**
+     * Union two sets of matches. Every uid with a node is kept, as the OR of its nodes and the delayed nodes.
+     * 
+     * @param uids1
+     *            sorted by uid
+     * @param uids2
+     *            sorted by uid
+     * @param delayedNodes
+     * @return the union of the matches
+     */
+    static ImmutableSortedSet<IndexMatch> union(SortedSet<IndexMatch> uids1, SortedSet<IndexMatch> uids2, List<JexlNode> delayedNodes) {
+        List<IndexMatch> left = asList(uids1);
+        List<IndexMatch> right = asList(uids2);
+        List<IndexMatch> matches = new ArrayList<>(Math.max(left.size(), right.size()));
+        int i = 0;
+        int j = 0;
+        while (i < left.size() || j < right.size()) {
+            int cmp;
+            if (i == left.size()) {
+                cmp = 1;
+            } else if (j == right.size()) {
+                cmp = -1;
+            } else {
+                cmp = left.get(i).uid.compareTo(right.get(j).uid);
+            }
+            
+            String uid;
+            Set<JexlNode> nodes;
+            if (cmp < 0) {
+                uid = left.get(i).uid;
+                nodes = nodes(left.get(i++), null);
+            } else if (cmp > 0) {
+                uid = right.get(j).uid;
+                nodes = nodes(null, right.get(j++));
+            } else {
+                uid = left.get(i).uid;
+                nodes = nodes(left.get(i++), right.get(j++));
+            }
+            
+            if (!nodes.isEmpty()) {
+                nodes.addAll(delayedNodes);
+                matches.add(new IndexMatch(nodes, uid, IndexMatchType.OR));
+            }
+        }
+        return build(matches);
+    }
+    
+    /**
+     * Intersect a set of matches with nodes that have no uids. Every uid with a node is kept, as the AND of its node and the other nodes, unless there are no
+     * other nodes.
+     * 
+     * @param uids
+     *            sorted by uid
+     * @param otherNodes
+     * @return the intersected matches
+     */
+    static ImmutableSortedSet<IndexMatch> intersect(SortedSet<IndexMatch> uids, List<JexlNode> otherNodes) {
+        if (otherNodes.isEmpty()) {
+            return ImmutableSortedSet.of();
+        }
+        List<IndexMatch> matches = new ArrayList<>(uids.size());
+        for (IndexMatch match : uids) {
+            Set<JexlNode> nodes = nodes(match, null);
+            if (!nodes.isEmpty()) {
+                nodes.addAll(otherNodes);
+                matches.add(new IndexMatch(nodes, match.uid, IndexMatchType.AND));
+            }
+        }
+        return build(matches);
+    }
+    
+    /**
+     * Find the first position at or after start whose uid is not less than the given uid, by probing ahead in growing steps and then searching between the
+     * last two probes.
+     * 
+     * @param matches
+     *            sorted by uid
+     * @param start
+     * @param uid
+     * @return the position, or the size of the list if there is none
+     */
+    static int gallop(List<IndexMatch> matches, int start, String uid) {
+        int size = matches.size();
+        if (start >= size || matches.get(start).uid.compareTo(uid) >= 0) {
+            return start;
+        }
+        
+        // the uid at low is always less than the uid, and the uid at high is not (or high is the size)
+        int low = start;
+        int step = 1;
+        int high = start + step;
+        while (high < size && matches.get(high).uid.compareTo(uid) < 0) {
+            low = high;
+            step <<= 1;
+            high = start + step;
+        }
+        high = Math.min(high, size);
+        
+        while (low + 1 < high) {
+            int mid = (low + high) >>> 1;
+            if (matches.get(mid).uid.compareTo(uid) < 0) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+    
+    private static Set<JexlNode> nodes(IndexMatch first, IndexMatch second) {
+        Set<JexlNode> nodes = Sets.newHashSet();
+        if (null != first) {
+            JexlNode node = first.getNode();
+            if (null != node) {
+                nodes.add(node);
+            }
+        }
+        if (null != second) {
+            JexlNode node = second.getNode();
+            if (null != node) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+    
+    private static List<IndexMatch> asList(SortedSet<IndexMatch> uids) {
+        if (uids instanceof ImmutableSortedSet) {
+            return ((ImmutableSortedSet<IndexMatch>) uids).asList();
+        }
+        return new ArrayList<>(uids);
+    }
+    
+    private static ImmutableSortedSet<IndexMatch> build(List<IndexMatch> matches) {
+        // the matches are already in uid order, so the sort within copyOf is a single pass
+        return ImmutableSortedSet.copyOf(Ordering.natural(), matches);
+    }
+}
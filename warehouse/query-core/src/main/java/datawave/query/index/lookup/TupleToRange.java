@@ -93,7 +93,9 @@ public class TupleToRange implements Function<Tuple2<String,IndexInfo>,Iterator<
                 log.trace("Building shard " + new Range(tuple.first(), true, tuple.first() + NULL_BYTE_STRING, false) + " From "
                                 + (null == myNode ? "NoQueryNode" : JexlStringBuildingVisitor.buildQuery(myNode)));
             
-            return Collections.singleton(new QueryPlan(myNode, new Range(tuple.first(), true, tuple.first() + NULL_BYTE_STRING, false))).iterator();
+            QueryPlan plan = new QueryPlan(myNode, new Range(tuple.first(), true, tuple.first() + NULL_BYTE_STRING, false));
+            plan.setEstimatedCount(ii.count());
+            return Collections.singleton(plan).iterator();
         }
         // else assume this a day range, then range from <day> to <day>\xff...
         else {
@@ -0,0 +1,149 @@
+package datawave.query.index.stats;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import datawave.data.MetadataCardinalityCounts;
+import datawave.query.util.MetadataHelper;
+import datawave.util.time.DateHelper;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Estimates the number of global index entries for a field over the date range and datatypes of a query, from the per-day counts that ingest writes to the
+ * metadata table. The per-day counts of a field are cached by the {@link MetadataHelper}, and the estimate of each field is held for the life of this object,
+ * so that the planner can compare the cost of terms before any global index scan is made.
+ * 
+ * The count of a field says nothing about how selective one of its values is, so the estimate of a term scales the count of its field by the share of the
+ * field that the value has in the term counts of the metadata table. When the value has no term count of its own, the field's count is split evenly over the
+ * number of distinct values that the term counts record for the field.
+ */
+public class FieldCardinalityStats {
+    
+    private static final Logger log = Logger.getLogger(FieldCardinalityStats.class);
+    
+    public static final long UNKNOWN = -1L;
+    
+    private final MetadataHelper helper;
+    private final String beginDay;
+    private final String endDay;
+    private final Collection<String> datatypes;
+    private final Map<String,Long> cardinalities = new HashMap<>();
+    private final Map<Map.Entry<String,String>,Long> termCardinalities = new HashMap<>();
+    private Map<String,Map<String,MetadataCardinalityCounts>> termCounts;
+    
+    /**
+     * @param helper
+     * @param beginDate
+     * @param endDate
+     * @param datatypes
+     *            the datatypes to count, or null or empty to count every datatype
+     */
+    public FieldCardinalityStats(MetadataHelper helper, Date beginDate, Date endDate, Collection<String> datatypes) {
+        this.helper = helper;
+        this.beginDay = DateHelper.format(beginDate);
+        this.endDay = DateHelper.format(endDate);
+        this.datatypes = datatypes;
+    }
+    
+    /**
+     * @param field
+     * @return the number of index entries for the field in the date range, or {@link #UNKNOWN} if the counts could not be read
+     */
+    public long getCardinality(String field) {
+        Long cardinality = cardinalities.get(field);
+        if (null == cardinality) {
+            cardinality = computeCardinality(field);
+            cardinalities.put(field, cardinality);
+        }
+        return cardinality;
+    }
+    
+    /**
+     * @param field
+     * @param value
+     *            the normalized value of the term
+     * @return the estimated number of index entries for the value of the field in the date range, or {@link #UNKNOWN} if the term counts do not cover the
+     *         field
+     */
+    public long getCardinality(String field, String value) {
+        Map.Entry<String,String> term = Maps.immutableEntry(field, value);
+        Long cardinality = termCardinalities.get(term);
+        if (null == cardinality) {
+            cardinality = computeCardinality(field, value);
+            termCardinalities.put(term, cardinality);
+        }
+        return cardinality;
+    }
+    
+    private long computeCardinality(String field, String value) {
+        if (null == termCounts) {
+            try {
+                // the term counts are only used to plan the query and are never shown to the user, so they are read with the root auths
+                termCounts = helper.getTermCountsWithRootAuths();
+            } catch (Exception e) {
+                log.warn("Could not read the term counts", e);
+                termCounts = Collections.emptyMap();
+            }
+        }
+        
+        Map<String,MetadataCardinalityCounts> valueCounts = termCounts.get(field);
+        if (null == valueCounts || valueCounts.isEmpty()) {
+            return UNKNOWN;
+        }
+        long fieldCardinality = getCardinality(field);
+        if (fieldCardinality == UNKNOWN) {
+            return UNKNOWN;
+        }
+        
+        double share;
+        MetadataCardinalityCounts counts = valueCounts.get(value);
+        if (null != counts && counts.getFieldAllValueCount() > 0) {
+            share = (double) counts.getFieldValueCount() / counts.getFieldAllValueCount();
+        } else {
+            counts = valueCounts.values().iterator().next();
+            if (counts.getUniqueFieldAllValueCount() <= 0) {
+                return UNKNOWN;
+            }
+            share = 1.0d / counts.getUniqueFieldAllValueCount();
+        }
+        
+        // round up, so that a value that is in the index never looks free
+        long cardinality = (long) Math.ceil(fieldCardinality * share);
+        if (log.isTraceEnabled()) {
+            log.trace("Cardinality of " + field + " == " + value + " from " + beginDay + " to " + endDay + " is estimated at " + cardinality);
+        }
+        return cardinality;
+    }
+    
+    private long computeCardinality(String field) {
+        SortedMap<String,Map<String,Long>> countsByDay;
+        try {
+            countsByDay = helper.getCountsByDayAndType(field);
+        } catch (Exception e) {
+            log.warn("Could not read the counts for " + field, e);
+            return UNKNOWN;
+        }
+        
+        long sum = 0;
+        // the days are yyyyMMdd, so the end day is included by appending a character
+        for (Map<String,Long> countsByType : countsByDay.subMap(beginDay, endDay + '\0').values()) {
+            for (Map.Entry<String,Long> entry : countsByType.entrySet()) {
+                if (null == datatypes || datatypes.isEmpty() || datatypes.contains(entry.getKey())) {
+                    sum += entry.getValue();
+                }
+            }
+        }
+        
+        if (log.isTraceEnabled()) {
+            log.trace("Cardinality of " + field + " from " + beginDay + " to " + endDay + " is " + sum);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,95 @@
+package datawave.query.iterator;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import datawave.query.attributes.Document;
+import datawave.query.function.serializer.FlatDocumentSerializer;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.YieldCallback;
+import org.apache.log4j.Logger;
+
+/**
+ * Packs documents into batches of up to maxDocuments documents or maxBytes serialized bytes, and returns each batch as a single Value in the flat document
+ * format under the key of the last document in the batch. A scan that is torn down after a batch is returned will resume after that key, which covers every
+ * document in the batch.
+ * 
+ * If the source yields in the middle of a batch then the partial batch is returned first, and the yield is passed on by the following call to hasNext().
+ */
+public class DocumentBatchingIterator implements Iterator<Entry<Key,Value>> {
+    private static final Logger log = Logger.getLogger(DocumentBatchingIterator.class);
+    
+    private final Iterator<Entry<Key,Document>> documents;
+    private final FlatDocumentSerializer serializer;
+    private final int maxDocuments;
+    private final long maxBytes;
+    private final YieldCallback<Key> yield;
+    
+    private Entry<Key,Value> next = null;
+    private Key yieldKey = null;
+    
+    public DocumentBatchingIterator(Iterator<Entry<Key,Document>> documents, FlatDocumentSerializer serializer, int maxDocuments, long maxBytes,
+                    YieldCallback<Key> yieldCallback) {
+        this.documents = documents;
+        this.serializer = serializer;
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+        this.yield = yieldCallback;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = nextBatch();
+        }
+        return (next != null);
+    }
+    
+    @Override
+    public Entry<Key,Value> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Entry<Key,Value> batch = next;
+        next = null;
+        return batch;
+    }
+    
+    private Entry<Key,Value> nextBatch() {
+        if (yieldKey != null) {
+            // the partial batch before the yield has been returned, so now pass the yield on
+            yield.yield(yieldKey);
+            yieldKey = null;
+            return null;
+        }
+        
+        Key last = null;
+        while (serializer.getBatchSize() < maxDocuments && serializer.getBatchBytes() < maxBytes && documents.hasNext()) {
+            Entry<Key,Document> document = documents.next();
+            serializer.add(document);
+            last = document.getKey();
+        }
+        
+        if (last == null) {
+            return null;
+        }
+        
+        if (yield != null && yield.hasYielded()) {
+            // hold the yield back until this batch has been returned, otherwise the batch would be lost
+            yieldKey = yield.getPositionAndReset();
+            if (log.isDebugEnabled()) {
+                log.debug("Holding yield at " + yieldKey + " to return a partial batch of " + serializer.getBatchSize() + " documents");
+            }
+        }
+        
+        return serializer.flush(last);
+    }
+    
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -14,11 +14,14 @@ import datawave.data.type.util.NumericalEncoder;
 import datawave.ingest.data.config.ingest.CompositeIngest;
 import datawave.marking.MarkingFunctionsFactory;
 import datawave.query.Constants;
+import datawave.query.DocumentSerialization;
 import datawave.query.DocumentSerialization.ReturnType;
 import datawave.query.attributes.AttributeKeepFilter;
 import datawave.query.attributes.Document;
+import datawave.query.attributes.NormalizedValueCache;
 import datawave.query.attributes.ValueTuple;
 import datawave.query.composite.CompositeMetadata;
+import datawave.query.exceptions.NoSuchDeserializerException;
 import datawave.query.function.Aggregation;
 import datawave.query.function.DataTypeAsField;
 import datawave.query.function.DocumentMetadata;
@@ -32,7 +35,9 @@ import datawave.query.function.LimitFields;
 import datawave.query.function.MaskedValueFilterFactory;
 import datawave.query.function.MaskedValueFilterInterface;
 import datawave.query.function.RemoveGroupingContext;
-import datawave.query.function.deserializer.KryoDocumentDeserializer;
+import datawave.query.function.deserializer.DocumentDeserializer;
+import datawave.query.function.deserializer.FlatDocumentDeserializer;
+import datawave.query.function.serializer.FlatDocumentSerializer;
 import datawave.query.function.serializer.KryoDocumentSerializer;
 import datawave.query.function.serializer.ToStringDocumentSerializer;
 import datawave.query.function.serializer.WritableDocumentSerializer;
@@ -177,6 +182,8 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
     protected TypeMetadata typeMetadataWithNonIndexed = null;
     protected TypeMetadata typeMetadata = null;
     
+    protected NormalizedValueCache normalizedValueCache = null;
+    
     public QueryIterator() {}
     
     public QueryIterator(QueryIterator other, IteratorEnvironment env) {
@@ -194,6 +201,7 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
         this.typeMetadataWithNonIndexed = other.typeMetadataWithNonIndexed;
         this.typeMetadata = other.typeMetadata;
         this.trackingSpan = other.trackingSpan;
+        this.normalizedValueCache = other.normalizedValueCache;
         // Defer to QueryOptions to re-set all of the query options
         super.deepCopy(other);
     }
@@ -222,7 +230,7 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
         try {
             
             script = JexlASTHelper.parseJexlQuery(this.getQuery());
-            myEvaluationFunction = new JexlEvaluation(this.getQuery(), arithmetic);
+            myEvaluationFunction = createJexlEvaluation(this.getQuery(), arithmetic);
             
         } catch (Exception e) {
             throw new IOException("Could not parse the JEXL query: '" + this.getQuery() + "'", e);
@@ -364,8 +372,8 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
             // Create the pipeline iterator for document aggregation and
             // evaluation within a thread pool
             PipelineIterator pipelineIter = PipelineFactory.createIterator(this.seekKeySource, getMaxEvaluationPipelines(), getMaxPipelineCachedResults(),
-                            getSerialPipelineRequest(), querySpanCollector, trackingSpan, this, sourceForDeepCopies.deepCopy(myEnvironment), myEnvironment,
-                            yield, yieldThresholdMs);
+                            getSerialPipelineRequest(), isOutOfOrderEvaluationPipeline(), querySpanCollector, trackingSpan, this,
+                            sourceForDeepCopies.deepCopy(myEnvironment), myEnvironment, yield, yieldThresholdMs);
             
             pipelineIter.setCollectTimingDetails(collectTimingDetails);
             // TODO pipelineIter.setStatsdHostAndPort(statsdHostAndPort);
@@ -404,12 +412,25 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
                 
             }
             
+            // a batch holds many documents, so the result count and the cq mask are applied to each document before it is batched
+            boolean batchResults = this.getReturnType() == ReturnType.flat && getResultBatchSize() > 1;
+            if (batchResults) {
+                pipelineDocuments = countResults(pipelineDocuments, resultCount, documentRange != null);
+            }
+            
             if (this.getReturnType() == ReturnType.kryo) {
                 // Serialize the Document using Kryo
                 this.serializedDocuments = Iterators.transform(pipelineDocuments, new KryoDocumentSerializer(isReducedResponse(), isCompressResults()));
             } else if (this.getReturnType() == ReturnType.writable) {
                 // Use the Writable interface to serialize the Document
                 this.serializedDocuments = Iterators.transform(pipelineDocuments, new WritableDocumentSerializer(isReducedResponse()));
+            } else if (batchResults) {
+                // Pack batches of Documents into each Value, sharing a dictionary and a compression stream
+                this.serializedDocuments = new DocumentBatchingIterator(pipelineDocuments, new FlatDocumentSerializer(isReducedResponse(), isCompressResults()),
+                                getResultBatchSize(), getResultBatchMaxBytes(), yield);
+            } else if (this.getReturnType() == ReturnType.flat) {
+                // Serialize the Document with a dictionary of its field names and visibilities
+                this.serializedDocuments = Iterators.transform(pipelineDocuments, new FlatDocumentSerializer(isReducedResponse(), isCompressResults()));
             } else if (this.getReturnType() == ReturnType.tostring) {
                 // Just return a toString() representation of the document
                 this.serializedDocuments = Iterators.transform(pipelineDocuments, new ToStringDocumentSerializer(isReducedResponse()));
@@ -418,20 +439,11 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
             }
             
             if (log.isTraceEnabled()) {
-                KryoDocumentDeserializer dser = new KryoDocumentDeserializer();
-                this.serializedDocuments = Iterators.filter(this.serializedDocuments, keyValueEntry -> {
-                    log.trace("after serializing, keyValueEntry:" + dser.apply(keyValueEntry));
-                    return true;
-                });
+                this.serializedDocuments = traceSerializedDocuments(this.serializedDocuments, "after serializing, keyValueEntry:");
             }
             
-            // now add the result count to the keys (required when not sorting UIDs)
-            // Cannot do this on document specific ranges as the count would place the keys outside the initial range
-            if (!sortedUIDs && documentRange == null) {
-                this.serializedDocuments = new ResultCountingIterator(serializedDocuments, resultCount, yield);
-            } else if (this.sortedUIDs) {
-                // we have sorted UIDs, so we can mask out the cq
-                this.serializedDocuments = new KeyAdjudicator<>(serializedDocuments, yield);
+            if (!batchResults) {
+                this.serializedDocuments = countResults(this.serializedDocuments, resultCount, documentRange != null);
             }
             
             // only add the final document tracking iterator which sends stats back to the client if collectTimingDetails is true
@@ -442,11 +454,7 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
                                 this.getReturnType(), this.isReducedResponse(), this.isCompressResults(), this.yield);
             }
             if (log.isTraceEnabled()) {
-                KryoDocumentDeserializer dser = new KryoDocumentDeserializer();
-                this.serializedDocuments = Iterators.filter(this.serializedDocuments, keyValueEntry -> {
-                    log.debug("finally, considering:" + dser.apply(keyValueEntry));
-                    return true;
-                });
+                this.serializedDocuments = traceSerializedDocuments(this.serializedDocuments, "finally, considering:");
             }
             
             // Determine if we have items to return
@@ -522,6 +530,57 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
         }
     }
     
+    /**
+     * Log the serialized results, read back with the deserializer of the return type. A flat value may hold a batch of documents, each of which is logged.
+     * 
+     * @param results
+     * @param message
+     *            the message to log each result with
+     * @return the results, unchanged
+     */
+    private Iterator<Entry<Key,Value>> traceSerializedDocuments(Iterator<Entry<Key,Value>> results, String message) {
+        final DocumentDeserializer dser;
+        try {
+            dser = DocumentSerialization.getDocumentDeserializer(this.getReturnType());
+        } catch (NoSuchDeserializerException e) {
+            // the tostring results are already readable
+            return Iterators.filter(results, keyValueEntry -> {
+                log.trace(message + keyValueEntry);
+                return true;
+            });
+        }
+        return Iterators.filter(results, keyValueEntry -> {
+            if (dser instanceof FlatDocumentDeserializer) {
+                for (Entry<Key,Document> document : ((FlatDocumentDeserializer) dser).deserializeBatch(keyValueEntry)) {
+                    log.trace(message + document);
+                }
+            } else {
+                log.trace(message + dser.apply(keyValueEntry));
+            }
+            return true;
+        });
+    }
+    
+    /**
+     * Add the result count to the keys (required when not sorting UIDs), or mask out the cq when the UIDs are sorted
+     * 
+     * @param results
+     * @param resultCount
+     *            the count of the results returned before this scan
+     * @param documentSpecific
+     *            true for a document specific range, which cannot be counted as the count would place the keys outside the initial range
+     * @return the results with their keys adjusted
+     */
+    private <T> Iterator<Entry<Key,T>> countResults(Iterator<Entry<Key,T>> results, long resultCount, boolean documentSpecific) {
+        if (!sortedUIDs && !documentSpecific) {
+            return new ResultCountingIterator<>(results, resultCount, yield);
+        } else if (this.sortedUIDs) {
+            // we have sorted UIDs, so we can mask out the cq
+            return new KeyAdjudicator<>(results, yield);
+        }
+        return results;
+    }
+    
     /**
      * Build the document iterator
      * 
@@ -583,7 +642,7 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
                 try {
                     
                     myScript = JexlASTHelper.parseJexlQuery(queries.getValue());
-                    eval = new JexlEvaluation(queries.getValue(), myArithmetic);
+                    eval = createJexlEvaluation(queries.getValue(), myArithmetic);
                     
                 } catch (Exception e) {
                     throw new IOException("Could not parse the JEXL query: '" + this.getQuery() + "'", e);
@@ -758,10 +817,14 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
         // removing Attributes for this Document
         // which do not fall within the expected time range
         Iterator<Entry<Key,Document>> documents = null;
+        final Set<String> evaluationFields = getLazyEvaluationFields(compositeMetadata);
         Aggregation a = new Aggregation(this.getTimeFilter(), this.typeMetadataWithNonIndexed, compositeMetadata, this.isIncludeGroupingContext(),
-                        this.includeRecordId, this.disableIndexOnlyDocuments(), getEvaluationFilter(), isTrackSizes());
+                        this.includeRecordId, this.disableIndexOnlyDocuments(), getEvaluationFilter(), isTrackSizes(), evaluationFields);
+        final NormalizedValueCache valueCache = getNormalizedValueCache();
+        a.setNormalizedValueCache(valueCache);
         if (gatherTimingDetails()) {
             documents = Iterators.transform(sourceIterator, new EvaluationTrackingFunction<>(QuerySpan.Stage.Aggregation, trackingSpan, a));
+            documents = recordNormalizedValueCacheStats(documents, valueCache);
         } else {
             documents = Iterators.transform(sourceIterator, a);
         }
@@ -793,6 +856,20 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
             documents = getEvaluation(documentSpecificSource, deepSourceCopy, documents, compositeMetadata, typeMetadataWithNonIndexed);
         }
         
+        // the documents that passed evaluation now need the rest of their attributes
+        if (evaluationFields != null) {
+            Function<Entry<Key,Document>,Entry<Key,Document>> consumeDeferred = from -> {
+                from.getValue().consumeDeferredRawData();
+                return from;
+            };
+            if (gatherTimingDetails()) {
+                documents = Iterators.transform(documents, new EvaluationTrackingFunction<>(QuerySpan.Stage.Aggregation, trackingSpan, consumeDeferred));
+                documents = recordNormalizedValueCacheStats(documents, valueCache);
+            } else {
+                documents = Iterators.transform(documents, consumeDeferred);
+            }
+        }
+        
         // a hook to allow mapping the document such as with the TLD or Parent
         // query logics
         // or if the document was not aggregated in the first place because the
@@ -878,6 +955,59 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
         return documents;
     }
     
+    /**
+     * @return the cache of normalized values shared by the document pipelines of this scan session, or null if it is disabled
+     */
+    protected synchronized NormalizedValueCache getNormalizedValueCache() {
+        if (null == normalizedValueCache && getNormalizedValueCacheBytes() > 0) {
+            normalizedValueCache = new NormalizedValueCache(getNormalizedValueCacheBytes());
+        }
+        return normalizedValueCache;
+    }
+    
+    /**
+     * Add the hits and misses of the normalized value cache to the tracking span as documents pass through
+     * 
+     * @param documents
+     * @param valueCache
+     *            may be null
+     * @return the documents
+     */
+    private Iterator<Entry<Key,Document>> recordNormalizedValueCacheStats(Iterator<Entry<Key,Document>> documents, final NormalizedValueCache valueCache) {
+        if (null == valueCache) {
+            return documents;
+        }
+        return Iterators.transform(documents, from -> {
+            valueCache.recordStats(trackingSpan);
+            return from;
+        });
+    }
+    
+    /**
+     * The fields to consume up front when documents are assembled lazily: the fields of the query and the components of any composite fields. The attributes
+     * of every other field are only consumed once a document has passed evaluation.
+     * 
+     * @param compositeMetadata
+     * @return the fields, or null if documents are not assembled lazily
+     */
+    protected Set<String> getLazyEvaluationFields(CompositeMetadata compositeMetadata) {
+        // the document permutations may use any field, so they need the whole document before evaluation
+        if (!isLazyDocumentAssembly() || this.disableEvaluation || !this.getDocumentPermutations().isEmpty() || null == script) {
+            return null;
+        }
+        Set<String> fields = new HashSet<>();
+        for (String variable : VariableNameVisitor.parseQuery(script)) {
+            fields.add(JexlASTHelper.deconstructIdentifier(variable));
+        }
+        if (null != compositeMetadata && null != compositeMetadata.getCompositeFieldMapByType()) {
+            for (Multimap<String,String> compositeToFields : compositeMetadata.getCompositeFieldMapByType().values()) {
+                fields.addAll(compositeToFields.keySet());
+                fields.addAll(compositeToFields.values());
+            }
+        }
+        return fields;
+    }
+    
     protected Iterator<Entry<Key,Document>> getEvaluation(SortedKeyValueIterator<Key,Value> sourceDeepCopy, Iterator<Entry<Key,Document>> documents,
                     CompositeMetadata compositeMetadata, TypeMetadata typeMetadataForEval) {
         return getEvaluation(null, sourceDeepCopy, documents, compositeMetadata, typeMetadataForEval);
@@ -942,21 +1072,31 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
     protected JexlEvaluation getJexlEvaluation(NestedQueryIterator<Key> documentSource) {
         
         if (null == documentSource) {
-            return new JexlEvaluation(query, getArithmetic());
+            return createJexlEvaluation(query, getArithmetic());
         }
         JexlEvaluation jexlEvaluationFunction = null;
         NestedQuery<Key> nestedQuery = documentSource.getNestedQuery();
         if (null == nestedQuery) {
-            jexlEvaluationFunction = new JexlEvaluation(query, getArithmetic());
+            jexlEvaluationFunction = createJexlEvaluation(query, getArithmetic());
         } else {
             jexlEvaluationFunction = nestedQuery.getEvaluation();
             if (null == jexlEvaluationFunction) {
-                return new JexlEvaluation(query, getArithmetic());
+                return createJexlEvaluation(query, getArithmetic());
             }
         }
         return jexlEvaluationFunction;
     }
     
+    /**
+     * @param query
+     * @param arithmetic
+     * @return an evaluation of the query, which is compiled if compiled evaluation is enabled
+     */
+    protected JexlEvaluation createJexlEvaluation(String query, JexlArithmetic arithmetic) {
+        JexlEvaluation evaluation = new JexlEvaluation(query, arithmetic);
+        return (isCompiledEvaluation() ? evaluation.compile() : evaluation);
+    }
+    
     @Override
     public JexlArithmetic getArithmetic() {
         JexlArithmetic myArithmetic = this.arithmetic;
@@ -1286,7 +1426,8 @@ public class QueryIterator extends QueryOptions implements YieldingKeyValueItera
                         .setHdfsFileSystem(this.getFileSystemCache()).setQueryLock(this.getQueryLock())
                         .setIvaratorCacheDirURIAlternatives(this.getIvaratorCacheBaseURIsAsList()).setQueryId(this.getQueryId()).setScanId(this.getScanId())
                         .setIvaratorCacheSubDirPrefix(this.getHdfsCacheSubDirPrefix()).setHdfsFileCompressionCodec(this.getHdfsFileCompressionCodec())
-                        .setIvaratorCacheBufferSize(this.getIvaratorCacheBufferSize())
+                        .setIvaratorCacheBufferSize(this.getIvaratorCacheBufferSize()).setIvaratorCacheOffHeapBuffer(this.isIvaratorCacheOffHeapBuffer())
+                        .setIvaratorCacheMappedFiles(this.isIvaratorCacheMappedFiles())
                         .setIvaratorCacheScanPersistThreshold(this.getIvaratorCacheScanPersistThreshold())
                         .setIvaratorCacheScanTimeout(this.getIvaratorCacheScanTimeout()).setMaxRangeSplit(this.getMaxIndexRangeSplit())
                         .setIvaratorMaxOpenFiles(this.getIvaratorMaxOpenFiles()).setIvaratorSources(this, this.getMaxIvaratorSources())
@@ -190,6 +190,10 @@ public class QueryOptions implements OptionDescriber {
     
     public static final String IVARATOR_CACHE_BUFFER_SIZE = "ivarator.cache.buffer.size";
     
+    public static final String IVARATOR_CACHE_OFF_HEAP_BUFFER = "ivarator.cache.off.heap.buffer";
+    
+    public static final String IVARATOR_CACHE_MAPPED_FILES = "ivarator.cache.mapped.files";
+    
     public static final String IVARATOR_SCAN_PERSIST_THRESHOLD = "ivarator.scan.persist.threshold";
     
     public static final String IVARATOR_SCAN_TIMEOUT = "ivarator.scan.timeout";
@@ -204,12 +208,24 @@ public class QueryOptions implements OptionDescriber {
     
     public static final String COMPRESS_SERVER_SIDE_RESULTS = "compress.server.side.results";
     
+    public static final String RESULT_BATCH_SIZE = "result.batch.size";
+    
+    public static final String RESULT_BATCH_MAX_BYTES = "result.batch.max.bytes";
+    
+    public static final String COMPILED_EVALUATION = "compiled.evaluation";
+    
+    public static final String LAZY_DOCUMENT_ASSEMBLY = "lazy.document.assembly";
+    
+    public static final String NORMALIZED_VALUE_CACHE_BYTES = "normalized.value.cache.bytes";
+    
     public static final String MAX_EVALUATION_PIPELINES = "max.evaluation.pipelines";
     
     public static final String SERIAL_EVALUATION_PIPELINE = "serial.evaluation.pipeline";
     
     public static final String MAX_PIPELINE_CACHED_RESULTS = "max.pipeline.cached.results";
     
+    public static final String OUT_OF_ORDER_EVALUATION_PIPELINE = "out.of.order.evaluation.pipeline";
+    
     public static final String BATCHED_QUERY = "query.iterator.batch";
     
     public static final String BATCHED_QUERY_RANGE_PREFIX = "query.iterator.batch.range.";
@@ -302,6 +318,8 @@ public class QueryOptions implements OptionDescriber {
     protected long ivaratorCacheScanPersistThreshold = 100000L;
     protected long ivaratorCacheScanTimeout = 1000L * 60 * 60;
     protected int ivaratorCacheBufferSize = 10000;
+    protected boolean ivaratorCacheOffHeapBuffer = false;
+    protected boolean ivaratorCacheMappedFiles = false;
     
     protected int maxIndexRangeSplit = 11;
     protected int ivaratorMaxOpenFiles = 100;
@@ -323,6 +341,15 @@ public class QueryOptions implements OptionDescriber {
     
     protected boolean compressResults = false;
     
+    protected int resultBatchSize = 1;
+    protected int resultBatchMaxBytes = 1024 * 1024;
+    
+    protected boolean compiledEvaluation = false;
+    
+    protected boolean lazyDocumentAssembly = false;
+    
+    protected long normalizedValueCacheBytes = 0;
+    
     protected Boolean compressedMappings = false;
     protected boolean limitOverride = false;
     
@@ -340,6 +367,8 @@ public class QueryOptions implements OptionDescriber {
     
     protected boolean serialEvaluationPipeline = false;
     
+    protected boolean outOfOrderEvaluationPipeline = false;
+    
     protected Queue<Entry<Range,String>> batchStack;
     
     protected TypeMetadataProvider typeMetadataProvider;
@@ -419,6 +448,8 @@ public class QueryOptions implements OptionDescriber {
         this.ivaratorCacheBaseURIAlternatives = other.ivaratorCacheBaseURIAlternatives;
         this.hdfsSiteConfigURLs = other.hdfsSiteConfigURLs;
         this.ivaratorCacheBufferSize = other.ivaratorCacheBufferSize;
+        this.ivaratorCacheOffHeapBuffer = other.ivaratorCacheOffHeapBuffer;
+        this.ivaratorCacheMappedFiles = other.ivaratorCacheMappedFiles;
         this.ivaratorCacheScanPersistThreshold = other.ivaratorCacheScanPersistThreshold;
         this.ivaratorCacheScanTimeout = other.ivaratorCacheScanTimeout;
         this.hdfsFileCompressionCodec = other.hdfsFileCompressionCodec;
@@ -429,6 +460,11 @@ public class QueryOptions implements OptionDescriber {
         this.yieldThresholdMs = other.yieldThresholdMs;
         
         this.compressResults = other.compressResults;
+        this.resultBatchSize = other.resultBatchSize;
+        this.resultBatchMaxBytes = other.resultBatchMaxBytes;
+        this.compiledEvaluation = other.compiledEvaluation;
+        this.lazyDocumentAssembly = other.lazyDocumentAssembly;
+        this.normalizedValueCacheBytes = other.normalizedValueCacheBytes;
         this.limitFieldsMap = other.limitFieldsMap;
         this.limitFieldsPreQueryEvaluation = other.limitFieldsPreQueryEvaluation;
         this.limitFieldsField = other.limitFieldsField;
@@ -841,6 +877,22 @@ public class QueryOptions implements OptionDescriber {
         this.ivaratorCacheBufferSize = ivaratorCacheBufferSize;
     }
     
+    public boolean isIvaratorCacheOffHeapBuffer() {
+        return ivaratorCacheOffHeapBuffer;
+    }
+    
+    public void setIvaratorCacheOffHeapBuffer(boolean ivaratorCacheOffHeapBuffer) {
+        this.ivaratorCacheOffHeapBuffer = ivaratorCacheOffHeapBuffer;
+    }
+    
+    public boolean isIvaratorCacheMappedFiles() {
+        return ivaratorCacheMappedFiles;
+    }
+    
+    public void setIvaratorCacheMappedFiles(boolean ivaratorCacheMappedFiles) {
+        this.ivaratorCacheMappedFiles = ivaratorCacheMappedFiles;
+    }
+    
     public long getIvaratorCacheScanPersistThreshold() {
         return ivaratorCacheScanPersistThreshold;
     }
@@ -889,6 +941,46 @@ public class QueryOptions implements OptionDescriber {
         this.compressResults = compressResults;
     }
     
+    public int getResultBatchSize() {
+        return resultBatchSize;
+    }
+    
+    public void setResultBatchSize(int resultBatchSize) {
+        this.resultBatchSize = resultBatchSize;
+    }
+    
+    public int getResultBatchMaxBytes() {
+        return resultBatchMaxBytes;
+    }
+    
+    public void setResultBatchMaxBytes(int resultBatchMaxBytes) {
+        this.resultBatchMaxBytes = resultBatchMaxBytes;
+    }
+    
+    public boolean isCompiledEvaluation() {
+        return compiledEvaluation;
+    }
+    
+    public void setCompiledEvaluation(boolean compiledEvaluation) {
+        this.compiledEvaluation = compiledEvaluation;
+    }
+    
+    public boolean isLazyDocumentAssembly() {
+        return lazyDocumentAssembly;
+    }
+    
+    public void setLazyDocumentAssembly(boolean lazyDocumentAssembly) {
+        this.lazyDocumentAssembly = lazyDocumentAssembly;
+    }
+    
+    public long getNormalizedValueCacheBytes() {
+        return normalizedValueCacheBytes;
+    }
+    
+    public void setNormalizedValueCacheBytes(long normalizedValueCacheBytes) {
+        this.normalizedValueCacheBytes = normalizedValueCacheBytes;
+    }
+    
     public Map<String,Integer> getLimitFieldsMap() {
         return limitFieldsMap;
     }
@@ -1027,6 +1119,9 @@ public class QueryOptions implements OptionDescriber {
         options.put(IVARATOR_CACHE_BASE_URI_ALTERNATIVES,
                         "A list of URIs of where all query's caches are to be located for ivarators (caching field index iterators)");
         options.put(IVARATOR_CACHE_BUFFER_SIZE, "The size of the hdfs cache buffer size (items held in memory before dumping to hdfs).  Default is 10000.");
+        options.put(IVARATOR_CACHE_OFF_HEAP_BUFFER, "Hold the hdfs cache buffer in off heap memory instead of on the java heap.  Default is false.");
+        options.put(IVARATOR_CACHE_MAPPED_FILES,
+                        "Persist the ivarator cache as memory mapped block files when the cache dir is on the local file system.  Default is false.");
         options.put(IVARATOR_SCAN_PERSIST_THRESHOLD,
                         "The number of underlying field index keys scanned before the hdfs cache buffer is forced to persist).  Default is 100000.");
         options.put(IVARATOR_SCAN_TIMEOUT, "The time after which the hdfs cache buffer is forced to persist.  Default is 60 minutes.");
@@ -1039,9 +1134,16 @@ public class QueryOptions implements OptionDescriber {
         options.put(YIELD_THRESHOLD_MS,
                         "The threshold in milliseconds that the query iterator will evaluate consecutive documents to false before yielding the scan.");
         options.put(COMPRESS_SERVER_SIDE_RESULTS, "GZIP compress the serialized Documents before returning to the webserver");
+        options.put(RESULT_BATCH_SIZE, "The max number of Documents to pack into each returned Value when using the flat return type");
+        options.put(RESULT_BATCH_MAX_BYTES, "The max number of serialized bytes to pack into each returned Value when using the flat return type");
+        options.put(COMPILED_EVALUATION, "Compile the query into Java predicates for evaluation instead of interpreting it for every Document");
+        options.put(LAZY_DOCUMENT_ASSEMBLY, "Only assemble the fields of a Document needed for evaluation until the Document has passed evaluation");
+        options.put(NORMALIZED_VALUE_CACHE_BYTES, "The approximate max bytes of normalized values to cache across the Documents of a scan session");
         options.put(MAX_EVALUATION_PIPELINES, "The max number of evaluation pipelines");
         options.put(SERIAL_EVALUATION_PIPELINE, "Forces us to use the serial pipeline. Allows us to still have a single thread for evaluation");
         options.put(MAX_PIPELINE_CACHED_RESULTS, "The max number of non-null evaluated results to cache beyond the evaluation pipelines in queue");
+        options.put(OUT_OF_ORDER_EVALUATION_PIPELINE,
+                        "Allows evaluation pipelines to complete out of order, restarting idle pipelines immediately and re-sorting results within a bounded window");
         options.put(DATE_INDEX_TIME_TRAVEL, "Whether the shards from before the event should be gathered from the dateIndex");
         
         options.put(SORTED_UIDS,
@@ -1396,6 +1498,14 @@ public class QueryOptions implements OptionDescriber {
             this.setIvaratorCacheBufferSize(Integer.parseInt(options.get(IVARATOR_CACHE_BUFFER_SIZE)));
         }
         
+        if (options.containsKey(IVARATOR_CACHE_OFF_HEAP_BUFFER)) {
+            this.setIvaratorCacheOffHeapBuffer(Boolean.parseBoolean(options.get(IVARATOR_CACHE_OFF_HEAP_BUFFER)));
+        }
+        
+        if (options.containsKey(IVARATOR_CACHE_MAPPED_FILES)) {
+            this.setIvaratorCacheMappedFiles(Boolean.parseBoolean(options.get(IVARATOR_CACHE_MAPPED_FILES)));
+        }
+        
         if (options.containsKey(IVARATOR_SCAN_PERSIST_THRESHOLD)) {
             this.setIvaratorCacheScanPersistThreshold(Long.parseLong(options.get(IVARATOR_SCAN_PERSIST_THRESHOLD)));
         }
@@ -1424,6 +1534,26 @@ public class QueryOptions implements OptionDescriber {
             this.setCompressResults(Boolean.parseBoolean(options.get(COMPRESS_SERVER_SIDE_RESULTS)));
         }
         
+        if (options.containsKey(RESULT_BATCH_SIZE)) {
+            this.setResultBatchSize(Integer.parseInt(options.get(RESULT_BATCH_SIZE)));
+        }
+        
+        if (options.containsKey(RESULT_BATCH_MAX_BYTES)) {
+            this.setResultBatchMaxBytes(Integer.parseInt(options.get(RESULT_BATCH_MAX_BYTES)));
+        }
+        
+        if (options.containsKey(COMPILED_EVALUATION)) {
+            this.setCompiledEvaluation(Boolean.parseBoolean(options.get(COMPILED_EVALUATION)));
+        }
+        
+        if (options.containsKey(LAZY_DOCUMENT_ASSEMBLY)) {
+            this.setLazyDocumentAssembly(Boolean.parseBoolean(options.get(LAZY_DOCUMENT_ASSEMBLY)));
+        }
+        
+        if (options.containsKey(NORMALIZED_VALUE_CACHE_BYTES)) {
+            this.setNormalizedValueCacheBytes(Long.parseLong(options.get(NORMALIZED_VALUE_CACHE_BYTES)));
+        }
+        
         if (options.containsKey(MAX_EVALUATION_PIPELINES)) {
             this.setMaxEvaluationPipelines(Integer.parseInt(options.get(MAX_EVALUATION_PIPELINES)));
         }
@@ -1436,6 +1566,10 @@ public class QueryOptions implements OptionDescriber {
             this.setMaxPipelineCachedResults(Integer.parseInt(options.get(MAX_PIPELINE_CACHED_RESULTS)));
         }
         
+        if (options.containsKey(OUT_OF_ORDER_EVALUATION_PIPELINE)) {
+            this.setOutOfOrderEvaluationPipeline(Boolean.parseBoolean(options.get(OUT_OF_ORDER_EVALUATION_PIPELINE)));
+        }
+        
         if (options.containsKey(TERM_FREQUENCIES_REQUIRED)) {
             this.setTermFrequenciesRequired(Boolean.parseBoolean(options.get(TERM_FREQUENCIES_REQUIRED)));
         }
@@ -1823,6 +1957,14 @@ public class QueryOptions implements OptionDescriber {
         this.maxPipelineCachedResults = maxCachedResults;
     }
     
+    public boolean isOutOfOrderEvaluationPipeline() {
+        return outOfOrderEvaluationPipeline;
+    }
+    
+    public void setOutOfOrderEvaluationPipeline(boolean outOfOrderEvaluationPipeline) {
+        this.outOfOrderEvaluationPipeline = outOfOrderEvaluationPipeline;
+    }
+    
     public String getStatsdHostAndPort() {
         return statsdHostAndPort;
     }
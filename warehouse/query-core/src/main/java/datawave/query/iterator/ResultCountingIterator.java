@@ -3,7 +3,6 @@ package datawave.query.iterator;
 import com.google.common.collect.Maps;
 import datawave.data.type.util.NumericalEncoder;
 import org.apache.accumulo.core.data.Key;
-import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.YieldCallback;
 import org.apache.hadoop.io.Text;
 
@@ -12,13 +11,16 @@ import java.util.Map.Entry;
 
 /**
  * Created on 9/6/16.
+ * 
+ * @param <T>
+ *            the serialized document, or the document itself when the documents are counted before they are batched
  */
-public class ResultCountingIterator implements Iterator<Entry<Key,Value>> {
+public class ResultCountingIterator<T> implements Iterator<Entry<Key,T>> {
     private volatile long resultCount = 0;
-    private Iterator<Entry<Key,Value>> serializedDocuments = null;
+    private Iterator<Entry<Key,T>> serializedDocuments = null;
     private YieldCallback<Key> yield;
     
-    public ResultCountingIterator(Iterator<Entry<Key,Value>> serializedDocuments, long resultCount, YieldCallback<Key> yieldCallback) {
+    public ResultCountingIterator(Iterator<Entry<Key,T>> serializedDocuments, long resultCount, YieldCallback<Key> yieldCallback) {
         this.serializedDocuments = serializedDocuments;
         this.resultCount = resultCount;
         this.yield = yieldCallback;
@@ -34,8 +36,8 @@ public class ResultCountingIterator implements Iterator<Entry<Key,Value>> {
     }
     
     @Override
-    public Entry<Key,Value> next() {
-        Entry<Key,Value> next = serializedDocuments.next();
+    public Entry<Key,T> next() {
+        Entry<Key,T> next = serializedDocuments.next();
         if (next != null) {
             next = Maps.immutableEntry(addKeyCount(next.getKey()), next.getValue());
         }
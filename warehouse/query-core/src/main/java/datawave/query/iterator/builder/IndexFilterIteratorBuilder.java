@@ -75,7 +75,9 @@ public class IndexFilterIteratorBuilder extends IvaratorBuilder implements Itera
                                 .lowerInclusive(range.isLowerInclusive()).withUpperBound(range.getUpper().toString()).upperInclusive(range.isUpperInclusive())
                                 .withTimeFilter(timeFilter).withDatatypeFilter(datatypeFilter).negated(false)
                                 .withScanThreshold(ivaratorCacheScanPersistThreshold).withScanTimeout(ivaratorCacheScanTimeout)
-                                .withHdfsBackedSetBufferSize(ivaratorCacheBufferSize).withMaxRangeSplit(maxRangeSplit).withMaxOpenFiles(ivaratorMaxOpenFiles)
+                                .withHdfsBackedSetBufferSize(ivaratorCacheBufferSize).withOffHeapBackedSetBuffer(ivaratorCacheOffHeapBuffer)
+                                .withMappedBackedSetFiles(ivaratorCacheMappedFiles)
+                                .withMaxRangeSplit(maxRangeSplit).withMaxOpenFiles(ivaratorMaxOpenFiles)
                                 .withFileSystem(hdfsFileSystem).withUniqueDir(new Path(hdfsCacheURI)).withQueryLock(queryLock).allowDirResuse(true)
                                 .withReturnKeyType(PartialKey.ROW_COLFAM_COLQUAL_COLVIS_TIME).withSortedUUIDs(sortedUIDs)
                                 .withCompositeMetadata(compositeMetadata).withCompositeSeekThreshold(compositeSeekThreshold).withTypeMetadata(typeMetadata)
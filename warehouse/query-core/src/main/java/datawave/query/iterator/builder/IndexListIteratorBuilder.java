@@ -98,7 +98,9 @@ public class IndexListIteratorBuilder extends IvaratorBuilder implements Iterato
                 if (values != null) {
                     listIterator = DatawaveFieldIndexListIteratorJexl.builder().withFieldName(new Text(field)).withValues(values).withTimeFilter(timeFilter)
                                     .withDatatypeFilter(datatypeFilter).negated(negated).withScanThreshold(ivaratorCacheScanPersistThreshold)
-                                    .withScanTimeout(ivaratorCacheScanTimeout).withHdfsBackedSetBufferSize(ivaratorCacheBufferSize)
+                                    .withScanTimeout(ivaratorCacheScanTimeout)
+                                    .withHdfsBackedSetBufferSize(ivaratorCacheBufferSize).withOffHeapBackedSetBuffer(ivaratorCacheOffHeapBuffer)
+                                    .withMappedBackedSetFiles(ivaratorCacheMappedFiles)
                                     .withMaxRangeSplit(maxRangeSplit).withMaxOpenFiles(ivaratorMaxOpenFiles).withFileSystem(hdfsFileSystem)
                                     .withUniqueDir(new Path(hdfsCacheURI)).withQueryLock(queryLock).allowDirResuse(true)
                                     .withReturnKeyType(PartialKey.ROW_COLFAM_COLQUAL_COLVIS_TIME).withSortedUUIDs(sortedUIDs)
@@ -109,7 +111,9 @@ public class IndexListIteratorBuilder extends IvaratorBuilder implements Iterato
                     FST fst = DatawaveFieldIndexListIteratorJexl.FSTManager.get(new Path(fstURI), hdfsFileCompressionCodec, fstHdfsFileSystem);
                     listIterator = DatawaveFieldIndexListIteratorJexl.builder().withFieldName(new Text(field)).withFST(fst).withTimeFilter(timeFilter)
                                     .withDatatypeFilter(datatypeFilter).negated(negated).withScanThreshold(ivaratorCacheScanPersistThreshold)
-                                    .withScanTimeout(ivaratorCacheScanTimeout).withHdfsBackedSetBufferSize(ivaratorCacheBufferSize)
+                                    .withScanTimeout(ivaratorCacheScanTimeout)
+                                    .withHdfsBackedSetBufferSize(ivaratorCacheBufferSize).withOffHeapBackedSetBuffer(ivaratorCacheOffHeapBuffer)
+                                    .withMappedBackedSetFiles(ivaratorCacheMappedFiles)
                                     .withMaxRangeSplit(maxRangeSplit).withMaxOpenFiles(ivaratorMaxOpenFiles).withFileSystem(hdfsFileSystem)
                                     .withUniqueDir(new Path(hdfsCacheURI)).withQueryLock(queryLock).allowDirResuse(true)
                                     .withReturnKeyType(PartialKey.ROW_COLFAM_COLQUAL_COLVIS_TIME).withSortedUUIDs(sortedUIDs)
@@ -66,7 +66,9 @@ public class IndexRangeIteratorBuilder extends IvaratorBuilder implements Iterat
                                 .withLowerBound(range.getLower().toString()).lowerInclusive(range.isLowerInclusive())
                                 .withUpperBound(range.getUpper().toString()).upperInclusive(range.isUpperInclusive()).withTimeFilter(this.timeFilter)
                                 .withDatatypeFilter(this.datatypeFilter).negated(false).withScanThreshold(ivaratorCacheScanPersistThreshold)
-                                .withScanTimeout(ivaratorCacheScanTimeout).withHdfsBackedSetBufferSize(ivaratorCacheBufferSize)
+                                .withScanTimeout(ivaratorCacheScanTimeout)
+                                .withHdfsBackedSetBufferSize(ivaratorCacheBufferSize).withOffHeapBackedSetBuffer(ivaratorCacheOffHeapBuffer)
+                                .withMappedBackedSetFiles(ivaratorCacheMappedFiles)
                                 .withMaxRangeSplit(maxRangeSplit).withMaxOpenFiles(ivaratorMaxOpenFiles).withFileSystem(hdfsFileSystem)
                                 .withUniqueDir(new Path(hdfsCacheURI)).withQueryLock(queryLock).allowDirResuse(true)
                                 .withReturnKeyType(PartialKey.ROW_COLFAM_COLQUAL_COLVIS_TIME).withSortedUUIDs(sortedUIDs)
@@ -17,6 +17,8 @@ public abstract class IvaratorBuilder extends IndexIteratorBuilder {
     protected long ivaratorCacheScanPersistThreshold = 100000L;
     protected long ivaratorCacheScanTimeout = 1000L * 60 * 60;
     protected int ivaratorCacheBufferSize = 10000;
+    protected boolean ivaratorCacheOffHeapBuffer = false;
+    protected boolean ivaratorCacheMappedFiles = false;
     protected int maxRangeSplit = 11;
     protected int ivaratorMaxOpenFiles = 100;
     protected boolean collectTimingDetails = false;
@@ -64,6 +66,22 @@ public abstract class IvaratorBuilder extends IndexIteratorBuilder {
         this.ivaratorCacheBufferSize = ivaratorCacheBufferSize;
     }
     
+    public boolean isIvaratorCacheOffHeapBuffer() {
+        return ivaratorCacheOffHeapBuffer;
+    }
+    
+    public void setIvaratorCacheOffHeapBuffer(boolean ivaratorCacheOffHeapBuffer) {
+        this.ivaratorCacheOffHeapBuffer = ivaratorCacheOffHeapBuffer;
+    }
+    
+    public boolean isIvaratorCacheMappedFiles() {
+        return ivaratorCacheMappedFiles;
+    }
+    
+    public void setIvaratorCacheMappedFiles(boolean ivaratorCacheMappedFiles) {
+        this.ivaratorCacheMappedFiles = ivaratorCacheMappedFiles;
+    }
+    
     public long getIvaratorCacheScanPersistThreshold() {
         return ivaratorCacheScanPersistThreshold;
     }
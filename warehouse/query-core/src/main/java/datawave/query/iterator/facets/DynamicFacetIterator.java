@@ -33,9 +33,9 @@ import datawave.query.function.Aggregation;
 import datawave.query.function.AttributeToCardinality;
 import datawave.query.function.CardinalitySummation;
 import datawave.query.function.DocumentCountCardinality;
-import datawave.query.function.JexlEvaluation;
 import datawave.query.function.KeyToDocumentData;
 import datawave.query.function.MinimumEstimation;
+import datawave.query.function.serializer.FlatDocumentSerializer;
 import datawave.query.function.serializer.KryoDocumentSerializer;
 import datawave.query.function.serializer.ToStringDocumentSerializer;
 import datawave.query.function.serializer.WritableDocumentSerializer;
@@ -117,7 +117,7 @@ public class DynamicFacetIterator extends FieldIndexOnlyQueryIterator {
                     
                     script = JexlASTHelper.parseJexlQuery(this.getQuery());
                     
-                    myEvaluationFunction = new JexlEvaluation(this.getQuery(), arithmetic);
+                    myEvaluationFunction = createJexlEvaluation(this.getQuery(), arithmetic);
                     
                 } catch (Exception e) {
                     throw new RuntimeException("Could not parse the JEXL query: '" + this.getQuery() + "'", e);
@@ -261,6 +261,9 @@ public class DynamicFacetIterator extends FieldIndexOnlyQueryIterator {
         } else if (this.getReturnType() == ReturnType.writable) {
             // Use the Writable interface to serialize the Document
             this.serializedDocuments = Iterators.transform(fieldIndexDocuments, new WritableDocumentSerializer(isReducedResponse()));
+        } else if (this.getReturnType() == ReturnType.flat) {
+            // Serialize the Document with a dictionary of its field names and visibilities
+            this.serializedDocuments = Iterators.transform(fieldIndexDocuments, new FlatDocumentSerializer(isReducedResponse(), isCompressResults()));
         } else if (this.getReturnType() == ReturnType.tostring) {
             // Just return a toString() representation of the document
             this.serializedDocuments = Iterators.transform(fieldIndexDocuments, new ToStringDocumentSerializer(isReducedResponse()));
@@ -4,34 +4,24 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.SortedSet;
 
-import datawave.query.iterator.Util.Transformer;
 import org.apache.log4j.Logger;
 
 import datawave.query.attributes.Document;
 import datawave.query.iterator.NestedIterator;
 import datawave.query.iterator.Util;
 
-import com.google.common.collect.TreeMultimap;
-
 /**
- * Performs a merge join of the child iterators. It is expected that all child iterators return values in sorted order.
+ * Performs a merge join of the child iterators. It is expected that all child iterators return values in sorted order. The heads of the child iterators are
+ * kept in a LoserTree and compared in place, so moving through the join does not allocate.
  */
 public class AndIterator<T extends Comparable<T>> implements NestedIterator<T> {
     // temporary stores of uninitialized streams of iterators
     private List<NestedIterator<T>> includes, excludes;
     
-    private Map<T,T> transforms;
-    private Transformer<T> transformer;
-    
-    private TreeMultimap<T,NestedIterator<T>> includeHeads, excludeHeads;
+    private LoserTree<T> includeHeads, excludeHeads;
     private T next;
     
     private Document prevDocument, document;
@@ -60,22 +50,12 @@ public class AndIterator<T extends Comparable<T>> implements NestedIterator<T> {
     
     public void initialize() {
         Comparator<T> keyComp = Util.keyComparator();
-        // nestedIteratorComparator will keep a deterministic ordering, unlike hashCodeComparator
-        Comparator<NestedIterator<T>> itrComp = Util.nestedIteratorComparator();
-        
-        transformer = Util.keyTransformer();
-        transforms = new HashMap<>();
         
-        includeHeads = TreeMultimap.create(keyComp, itrComp);
-        includeHeads = initSubtree(includeHeads, includes, transformer, transforms, true);
+        includeHeads = new LoserTree<>(includes, keyComp);
+        initSubtree(includeHeads, true);
         
-        if (excludes.isEmpty()) {
-            excludeHeads = Util.getEmpty();
-        } else {
-            excludeHeads = TreeMultimap.create(keyComp, itrComp);
-            // pass null in for transforms as excludes are not returned
-            excludeHeads = initSubtree(excludeHeads, excludes, transformer, null, false);
-        }
+        excludeHeads = new LoserTree<>(excludes, keyComp);
+        initSubtree(excludeHeads, false);
         
         next();
     }
@@ -86,22 +66,20 @@ public class AndIterator<T extends Comparable<T>> implements NestedIterator<T> {
         prevDocument = document;
         
         while (!includeHeads.isEmpty()) {
-            SortedSet<T> topKeys = includeHeads.keySet();
-            T lowest = topKeys.first();
-            T highest = topKeys.last();
+            T lowest = includeHeads.winnerHead();
+            T highest = includeHeads.max();
             
-            if (lowest.equals(highest)) {
-                if (!NegationFilter.isFiltered(lowest, excludeHeads, transformer)) {
-                    next = transforms.get(lowest);
-                    document = Util.buildNewDocument(includeHeads.values());
-                    includeHeads = advanceIterators(lowest);
+            if (includeHeads.compare(lowest, highest) == 0) {
+                if (!NegationFilter.isFiltered(lowest, excludeHeads)) {
+                    next = lowest;
+                    document = Util.buildNewDocument(includeHeads.sources());
+                    advanceIterators();
                     break;
                 } else {
-                    includeHeads = advanceIterators(lowest);
+                    advanceIterators();
                 }
             } else {
-                includeHeads = advanceIterators(lowest);
-                
+                advanceLowest();
             }
             
         }
@@ -131,19 +109,14 @@ public class AndIterator<T extends Comparable<T>> implements NestedIterator<T> {
             throw new IllegalStateException("initialize() was never called");
         }
         
-        Set<T> headSet = includeHeads.keySet().headSet(minimum);
-        
         // If we are already at `minimum`, we can just call next which will
         // return the current next and seed the next.
-        if (headSet.isEmpty()) {
+        if (includeHeads.isEmpty() || includeHeads.compare(includeHeads.winnerHead(), minimum) >= 0) {
             return next();
         }
         
         // first let's make sure all of the sub trees are at least at `minimum`
-        Iterator<T> topKeys = new LinkedList<>(headSet).iterator();
-        while (!includeHeads.isEmpty() && topKeys.hasNext()) {
-            includeHeads = moveIterators(topKeys.next(), minimum);
-        }
+        moveIterators(minimum);
         
         next = null;
         next();
@@ -152,7 +125,7 @@ public class AndIterator<T extends Comparable<T>> implements NestedIterator<T> {
         if (hasNext()) {
             return next();
         } else {
-            includeHeads = Util.getEmpty();
+            includeHeads.clear();
             return null;
         }
     }
@@ -179,75 +152,74 @@ public class AndIterator<T extends Comparable<T>> implements NestedIterator<T> {
     }
     
     /**
-     * Advances all iterators associated with the supplied key and adds them back into the sorted multimap. If any of the sub-trees returns false, this method
-     * immediately returns false to indicate that a sub-tree has been exhausted.
-     * 
-     * @param key
-     * @return
+     * Advances all of the iterators, all of which are expected to be at the current lowest key, and rebuilds the tree. If any of the sub-trees is exhausted, then
+     * the whole tree is exhausted.
      */
-    protected TreeMultimap<T,NestedIterator<T>> advanceIterators(T key) {
-        transforms.remove(key);
-        for (NestedIterator<T> itr : includeHeads.removeAll(key)) {
+    protected void advanceIterators() {
+        for (int i = 0; i < includeHeads.size(); i++) {
+            NestedIterator<T> itr = includeHeads.source(i);
             if (itr.hasNext()) {
-                T next = itr.next();
-                T transform = transformer.transform(next);
-                transforms.put(transform, next);
-                includeHeads.put(transform, itr);
+                includeHeads.set(i, itr.next());
             } else {
-                return Util.getEmpty();
+                includeHeads.clear();
+                return;
             }
         }
-        return includeHeads;
+        includeHeads.build();
+    }
+    
+    /**
+     * Advances the iterator at the lowest key. If it is exhausted, then the whole tree is exhausted.
+     */
+    protected void advanceLowest() {
+        NestedIterator<T> itr = includeHeads.source(includeHeads.winner());
+        if (itr.hasNext()) {
+            includeHeads.replaceWinner(itr.next());
+        } else {
+            includeHeads.clear();
+        }
     }
     
     /**
-     * Similar to <code>advanceIterators</code>, but instead of calling <code>next</code> on each sub-tree, this calls <code>move</code> with the supplied
-     * <code>to</code> parameter.
+     * Similar to <code>advanceIterators</code>, but instead of calling <code>next</code> on each sub-tree that is behind <code>to</code>, this calls
+     * <code>move</code> with the supplied <code>to</code> parameter.
      * 
-     * @param key
      * @param to
-     * @return
      */
-    protected TreeMultimap<T,NestedIterator<T>> moveIterators(T key, T to) {
-        transforms.remove(key);
-        for (NestedIterator<T> itr : includeHeads.removeAll(key)) {
-            T next = itr.move(to);
-            if (next == null) {
-                return Util.getEmpty();
-            } else {
-                T transform = transformer.transform(next);
-                transforms.put(transform, next);
-                includeHeads.put(transform, itr);
+    protected void moveIterators(T to) {
+        for (int i = 0; i < includeHeads.size(); i++) {
+            if (includeHeads.compare(includeHeads.head(i), to) < 0) {
+                T next = includeHeads.source(i).move(to);
+                if (next == null) {
+                    includeHeads.clear();
+                    return;
+                }
+                includeHeads.set(i, next);
             }
         }
-        return includeHeads;
+        includeHeads.build();
     }
     
     /**
-     * Creates a sorted mapping of values to iterators.
+     * Initializes the sources and seeds the tree with their first values.
      * 
      * @param subtree
-     * @param sources
-     * @return
+     * @param anded
      */
-    private static <T extends Comparable<T>> TreeMultimap<T,NestedIterator<T>> initSubtree(TreeMultimap<T,NestedIterator<T>> subtree,
-                    Iterable<NestedIterator<T>> sources, Transformer<T> transformer, Map<T,T> transforms, boolean anded) {
-        for (NestedIterator<T> src : sources) {
+    private static <T> void initSubtree(LoserTree<T> subtree, boolean anded) {
+        for (int i = 0; i < subtree.size(); i++) {
+            NestedIterator<T> src = subtree.source(i);
             src.initialize();
             if (src.hasNext()) {
-                T next = src.next();
-                T transform = transformer.transform(next);
-                if (transforms != null) {
-                    transforms.put(transform, next);
-                }
-                subtree.put(transform, src);
+                subtree.set(i, src.next());
             } else if (anded) {
                 // If a source has no valid records, it shouldn't throw an exception. It should just return no results.
                 // For an And, once one source is exhausted, the entire tree is exhausted
-                return Util.getEmpty();
+                subtree.clear();
+                return;
             }
         }
-        return subtree;
+        subtree.build();
     }
     
     @Override
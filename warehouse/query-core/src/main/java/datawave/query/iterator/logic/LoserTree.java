@@ -0,0 +1,190 @@
+package datawave.query.iterator.logic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import datawave.query.iterator.NestedIterator;
+
+/**
+ * A tournament (loser) tree over the current heads of a fixed set of nested iterators. The lowest head is available in constant time, replacing the lowest head
+ * costs log(n) comparisons, and the highest head is tracked as the heads advance. The heads are compared in place using the supplied comparator (for keys this
+ * is a row and column family comparison of the underlying bytes), so no keys are transformed and nothing is allocated as the iterators move.
+ * 
+ * A null head denotes an exhausted source and sorts after everything else. Ties are broken by source index to keep the ordering deterministic.
+ * 
+ * @param <T>
+ */
+class LoserTree<T> {
+    private final List<NestedIterator<T>> sources;
+    private final Comparator<T> comparator;
+    private final int size;
+    
+    // the current head of each source, null if exhausted
+    private final Object[] heads;
+    // losers[1..size-1] hold the loser at each internal node, losers[0] holds the overall winner
+    private final int[] losers;
+    // scratch space used when (re)building the tree
+    private final int[] winners;
+    
+    private T max = null;
+    
+    LoserTree(List<NestedIterator<T>> sources, Comparator<T> comparator) {
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        this.comparator = comparator;
+        this.size = sources.size();
+        this.heads = new Object[size];
+        this.losers = new int[Math.max(size, 1)];
+        this.winners = new int[2 * Math.max(size, 1)];
+    }
+    
+    /**
+     * @return the number of sources
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * @return the sources in index order
+     */
+    List<NestedIterator<T>> sources() {
+        return sources;
+    }
+    
+    NestedIterator<T> source(int index) {
+        return sources.get(index);
+    }
+    
+    @SuppressWarnings("unchecked")
+    T head(int index) {
+        return (T) heads[index];
+    }
+    
+    /**
+     * Set the head of a source without updating the tree. build() must be called before the winner is used again.
+     * 
+     * @param index
+     * @param head
+     *            the new head, null if the source is exhausted
+     */
+    void set(int index, T head) {
+        heads[index] = head;
+        updateMax(head);
+    }
+    
+    /**
+     * Mark every source as exhausted
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            heads[i] = null;
+        }
+        max = null;
+        losers[0] = 0;
+    }
+    
+    /**
+     * Rebuild the tree from the current heads in linear time
+     */
+    void build() {
+        max = null;
+        for (int i = 0; i < size; i++) {
+            updateMax(head(i));
+        }
+        if (size <= 1) {
+            losers[0] = 0;
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            winners[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; node--) {
+            int left = winners[2 * node];
+            int right = winners[2 * node + 1];
+            if (beats(left, right)) {
+                winners[node] = left;
+                losers[node] = right;
+            } else {
+                winners[node] = right;
+                losers[node] = left;
+            }
+        }
+        losers[0] = winners[1];
+    }
+    
+    /**
+     * @return true if all of the sources are exhausted
+     */
+    boolean isEmpty() {
+        return size == 0 || heads[losers[0]] == null;
+    }
+    
+    /**
+     * @return the index of the source with the lowest head
+     */
+    int winner() {
+        return losers[0];
+    }
+    
+    /**
+     * @return the lowest head, null if all sources are exhausted
+     */
+    T winnerHead() {
+        return (size == 0 ? null : head(losers[0]));
+    }
+    
+    /**
+     * @return the highest head that has been seen since the tree was last built. This is only guaranteed to be the current highest head if the heads are only
+     *         ever advanced, and is null if all sources were exhausted.
+     */
+    T max() {
+        return max;
+    }
+    
+    /**
+     * Replace the head of the winning source and replay its path to the root
+     * 
+     * @param head
+     *            the new head, null if the source is exhausted
+     */
+    void replaceWinner(T head) {
+        int winner = losers[0];
+        heads[winner] = head;
+        updateMax(head);
+        for (int node = (winner + size) >>> 1; node > 0; node >>>= 1) {
+            int loser = losers[node];
+            if (beats(loser, winner)) {
+                losers[node] = winner;
+                winner = loser;
+            }
+        }
+        losers[0] = winner;
+    }
+    
+    int compare(T t1, T t2) {
+        return comparator.compare(t1, t2);
+    }
+    
+    private void updateMax(T head) {
+        if (head != null && (max == null || comparator.compare(head, max) > 0)) {
+            max = head;
+        }
+    }
+    
+    /**
+     * Does source a come before source b
+     */
+    private boolean beats(int a, int b) {
+        T headA = head(a);
+        T headB = head(b);
+        if (headA == null) {
+            return headB == null && a < b;
+        } else if (headB == null) {
+            return true;
+        }
+        int cmp = comparator.compare(headA, headB);
+        return cmp < 0 || (cmp == 0 && a < b);
+    }
+}
@@ -42,4 +42,26 @@ class NegationFilter {
         
         return false;
     }
+    
+    /**
+     * Checks the value <code>t</code> against the supplied filters. If necessary, the filters are advanced up to at least T before checking. The heads are
+     * compared in place, so unlike the multimap version nothing is allocated.
+     * 
+     * @param t
+     * @param filters
+     * @return true if any of the filters is at <code>t</code>
+     */
+    public static <T> boolean isFiltered(T t, LoserTree<T> filters) {
+        for (int i = 0; i < filters.size(); i++) {
+            T head = filters.head(i);
+            if (head != null && filters.compare(head, t) < 0) {
+                head = filters.source(i).move(t);
+                filters.set(i, head);
+            }
+            if (head != null && filters.compare(head, t) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -1,6 +1,5 @@
 package datawave.query.iterator.logic;
 
-import com.google.common.collect.TreeMultimap;
 import datawave.query.attributes.Document;
 import datawave.query.iterator.NestedIterator;
 import datawave.query.iterator.Util;
@@ -9,15 +8,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
- * Performs a deduping merge of iterators.
+ * Performs a deduping merge of iterators. The heads of the child iterators are kept in a LoserTree and compared in place, so moving through the merge does not
+ * allocate.
  *
  * NOTE***** if however sortedUIDs is false, then deduping is not performed and filters cannot be applied *****NOTE
  * 
@@ -27,10 +23,7 @@ public class OrIterator<T extends Comparable<T>> implements NestedIterator<T> {
     // temporary stores of uninitialized streams of iterators
     private List<NestedIterator<T>> includes, excludes;
     
-    private Map<T,T> transforms;
-    private Util.Transformer<T> transformer;
-    
-    private TreeMultimap<T,NestedIterator<T>> includeHeads, excludeHeads;
+    private LoserTree<T> includeHeads, excludeHeads;
     
     // sortedUIDs is normally true, however in some circumstances it may not in which case we cannot assume the underlying iterators are returning sorted
     // UIDs. When this is true, we cannot advance iterators based on returned keys.
@@ -70,22 +63,12 @@ public class OrIterator<T extends Comparable<T>> implements NestedIterator<T> {
      */
     public void initialize() {
         Comparator<T> keyComp = Util.keyComparator();
-        // nestedIteratorComparator will keep a deterministic ordering, unlike hashCodeComparator
-        Comparator<NestedIterator<T>> itrComp = Util.nestedIteratorComparator();
-        
-        transformer = Util.keyTransformer();
-        transforms = new HashMap<>();
         
-        includeHeads = TreeMultimap.create(keyComp, itrComp);
-        initSubtree(includeHeads, includes, transformer, transforms, false);
+        includeHeads = new LoserTree<>(includes, keyComp);
+        initSubtree(includeHeads);
         
-        if (excludes.isEmpty()) {
-            excludeHeads = Util.getEmpty();
-        } else {
-            excludeHeads = TreeMultimap.create(keyComp, itrComp);
-            // pass null in for transforms as excludes are not returned
-            initSubtree(excludeHeads, excludes, transformer, null, false);
-        }
+        excludeHeads = new LoserTree<>(excludes, keyComp);
+        initSubtree(excludeHeads);
         
         next();
     }
@@ -103,14 +86,14 @@ public class OrIterator<T extends Comparable<T>> implements NestedIterator<T> {
         prevDocument = document;
         
         while (!includeHeads.isEmpty()) {
-            T lowest = includeHeads.keySet().first();
-            if (!NegationFilter.isFiltered(lowest, excludeHeads, transformer)) {
-                next = transforms.get(lowest);
-                document = Util.buildNewDocument(includeHeads.get(lowest));
-                includeHeads = advanceIterators(lowest);
+            T lowest = includeHeads.winnerHead();
+            if (!NegationFilter.isFiltered(lowest, excludeHeads)) {
+                next = lowest;
+                document = new Document();
+                advanceIterators(lowest, document);
                 break;
             } else {
-                includeHeads = advanceIterators(lowest);
+                advanceIterators(lowest, null);
             }
         }
         
@@ -127,19 +110,14 @@ public class OrIterator<T extends Comparable<T>> implements NestedIterator<T> {
             throw new IllegalStateException("initialize() was never called");
         }
         
-        Set<T> headSet = includeHeads.keySet().headSet(minimum);
-        
         // If we are already at `minimum`, we can just call next which will
         // return the current next and seed the next.
-        if (headSet.isEmpty()) {
+        if (includeHeads.isEmpty() || includeHeads.compare(includeHeads.winnerHead(), minimum) >= 0) {
             return next();
         }
         
         // first let's make sure all of the sub trees are at least at `minimum`
-        Iterator<T> topKeys = new LinkedList<>(headSet).iterator();
-        while (!includeHeads.isEmpty() && topKeys.hasNext()) {
-            includeHeads = moveIterators(topKeys.next(), minimum);
-        }
+        moveIterators(minimum);
         
         next = null;
         next();
@@ -148,50 +126,38 @@ public class OrIterator<T extends Comparable<T>> implements NestedIterator<T> {
         if (hasNext()) {
             return next();
         } else {
-            includeHeads = Util.getEmpty();
+            includeHeads.clear();
             return null;
         }
     }
     
     /**
-     * Advances all iterators associated with the supplied key and adds them back into the sorted multimap. If any of the sub-trees returns false, then they are
-     * dropped.
+     * Advances all iterators at the supplied key, replaying each one back into the tree. Any sub-trees that are exhausted are dropped.
      * 
      * @param key
-     * @return
+     * @param document
+     *            if not null, the documents of the iterators at the key are added to this document before they are advanced
      */
-    protected TreeMultimap<T,NestedIterator<T>> advanceIterators(T key) {
-        transforms.remove(key);
-        for (NestedIterator<T> itr : includeHeads.removeAll(key)) {
-            if (itr.hasNext()) {
-                T next = itr.next();
-                T transform = transformer.transform(next);
-                transforms.put(transform, next);
-                includeHeads.put(transform, itr);
+    protected void advanceIterators(T key, Document document) {
+        while (!includeHeads.isEmpty() && includeHeads.compare(includeHeads.winnerHead(), key) == 0) {
+            NestedIterator<T> itr = includeHeads.source(includeHeads.winner());
+            if (document != null) {
+                document.putAll(itr.document().getDictionary().entrySet().iterator(), false);
             }
+            includeHeads.replaceWinner(itr.hasNext() ? itr.next() : null);
         }
-        return includeHeads;
     }
     
     /**
-     * Similar to <code>advanceIterators</code>, but instead of calling <code>next</code> on each sub-tree, this calls <code>move</code> with the supplied
-     * <code>to</code> parameter.
+     * Similar to <code>advanceIterators</code>, but instead of calling <code>next</code> on each sub-tree that is behind <code>to</code>, this calls
+     * <code>move</code> with the supplied <code>to</code> parameter.
      * 
-     * @param key
      * @param to
-     * @return
      */
-    protected TreeMultimap<T,NestedIterator<T>> moveIterators(T key, T to) {
-        transforms.remove(key);
-        for (NestedIterator<T> itr : includeHeads.removeAll(key)) {
-            T next = itr.move(to);
-            if (next != null) {
-                T transform = transformer.transform(next);
-                transforms.put(transform, next);
-                includeHeads.put(transform, itr);
-            }
+    protected void moveIterators(T to) {
+        while (!includeHeads.isEmpty() && includeHeads.compare(includeHeads.winnerHead(), to) < 0) {
+            includeHeads.replaceWinner(includeHeads.source(includeHeads.winner()).move(to));
         }
-        return includeHeads;
     }
     
     public Collection<NestedIterator<T>> leaves() {
@@ -223,24 +189,20 @@ public class OrIterator<T extends Comparable<T>> implements NestedIterator<T> {
         return children;
     }
     
-    private static <T extends Comparable<T>> TreeMultimap<T,NestedIterator<T>> initSubtree(TreeMultimap<T,NestedIterator<T>> subtree,
-                    Iterable<NestedIterator<T>> sources, Util.Transformer<T> transformer, Map<T,T> transforms, boolean anded) {
-        for (NestedIterator<T> src : sources) {
+    /**
+     * Initializes the sources and seeds the tree with their first values. Sources with no values are left exhausted.
+     * 
+     * @param subtree
+     */
+    private static <T> void initSubtree(LoserTree<T> subtree) {
+        for (int i = 0; i < subtree.size(); i++) {
+            NestedIterator<T> src = subtree.source(i);
             src.initialize();
             if (src.hasNext()) {
-                T next = src.next();
-                T transform = transformer.transform(next);
-                if (transforms != null) {
-                    transforms.put(transform, next);
-                }
-                subtree.put(transform, src);
-            } else if (anded) {
-                // If a source has no valid records, it shouldn't throw an exception. It should just return no results.
-                // For an And, once one source is exhausted, the entire tree is exhausted
-                return Util.getEmpty();
+                subtree.set(i, src.next());
             }
         }
-        return subtree;
+        subtree.build();
     }
     
     @Override
@@ -0,0 +1,361 @@
+package datawave.query.iterator.pipeline;
+
+import datawave.core.iterators.IteratorThreadPoolManager;
+import datawave.query.attributes.Document;
+import datawave.query.iterator.NestedIterator;
+import datawave.query.iterator.NestedQuery;
+import datawave.query.iterator.NestedQueryIterator;
+import datawave.query.iterator.QueryIterator;
+import datawave.query.iterator.profile.QuerySpan;
+import datawave.query.iterator.profile.QuerySpanCollector;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IterationInterruptedException;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.YieldCallback;
+import org.apache.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A pipeline iterator that does not block the whole pipeline pool on the oldest evaluation. Whenever any pipeline completes, it is immediately checked back
+ * in and handed the next pending document, so idle evaluation threads keep pulling work even while a slow document (large TLD, heavy content function) is
+ * still being evaluated. Completed evaluations are held in a bounded re-sort window and released in document order, which keeps the results sorted and keeps
+ * the last evaluated key valid for yield/resume.
+ */
+public class OutOfOrderPipelineIterator extends PipelineIterator {
+    
+    private static final Logger log = Logger.getLogger(OutOfOrderPipelineIterator.class);
+    
+    /**
+     * The evaluations in the order the documents were pulled from the document source
+     */
+    protected final LinkedList<Evaluation> window = new LinkedList<>();
+    
+    /**
+     * The evaluations currently being executed, keyed by the pipeline executing them
+     */
+    protected final Map<Pipeline,Evaluation> running = new HashMap<>();
+    
+    /**
+     * The pipelines that have completed execution, in completion order. This is populated by the evaluation threads.
+     */
+    protected final BlockingQueue<Pipeline> completed = new LinkedBlockingQueue<>();
+    
+    /**
+     * The maximum number of evaluations (running or completed but not yet released) that may be outstanding at any time
+     */
+    protected final int maxWindowSize;
+    
+    /**
+     * The time to wait for the cancelled evaluations to stop, after which those still running are abandoned
+     */
+    public static final long DEFAULT_CANCEL_TIMEOUT_MS = 10000;
+    protected long cancelTimeoutMs = DEFAULT_CANCEL_TIMEOUT_MS;
+    
+    public OutOfOrderPipelineIterator(NestedIterator<Key> documents, int maxPipelines, int maxCachedResults, QuerySpanCollector querySpanCollector,
+                    QuerySpan querySpan, QueryIterator sourceIterator, SortedKeyValueIterator<Key,Value> sourceForDeepCopy, IteratorEnvironment env,
+                    YieldCallback<Key> yieldCallback, long yieldThresholdMs) {
+        super(documents, maxPipelines, maxCachedResults, querySpanCollector, querySpan, sourceIterator, sourceForDeepCopy, env, yieldCallback,
+                        yieldThresholdMs);
+        this.maxWindowSize = maxPipelines + Math.max(maxCachedResults, 1);
+    }
+    
+    @Override
+    public boolean hasNext() {
+        // if we had already yielded, then leave gracefully
+        if (yield != null && yield.hasYielded()) {
+            return false;
+        }
+        
+        Entry<Key,Document> next = getNext(false);
+        if (log.isTraceEnabled()) {
+            log.trace("QueryIterator.hasNext() -> " + (next == null ? null : next.getKey()));
+        }
+        return (next != null);
+    }
+    
+    @Override
+    public Entry<Key,Document> next() {
+        // if we had already yielded, then leave gracefully
+        if (yield != null && yield.hasYielded()) {
+            return null;
+        }
+        
+        Entry<Key,Document> next = getNext(true);
+        if (log.isTraceEnabled()) {
+            log.trace("QueryIterator.next() -> " + (next == null ? null : next.getKey()));
+        }
+        return next;
+    }
+    
+    /**
+     * Get the next non-null result, waiting on the evaluations as needed.
+     * 
+     * @param remove
+     *            true to remove the result from the results queue
+     * @return the next non-null entry. null if there are no more entries to get.
+     */
+    private Entry<Key,Document> getNext(boolean remove) {
+        try {
+            if (results.isEmpty()) {
+                cacheNextResult();
+            }
+            
+            // process whatever else has completed in the meantime without waiting
+            drainCompleted(0);
+            
+            if (remove) {
+                return results.poll();
+            } else {
+                return results.peek();
+            }
+        } catch (Exception e) {
+            // cancel out existing executions
+            cancel();
+            
+            // if we yielded, then leave gracefully
+            if (yield != null && yield.hasYielded()) {
+                return null;
+            }
+            
+            log.error("Failed to retrieve evaluation pipeline result", e);
+            throw new RuntimeException("Failed to retrieve evaluation pipeline result", e);
+        }
+    }
+    
+    /**
+     * Wait on the evaluations until we have a non-null result released from the head of the window, or until there is nothing left to evaluate.
+     * 
+     * @throws ExecutionException
+     * @throws InterruptedException
+     */
+    private void cacheNextResult() throws InterruptedException, ExecutionException {
+        long startMs = System.currentTimeMillis();
+        while (results.isEmpty() && !window.isEmpty()) {
+            long waitMs = Long.MAX_VALUE;
+            // we must have at least evaluated one thing in order to yield, otherwise we will have not progressed at all
+            if (yield != null && lastKeyEvaluated != null) {
+                long delta = System.currentTimeMillis() - startMs;
+                if (delta > yieldThresholdMs) {
+                    yield.yield(lastKeyEvaluated);
+                    if (log.isDebugEnabled())
+                        log.debug("Yielding at " + lastKeyEvaluated);
+                    throw new IterationInterruptedException("Yielding at " + lastKeyEvaluated);
+                }
+                waitMs = yieldThresholdMs - delta;
+            }
+            drainCompleted(waitMs);
+        }
+    }
+    
+    /**
+     * Process the completed pipelines. Each completed pipeline is checked back in and immediately restarted on the next pending document, after which any
+     * evaluations at the head of the window that are complete are released in document order.
+     * 
+     * @param waitMs
+     *            the time to wait for the first completed pipeline
+     * @throws ExecutionException
+     * @throws InterruptedException
+     */
+    private void drainCompleted(long waitMs) throws InterruptedException, ExecutionException {
+        // only wait if there is nothing already complete at the head of the window
+        release();
+        
+        Pipeline pipeline = (waitMs > 0 && results.isEmpty() ? completed.poll(waitMs, TimeUnit.MILLISECONDS) : completed.poll());
+        while (pipeline != null) {
+            complete(pipeline);
+            pipeline = completed.poll();
+        }
+        
+        // fill any pipelines left idle by a full window
+        fill();
+        
+        release();
+    }
+    
+    /**
+     * Record the result of a completed pipeline and put the pipeline back to work.
+     * 
+     * @param pipeline
+     *            the completed pipeline
+     * @throws ExecutionException
+     * @throws InterruptedException
+     */
+    private void complete(Pipeline pipeline) throws InterruptedException, ExecutionException {
+        Evaluation evaluation = running.remove(pipeline);
+        if (evaluation == null) {
+            // an evaluation that was cancelled, whose pipeline was already checked in
+            return;
+        }
+        try {
+            // call get to ensure that we throw any exception that occurred
+            evaluation.future.get();
+            evaluation.result = pipeline.getResult();
+            evaluation.done = true;
+            
+            if (log.isTraceEnabled()) {
+                log.trace("Evaluation of " + evaluation.key + " was " + (evaluation.result == null ? "empty" : "successful"));
+            }
+        } catch (Exception e) {
+            log.error("Failed evaluating " + evaluation.key + "; cancelling remaining evaluations and flushing results", e);
+            throw e;
+        } finally {
+            // return the pipeline for reuse
+            pipelines.checkIn(pipeline);
+        }
+        
+        // let the freed pipeline steal the next pending document
+        fill();
+    }
+    
+    /**
+     * Release the completed evaluations at the head of the window, in document order, up to the max number of cached results.
+     */
+    private void release() {
+        while (!window.isEmpty() && window.peek().done && (results.isEmpty() || results.size() < maxResults)) {
+            Evaluation evaluation = window.poll();
+            
+            // record the last evaluated key; everything before it has been evaluated as well
+            lastKeyEvaluated = evaluation.key;
+            
+            if (evaluation.result != null) {
+                results.add(evaluation.result);
+            }
+        }
+        
+        // releasing may have opened up the window
+        fill();
+    }
+    
+    /**
+     * Start evaluations on idle pipelines while there are documents to evaluate and room in the window.
+     */
+    private void fill() {
+        while (running.size() < pipelines.maxPipelines && window.size() < maxWindowSize && docSource.hasNext()) {
+            Key keySource = docSource.next();
+            NestedQuery<Key> nestedQuery = null;
+            if (docSource instanceof NestedQueryIterator) {
+                nestedQuery = ((NestedQueryIterator) docSource).getNestedQuery();
+            }
+            
+            evaluate(keySource, docSource.document(), nestedQuery);
+            if (collectTimingDetails) {
+                querySpanCollector.addQuerySpan(querySpan);
+            }
+        }
+    }
+    
+    private void evaluate(Key key, Document document, NestedQuery<Key> nestedQuery) {
+        if (log.isTraceEnabled()) {
+            log.trace("Adding evaluation of " + key + " to pipeline");
+        }
+        final Pipeline pipeline = pipelines.checkOut(key, document, nestedQuery);
+        Evaluation evaluation = new Evaluation(key);
+        window.add(evaluation);
+        running.put(pipeline, evaluation);
+        evaluation.future = execute(() -> {
+            // an evaluation claimed by cancel before it started must not run
+            if (!evaluation.started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                pipeline.run();
+            } finally {
+                completed.add(pipeline);
+            }
+        }, pipeline.toString());
+    }
+    
+    /**
+     * Run an evaluation on the evaluation thread pool
+     * 
+     * @param evaluation
+     * @param name
+     * @return the future of the evaluation
+     */
+    protected Future<?> execute(Runnable evaluation, String name) {
+        return IteratorThreadPoolManager.executeEvaluation(evaluation, name);
+    }
+    
+    /**
+     * Cancel all of the running evaluations. The evaluations that have not started are checked in immediately, and the ones that have are interrupted and
+     * waited on, so that no pipeline is checked in and reused while an evaluation thread is still running it. The wait is bounded by cancelTimeoutMs, and
+     * the pipelines of the evaluations that do not stop in time, such as those blocked on something that ignores interrupts, are dropped from the pool rather
+     * than reused.
+     */
+    private void cancel() {
+        Set<Pipeline> stopping = new HashSet<>();
+        for (Map.Entry<Pipeline,Evaluation> entry : running.entrySet()) {
+            Evaluation evaluation = entry.getValue();
+            if (evaluation.started.compareAndSet(false, true)) {
+                evaluation.future.cancel(false);
+                pipelines.checkIn(entry.getKey());
+            } else {
+                evaluation.future.cancel(true);
+                stopping.add(entry.getKey());
+            }
+        }
+        running.clear();
+        
+        // every started evaluation adds its pipeline to the completed queue when it stops, including those already there
+        long deadline = System.currentTimeMillis() + cancelTimeoutMs;
+        try {
+            while (!stopping.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                Pipeline pipeline = (remaining > 0 ? completed.poll(remaining, TimeUnit.MILLISECONDS) : null);
+                if (pipeline == null) {
+                    log.warn("Abandoning " + stopping.size() + " cancelled evaluations that did not stop within " + cancelTimeoutMs + "ms");
+                    break;
+                } else if (stopping.remove(pipeline)) {
+                    pipelines.checkIn(pipeline);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted waiting on " + stopping.size() + " cancelled evaluations");
+            Thread.currentThread().interrupt();
+        }
+        // the pipelines still stopping are never reused, and are ignored by complete if they are ever seen
+        for (Pipeline pipeline : stopping) {
+            pipelines.drop(pipeline);
+        }
+        window.clear();
+        completed.clear();
+        results.clear();
+    }
+    
+    @Override
+    public void startPipeline() {
+        if (log.isTraceEnabled() && docSource instanceof NestedQueryIterator) {
+            log.trace("we're in a nested query");
+        }
+        fill();
+    }
+    
+    /**
+     * The state of a single document evaluation
+     */
+    protected static class Evaluation {
+        final Key key;
+        final AtomicBoolean started = new AtomicBoolean(false);
+        Future<?> future;
+        Entry<Key,Document> result;
+        boolean done = false;
+        
+        Evaluation(Key key) {
+            this.key = key;
+        }
+    }
+}
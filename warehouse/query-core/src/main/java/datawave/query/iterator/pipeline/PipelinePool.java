@@ -91,4 +91,14 @@ public class PipelinePool {
         checkedOut.remove(pipeline);
         checkedIn.add(pipeline);
     }
+    
+    /*
+     * Drop a pipeline that is still checked out and may still be in use, so that it is never reused and a new one can take its place.
+     */
+    public void drop(Pipeline pipeline) {
+        if (log.isTraceEnabled()) {
+            log.trace("drop(" + pipeline + ')');
+        }
+        checkedOut.remove(pipeline);
+    }
 }
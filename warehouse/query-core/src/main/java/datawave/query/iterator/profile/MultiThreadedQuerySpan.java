@@ -47,6 +47,21 @@ public class MultiThreadedQuerySpan extends QuerySpan {
         return getThreadSpecificQuerySpan().getSeekCount();
     }
     
+    @Override
+    public long getNormalizedValueCacheHits() {
+        return getThreadSpecificQuerySpan().getNormalizedValueCacheHits();
+    }
+    
+    @Override
+    public long getNormalizedValueCacheMisses() {
+        return getThreadSpecificQuerySpan().getNormalizedValueCacheMisses();
+    }
+    
+    @Override
+    public synchronized void addNormalizedValueCacheStats(long hits, long misses) {
+        getThreadSpecificQuerySpan().addNormalizedValueCacheStats(hits, misses);
+    }
+    
     @Override
     public synchronized void next() {
         getThreadSpecificQuerySpan().next();
@@ -98,6 +113,16 @@ public class MultiThreadedQuerySpan extends QuerySpan {
         getThreadSpecificQuerySpan().setSourceCount(sourceCount);
     }
     
+    @Override
+    public void setNormalizedValueCacheHits(long normalizedValueCacheHits) {
+        getThreadSpecificQuerySpan().setNormalizedValueCacheHits(normalizedValueCacheHits);
+    }
+    
+    @Override
+    public void setNormalizedValueCacheMisses(long normalizedValueCacheMisses) {
+        getThreadSpecificQuerySpan().setNormalizedValueCacheMisses(normalizedValueCacheMisses);
+    }
+    
     @Override
     public void setStageTimers(Map<String,Long> stageTimers) {
         getThreadSpecificQuerySpan().setStageTimers(stageTimers);
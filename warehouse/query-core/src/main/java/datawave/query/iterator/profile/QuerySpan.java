@@ -28,6 +28,10 @@ public class QuerySpan {
     
     protected long seek = 0;
     
+    protected long normalizedValueCacheHits = 0;
+    
+    protected long normalizedValueCacheMisses = 0;
+    
     private Map<String,Long> stageTimers = new LinkedHashMap<>();
     
     private long stageTimerTotal = 0;
@@ -94,6 +98,22 @@ public class QuerySpan {
         return seekCount;
     }
     
+    public long getNormalizedValueCacheHits() {
+        long hits = normalizedValueCacheHits;
+        for (QuerySpan subSpan : sources) {
+            hits += subSpan.getNormalizedValueCacheHits();
+        }
+        return hits;
+    }
+    
+    public long getNormalizedValueCacheMisses() {
+        long misses = normalizedValueCacheMisses;
+        for (QuerySpan subSpan : sources) {
+            misses += subSpan.getNormalizedValueCacheMisses();
+        }
+        return misses;
+    }
+    
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(super.toString()).append(" seek:").append(getSeekCount()).append(" next:").append(getNextCount()).append(" sources:")
@@ -132,6 +152,11 @@ public class QuerySpan {
         }
     }
     
+    public synchronized void addNormalizedValueCacheStats(long hits, long misses) {
+        normalizedValueCacheHits += hits;
+        normalizedValueCacheMisses += misses;
+    }
+    
     public void reset() {
         for (QuerySpan source : sources) {
             source.reset();
@@ -139,6 +164,8 @@ public class QuerySpan {
         sourceCount = 0;
         next = 0;
         seek = 0;
+        normalizedValueCacheHits = 0;
+        normalizedValueCacheMisses = 0;
         stageTimerTotal = 0;
         stageTimers.clear();
     }
@@ -152,7 +179,8 @@ public class QuerySpan {
     }
     
     public boolean hasEntries() {
-        if (this.getSeekCount() > 0 || this.getNextCount() > 0 || this.getSourceCount() > 0 || !this.stageTimers.isEmpty()) {
+        if (this.getSeekCount() > 0 || this.getNextCount() > 0 || this.getSourceCount() > 0 || this.getNormalizedValueCacheHits() > 0
+                        || this.getNormalizedValueCacheMisses() > 0 || !this.stageTimers.isEmpty()) {
             return true;
         } else {
             return false;
@@ -183,6 +211,14 @@ public class QuerySpan {
         this.sourceCount = sourceCount;
     }
     
+    public void setNormalizedValueCacheHits(long normalizedValueCacheHits) {
+        this.normalizedValueCacheHits = normalizedValueCacheHits;
+    }
+    
+    public void setNormalizedValueCacheMisses(long normalizedValueCacheMisses) {
+        this.normalizedValueCacheMisses = normalizedValueCacheMisses;
+    }
+    
     public void setStageTimers(Map<String,Long> stageTimers) {
         this.stageTimers.clear();
         for (Map.Entry<String,Long> entry : stageTimers.entrySet()) {
@@ -10,6 +10,8 @@ public class QuerySpanCollector {
     private AtomicLong seekCount = new AtomicLong();
     private AtomicLong nextCount = new AtomicLong();
     private AtomicLong sourceCount = new AtomicLong();
+    private AtomicLong normalizedValueCacheHits = new AtomicLong();
+    private AtomicLong normalizedValueCacheMisses = new AtomicLong();
     private Map<String,Long> stageTimers = new LinkedHashMap<>();
     private Logger log = Logger.getLogger(QuerySpan.class);
     
@@ -20,6 +22,8 @@ public class QuerySpanCollector {
                 seekCount.addAndGet(querySpan.getSeekCount());
                 nextCount.addAndGet(querySpan.getNextCount());
                 sourceCount.addAndGet(querySpan.getSourceCount());
+                normalizedValueCacheHits.addAndGet(querySpan.getNormalizedValueCacheHits());
+                normalizedValueCacheMisses.addAndGet(querySpan.getNormalizedValueCacheMisses());
                 Map<String,Long> timers = querySpan.getStageTimers();
                 for (Map.Entry<String,Long> entry : timers.entrySet()) {
                     String k = entry.getKey();
@@ -47,6 +51,8 @@ public class QuerySpanCollector {
                 combinedQuerySpan.setNext(this.nextCount.getAndSet(0));
                 combinedQuerySpan.setSeek(this.seekCount.getAndSet(0));
                 combinedQuerySpan.setSourceCount(this.sourceCount.getAndSet(0));
+                combinedQuerySpan.setNormalizedValueCacheHits(this.normalizedValueCacheHits.getAndSet(0));
+                combinedQuerySpan.setNormalizedValueCacheMisses(this.normalizedValueCacheMisses.getAndSet(0));
                 combinedQuerySpan.setStageTimers(this.stageTimers);
                 this.stageTimers.clear();
             }
@@ -55,7 +61,8 @@ public class QuerySpanCollector {
     }
     
     public boolean hasEntries() {
-        if (this.seekCount.intValue() > 0 || this.nextCount.intValue() > 0 || this.sourceCount.intValue() > 0 || !this.stageTimers.isEmpty()) {
+        if (this.seekCount.intValue() > 0 || this.nextCount.intValue() > 0 || this.sourceCount.intValue() > 0 || this.normalizedValueCacheHits.intValue() > 0
+                        || this.normalizedValueCacheMisses.intValue() > 0 || !this.stageTimers.isEmpty()) {
             return true;
         } else {
             return false;
@@ -108,6 +115,14 @@ public class QuerySpanCollector {
         return sourceCount.longValue();
     }
     
+    public long getNormalizedValueCacheHits() {
+        return normalizedValueCacheHits.longValue();
+    }
+    
+    public long getNormalizedValueCacheMisses() {
+        return normalizedValueCacheMisses.longValue();
+    }
+    
     public Map<String,Long> getStageTimers() {
         return Collections.unmodifiableMap(stageTimers);
     }
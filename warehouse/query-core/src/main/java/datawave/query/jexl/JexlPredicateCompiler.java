@@ -0,0 +1,532 @@
+package datawave.query.jexl;
+
+import java.util.Collection;
+import java.util.Set;
+
+import datawave.query.attributes.ValueTuple;
+import datawave.query.jexl.functions.EvaluationPhaseFilterFunctions;
+import datawave.query.jexl.functions.QueryFunctions;
+import datawave.query.jexl.visitors.JexlStringBuildingVisitor;
+import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.Script;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTERNode;
+import org.apache.commons.jexl2.parser.ASTFalseNode;
+import org.apache.commons.jexl2.parser.ASTFunctionNode;
+import org.apache.commons.jexl2.parser.ASTGENode;
+import org.apache.commons.jexl2.parser.ASTGTNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTLENode;
+import org.apache.commons.jexl2.parser.ASTLTNode;
+import org.apache.commons.jexl2.parser.ASTMethodNode;
+import org.apache.commons.jexl2.parser.ASTNENode;
+import org.apache.commons.jexl2.parser.ASTNRNode;
+import org.apache.commons.jexl2.parser.ASTNotNode;
+import org.apache.commons.jexl2.parser.ASTNumberLiteral;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTReferenceExpression;
+import org.apache.commons.jexl2.parser.ASTStringLiteral;
+import org.apache.commons.jexl2.parser.ASTTrueNode;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Compiles a query into a tree of Java predicates over a JexlContext, so that the query does not have to be walked by the DatawaveInterpreter for every
+ * document. Equality, regex, range and the common filter functions are compiled; any other part of the query is handed to the interpreter as a script of its
+ * own.
+ * 
+ * The compiled predicate makes the same calls to the JexlArithmetic and the filter functions that the DatawaveInterpreter makes, in the same order and with the
+ * same short circuiting, so it matches the same documents and records the same hits in a HitListArithmetic. The one difference is that only whether a
+ * collection of matches is empty is kept, the collections themselves are not merged as the interpreter merges them.
+ */
+public class JexlPredicateCompiler {
+    private static final Logger log = Logger.getLogger(JexlPredicateCompiler.class);
+    
+    // the result of a compiled node: a boolean, or a collection of matches that is either empty or not
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+    static final int EMPTY = 2;
+    static final int NONEMPTY = 3;
+    
+    private final JexlEngine engine;
+    private final JexlArithmetic arithmetic;
+    
+    private JexlPredicateCompiler(JexlEngine engine, JexlArithmetic arithmetic) {
+        this.engine = engine;
+        this.arithmetic = arithmetic;
+    }
+    
+    /**
+     * Compile a query
+     * 
+     * @param engine
+     *            the engine that the query would otherwise be executed with, used for the parts of the query that are not compiled
+     * @param arithmetic
+     *            the arithmetic of the engine
+     * @param script
+     *            the parsed query
+     * @return the compiled query, or null if no part of the query could be compiled
+     */
+    public static Predicate<JexlContext> compile(JexlEngine engine, JexlArithmetic arithmetic, ASTJexlScript script) {
+        if (script.jjtGetNumChildren() != 1) {
+            return null;
+        }
+        JexlPredicateCompiler compiler = new JexlPredicateCompiler(engine, arithmetic);
+        final Evaluator evaluator = compiler.compileNode(dereference(script.jjtGetChild(0)));
+        if (evaluator == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to compile " + JexlStringBuildingVisitor.buildQuery(script));
+            }
+            return null;
+        }
+        return new Predicate<JexlContext>() {
+            @Override
+            public boolean apply(JexlContext context) {
+                int result = evaluator.evaluate(context);
+                return result == TRUE || result == NONEMPTY;
+            }
+        };
+    }
+    
+    /**
+     * A compiled node
+     */
+    interface Evaluator {
+        int evaluate(JexlContext context);
+    }
+    
+    /**
+     * A compiled operand of a comparison
+     */
+    interface Operand {
+        Object get(JexlContext context);
+    }
+    
+    private static JexlNode dereference(JexlNode node) {
+        while (node.jjtGetNumChildren() == 1 && (node instanceof ASTReferenceExpression || node instanceof ASTReference)) {
+            node = node.jjtGetChild(0);
+        }
+        return node;
+    }
+    
+    /**
+     * Compile a boolean node, with the interpreter as the fallback
+     * 
+     * @param node
+     * @return the compiled node
+     */
+    private Evaluator compileOrInterpret(JexlNode node) {
+        Evaluator evaluator = compileNode(dereference(node));
+        if (evaluator == null) {
+            evaluator = interpret(node);
+        }
+        return evaluator;
+    }
+    
+    /**
+     * @param node
+     * @return the compiled node, or null if it cannot be compiled
+     */
+    private Evaluator compileNode(JexlNode node) {
+        if (node instanceof ASTAndNode && node.jjtGetNumChildren() == 2) {
+            Evaluator range = compileRange(node);
+            return (range != null ? range : compileAnd(compileOrInterpret(node.jjtGetChild(0)), compileOrInterpret(node.jjtGetChild(1))));
+        } else if (node instanceof ASTOrNode && node.jjtGetNumChildren() == 2) {
+            return compileOr(compileOrInterpret(node.jjtGetChild(0)), compileOrInterpret(node.jjtGetChild(1)));
+        } else if (node instanceof ASTNotNode) {
+            return compileNot(node);
+        } else if (node instanceof ASTTrueNode) {
+            return constant(TRUE);
+        } else if (node instanceof ASTFalseNode) {
+            return constant(FALSE);
+        } else if (node instanceof ASTEQNode || node instanceof ASTNENode || node instanceof ASTERNode || node instanceof ASTNRNode || node instanceof ASTLTNode
+                        || node instanceof ASTLENode || node instanceof ASTGTNode || node instanceof ASTGENode) {
+            return compileComparison(node);
+        } else if (node instanceof ASTFunctionNode) {
+            return compileFunction((ASTFunctionNode) node);
+        }
+        return null;
+    }
+    
+    /**
+     * Hand a node to the interpreter as a script of its own
+     * 
+     * @param node
+     * @return the interpreted node
+     */
+    private Evaluator interpret(JexlNode node) {
+        final Script script = engine.createScript(JexlStringBuildingVisitor.buildQuery(node));
+        return new Evaluator() {
+            @Override
+            public int evaluate(JexlContext context) {
+                Object result = script.execute(context);
+                if (result == null) {
+                    return EMPTY;
+                } else if (result instanceof Collection) {
+                    return (((Collection<?>) result).isEmpty() ? EMPTY : NONEMPTY);
+                }
+                return (arithmetic.toBoolean(result) ? TRUE : FALSE);
+            }
+        };
+    }
+    
+    private static Evaluator constant(final int result) {
+        return new Evaluator() {
+            @Override
+            public int evaluate(JexlContext context) {
+                return result;
+            }
+        };
+    }
+    
+    /**
+     * As the DatawaveInterpreter: false if either side is false, otherwise if both sides are collections of matches then they must both be non empty
+     */
+    private static Evaluator compileAnd(final Evaluator left, final Evaluator right) {
+        return new Evaluator() {
+            @Override
+            public int evaluate(JexlContext context) {
+                int leftResult = left.evaluate(context);
+                if (leftResult == FALSE) {
+                    return FALSE;
+                }
+                int rightResult = right.evaluate(context);
+                if (rightResult == FALSE) {
+                    return FALSE;
+                }
+                if (leftResult >= EMPTY && rightResult >= EMPTY) {
+                    return (leftResult == NONEMPTY && rightResult == NONEMPTY ? NONEMPTY : FALSE);
+                }
+                return (leftResult != EMPTY && rightResult != EMPTY ? TRUE : FALSE);
+            }
+        };
+    }
+    
+    /**
+     * As the DatawaveInterpreter: true if either side is true, otherwise the collection of matches from either side
+     */
+    private static Evaluator compileOr(final Evaluator left, final Evaluator right) {
+        return new Evaluator() {
+            @Override
+            public int evaluate(JexlContext context) {
+                int leftResult = left.evaluate(context);
+                if (leftResult == TRUE) {
+                    return TRUE;
+                }
+                int rightResult = right.evaluate(context);
+                if (rightResult == TRUE) {
+                    return TRUE;
+                }
+                if (leftResult >= EMPTY && rightResult >= EMPTY) {
+                    return (leftResult == NONEMPTY || rightResult == NONEMPTY ? NONEMPTY : EMPTY);
+                } else if (leftResult >= EMPTY) {
+                    return leftResult;
+                } else if (rightResult >= EMPTY) {
+                    return rightResult;
+                }
+                return FALSE;
+            }
+        };
+    }
+    
+    private Evaluator compileNot(JexlNode node) {
+        if (node.jjtGetNumChildren() != 1) {
+            return null;
+        }
+        final Evaluator child = compileOrInterpret(node.jjtGetChild(0));
+        return new Evaluator() {
+            @Override
+            public int evaluate(JexlContext context) {
+                int result = child.evaluate(context);
+                // a collection of matches is true if it is not empty, as DatawaveArithmetic.toBoolean
+                return (result == TRUE || result == NONEMPTY ? FALSE : TRUE);
+            }
+        };
+    }
+    
+    /**
+     * Compile a comparison of a field and a literal, or of two literals or fields
+     * 
+     * @param node
+     * @return the compiled comparison, or null if either side is not a field or literal
+     */
+    private Evaluator compileComparison(final JexlNode node) {
+        if (node.jjtGetNumChildren() != 2) {
+            return null;
+        }
+        final Operand left = compileOperand(node.jjtGetChild(0));
+        final Operand right = compileOperand(node.jjtGetChild(1));
+        if (left == null || right == null) {
+            return null;
+        }
+        if (node instanceof ASTEQNode) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (arithmetic.equals(left.get(context), right.get(context)) ? TRUE : FALSE);
+                }
+            };
+        } else if (node instanceof ASTNENode) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (arithmetic.equals(left.get(context), right.get(context)) ? FALSE : TRUE);
+                }
+            };
+        } else if (node instanceof ASTERNode || node instanceof ASTNRNode) {
+            // the interpreter only treats the right side as a regex when it is a string or pattern
+            if (!(dereference(node.jjtGetChild(1)) instanceof ASTStringLiteral)) {
+                return null;
+            }
+            final int matched = (node instanceof ASTERNode ? TRUE : FALSE);
+            final int unmatched = (node instanceof ASTERNode ? FALSE : TRUE);
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (arithmetic.matches(left.get(context), right.get(context)) ? matched : unmatched);
+                }
+            };
+        } else if (node instanceof ASTLTNode) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (arithmetic.lessThan(left.get(context), right.get(context)) ? TRUE : FALSE);
+                }
+            };
+        } else if (node instanceof ASTLENode) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (arithmetic.lessThanOrEqual(left.get(context), right.get(context)) ? TRUE : FALSE);
+                }
+            };
+        } else if (node instanceof ASTGTNode) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (arithmetic.greaterThan(left.get(context), right.get(context)) ? TRUE : FALSE);
+                }
+            };
+        } else {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (arithmetic.greaterThanOrEqual(left.get(context), right.get(context)) ? TRUE : FALSE);
+                }
+            };
+        }
+    }
+    
+    /**
+     * @param node
+     * @return the compiled field or literal, or null if the node is neither
+     */
+    private static Operand compileOperand(JexlNode node) {
+        node = dereference(node);
+        if (node instanceof ASTIdentifier) {
+            final String field = node.image;
+            return new Operand() {
+                @Override
+                public Object get(JexlContext context) {
+                    return context.get(field);
+                }
+            };
+        }
+        final Object literal = getLiteral(node);
+        if (literal != null) {
+            return new Operand() {
+                @Override
+                public Object get(JexlContext context) {
+                    return literal;
+                }
+            };
+        }
+        return null;
+    }
+    
+    /**
+     * @param node
+     * @return the value of a string or number literal, or null if the node is neither
+     */
+    private static Object getLiteral(JexlNode node) {
+        node = dereference(node);
+        if (node instanceof ASTStringLiteral) {
+            return ((ASTStringLiteral) node).getLiteral();
+        } else if (node instanceof ASTNumberLiteral) {
+            return ((ASTNumberLiteral) node).getLiteral();
+        }
+        return null;
+    }
+    
+    /**
+     * As the DatawaveInterpreter, a conjunction of a lower and upper bound on the same field is evaluated as a range with QueryFunctions.between
+     * 
+     * @param node
+     * @return the compiled range, or null if the node is not a range
+     */
+    private Evaluator compileRange(JexlNode node) {
+        JexlNode left = node.jjtGetChild(0);
+        JexlNode right = node.jjtGetChild(1);
+        if (left instanceof ASTLENode || left instanceof ASTLTNode) {
+            JexlNode temp = left;
+            left = right;
+            right = temp;
+        }
+        if (!(left instanceof ASTGENode || left instanceof ASTGTNode) || !(right instanceof ASTLENode || right instanceof ASTLTNode)) {
+            return null;
+        }
+        JexlNode leftIdentifier = dereference(left.jjtGetChild(0));
+        JexlNode rightIdentifier = dereference(right.jjtGetChild(0));
+        if (!(leftIdentifier instanceof ASTIdentifier) || !(rightIdentifier instanceof ASTIdentifier) || !leftIdentifier.image.equals(rightIdentifier.image)) {
+            return null;
+        }
+        final Object leftValue = getLiteral(left.jjtGetChild(1));
+        final Object rightValue = getLiteral(right.jjtGetChild(1));
+        if (leftValue == null || rightValue == null) {
+            return null;
+        }
+        
+        final String field = leftIdentifier.image;
+        final boolean leftInclusive = left instanceof ASTGENode;
+        final boolean rightInclusive = right instanceof ASTLENode;
+        final boolean numeric = leftValue instanceof Number && rightValue instanceof Number;
+        return new Evaluator() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public int evaluate(JexlContext context) {
+                Object fieldValue = context.get(field);
+                Collection<?> evaluation;
+                if (numeric) {
+                    float lower = ((Number) leftValue).floatValue();
+                    float upper = ((Number) rightValue).floatValue();
+                    if (fieldValue instanceof Collection) {
+                        evaluation = QueryFunctions.between((Collection<?>) fieldValue, lower, leftInclusive, upper, rightInclusive);
+                    } else {
+                        evaluation = QueryFunctions.between(fieldValue, lower, leftInclusive, upper, rightInclusive);
+                    }
+                } else {
+                    String lower = String.valueOf(leftValue);
+                    String upper = String.valueOf(rightValue);
+                    if (fieldValue instanceof Collection) {
+                        evaluation = QueryFunctions.between((Collection<?>) fieldValue, lower, leftInclusive, upper, rightInclusive);
+                    } else {
+                        evaluation = QueryFunctions.between(fieldValue, lower, leftInclusive, upper, rightInclusive);
+                    }
+                }
+                if (arithmetic instanceof HitListArithmetic) {
+                    Set<String> hitSet = ((HitListArithmetic) arithmetic).getHitSet();
+                    if (hitSet != null) {
+                        hitSet.addAll((Collection<String>) evaluation);
+                    }
+                }
+                return (evaluation.isEmpty() ? EMPTY : NONEMPTY);
+            }
+        };
+    }
+    
+    /**
+     * Compile a call to one of the common filter functions: includeRegex, excludeRegex, includeText, isNull and isNotNull
+     * 
+     * @param node
+     * @return the compiled function, or null if it is not one of those functions or its result is used by a method
+     */
+    private Evaluator compileFunction(ASTFunctionNode node) {
+        // a function whose results are used by a method (e.g. size) must return its matches, not whether it matched
+        JexlNode parent = node.jjtGetParent();
+        if (parent == null || parent.jjtGetNumChildren() > 1 || parent.jjtGetParent() instanceof ASTMethodNode) {
+            return null;
+        }
+        String namespace = node.jjtGetChild(0).image;
+        if (!EvaluationPhaseFilterFunctions.EVAL_PHASE_FUNCTION_NAMESPACE.equals(namespace)
+                        || ArithmeticJexlEngines.functions().get(namespace) != EvaluationPhaseFilterFunctions.class) {
+            return null;
+        }
+        String function = node.jjtGetChild(1).image;
+        int numArgs = node.jjtGetNumChildren() - 2;
+        JexlNode fieldNode = (numArgs > 0 ? dereference(node.jjtGetChild(2)) : null);
+        if (!(fieldNode instanceof ASTIdentifier)) {
+            return null;
+        }
+        final String field = fieldNode.image;
+        
+        if (numArgs == 1 && function.equals("isNull")) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return (EvaluationPhaseFilterFunctions.isNull(context.get(field)) ? TRUE : FALSE);
+                }
+            };
+        } else if (numArgs == 1 && function.equals("isNotNull")) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    return matches(EvaluationPhaseFilterFunctions.isNotNull(context.get(field)));
+                }
+            };
+        }
+        
+        JexlNode argNode = (numArgs == 2 ? dereference(node.jjtGetChild(3)) : null);
+        if (!(argNode instanceof ASTStringLiteral)) {
+            return null;
+        }
+        final String arg = ((ASTStringLiteral) argNode).getLiteral();
+        // as the interpreter, the Iterable form of the function is used for a collection of values (or no value at all)
+        if (function.equals("includeRegex")) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    Object value = context.get(field);
+                    return matches(value == null || value instanceof Iterable ? EvaluationPhaseFilterFunctions.includeRegex((Iterable<?>) value, arg)
+                                    : EvaluationPhaseFilterFunctions.includeRegex(value, arg));
+                }
+            };
+        } else if (function.equals("excludeRegex")) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    Object value = context.get(field);
+                    boolean excluded = (value == null || value instanceof Iterable ? EvaluationPhaseFilterFunctions.excludeRegex((Iterable<?>) value, arg)
+                                    : EvaluationPhaseFilterFunctions.excludeRegex(value, arg));
+                    return (excluded ? TRUE : FALSE);
+                }
+            };
+        } else if (function.equals("includeText")) {
+            return new Evaluator() {
+                @Override
+                public int evaluate(JexlContext context) {
+                    Object value = context.get(field);
+                    return matches(value == null || value instanceof Iterable ? EvaluationPhaseFilterFunctions.includeText((Iterable<?>) value, arg)
+                                    : EvaluationPhaseFilterFunctions.includeText(value, arg));
+                }
+            };
+        }
+        return null;
+    }
+    
+    /**
+     * As the DatawaveInterpreter, record the matches of a function as hits and return whether there were any
+     * 
+     * @param matches
+     * @return true if there were matches
+     */
+    private int matches(Collection<?> matches) {
+        if (arithmetic instanceof HitListArithmetic) {
+            HitListArithmetic hitListArithmetic = (HitListArithmetic) arithmetic;
+            if (hitListArithmetic.getHitSet() != null) {
+                for (Object o : matches) {
+                    if (o instanceof ValueTuple) {
+                        hitListArithmetic.add((ValueTuple) o);
+                    }
+                }
+            }
+        }
+        return (matches.isEmpty() ? FALSE : TRUE);
+    }
+}
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
@@ -103,6 +104,15 @@ public class LookupBoundedRangeForTerms extends IndexLookup {
         }
         
         log.debug("Range: " + range);
+        
+        // composite ranges are filtered by each of their components, so those are left to the index
+        if (config.isTermDictionaryCacheEnabled() && !config.getCompositeToFieldMap().containsKey(literalRange.getFieldName())) {
+            IndexLookupMap cachedTerms = lookupCachedTerms(config, scannerFactory, lower, upper, maxLookup);
+            if (null != cachedTerms) {
+                return cachedTerms;
+            }
+        }
+        
         BatchScanner bs = null;
         try {
             bs = scannerFactory.newScanner(config.getIndexTableName(), config.getAuthorizations(), config.getNumQueryThreads(), config.getQuery());
@@ -188,6 +198,43 @@ public class LookupBoundedRangeForTerms extends IndexLookup {
         return fieldToUniqueTerms;
     }
     
+    /**
+     * Find the terms of the range in the cached terms of the field, rather than scanning the index.
+     * 
+     * @param config
+     * @param scannerFactory
+     * @param lower
+     * @param upper
+     * @param maxLookup
+     * @return the terms of the range, or null if the terms of the field could not be cached
+     */
+    protected IndexLookupMap lookupCachedTerms(ShardQueryConfiguration config, ScannerFactory scannerFactory, String lower, String upper, long maxLookup) {
+        String field = literalRange.getFieldName();
+        String start = (literalRange.isLowerInclusive() ? lower : lower + Constants.NULL);
+        String end = (literalRange.isUpperInclusive() ? upper + Constants.NULL : upper);
+        TermDictionaryCache cache = TermDictionaryCache.getInstance(config.getTermDictionaryMaxBytes());
+        List<TermDictionary> dictionaries = cache.getDictionaries(config, scannerFactory, null, field, start, end, maxLookup);
+        if (null == dictionaries) {
+            return null;
+        }
+        
+        IndexLookupMap fieldToUniqueTerms = new IndexLookupMap(config.getMaxUnfieldedExpansionThreshold(), config.getMaxValueExpansionThreshold());
+        for (TermDictionary dictionary : dictionaries) {
+            boolean completed = dictionary.forEachTerm(start, end, dictionary.getDatatypeMask(config.getDatatypeFilter()), term -> {
+                fieldToUniqueTerms.put(field, term);
+                return !fieldToUniqueTerms.get(field).isThresholdExceeded();
+            });
+            if (!completed) {
+                break;
+            }
+        }
+        
+        if (log.isDebugEnabled()) {
+            log.debug("Found " + fieldToUniqueTerms.size() + " matching cached terms for range: " + fieldToUniqueTerms);
+        }
+        return fieldToUniqueTerms;
+    }
+    
     protected Callable<Boolean> createTimedCallable(final Iterator<Entry<Key,Value>> iter, final IndexLookupMap fieldsToValues, ShardQueryConfiguration config,
                     Set<String> datatypeFilter, final Set<Text> fields, boolean isReverse, long timeout) {
         final Set<String> myDatatypeFilter = datatypeFilter;
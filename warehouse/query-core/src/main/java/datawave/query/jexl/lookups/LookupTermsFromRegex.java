@@ -1,13 +1,18 @@
 package datawave.query.jexl.lookups;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
 
 import datawave.core.iterators.TimeoutExceptionIterator;
 import datawave.core.iterators.TimeoutIterator;
@@ -36,6 +41,7 @@ import org.apache.log4j.Logger;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
@@ -140,6 +146,14 @@ public class LookupTermsFromRegex extends RegexIndexLookup {
             }
         }
         
+        if (config.isTermDictionaryCacheEnabled() && !fields.isEmpty()) {
+            IndexLookupMap cachedValues = lookupCachedTerms(config, scannerFactory, forwardMap, performReverseLookup ? reverseMap.keySet()
+                            : Collections.emptySet(), maxLookupConfigured);
+            if (null != cachedValues) {
+                return cachedValues;
+            }
+        }
+        
         for (String key : forwardMap.keySet()) {
             Collection<Range> ranges = forwardMap.get(key);
             try {
@@ -307,6 +321,116 @@ public class LookupTermsFromRegex extends RegexIndexLookup {
         };
     }
     
+    /**
+     * Match the patterns against the cached terms of the fields, rather than scanning the index.
+     * 
+     * @param config
+     * @param scannerFactory
+     * @param forwardMap
+     *            the forward index patterns, whose ranges bound the terms to match
+     * @param reversePatterns
+     *            the reverse index patterns, which are matched against every term
+     * @param maxLookup
+     * @return the matching values of each field, or null if the terms of a field could not be cached or are not all in the forward index
+     */
+    protected IndexLookupMap lookupCachedTerms(ShardQueryConfiguration config, ScannerFactory scannerFactory, Multimap<String,Range> forwardMap,
+                    Collection<String> reversePatterns, long maxLookup) {
+        // the terms of a field are only cached from the forward index
+        for (Text field : fields) {
+            if (!isForwardIndexed(config, field.toString())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Not using the cached terms of " + field + ", which is reverse indexed without being forward indexed");
+                }
+                return null;
+            }
+        }
+        
+        List<Entry<String,Range>> patternRanges = Lists.newArrayList(forwardMap.entries());
+        for (String pattern : reversePatterns) {
+            patternRanges.add(Maps.immutableEntry(pattern, new Range()));
+        }
+        
+        // get all of the dictionaries before matching any term, so that the index can still be scanned instead
+        TermDictionaryCache cache = TermDictionaryCache.getInstance(config.getTermDictionaryMaxBytes());
+        List<Map<String,List<TermDictionary>>> dictionariesByPattern = new ArrayList<>();
+        for (Entry<String,Range> patternRange : patternRanges) {
+            Range range = patternRange.getValue();
+            String start = (range.isInfiniteStartKey() ? null : range.getStartKey().getRow().toString());
+            String end = (range.isInfiniteStopKey() ? null : range.getEndKey().getRow().toString() + Constants.NULL);
+            Map<String,List<TermDictionary>> dictionaries = new HashMap<>();
+            for (Text field : fields) {
+                List<TermDictionary> fieldDictionaries = cache.getDictionaries(config, scannerFactory, helperRef, field.toString(), start, end, maxLookup);
+                if (null == fieldDictionaries) {
+                    return null;
+                }
+                dictionaries.put(field.toString(), fieldDictionaries);
+            }
+            dictionariesByPattern.add(dictionaries);
+        }
+        
+        IndexLookupMap fieldsToValues = new IndexLookupMap(config.getMaxUnfieldedExpansionThreshold(), config.getMaxValueExpansionThreshold());
+        fieldsToValues.setPatterns(patterns);
+        
+        for (int i = 0; i < patternRanges.size(); i++) {
+            // match the same way as the GlobalIndexTermMatchingFilter
+            Pattern pattern = Pattern.compile(patternRanges.get(i).getKey());
+            Range range = patternRanges.get(i).getValue();
+            String start = (range.isInfiniteStartKey() ? null : range.getStartKey().getRow().toString());
+            String end = (range.isInfiniteStopKey() ? null : range.getEndKey().getRow().toString() + Constants.NULL);
+            
+            for (Entry<String,List<TermDictionary>> entry : dictionariesByPattern.get(i).entrySet()) {
+                String field = entry.getKey();
+                for (TermDictionary dictionary : entry.getValue()) {
+                    long datatypeMask = dictionary.getDatatypeMask(config.getDatatypeFilter()) & dictionary.getDatatypeMask(datatypeFilter);
+                    boolean completed = dictionary.forEachTerm(start, end, datatypeMask, term -> {
+                        if (pattern.matcher(term).matches()) {
+                            fieldsToValues.put(field, term);
+                            return !fieldsToValues.isKeyThresholdExceeded() && !(fields.size() == 1 && fieldsToValues.get(field).isThresholdExceeded());
+                        }
+                        return true;
+                    });
+                    if (!completed) {
+                        if (log.isTraceEnabled())
+                            log.trace("We've passed term expansion threshold");
+                        return fieldsToValues;
+                    }
+                }
+            }
+        }
+        
+        if (log.isDebugEnabled()) {
+            log.debug("Expanded " + patterns + " from the cached terms of " + fields);
+        }
+        return fieldsToValues;
+    }
+    
+    /**
+     * @param config
+     * @param field
+     * @return false if the field is reverse indexed without being forward indexed for one of the datatypes of the query, so that the forward index does not
+     *         hold all of its terms
+     */
+    protected boolean isForwardIndexed(ShardQueryConfiguration config, String field) {
+        if (null == helperRef) {
+            return false;
+        }
+        try {
+            for (String datatype : helperRef.getDatatypes(config.getDatatypeFilter())) {
+                if (!datatypeFilter.isEmpty() && !datatypeFilter.contains(datatype)) {
+                    continue;
+                }
+                Set<String> ingestType = Collections.singleton(datatype);
+                if (helperRef.isReverseIndexed(field, ingestType) && !helperRef.isIndexed(field, ingestType)) {
+                    return false;
+                }
+            }
+        } catch (TableNotFoundException e) {
+            log.warn("Unable to find how " + field + " is indexed", e);
+            return false;
+        }
+        return true;
+    }
+    
     /**
      * @param config
      * @return
@@ -0,0 +1,226 @@
+package datawave.query.jexl.lookups;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * The sorted terms of a field in the global index for a day, with the datatypes that each term was indexed under. The terms are front coded in blocks: the
+ * first term of a block is stored whole, and every other term as the length of the prefix that it shares with the term before it and the rest of its bytes.
+ * Terms are found by a binary search over the first terms of the blocks.
+ */
+public class TermDictionary {
+    
+    // the number of terms in a block
+    private static final int BLOCK_SIZE = 16;
+    
+    // the most datatypes that the datatype masks can hold
+    public static final int MAX_DATATYPES = 64;
+    
+    private final List<String> datatypes;
+    private final byte[] data;
+    private final int[] blockOffsets;
+    private final long[] datatypeMasks;
+    private final int numTerms;
+    
+    private TermDictionary(List<String> datatypes, byte[] data, int[] blockOffsets, long[] datatypeMasks, int numTerms) {
+        this.datatypes = datatypes;
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.datatypeMasks = datatypeMasks;
+        this.numTerms = numTerms;
+    }
+    
+    public int size() {
+        return numTerms;
+    }
+    
+    public List<String> getDatatypes() {
+        return datatypes;
+    }
+    
+    /**
+     * @return the approximate number of bytes that the dictionary takes in memory
+     */
+    public long getSizeInBytes() {
+        return 64L + data.length + 4L * blockOffsets.length + 8L * datatypeMasks.length + 48L * datatypes.size();
+    }
+    
+    /**
+     * @param filter
+     *            the datatypes to accept, or null or empty to accept all of them
+     * @return the mask of the datatypes to pass to {@link #forEachTerm}
+     */
+    public long getDatatypeMask(Collection<String> filter) {
+        if (null == filter || filter.isEmpty()) {
+            return -1L;
+        }
+        long mask = 0;
+        for (int i = 0; i < datatypes.size(); i++) {
+            if (filter.contains(datatypes.get(i))) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+    
+    /**
+     * Visits the terms from start to end in order, skipping those that were not indexed under any of the datatypes of the mask.
+     * 
+     * @param start
+     *            the first term to visit, inclusive, or null to start at the first term
+     * @param end
+     *            the term to stop at, exclusive, or null to visit to the last term
+     * @param datatypeMask
+     * @param visitor
+     *            returns false to stop visiting
+     * @return false if the visitor stopped the visit
+     */
+    public boolean forEachTerm(String start, String end, long datatypeMask, Predicate<String> visitor) {
+        if (numTerms == 0 || 0 == datatypeMask) {
+            return true;
+        }
+        int block = (null == start ? 0 : findBlock(start));
+        int index = block * BLOCK_SIZE;
+        int offset = blockOffsets[block];
+        byte[] term = new byte[0];
+        int termLength = 0;
+        while (index < numTerms) {
+            // read the shared prefix length and the suffix of the term
+            int shared = 0, shift = 0, b;
+            do {
+                b = data[offset++];
+                shared |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            int suffix = 0;
+            shift = 0;
+            do {
+                b = data[offset++];
+                suffix |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            
+            termLength = shared + suffix;
+            if (term.length < termLength) {
+                byte[] grown = new byte[Math.max(termLength, term.length * 2)];
+                System.arraycopy(term, 0, grown, 0, shared);
+                term = grown;
+            }
+            System.arraycopy(data, offset, term, shared, suffix);
+            offset += suffix;
+            
+            String value = new String(term, 0, termLength, StandardCharsets.UTF_8);
+            if (null != end && value.compareTo(end) >= 0) {
+                return true;
+            }
+            if ((null == start || value.compareTo(start) >= 0) && (datatypeMasks[index] & datatypeMask) != 0 && !visitor.test(value)) {
+                return false;
+            }
+            index++;
+        }
+        return true;
+    }
+    
+    /**
+     * @param term
+     * @return the last block whose first term is not after the term
+     */
+    private int findBlock(String term) {
+        int low = 0, high = blockOffsets.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstTerm(mid).compareTo(term) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    private String firstTerm(int block) {
+        int offset = blockOffsets[block];
+        // the first term of a block shares nothing, so skip the zero prefix length
+        offset++;
+        int length = 0, shift = 0, b;
+        do {
+            b = data[offset++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Collects the terms of a dictionary in any order
+     */
+    public static class Builder {
+        
+        private final TreeMap<String,Long> terms = new TreeMap<>();
+        private final List<String> datatypes = new ArrayList<>();
+        
+        /**
+         * @param term
+         * @param datatype
+         * @return false if the datatype could not be added because the dictionary already has {@link #MAX_DATATYPES} datatypes
+         */
+        public boolean add(String term, String datatype) {
+            int index = datatypes.indexOf(datatype);
+            if (index < 0) {
+                if (datatypes.size() == MAX_DATATYPES) {
+                    return false;
+                }
+                index = datatypes.size();
+                datatypes.add(datatype);
+            }
+            terms.merge(term, 1L << index, (a, b) -> a | b);
+            return true;
+        }
+        
+        public int size() {
+            return terms.size();
+        }
+        
+        public TermDictionary build() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int[] blockOffsets = new int[(terms.size() + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            long[] datatypeMasks = new long[terms.size()];
+            byte[] previous = new byte[0];
+            int index = 0;
+            for (Map.Entry<String,Long> entry : terms.entrySet()) {
+                byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                if (index % BLOCK_SIZE == 0) {
+                    blockOffsets[index / BLOCK_SIZE] = out.size();
+                } else {
+                    int max = Math.min(previous.length, term.length);
+                    while (shared < max && previous[shared] == term[shared]) {
+                        shared++;
+                    }
+                }
+                writeVInt(out, shared);
+                writeVInt(out, term.length - shared);
+                out.write(term, shared, term.length - shared);
+                datatypeMasks[index] = entry.getValue();
+                previous = term;
+                index++;
+            }
+            return new TermDictionary(Collections.unmodifiableList(new ArrayList<>(datatypes)), out.toByteArray(), blockOffsets, datatypeMasks, index);
+        }
+        
+        private static void writeVInt(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package datawave.query.jexl.lookups;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import datawave.core.iterators.ColumnQualifierRangeIterator;
+import datawave.query.Constants;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.tables.ScannerFactory;
+import datawave.query.util.MetadataHelper;
+import datawave.util.time.DateHelper;
+import datawave.webservice.common.logging.ThreadConfigurableLogger;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A process wide cache of the {@link TermDictionary} of each field, index table, authorizations and day, so that regex and range expansion can match the terms
+ * in memory rather than scanning the global index for every query.
+ * 
+ * The terms of a field are the rows of the index, so loading all of them scans the whole index. All of the terms of a field are only loaded when its counts in
+ * the metadata show that each day has no more occurrences than a dictionary holds terms, so that a single load serves every pattern and range of the field
+ * until it expires. Otherwise a bucket holds the terms of the range that was looked up, which costs no more than the index scan it replaces, and serves the
+ * later lookups of that same range. The buckets of a range are keyed by the range, so that the patterns of a field do not evict each other. An unbounded
+ * lookup of a field that is not known to be small is left to the index.
+ * 
+ * A bucket expires after {@link ShardQueryConfiguration#getTermDictionaryExpireMinutes()}, or after
+ * {@link ShardQueryConfiguration#getTermDictionaryRecentExpireMinutes()} for the current and previous day which are still being ingested. Only the days that
+ * are missing or expired are scanned again, in a single scan of the field. A day with more terms than
+ * {@link ShardQueryConfiguration#getTermDictionaryMaxTerms()} is remembered as too large until it expires, and lookups that need it go to the index. A load
+ * that times out is only remembered for {@link #TIMED_OUT_EXPIRE_MILLIS}, as the next may not. The cache holds at most
+ * {@link ShardQueryConfiguration#getTermDictionaryMaxBytes()} of dictionaries.
+ */
+public class TermDictionaryCache {
+    
+    private static final Logger log = ThreadConfigurableLogger.getLogger(TermDictionaryCache.class);
+    
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    
+    // how long the days of a load that timed out go to the index before they are loaded again
+    public static final long TIMED_OUT_EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    /**
+     * The outcome of loading the terms of some days
+     */
+    protected enum LoadStatus {
+        COMPLETE, TOO_MANY_TERMS, TIMED_OUT
+    }
+    
+    private static volatile TermDictionaryCache instance = new TermDictionaryCache(DEFAULT_MAX_BYTES);
+    
+    private final long maxBytes;
+    private final Cache<BucketKey,Bucket> cache;
+    
+    /**
+     * @param maxBytes
+     *            the most bytes of dictionaries to hold
+     */
+    public TermDictionaryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher((BucketKey key, Bucket bucket) -> bucket.getWeight()).concurrencyLevel(16)
+                        .build();
+    }
+    
+    /**
+     * @return the cache shared by all queries
+     */
+    public static TermDictionaryCache getInstance() {
+        return instance;
+    }
+    
+    /**
+     * Get the shared cache, replacing it with an empty cache of the size if it holds a different number of bytes
+     * 
+     * @param maxBytes
+     *            the most bytes of dictionaries to hold
+     * @return the cache shared by all queries
+     */
+    public static TermDictionaryCache getInstance(long maxBytes) {
+        TermDictionaryCache cache = instance;
+        if (cache.maxBytes != maxBytes) {
+            synchronized (TermDictionaryCache.class) {
+                if (instance.maxBytes != maxBytes) {
+                    log.info("Sizing the term dictionary cache to " + maxBytes + " bytes");
+                    instance = new TermDictionaryCache(maxBytes);
+                }
+                cache = instance;
+            }
+        }
+        return cache;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    /**
+     * Get the dictionaries of a field for every day of the query, scanning the index for the days that are not cached.
+     * 
+     * @param config
+     * @param scannerFactory
+     * @param helper
+     *            the metadata of the fields, or null to only load the range of the lookup
+     * @param field
+     * @param start
+     *            the first term of the lookup, or null for the first term of the field
+     * @param end
+     *            the term after the last term of the lookup, or null for the last term of the field
+     * @param timeout
+     *            the most time in milliseconds to spend scanning the index, or 0 or less for no limit
+     * @return the dictionary of each day, holding at least the terms from start to end, or null if a day has too many terms, could not be scanned in time or
+     *         would need the whole index scanned for a field that is not known to be small
+     */
+    public List<TermDictionary> getDictionaries(ShardQueryConfiguration config, ScannerFactory scannerFactory, MetadataHelper helper, String field,
+                    String start, String end, long timeout) {
+        long now = System.currentTimeMillis();
+        String recentDay = DateHelper.format(new Date(now - TimeUnit.DAYS.toMillis(1)));
+        
+        List<TermDictionary> dictionaries = new ArrayList<>();
+        SortedSet<String> staleDays = new TreeSet<>();
+        for (String day : getDays(config.getBeginDate(), config.getEndDate())) {
+            Bucket bucket = getBucket(config, field, day, start, end, now);
+            if (null == bucket) {
+                staleDays.add(day);
+            } else if (null == bucket.dictionary) {
+                if (log.isDebugEnabled()) {
+                    log.debug("The terms of " + field + " on " + day + " could not be cached");
+                }
+                return null;
+            } else {
+                dictionaries.add(bucket.dictionary);
+            }
+        }
+        
+        if (!staleDays.isEmpty()) {
+            String loadStart = start;
+            String loadEnd = end;
+            if (isSmallField(config, helper, field, staleDays)) {
+                loadStart = null;
+                loadEnd = null;
+            } else if (null == start && null == end) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Not loading all of the terms of " + field + ", which is not known to be small");
+                }
+                return null;
+            }
+            
+            Map<String,TermDictionary.Builder> builders = new HashMap<>();
+            for (String day : staleDays) {
+                builders.put(day, new TermDictionary.Builder());
+            }
+            LoadStatus status;
+            try {
+                status = load(config, scannerFactory, field, staleDays, loadStart, loadEnd, builders, timeout);
+            } catch (TableNotFoundException | IOException e) {
+                log.warn("Unable to load the terms of " + field + " for " + staleDays, e);
+                return null;
+            }
+            
+            long expireMinutes = config.getTermDictionaryExpireMinutes();
+            long recentExpireMinutes = Math.min(expireMinutes, config.getTermDictionaryRecentExpireMinutes());
+            for (String day : staleDays) {
+                long expireMillis = TimeUnit.MINUTES.toMillis(day.compareTo(recentDay) >= 0 ? recentExpireMinutes : expireMinutes);
+                if (status == LoadStatus.TIMED_OUT) {
+                    expireMillis = Math.min(expireMillis, TIMED_OUT_EXPIRE_MILLIS);
+                }
+                TermDictionary dictionary = (status == LoadStatus.COMPLETE ? builders.get(day).build() : null);
+                cache.put(new BucketKey(config, field, day, loadStart, loadEnd), new Bucket(dictionary, now + expireMillis));
+                dictionaries.add(dictionary);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded the terms of " + field + " from " + loadStart + " to " + loadEnd + " on " + staleDays + ": " + status);
+            }
+            if (status != LoadStatus.COMPLETE) {
+                return null;
+            }
+        }
+        return dictionaries;
+    }
+    
+    /**
+     * Get the bucket that serves a lookup, which holds either all of the terms of the field on the day or the terms of the same range
+     * 
+     * @param config
+     * @param field
+     * @param day
+     * @param start
+     * @param end
+     * @param now
+     * @return the bucket, or null if neither is cached or they have expired
+     */
+    private Bucket getBucket(ShardQueryConfiguration config, String field, String day, String start, String end, long now) {
+        Bucket bucket = cache.getIfPresent(new BucketKey(config, field, day, null, null));
+        if ((null == bucket || bucket.expiresAt <= now) && (null != start || null != end)) {
+            bucket = cache.getIfPresent(new BucketKey(config, field, day, start, end));
+        }
+        return (null == bucket || bucket.expiresAt <= now ? null : bucket);
+    }
+    
+    /**
+     * Each occurrence of a field adds at most one term, so the counts of the field in the metadata bound its number of terms. A day without counts is not known
+     * to be small, as the counts may not be kept for the field.
+     * 
+     * @param config
+     * @param helper
+     * @param field
+     * @param days
+     * @return true if the field has no more occurrences on each of the days than a dictionary holds terms
+     */
+    protected boolean isSmallField(ShardQueryConfiguration config, MetadataHelper helper, String field, SortedSet<String> days) {
+        if (null == helper) {
+            return false;
+        }
+        Set<String> datatypes = config.getDatatypeFilter();
+        try {
+            for (String day : days) {
+                long count = (null == datatypes || datatypes.isEmpty() ? helper.getCountsByFieldInDay(field, day) : helper.getCountsByFieldInDayWithTypes(field,
+                                day, datatypes));
+                if (count <= 0 || count > config.getTermDictionaryMaxTerms()) {
+                    return false;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.debug("Unable to get the counts of " + field + " for " + days, e);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Scan the global index for the terms of a field on the days.
+     * 
+     * @param config
+     * @param scannerFactory
+     * @param field
+     * @param days
+     * @param start
+     *            the first term to load, or null for the first term of the field
+     * @param end
+     *            the term after the last term to load, or null for the last term of the field
+     * @param builders
+     *            the builder of each day
+     * @param timeout
+     * @return whether the load completed, or was stopped as a day has more than the max terms or more datatypes than a dictionary can hold, or the scan took
+     *         longer than the timeout
+     * @throws TableNotFoundException
+     * @throws IOException
+     */
+    protected LoadStatus load(ShardQueryConfiguration config, ScannerFactory scannerFactory, String field, SortedSet<String> days, String start, String end,
+                    Map<String,TermDictionary.Builder> builders, long timeout) throws TableNotFoundException, IOException {
+        long deadline = (timeout <= 0 || timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeout);
+        int maxTerms = config.getTermDictionaryMaxTerms();
+        
+        BatchScanner bs = scannerFactory.newScanner(config.getIndexTableName(), config.getAuthorizations(), config.getNumQueryThreads(), config.getQuery());
+        try {
+            bs.setRanges(Collections.singleton(new Range(null == start ? null : new Key(start), true, null == end ? null : new Key(end), false)));
+            bs.fetchColumnFamily(new Text(field));
+            IteratorSetting cfg = new IteratorSetting(config.getBaseIteratorPriority() + 21, "dateFilter", ColumnQualifierRangeIterator.class);
+            cfg.addOption(ColumnQualifierRangeIterator.RANGE_NAME,
+                            ColumnQualifierRangeIterator.encodeRange(new Range(days.first(), days.last() + Constants.MAX_UNICODE_STRING)));
+            bs.addScanIterator(cfg);
+            
+            Text holder = new Text();
+            for (Map.Entry<Key,Value> entry : bs) {
+                // the column qualifier is the shard, whose day is the first 8 characters, and the datatype
+                String colq = entry.getKey().getColumnQualifier(holder).toString();
+                int idx = colq.indexOf(Constants.NULL);
+                if (idx < 8) {
+                    continue;
+                }
+                TermDictionary.Builder builder = builders.get(colq.substring(0, 8));
+                if (null == builder) {
+                    continue;
+                }
+                if (!builder.add(entry.getKey().getRow(holder).toString(), colq.substring(idx + 1)) || builder.size() > maxTerms) {
+                    return LoadStatus.TOO_MANY_TERMS;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    log.debug("Timed out loading the terms of " + field);
+                    return LoadStatus.TIMED_OUT;
+                }
+            }
+        } finally {
+            scannerFactory.close(bs);
+        }
+        return LoadStatus.COMPLETE;
+    }
+    
+    /**
+     * @param config
+     * @param field
+     * @param day
+     * @return when all of the cached terms of the field on the day expire, or -1 if they are not cached
+     */
+    long getExpiresAt(ShardQueryConfiguration config, String field, String day) {
+        Bucket bucket = cache.getIfPresent(new BucketKey(config, field, day, null, null));
+        return (null == bucket ? -1 : bucket.expiresAt);
+    }
+    
+    /**
+     * @return the number of buckets cached
+     */
+    public long size() {
+        return cache.size();
+    }
+    
+    public void clear() {
+        cache.invalidateAll();
+    }
+    
+    /**
+     * @param begin
+     * @param end
+     * @return the days from the begin date to the end date in the format of the shards
+     */
+    static List<String> getDays(Date begin, Date end) {
+        List<String> days = new ArrayList<>();
+        String endDay = DateHelper.format(end);
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        calendar.setTime(DateHelper.parse(DateHelper.format(begin)));
+        for (String day = DateHelper.format(calendar.getTime()); day.compareTo(endDay) <= 0; day = DateHelper.format(calendar.getTime())) {
+            days.add(day);
+            calendar.add(Calendar.DATE, 1);
+        }
+        return days;
+    }
+    
+    private static class Bucket {
+        // null if the day has too many terms or could not be loaded in time
+        private final TermDictionary dictionary;
+        private final long expiresAt;
+        
+        private Bucket(TermDictionary dictionary, long expiresAt) {
+            this.dictionary = dictionary;
+            this.expiresAt = expiresAt;
+        }
+        
+        private int getWeight() {
+            return (int) Math.min(Integer.MAX_VALUE, null == dictionary ? 64 : dictionary.getSizeInBytes());
+        }
+    }
+    
+    /**
+     * The terms of a day are those visible to the authorizations of the query, so the authorizations are a part of the key. The range of the terms is null
+     * for all of the terms of the field.
+     */
+    private static class BucketKey {
+        private final String tableName;
+        private final String field;
+        private final String day;
+        private final Set<Authorizations> auths;
+        private final String start;
+        private final String end;
+        
+        private BucketKey(ShardQueryConfiguration config, String field, String day, String start, String end) {
+            this.tableName = config.getIndexTableName();
+            this.field = field;
+            this.day = day;
+            this.auths = (null == config.getAuthorizations() ? null : new HashSet<>(config.getAuthorizations()));
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BucketKey)) {
+                return false;
+            }
+            BucketKey other = (BucketKey) o;
+            return Objects.equals(tableName, other.tableName) && Objects.equals(field, other.field) && Objects.equals(day, other.day)
+                            && Objects.equals(auths, other.auths) && Objects.equals(start, other.start) && Objects.equals(end, other.end);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(tableName, field, day, auths, start, end);
+        }
+    }
+}
@@ -134,6 +134,8 @@ public class IteratorBuildingVisitor extends BaseVisitor {
     protected long ivaratorCacheScanPersistThreshold = 100000L;
     protected long ivaratorCacheScanTimeout = 1000L * 60 * 60;
     protected int ivaratorCacheBufferSize = 10000;
+    protected boolean ivaratorCacheOffHeapBuffer = false;
+    protected boolean ivaratorCacheMappedFiles = false;
     protected int maxRangeSplit = 11;
     protected int ivaratorMaxOpenFiles = 100;
     protected SourcePool ivaratorSources = null;
@@ -1276,6 +1278,8 @@ public class IteratorBuildingVisitor extends BaseVisitor {
         builder.setQueryLock(queryLock);
         builder.setIvaratorCacheDirURI(path.toString());
         builder.setIvaratorCacheBufferSize(ivaratorCacheBufferSize);
+        builder.setIvaratorCacheOffHeapBuffer(ivaratorCacheOffHeapBuffer);
+        builder.setIvaratorCacheMappedFiles(ivaratorCacheMappedFiles);
         builder.setIvaratorCacheScanPersistThreshold(ivaratorCacheScanPersistThreshold);
         builder.setIvaratorCacheScanTimeout(ivaratorCacheScanTimeout);
         builder.setMaxRangeSplit(maxRangeSplit);
@@ -1482,6 +1486,16 @@ public class IteratorBuildingVisitor extends BaseVisitor {
         return this;
     }
     
+    public IteratorBuildingVisitor setIvaratorCacheOffHeapBuffer(boolean ivaratorCacheOffHeapBuffer) {
+        this.ivaratorCacheOffHeapBuffer = ivaratorCacheOffHeapBuffer;
+        return this;
+    }
+    
+    public IteratorBuildingVisitor setIvaratorCacheMappedFiles(boolean ivaratorCacheMappedFiles) {
+        this.ivaratorCacheMappedFiles = ivaratorCacheMappedFiles;
+        return this;
+    }
+    
     public IteratorBuildingVisitor setIvaratorCacheScanPersistThreshold(long ivaratorCacheScanPersistThreshold) {
         this.ivaratorCacheScanPersistThreshold = ivaratorCacheScanPersistThreshold;
         return this;
@@ -0,0 +1,237 @@
+package datawave.query.jexl.visitors;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import datawave.query.Constants;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.index.stats.FieldCardinalityStats;
+import datawave.query.jexl.JexlASTHelper;
+import datawave.query.jexl.nodes.QueryPropertyMarker;
+import datawave.query.util.MetadataHelper;
+
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTDelayedPredicate;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTNotNode;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTReferenceExpression;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.apache.commons.jexl2.parser.JexlNodes;
+import org.apache.log4j.Logger;
+
+/**
+ * Visitor that uses the cardinality of the indexed fields of a query to order the terms of each intersection cheapest first, and to delay the equality terms
+ * of an intersection that are much more expensive than its cheapest indexed term, so that the range stream anchors the intersection on the cheapest term and
+ * does not scan the global index for the expensive ones.
+ * 
+ * The cost of a term is the estimated cardinality of its value over the date range of the query, or the cardinality of its field when the term counts do not
+ * cover the field. The cost of an intersection is that of its cheapest term, and the cost of a union is the sum of its terms. Terms that do not hit the global
+ * index, and unions that contain one, have no cost and keep their place after the terms that have one. A term is only delayed when both it and the term it is
+ * compared against are costed by value, as the cardinality of a field says nothing about how selective one of its values is.
+ */
+public class OrderByCardinalityVisitor extends BaseVisitor {
+    
+    private static final Logger log = Logger.getLogger(OrderByCardinalityVisitor.class);
+    
+    protected final FieldCardinalityStats stats;
+    protected final Set<String> indexedFields;
+    protected final Set<String> indexOnlyFields;
+    protected final double maxCardinalityRatio;
+    
+    /**
+     * @param stats
+     * @param indexedFields
+     * @param indexOnlyFields
+     * @param maxCardinalityRatio
+     *            an equality term costing more than this many times the cheapest indexed term of its intersection is delayed, or 0 to delay nothing
+     */
+    public OrderByCardinalityVisitor(FieldCardinalityStats stats, Set<String> indexedFields, Set<String> indexOnlyFields, double maxCardinalityRatio) {
+        this.stats = stats;
+        this.indexedFields = indexedFields;
+        this.indexOnlyFields = indexOnlyFields;
+        this.maxCardinalityRatio = maxCardinalityRatio;
+    }
+    
+    public static ASTJexlScript order(ASTJexlScript queryTree, ShardQueryConfiguration config, MetadataHelper helper) throws TableNotFoundException {
+        FieldCardinalityStats stats = new FieldCardinalityStats(helper, config.getBeginDate(), config.getEndDate(), config.getDatatypeFilter());
+        OrderByCardinalityVisitor visitor = new OrderByCardinalityVisitor(stats, helper.getIndexedFields(config.getDatatypeFilter()),
+                        helper.getIndexOnlyFields(config.getDatatypeFilter()), config.getMaxTermCardinalityRatio());
+        queryTree.jjtAccept(visitor, null);
+        return queryTree;
+    }
+    
+    @Override
+    public Object visit(ASTReferenceExpression node, Object data) {
+        // leave marked sub-trees, such as delayed predicates and ivarators, as they are
+        if (!QueryPropertyMarker.instanceOf(node, null)) {
+            return super.visit(node, data);
+        }
+        return data;
+    }
+    
+    @Override
+    public Object visit(ASTReference node, Object data) {
+        if (!QueryPropertyMarker.instanceOf(node, null)) {
+            return super.visit(node, data);
+        }
+        return data;
+    }
+    
+    @Override
+    public Object visit(ASTNotNode node, Object data) {
+        // negated terms are never looked up in the global index
+        return data;
+    }
+    
+    @Override
+    public Object visit(ASTAndNode node, Object data) {
+        if (QueryPropertyMarker.instanceOf(node, null)) {
+            return data;
+        }
+        
+        node.childrenAccept(this, data);
+        if (node.jjtGetNumChildren() == 0) {
+            return data;
+        }
+        
+        final List<JexlNode> children = new ArrayList<>(node.jjtGetNumChildren());
+        final List<Long> costs = new ArrayList<>(node.jjtGetNumChildren());
+        final List<Long> termCosts = new ArrayList<>(node.jjtGetNumChildren());
+        for (JexlNode child : JexlNodes.children(node)) {
+            children.add(child);
+            costs.add(cost(child, false));
+            termCosts.add(cost(child, true));
+        }
+        
+        List<Integer> order = new ArrayList<>(children.size());
+        for (int i = 0; i < children.size(); i++) {
+            order.add(i);
+        }
+        // a stable sort, so the terms without a cost keep their relative order at the end
+        order.sort(Comparator.comparing((Integer i) -> costs.get(i) == FieldCardinalityStats.UNKNOWN ? Long.MAX_VALUE : costs.get(i)));
+        
+        JexlNode[] ordered = new JexlNode[children.size()];
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i] = children.get(order.get(i));
+        }
+        JexlNodes.children(node, ordered);
+        
+        if (maxCardinalityRatio <= 0) {
+            return data;
+        }
+        
+        int anchor = -1;
+        for (int i : order) {
+            long cost = termCosts.get(i);
+            if (cost != FieldCardinalityStats.UNKNOWN && (anchor == -1 || cost < termCosts.get(anchor))) {
+                anchor = i;
+            }
+        }
+        if (anchor != -1 && termCosts.get(anchor) > 0) {
+            long cheapest = termCosts.get(anchor);
+            for (int i : order) {
+                JexlNode child = children.get(i);
+                long cost = termCosts.get(i);
+                if (i != anchor && cost != FieldCardinalityStats.UNKNOWN && cost > cheapest * maxCardinalityRatio && isDelayable(child)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Delaying " + JexlStringBuildingVisitor.buildQuery(child) + " with a cardinality of " + cost + " against " + cheapest);
+                    }
+                    ASTDelayedPredicate.create(child);
+                }
+            }
+        }
+        
+        return data;
+    }
+    
+    /**
+     * @param node
+     * @param byValue
+     *            true to only cost terms by the cardinality of their value
+     * @return the estimated number of global index entries that the node will scan, or {@link FieldCardinalityStats#UNKNOWN}
+     */
+    protected long cost(JexlNode node, boolean byValue) {
+        if (node instanceof ASTEQNode) {
+            String field = fieldOf(node);
+            if (null == field || !indexedFields.contains(field)) {
+                return FieldCardinalityStats.UNKNOWN;
+            }
+            String value = valueOf(node);
+            long cost = null == value ? FieldCardinalityStats.UNKNOWN : stats.getCardinality(field, value);
+            if (cost == FieldCardinalityStats.UNKNOWN && !byValue) {
+                cost = stats.getCardinality(field);
+            }
+            return cost;
+        } else if (node instanceof ASTAndNode) {
+            if (QueryPropertyMarker.instanceOf(node, null)) {
+                return FieldCardinalityStats.UNKNOWN;
+            }
+            long cost = FieldCardinalityStats.UNKNOWN;
+            for (JexlNode child : JexlNodes.children(node)) {
+                long childCost = cost(child, byValue);
+                if (childCost != FieldCardinalityStats.UNKNOWN && (cost == FieldCardinalityStats.UNKNOWN || childCost < cost)) {
+                    cost = childCost;
+                }
+            }
+            return cost;
+        } else if (node instanceof ASTOrNode) {
+            long cost = 0;
+            for (JexlNode child : JexlNodes.children(node)) {
+                long childCost = cost(child, byValue);
+                if (childCost == FieldCardinalityStats.UNKNOWN) {
+                    return FieldCardinalityStats.UNKNOWN;
+                }
+                cost += childCost;
+            }
+            return cost;
+        } else if ((node instanceof ASTReference || node instanceof ASTReferenceExpression) && node.jjtGetNumChildren() == 1) {
+            if (QueryPropertyMarker.instanceOf(node, null)) {
+                return FieldCardinalityStats.UNKNOWN;
+            }
+            return cost(node.jjtGetChild(0), byValue);
+        }
+        return FieldCardinalityStats.UNKNOWN;
+    }
+    
+    /**
+     * Only equality terms on fields that are in the event are delayed, as they can be evaluated against the event once the cheaper terms have found it
+     * 
+     * @param node
+     * @return true if the node can be delayed
+     */
+    protected boolean isDelayable(JexlNode node) {
+        if (!(node instanceof ASTEQNode)) {
+            return false;
+        }
+        String field = fieldOf(node);
+        return null != field && !indexOnlyFields.contains(field);
+    }
+    
+    private String fieldOf(JexlNode node) {
+        try {
+            String field = JexlASTHelper.getIdentifier(node);
+            if (Constants.ANY_FIELD.equals(field) || Constants.NO_FIELD.equals(field)) {
+                return null;
+            }
+            return field;
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+    
+    private String valueOf(JexlNode node) {
+        try {
+            Object literal = JexlASTHelper.getLiteralValue(node);
+            return null == literal ? null : String.valueOf(literal);
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import datawave.query.parser.JavaRegexAnalyzer;
 import datawave.query.planner.pushdown.Cost;
 import datawave.query.planner.pushdown.CostEstimator;
 import datawave.query.tables.ScannerFactory;
+import datawave.query.tables.async.IndexLookupScheduler;
 import datawave.query.util.MetadataHelper;
 import datawave.webservice.query.Query;
 import org.apache.accumulo.core.client.TableNotFoundException;
@@ -144,8 +145,11 @@ public class ParallelIndexExpansion extends RebuildingVisitor {
     }
     
     protected void setupThreadResources() {
-        int threads = this.config.getNumIndexLookupThreads().intValue();
-        executor = Executors.newFixedThreadPool((int) Math.max(Math.ceil(threads), 10), new ParallelExpansionFactory(this.config.getQuery(), this.threadName));
+        int threads = (int) Math.max(Math.ceil(this.config.getNumIndexLookupThreads()), 10);
+        executor = IndexLookupScheduler.Factory.newLane(this.config, IndexLookupScheduler.INDEX, threads);
+        if (null == executor) {
+            executor = Executors.newFixedThreadPool(threads, new ParallelExpansionFactory(this.config.getQuery(), this.threadName));
+        }
     }
     
     @Override
@@ -2,12 +2,16 @@ package datawave.query.planner;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import datawave.query.CloseableIterable;
 import datawave.query.config.ShardQueryConfiguration;
 import datawave.query.exceptions.DatawaveFatalQueryException;
 import datawave.query.exceptions.DatawaveQueryException;
+import datawave.query.jexl.JexlASTHelper;
+import datawave.query.jexl.JexlNodeFactory;
 import datawave.query.jexl.visitors.BooleanOptimizationRebuildingVisitor;
 import datawave.query.jexl.visitors.JexlStringBuildingVisitor;
 import datawave.query.jexl.visitors.PrintingVisitor;
@@ -22,6 +26,9 @@ import datawave.webservice.query.Query;
 import datawave.webservice.query.configuration.QueryData;
 
 import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.apache.commons.jexl2.parser.ParseException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
@@ -91,6 +98,14 @@ public class BooleanChunkingQueryPlanner extends DefaultQueryPlanner {
     @Override
     protected CloseableIterable<QueryData> process(ScannerFactory scannerFactory, MetadataHelper metadataHelper, DateIndexHelper dateIndexHelper,
                     ShardQueryConfiguration config, String query, Query settings) throws DatawaveQueryException {
+        if (config.getBooleanChunkSize() > 0) {
+            List<String> chunks = chunkQuery(query, config.getBooleanChunkSize());
+            if (chunks.size() > 1) {
+                return processChunks(scannerFactory, metadataHelper, dateIndexHelper, config, chunks, settings);
+            }
+            return super.process(scannerFactory, metadataHelper, dateIndexHelper, config, query, settings);
+        }
+        
         final QueryData queryData = new QueryData();
         final ArrayList<QueryData> data = Lists.newArrayList();
         
@@ -122,6 +137,83 @@ public class BooleanChunkingQueryPlanner extends DefaultQueryPlanner {
         };
     }
     
+    /**
+     * Split the top level OR of a query into chunks of at most the chunk size terms. The ORs nested in ANDs are lifted to the top first, the same as
+     * {@link #updateQueryTree} does once the query is planned.
+     * 
+     * @param query
+     * @param chunkSize
+     * @return the query of each chunk, or the query itself if it has no top level OR larger than the chunk size
+     */
+    public static List<String> chunkQuery(String query, int chunkSize) {
+        ASTJexlScript script;
+        try {
+            script = JexlASTHelper.parseJexlQuery(query);
+        } catch (ParseException e) {
+            // the query is planned whole, which reports the parse error
+            return Collections.singletonList(query);
+        }
+        script = TreeFlatteningRebuildingVisitor.flatten(BooleanOptimizationRebuildingVisitor.optimize(TreeFlatteningRebuildingVisitor.flatten(script)));
+        
+        JexlNode top = JexlASTHelper.dereference(script.jjtGetChild(0));
+        if (!(top instanceof ASTOrNode) || top.jjtGetNumChildren() <= chunkSize) {
+            return Collections.singletonList(query);
+        }
+        
+        List<JexlNode> children = new ArrayList<>();
+        for (int i = 0; i < top.jjtGetNumChildren(); i++) {
+            children.add(top.jjtGetChild(i));
+        }
+        List<String> chunks = new ArrayList<>();
+        for (List<JexlNode> chunk : Lists.partition(children, chunkSize)) {
+            chunks.add(JexlStringBuildingVisitor.buildQuery(JexlNodeFactory.createOrNode(chunk)));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Split the " + children.size() + " terms of the top level OR into " + chunks.size() + " chunks");
+        }
+        return chunks;
+    }
+    
+    /**
+     * Plan each chunk as a query of its own. The first chunk is planned now using the configuration of the query, and the remaining chunks are planned
+     * concurrently from copies of the configuration.
+     * 
+     * @param scannerFactory
+     * @param metadataHelper
+     * @param dateIndexHelper
+     * @param config
+     * @param chunks
+     *            the query of each chunk
+     * @param settings
+     * @return the plans of every chunk
+     * @throws DatawaveQueryException
+     */
+    protected CloseableIterable<QueryData> processChunks(final ScannerFactory scannerFactory, final MetadataHelper metadataHelper,
+                    final DateIndexHelper dateIndexHelper, final ShardQueryConfiguration config, List<String> chunks, final Query settings)
+                    throws DatawaveQueryException {
+        // planning modifies the configuration, so the later chunks are planned from a copy taken before any planning
+        final ShardQueryConfiguration unplannedConfig = ShardQueryConfiguration.create(config);
+        CloseableIterable<QueryData> first = super.process(scannerFactory, metadataHelper, dateIndexHelper, config, chunks.get(0), settings);
+        
+        ChunkedQueryPlans.ChunkPlanner chunkPlanner = chunkQuery -> {
+            ShardQueryConfiguration chunkConfig = ShardQueryConfiguration.create(unplannedConfig);
+            chunkConfig.setQuery(config.getQuery());
+            
+            BooleanChunkingQueryPlanner planner = (BooleanChunkingQueryPlanner) createWindowPlanner();
+            try {
+                return planner.processChunk(scannerFactory, metadataHelper, dateIndexHelper, chunkConfig, chunkQuery, settings);
+            } finally {
+                planner.builderThread.shutdown();
+            }
+        };
+        return new ChunkedQueryPlans(first, chunks.subList(1, chunks.size()), config.getBooleanChunkThreads(), chunkPlanner, settings);
+    }
+    
+    private CloseableIterable<QueryData> processChunk(ScannerFactory scannerFactory, MetadataHelper metadataHelper, DateIndexHelper dateIndexHelper,
+                    ShardQueryConfiguration config, String query, Query settings) throws DatawaveQueryException {
+        return super.process(scannerFactory, metadataHelper, dateIndexHelper, config, query, settings);
+    }
+    
     @Override
     public BooleanChunkingQueryPlanner clone() {
         return new BooleanChunkingQueryPlanner(this);
@@ -0,0 +1,167 @@
+package datawave.query.planner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import datawave.query.CloseableIterable;
+import datawave.webservice.common.logging.ThreadConfigurableLogger;
+import datawave.webservice.query.Query;
+import datawave.webservice.query.configuration.QueryData;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The plans of a query whose top level OR has been split into chunks that are planned and scanned independently. The first chunk is planned up front, and the
+ * remaining chunks are planned concurrently in the background. Iterating over the plans returns the plans of every chunk in order, while {@link #getChunks()}
+ * lets a scheduler scan the chunks concurrently.
+ */
+public class ChunkedQueryPlans implements CloseableIterable<QueryData> {
+    
+    private static final Logger log = ThreadConfigurableLogger.getLogger(ChunkedQueryPlans.class);
+    
+    /**
+     * Plans the query of one chunk
+     */
+    public interface ChunkPlanner {
+        CloseableIterable<QueryData> plan(String chunkQuery) throws Exception;
+    }
+    
+    private final CloseableIterable<QueryData> first;
+    private final List<Future<CloseableIterable<QueryData>>> planning = new ArrayList<>();
+    // the plans of every chunk planned before this was closed, which are closed with it
+    private final List<CloseableIterable<QueryData>> planned = new ArrayList<>();
+    private final ExecutorService executor;
+    private List<Iterator<QueryData>> chunks = null;
+    private boolean closed = false;
+    
+    /**
+     * @param first
+     *            the plans of the first chunk
+     * @param chunkQueries
+     *            the queries of the remaining chunks
+     * @param threads
+     *            the max number of chunks to plan at once
+     * @param planner
+     * @param settings
+     */
+    public ChunkedQueryPlans(CloseableIterable<QueryData> first, List<String> chunkQueries, int threads, ChunkPlanner planner, Query settings) {
+        this.first = first;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("ChunkedQueryPlans for " + (settings == null ? null : settings.getId()) + " -%d").build());
+        for (final String chunk : chunkQueries) {
+            planning.add(executor.submit(() -> {
+                CloseableIterable<QueryData> plans = planner.plan(chunk);
+                if (null == plans) {
+                    return null;
+                }
+                // the plans are registered here rather than when they are asked for, so that plans that are never asked for are closed as well
+                synchronized (this) {
+                    if (closed) {
+                        closeQuietly(plans);
+                        return null;
+                    }
+                    planned.add(plans);
+                }
+                return plans;
+            }));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Planning " + (chunkQueries.size() + 1) + " chunks of the query");
+        }
+    }
+    
+    /**
+     * @return the number of chunks
+     */
+    public int size() {
+        return planning.size() + 1;
+    }
+    
+    /**
+     * The plans of each chunk. An iterator blocks while its chunk is still being planned. The plans can only be iterated over once, so every call returns the
+     * same iterators, which are shared with {@link #iterator()}.
+     * 
+     * @return an iterator over the plans of each chunk
+     */
+    public synchronized List<Iterator<QueryData>> getChunks() {
+        if (null != chunks) {
+            return chunks;
+        }
+        chunks = new ArrayList<>();
+        chunks.add(first.iterator());
+        for (final Future<CloseableIterable<QueryData>> future : planning) {
+            chunks.add(new AbstractIterator<QueryData>() {
+                private Iterator<QueryData> plans = null;
+                
+                @Override
+                protected QueryData computeNext() {
+                    if (null == plans) {
+                        CloseableIterable<QueryData> chunk = getPlans(future);
+                        plans = (null == chunk ? Collections.emptyIterator() : chunk.iterator());
+                    }
+                    return plans.hasNext() ? plans.next() : endOfData();
+                }
+            });
+        }
+        return chunks;
+    }
+    
+    /**
+     * The plans of every chunk in order
+     */
+    @Override
+    public Iterator<QueryData> iterator() {
+        return Iterators.concat(getChunks().iterator());
+    }
+    
+    private CloseableIterable<QueryData> getPlans(Future<CloseableIterable<QueryData>> future) {
+        try {
+            CloseableIterable<QueryData> plans = future.get();
+            synchronized (this) {
+                // the plans are closed along with this
+                return (closed ? null : plans);
+            }
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a chunk to be planned", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to plan a chunk of the query", e.getCause());
+        }
+    }
+    
+    private static void closeQuietly(CloseableIterable<QueryData> plans) {
+        try {
+            plans.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the plans of a chunk", e);
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (Future<CloseableIterable<QueryData>> future : planning) {
+            future.cancel(true);
+        }
+        executor.shutdownNow();
+        
+        first.close();
+        for (CloseableIterable<QueryData> plans : planned) {
+            plans.close();
+        }
+    }
+}
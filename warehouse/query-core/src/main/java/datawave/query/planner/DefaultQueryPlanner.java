@@ -15,6 +15,7 @@ import datawave.data.type.Type;
 import datawave.ingest.mapreduce.handler.dateindex.DateIndexUtil;
 import datawave.query.CloseableIterable;
 import datawave.query.Constants;
+import datawave.query.DocumentSerialization.ReturnType;
 import datawave.query.QueryParameters;
 import datawave.query.composite.CompositeMetadata;
 import datawave.query.composite.CompositeUtils;
@@ -54,6 +55,7 @@ import datawave.query.jexl.visitors.FunctionIndexQueryExpansionVisitor;
 import datawave.query.jexl.visitors.IsNotNullIntentVisitor;
 import datawave.query.jexl.visitors.JexlStringBuildingVisitor;
 import datawave.query.jexl.visitors.RewriteNegationsVisitor;
+import datawave.query.jexl.visitors.OrderByCardinalityVisitor;
 import datawave.query.jexl.visitors.ParallelIndexExpansion;
 import datawave.query.jexl.visitors.PrintingVisitor;
 import datawave.query.jexl.visitors.PullupUnexecutableNodesVisitor;
@@ -65,6 +67,7 @@ import datawave.query.jexl.visitors.QueryModelVisitor;
 import datawave.query.jexl.visitors.QueryOptionsFromQueryVisitor;
 import datawave.query.jexl.visitors.RangeCoalescingVisitor;
 import datawave.query.jexl.visitors.RangeConjunctionRebuildingVisitor;
+import datawave.query.jexl.visitors.RebuildingVisitor;
 import datawave.query.jexl.visitors.RegexFunctionVisitor;
 import datawave.query.jexl.visitors.SetMembershipVisitor;
 import datawave.query.jexl.visitors.SortedUIDsRequiredVisitor;
@@ -260,6 +263,11 @@ public class DefaultQueryPlanner extends QueryPlanner {
      */
     protected boolean executableExpansion = true;
     
+    /**
+     * Cache of planned queries shared by the clones of this planner, or null to plan every query
+     */
+    protected QueryPlanCache planCache = null;
+    
     public DefaultQueryPlanner() {
         this(Long.MAX_VALUE);
     }
@@ -299,6 +307,7 @@ public class DefaultQueryPlanner extends QueryPlanner {
         setDocsToCombineForEvaluation(other.getDocsToCombineForEvaluation());
         setCondenseUidsInRangeStream(other.getCondenseUidsInRangeStream());
         setPushdownThreshold(other.getPushdownThreshold());
+        setPlanCache(other.getPlanCache());
     }
     
     public void setMetadataHelper(final MetadataHelper metadataHelper) {
@@ -359,9 +368,73 @@ public class DefaultQueryPlanner extends QueryPlanner {
             throw new DatawaveQueryException("Failed to mark query as started" + settings.getId(), e);
         }
         
+        if (config.getPipelinedPlanningDays() > 0) {
+            List<Date[]> windows = PipelinedQueryPlans.splitDateRange(config.getBeginDate(), config.getEndDate(), config.getPipelinedPlanningDays());
+            if (windows.size() > 1) {
+                return processPipelined(scannerFactory, getMetadataHelper(config), getDateIndexHelper(config), config, query, settings, windows);
+            }
+        }
+        
         return process(scannerFactory, getMetadataHelper(config), getDateIndexHelper(config), config, query, settings);
     }
     
+    /**
+     * Plan the query one window of its date range at a time. The first window is planned now using the configuration of the query, and the remaining windows
+     * are planned in the background from copies of the configuration while the ranges of the earlier windows are scanned.
+     * 
+     * @param scannerFactory
+     * @param metadataHelper
+     * @param dateIndexHelper
+     * @param config
+     * @param query
+     * @param settings
+     * @param windows
+     *            the begin and end dates of each window
+     * @return the plans of every window
+     * @throws DatawaveQueryException
+     */
+    protected CloseableIterable<QueryData> processPipelined(final ScannerFactory scannerFactory, final MetadataHelper metadataHelper,
+                    final DateIndexHelper dateIndexHelper, final ShardQueryConfiguration config, final String query, final Query settings, List<Date[]> windows)
+                    throws DatawaveQueryException {
+        // planning modifies the configuration, so the later windows are planned from a copy taken before any planning
+        final ShardQueryConfiguration unplannedConfig = ShardQueryConfiguration.create(config);
+        final Date beginDate = config.getBeginDate();
+        final Date endDate = config.getEndDate();
+        
+        config.setBeginDate(windows.get(0)[0]);
+        config.setEndDate(windows.get(0)[1]);
+        CloseableIterable<QueryData> first = process(scannerFactory, metadataHelper, dateIndexHelper, config, query, settings);
+        config.setBeginDate(beginDate);
+        config.setEndDate(endDate);
+        
+        PipelinedQueryPlans.WindowPlanner windowPlanner = (windowBegin, windowEnd) -> {
+            ShardQueryConfiguration windowConfig = ShardQueryConfiguration.create(unplannedConfig);
+            windowConfig.setQuery(config.getQuery());
+            windowConfig.setBeginDate(windowBegin);
+            windowConfig.setEndDate(windowEnd);
+            
+            DefaultQueryPlanner planner = createWindowPlanner();
+            try {
+                return planner.process(scannerFactory, metadataHelper, dateIndexHelper, windowConfig, query, settings);
+            } finally {
+                planner.builderThread.shutdown();
+            }
+        };
+        return new PipelinedQueryPlans(first, windows.subList(1, windows.size()), config.getPipelinedPlanningWindowsAhead(), windowPlanner, settings);
+    }
+    
+    /**
+     * @return a planner for one window of a pipelined query, or one chunk of a chunked query
+     */
+    protected DefaultQueryPlanner createWindowPlanner() {
+        DefaultQueryPlanner planner = clone();
+        planner.setCreateUidsIteratorClass(getCreateUidsIteratorClass());
+        planner.setUidIntersector(getUidIntersector());
+        planner.setQueryModelProviderFactory(getQueryModelProviderFactory());
+        planner.builderThread = Executors.newSingleThreadExecutor();
+        return planner;
+    }
+    
     protected CloseableIterable<QueryData> process(ScannerFactory scannerFactory, MetadataHelper metadataHelper, DateIndexHelper dateIndexHelper,
                     ShardQueryConfiguration config, String query, Query settings) throws DatawaveQueryException {
         final QueryData queryData = new QueryData();
@@ -375,8 +448,26 @@ public class DefaultQueryPlanner extends QueryPlanner {
         }
         
         ASTJexlScript queryTree = null;
+        ASTJexlScript plannedTree = null;
+        QueryPlanCache.PlanKey planKey = null;
+        QueryPlanCache.Plan cachedPlan = null;
+        if (null != planCache) {
+            planKey = QueryPlanCache.createKey(config, query, settings);
+            cachedPlan = planCache.get(planKey);
+        }
         try {
-            queryTree = updateQueryTree(scannerFactory, metadataHelper, dateIndexHelper, config, query, queryData, settings);
+            if (null != cachedPlan) {
+                TraceStopwatch stopwatch = config.getTimers().newStartedStopwatch("DefaultQueryPlanner - Restore cached query plan");
+                cachedPlan.restore(config);
+                queryTree = cachedPlan.getQueryTree();
+                cfg = cachedPlan.getIteratorSetting();
+                stopwatch.stop();
+            } else {
+                queryTree = updateQueryTree(scannerFactory, metadataHelper, dateIndexHelper, config, query, queryData, settings);
+                if (null != planKey) {
+                    plannedTree = (ASTJexlScript) RebuildingVisitor.copy(queryTree);
+                }
+            }
         } catch (StackOverflowError e) {
             if (log.isTraceEnabled()) {
                 log.trace("Stack trace for overflow " + e);
@@ -396,6 +487,11 @@ public class DefaultQueryPlanner extends QueryPlanner {
         
         Tuple2<CloseableIterable<QueryPlan>,Boolean> queryRanges = getQueryRanges(scannerFactory, metadataHelper, config, queryTree);
         
+        // drop the shards that the field bloom filters show cannot hold the delayed and unindexed terms
+        if (null != config.getShardFieldBloomFilterTableName()) {
+            queryRanges = new Tuple2<>(new FieldBloomFilterShardPruner(queryRanges.first(), config, scannerFactory, metadataHelper), queryRanges.second());
+        }
+        
         // a full table scan is required if
         final boolean isFullTable = queryRanges.second();
         
@@ -425,6 +521,9 @@ public class DefaultQueryPlanner extends QueryPlanner {
         while (null == cfg) {
             cfg = getQueryIterator(metadataHelper, config, settings, "", false);
         }
+        if (null != plannedTree) {
+            planCache.put(planKey, new QueryPlanCache.Plan(plannedTree, config, cfg));
+        }
         configureIterator(config, cfg, newQueryString, isFullTable);
         
         // Load the IteratorSettings into the QueryData instance
@@ -471,6 +570,9 @@ public class DefaultQueryPlanner extends QueryPlanner {
                 .setNumRangesToBuffer(config.getNumRangesToBuffer())
                 .setRangeBufferTimeoutMillis(config.getRangeBufferTimeoutMillis())
                 .setRangeBufferPollMillis(config.getRangeBufferPollMillis())
+                .setRangeLocator(config.isBundleRangesByServer() ? TabletRangeLocator.create(config) : null)
+                .setMaxRangesPerBundle(config.getMaxRangesPerBundle())
+                .setMaxBundleWork(config.getMaxBundleWork())
                 .build();
         // @formatter:on
     }
@@ -1170,6 +1272,22 @@ public class DefaultQueryPlanner extends QueryPlanner {
             }
         }
         
+        if (config.isOrderTermsByCardinality()) {
+            stopwatch = timers.newStartedStopwatch("DefaultQueryPlanner - Order terms by cardinality");
+            
+            try {
+                queryTree = OrderByCardinalityVisitor.order(queryTree, config, metadataHelper);
+            } catch (TableNotFoundException e) {
+                stopwatch.stop();
+                QueryException qe = new QueryException(DatawaveErrorCode.METADATA_ACCESS_ERROR, e);
+                throw new DatawaveFatalQueryException(qe);
+            }
+            if (log.isDebugEnabled()) {
+                logQuery(queryTree, "Query after ordering terms by cardinality:");
+            }
+            stopwatch.stop();
+        }
+        
         return queryTree;
     }
     
@@ -1538,6 +1656,19 @@ public class DefaultQueryPlanner extends QueryPlanner {
                         IteratorSetting cfg = new IteratorSetting(config.getBaseIteratorPriority() + 40, "query", getQueryIteratorClass());
                         
                         addOption(cfg, Constants.RETURN_TYPE, config.getReturnType().toString(), false);
+                        if (config.getReturnType() == ReturnType.flat && config.getResultBatchSize() > 1) {
+                            addOption(cfg, QueryOptions.RESULT_BATCH_SIZE, Integer.toString(config.getResultBatchSize()), false);
+                            addOption(cfg, QueryOptions.RESULT_BATCH_MAX_BYTES, Integer.toString(config.getResultBatchMaxBytes()), false);
+                        }
+                        if (config.isCompiledEvaluation()) {
+                            addOption(cfg, QueryOptions.COMPILED_EVALUATION, Boolean.toString(true), false);
+                        }
+                        if (config.isLazyDocumentAssembly()) {
+                            addOption(cfg, QueryOptions.LAZY_DOCUMENT_ASSEMBLY, Boolean.toString(true), false);
+                        }
+                        if (config.getNormalizedValueCacheBytes() > 0) {
+                            addOption(cfg, QueryOptions.NORMALIZED_VALUE_CACHE_BYTES, Long.toString(config.getNormalizedValueCacheBytes()), false);
+                        }
                         addOption(cfg, QueryOptions.FULL_TABLE_SCAN_ONLY, Boolean.toString(isFullTable), false);
                         
                         if (sourceLimit > 0) {
@@ -1563,6 +1694,12 @@ public class DefaultQueryPlanner extends QueryPlanner {
                             addOption(cfg, QueryOptions.IVARATOR_CACHE_BASE_URI_ALTERNATIVES, getIvaratorQueryCacheBaseUriAlternatives(config), false);
                         }
                         addOption(cfg, QueryOptions.IVARATOR_CACHE_BUFFER_SIZE, Integer.toString(config.getIvaratorCacheBufferSize()), false);
+                        if (config.isIvaratorCacheOffHeapBuffer()) {
+                            addOption(cfg, QueryOptions.IVARATOR_CACHE_OFF_HEAP_BUFFER, Boolean.toString(true), false);
+                        }
+                        if (config.isIvaratorCacheMappedFiles()) {
+                            addOption(cfg, QueryOptions.IVARATOR_CACHE_MAPPED_FILES, Boolean.toString(true), false);
+                        }
                         addOption(cfg, QueryOptions.IVARATOR_SCAN_PERSIST_THRESHOLD, Long.toString(config.getIvaratorCacheScanPersistThreshold()), false);
                         addOption(cfg, QueryOptions.IVARATOR_SCAN_TIMEOUT, Long.toString(config.getIvaratorCacheScanTimeout()), false);
                         addOption(cfg, QueryOptions.COLLECT_TIMING_DETAILS, Boolean.toString(config.getCollectTimingDetails()), false);
@@ -1570,6 +1707,9 @@ public class DefaultQueryPlanner extends QueryPlanner {
                         addOption(cfg, QueryOptions.MAX_IVARATOR_OPEN_FILES, Integer.toString(config.getIvaratorMaxOpenFiles()), false);
                         addOption(cfg, QueryOptions.MAX_EVALUATION_PIPELINES, Integer.toString(config.getMaxEvaluationPipelines()), false);
                         addOption(cfg, QueryOptions.MAX_PIPELINE_CACHED_RESULTS, Integer.toString(config.getMaxPipelineCachedResults()), false);
+                        if (config.isOutOfOrderEvaluationPipeline()) {
+                            addOption(cfg, QueryOptions.OUT_OF_ORDER_EVALUATION_PIPELINE, Boolean.toString(true), false);
+                        }
                         addOption(cfg, QueryOptions.MAX_IVARATOR_SOURCES, Integer.toString(config.getMaxIvaratorSources()), false);
                         
                         if (config.getYieldThresholdMs() != Long.MAX_VALUE && config.getYieldThresholdMs() > 0) {
@@ -2264,6 +2404,14 @@ public class DefaultQueryPlanner extends QueryPlanner {
         this.executableExpansion = executableExpansion;
     }
     
+    public QueryPlanCache getPlanCache() {
+        return planCache;
+    }
+    
+    public void setPlanCache(QueryPlanCache planCache) {
+        this.planCache = planCache;
+    }
+    
     public static int getMaxChildNodesToPrint() {
         return maxChildNodesToPrint;
     }
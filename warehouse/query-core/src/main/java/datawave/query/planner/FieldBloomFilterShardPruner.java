@@ -0,0 +1,377 @@
+package datawave.query.planner;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import datawave.data.FieldValueBloomFilter;
+import datawave.query.CloseableIterable;
+import datawave.query.Constants;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.jexl.JexlASTHelper;
+import datawave.query.tables.ScannerFactory;
+import datawave.query.util.MetadataHelper;
+import datawave.query.util.TypeMetadata;
+import datawave.util.time.DateHelper;
+import datawave.webservice.common.logging.ThreadConfigurableLogger;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTDelayedPredicate;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+
+/**
+ * Removes the shards that cannot satisfy a query from its plans, using the bloom filters of the values of each field in each shard that ingest writes to the
+ * field bloom filter table.
+ * 
+ * The equality terms of a plan that are delayed, or whose field is not indexed, do not narrow the shards found in the global index, so each shard of the plan
+ * is scanned to evaluate them. When such a term is required by the plan, every shard whose filter for the field cannot contain the value is removed from the
+ * ranges of the plan, and a plan left without ranges is dropped. The filters hold both the normalized and the original values of a field, so the literal of a
+ * term is tested as it is, whether or not the planner normalized it.
+ * 
+ * A shard is only removed when its filters are known to hold every value of the field in the shard. Shards are kept when a filter of the field cannot be read
+ * or is unknown, when one of the datatypes that may hold the field has no filter in the shard, such as a datatype whose fields were not configured for filters,
+ * and when the day of the shard is before shardFieldBloomFilterStartDate, the first day that the filters were written for all day.
+ * 
+ * The filters are read a day at a time, and those of a day are kept for the plans that follow.
+ */
+public class FieldBloomFilterShardPruner implements CloseableIterable<QueryPlan> {
+    
+    private static final Logger log = ThreadConfigurableLogger.getLogger(FieldBloomFilterShardPruner.class);
+    
+    protected final CloseableIterable<QueryPlan> plans;
+    protected final ShardQueryConfiguration config;
+    protected final ScannerFactory scannerFactory;
+    protected final MetadataHelper metadataHelper;
+    
+    // the merged filter of each shard, by field and day
+    private final Map<String,Map<String,Map<String,FieldValueBloomFilter>>> filters = new HashMap<>();
+    private boolean disabled = false;
+    
+    public FieldBloomFilterShardPruner(CloseableIterable<QueryPlan> plans, ShardQueryConfiguration config, ScannerFactory scannerFactory,
+                    MetadataHelper metadataHelper) {
+        this.plans = plans;
+        this.config = config;
+        this.scannerFactory = scannerFactory;
+        this.metadataHelper = metadataHelper;
+    }
+    
+    @Override
+    public Iterator<QueryPlan> iterator() {
+        return Iterators.filter(Iterators.transform(plans.iterator(), this::prune), Objects::nonNull);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        plans.close();
+    }
+    
+    /**
+     * @param plan
+     * @return the plan without the shards that cannot contain its terms, or null if no shard is left
+     */
+    protected QueryPlan prune(QueryPlan plan) {
+        if (disabled) {
+            return plan;
+        }
+        
+        List<Map.Entry<String,String>> terms = getPrunableTerms(plan.getQueryTree());
+        if (terms.isEmpty()) {
+            return plan;
+        }
+        
+        List<Range> pruned = new ArrayList<>();
+        boolean changed = false;
+        for (Range range : plan.getRanges()) {
+            SortedSet<String> excluded;
+            try {
+                excluded = getExcludedShards(range, terms);
+            } catch (TableNotFoundException e) {
+                log.warn("Could not read the field bloom filters, the shards will not be pruned", e);
+                disabled = true;
+                return plan;
+            }
+            if (excluded.isEmpty()) {
+                pruned.add(range);
+            } else {
+                pruned.addAll(exclude(range, excluded));
+                changed = true;
+            }
+        }
+        
+        if (!changed) {
+            return plan;
+        } else if (pruned.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Dropping plan, no shard of " + plan.getRanges() + " can contain " + terms);
+            }
+            return null;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Pruned " + plan.getRanges() + " to " + pruned + " for " + terms);
+        }
+        plan.setRanges(pruned);
+        return plan;
+    }
+    
+    /**
+     * @param queryTree
+     * @return the field and value of each equality term that the query requires, and that is delayed or not indexed
+     */
+    protected List<Map.Entry<String,String>> getPrunableTerms(JexlNode queryTree) {
+        List<Map.Entry<String,String>> terms = new ArrayList<>();
+        if (null == queryTree) {
+            return terms;
+        }
+        
+        JexlNode node = queryTree instanceof ASTJexlScript && queryTree.jjtGetNumChildren() == 1 ? queryTree.jjtGetChild(0) : queryTree;
+        node = JexlASTHelper.dereference(node);
+        List<JexlNode> conjuncts = new ArrayList<>();
+        if (node instanceof ASTAndNode) {
+            for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                conjuncts.add(node.jjtGetChild(i));
+            }
+        } else {
+            conjuncts.add(node);
+        }
+        
+        for (JexlNode conjunct : conjuncts) {
+            boolean delayed = ASTDelayedPredicate.instanceOf(conjunct);
+            JexlNode term = JexlASTHelper.dereference(delayed ? ASTDelayedPredicate.getDelayedPredicateSource(conjunct) : conjunct);
+            if (!(term instanceof ASTEQNode)) {
+                continue;
+            }
+            try {
+                String field = JexlASTHelper.deconstructIdentifier(JexlASTHelper.getIdentifier(term));
+                Object value = JexlASTHelper.getLiteralValue(term);
+                if (null == value || Constants.ANY_FIELD.equals(field) || Constants.NO_FIELD.equals(field)) {
+                    continue;
+                }
+                if (delayed || null == config.getIndexedFields() || !config.getIndexedFields().contains(field)) {
+                    terms.add(Maps.immutableEntry(field, value.toString()));
+                }
+            } catch (NoSuchElementException e) {
+                // not a field compared to a literal
+            }
+        }
+        return terms;
+    }
+    
+    /**
+     * @param range
+     * @param terms
+     * @return the shards within the range whose filters cannot contain one of the terms
+     * @throws TableNotFoundException
+     */
+    protected SortedSet<String> getExcludedShards(Range range, List<Map.Entry<String,String>> terms) throws TableNotFoundException {
+        SortedSet<String> excluded = new TreeSet<>();
+        Collection<String> days = getDays(range);
+        String startDate = config.getShardFieldBloomFilterStartDate();
+        if (null != startDate) {
+            days.removeIf(day -> day.compareTo(startDate) < 0);
+        }
+        for (Map.Entry<String,String> term : terms) {
+            for (String day : days) {
+                for (Map.Entry<String,FieldValueBloomFilter> shard : getFilters(term.getKey(), day).entrySet()) {
+                    if (!shard.getValue().mightContain(term.getValue()) && overlaps(range, shard.getKey())) {
+                        excluded.add(shard.getKey());
+                    }
+                }
+            }
+        }
+        return excluded;
+    }
+    
+    private static boolean overlaps(Range range, String shard) {
+        Key shardStart = new Key(shard);
+        return !range.afterEndKey(shardStart) && !range.beforeStartKey(shardStart.followingKey(PartialKey.ROW));
+    }
+    
+    /**
+     * @param range
+     * @return the days whose shards may be within the range
+     */
+    private Collection<String> getDays(Range range) {
+        List<String> days = new ArrayList<>();
+        if (range.isInfiniteStartKey() || range.isInfiniteStopKey()) {
+            return days;
+        }
+        try {
+            // the rows begin with the day of the shard
+            Date endDate = DateHelper.parse(range.getEndKey().getRow().toString());
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+            calendar.setTime(DateHelper.parse(range.getStartKey().getRow().toString()));
+            while (!calendar.getTime().after(endDate)) {
+                days.add(DateHelper.format(calendar.getTime()));
+                calendar.add(Calendar.DATE, 1);
+            }
+        } catch (DateTimeException | StringIndexOutOfBoundsException e) {
+            log.debug("Not pruning " + range + ", its rows are not shards");
+            days.clear();
+        }
+        return days;
+    }
+    
+    /**
+     * @param field
+     * @param day
+     * @return the merged filter of the field for each shard of the day that has one
+     * @throws TableNotFoundException
+     */
+    private Map<String,FieldValueBloomFilter> getFilters(String field, String day) throws TableNotFoundException {
+        Map<String,Map<String,FieldValueBloomFilter>> filtersByDay = filters.get(field);
+        if (null == filtersByDay) {
+            filtersByDay = new HashMap<>();
+            filters.put(field, filtersByDay);
+        }
+        Map<String,FieldValueBloomFilter> filtersByShard = filtersByDay.get(day);
+        if (null == filtersByShard) {
+            filtersByShard = readFilters(field, day);
+            filtersByDay.put(day, filtersByShard);
+        }
+        return filtersByShard;
+    }
+    
+    protected Map<String,FieldValueBloomFilter> readFilters(String field, String day) throws TableNotFoundException {
+        Set<String> datatypes = getDatatypes(field);
+        if (datatypes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String,FieldValueBloomFilter> filtersByShard;
+        BatchScanner scanner = scannerFactory.newScanner(config.getShardFieldBloomFilterTableName(), config.getAuthorizations(), 1, config.getQuery());
+        try {
+            scanner.setRanges(Collections.singleton(Range.prefix(day + '_')));
+            scanner.fetchColumnFamily(new Text(field));
+            filtersByShard = mergeFilters(field, scanner, datatypes);
+        } finally {
+            scannerFactory.close(scanner);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Read " + filtersByShard.size() + " bloom filters of " + field + " for " + day);
+        }
+        return filtersByShard;
+    }
+    
+    /**
+     * @param field
+     * @return the datatypes of the query whose events may hold the field
+     * @throws TableNotFoundException
+     */
+    protected Set<String> getDatatypes(String field) throws TableNotFoundException {
+        Set<String> datatypes = new HashSet<>();
+        TypeMetadata typeMetadata = metadataHelper.getTypeMetadata(config.getDatatypeFilter());
+        for (String datatype : metadataHelper.getDatatypes(config.getDatatypeFilter())) {
+            if (!typeMetadata.getTypeMetadata(field, datatype).isEmpty()) {
+                datatypes.add(datatype);
+            }
+        }
+        return datatypes;
+    }
+    
+    /**
+     * @param field
+     * @param entries
+     *            the filters of the field, keyed by shard and datatype
+     * @param datatypes
+     *            the datatypes whose events may hold the field
+     * @return the merged filter of each shard that has a filter for each of the datatypes, none of which is unknown or unreadable
+     */
+    protected static Map<String,FieldValueBloomFilter> mergeFilters(String field, Iterable<Map.Entry<Key,Value>> entries, Set<String> datatypes) {
+        Map<String,FieldValueBloomFilter> filtersByShard = new HashMap<>();
+        Map<String,Set<String>> datatypesByShard = new HashMap<>();
+        // the shards that are never pruned, whatever filters follow for them
+        Set<String> unprunable = new HashSet<>();
+        for (Map.Entry<Key,Value> entry : entries) {
+            String datatype = entry.getKey().getColumnQualifier().toString();
+            String shard = entry.getKey().getRow().toString();
+            if (!datatypes.contains(datatype) || unprunable.contains(shard)) {
+                continue;
+            }
+            try {
+                FieldValueBloomFilter filter = FieldValueBloomFilter.fromValue(entry.getValue());
+                FieldValueBloomFilter merged = filtersByShard.get(shard);
+                if (null == merged) {
+                    merged = filter;
+                    filtersByShard.put(shard, merged);
+                } else {
+                    merged.merge(filter);
+                }
+                if (merged.isUnknown()) {
+                    log.debug("The bloom filter of " + field + " in " + shard + " is unknown");
+                    unprunable.add(shard);
+                    filtersByShard.remove(shard);
+                } else {
+                    datatypesByShard.computeIfAbsent(shard, s -> new HashSet<>()).add(datatype);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not read the bloom filter of " + field + " in " + shard, e);
+                unprunable.add(shard);
+                filtersByShard.remove(shard);
+            }
+        }
+        
+        // the events of a datatype without a filter may hold any value
+        for (Map.Entry<String,Set<String>> shard : datatypesByShard.entrySet()) {
+            if (!shard.getValue().containsAll(datatypes)) {
+                filtersByShard.remove(shard.getKey());
+            }
+        }
+        return filtersByShard;
+    }
+    
+    /**
+     * @param range
+     * @param shards
+     *            shards within the range, in order
+     * @return the parts of the range that are not in the shards
+     */
+    protected static List<Range> exclude(Range range, SortedSet<String> shards) {
+        List<Range> ranges = new ArrayList<>();
+        Key start = range.getStartKey();
+        boolean startInclusive = range.isStartKeyInclusive();
+        for (String shard : shards) {
+            Key shardStart = new Key(shard);
+            if (start.compareTo(shardStart) < 0) {
+                ranges.add(new Range(start, startInclusive, shardStart, false));
+            }
+            Key shardEnd = shardStart.followingKey(PartialKey.ROW);
+            if (start.compareTo(shardEnd) < 0) {
+                start = shardEnd;
+                startInclusive = true;
+            }
+        }
+        Key end = range.getEndKey();
+        int comparison = start.compareTo(end);
+        if (comparison < 0 || (comparison == 0 && startInclusive && range.isEndKeyInclusive())) {
+            ranges.add(new Range(start, startInclusive, end, range.isEndKeyInclusive()));
+        }
+        return ranges;
+    }
+}
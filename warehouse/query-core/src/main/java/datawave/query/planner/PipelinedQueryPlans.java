@@ -0,0 +1,207 @@
+package datawave.query.planner;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import datawave.query.CloseableIterable;
+import datawave.webservice.common.logging.ThreadConfigurableLogger;
+import datawave.webservice.query.Query;
+import datawave.webservice.query.configuration.QueryData;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The plans of a query whose date range has been split into windows. The first window is planned up front, and the later windows are planned in order on a
+ * background thread while the ranges of the earlier windows are scanned, so that the scanners do not wait for the global index expansion of the whole date
+ * range. Planning runs at most a fixed number of windows ahead of the window being scanned, so planning waits on the scanners rather than holding the plans of
+ * every window.
+ */
+public class PipelinedQueryPlans implements CloseableIterable<QueryData> {
+    
+    private static final Logger log = ThreadConfigurableLogger.getLogger(PipelinedQueryPlans.class);
+    
+    /**
+     * Plans the query for one window of its date range
+     */
+    public interface WindowPlanner {
+        CloseableIterable<QueryData> plan(Date beginDate, Date endDate) throws Exception;
+    }
+    
+    private final CloseableIterable<QueryData> first;
+    private final List<Date[]> windows;
+    private final WindowPlanner planner;
+    private final int windowsAhead;
+    private final ExecutorService executor;
+    
+    private final Deque<Future<CloseableIterable<QueryData>>> planning = new ArrayDeque<>();
+    // the plans of every window planned before this was closed, which are closed with it
+    private final List<CloseableIterable<QueryData>> planned = new ArrayList<>();
+    private int nextWindow = 0;
+    private boolean closed = false;
+    
+    /**
+     * @param first
+     *            the plans of the first window
+     * @param windows
+     *            the begin and end dates of the remaining windows, in the order to plan them
+     * @param windowsAhead
+     *            the max number of windows to plan ahead of the window being scanned
+     * @param planner
+     * @param settings
+     */
+    public PipelinedQueryPlans(CloseableIterable<QueryData> first, List<Date[]> windows, int windowsAhead, WindowPlanner planner, Query settings) {
+        this.first = first;
+        this.windows = windows;
+        this.windowsAhead = Math.max(1, windowsAhead);
+        this.planner = planner;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("PipelinedQueryPlans for " + (settings == null ? null : settings.getId())).build());
+        
+        synchronized (this) {
+            submitWindows();
+        }
+    }
+    
+    /**
+     * Split a date range into windows that end on GMT day boundaries, matching the days of the shards
+     * 
+     * @param beginDate
+     * @param endDate
+     * @param days
+     *            the number of days in each window
+     * @return the begin and end dates of each window, in order
+     */
+    public static List<Date[]> splitDateRange(Date beginDate, Date endDate, int days) {
+        List<Date[]> windows = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        Date start = beginDate;
+        while (!start.after(endDate)) {
+            calendar.setTime(start);
+            calendar = DateUtils.truncate(calendar, Calendar.DATE);
+            calendar.add(Calendar.DATE, days);
+            Date end = new Date(calendar.getTimeInMillis() - 1);
+            if (end.after(endDate)) {
+                end = endDate;
+            }
+            windows.add(new Date[] {start, end});
+            start = new Date(end.getTime() + 1);
+        }
+        return windows;
+    }
+    
+    /**
+     * The plans of every window in order. The iterator blocks while the next window is still being planned.
+     */
+    @Override
+    public Iterator<QueryData> iterator() {
+        return new AbstractIterator<QueryData>() {
+            private Iterator<QueryData> current = first.iterator();
+            
+            @Override
+            protected QueryData computeNext() {
+                while (!current.hasNext()) {
+                    CloseableIterable<QueryData> next = nextWindow();
+                    if (null == next) {
+                        return endOfData();
+                    }
+                    current = next.iterator();
+                }
+                return current.next();
+            }
+        };
+    }
+    
+    private CloseableIterable<QueryData> nextWindow() {
+        Future<CloseableIterable<QueryData>> future;
+        synchronized (this) {
+            future = planning.poll();
+        }
+        if (null == future) {
+            return null;
+        }
+        
+        CloseableIterable<QueryData> plans;
+        try {
+            plans = future.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the next window to be planned", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to plan the next window of the query", e.getCause());
+        }
+        
+        synchronized (this) {
+            if (closed || null == plans) {
+                // the plans are closed along with this
+                return null;
+            }
+            submitWindows();
+        }
+        return plans;
+    }
+    
+    private static void closeQuietly(CloseableIterable<QueryData> plans) {
+        try {
+            plans.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the plans of a window", e);
+        }
+    }
+    
+    private void submitWindows() {
+        while (!closed && planning.size() < windowsAhead && nextWindow < windows.size()) {
+            final Date[] window = windows.get(nextWindow++);
+            if (log.isDebugEnabled()) {
+                log.debug("Planning the window from " + window[0] + " to " + window[1]);
+            }
+            planning.add(executor.submit(() -> {
+                CloseableIterable<QueryData> plans = planner.plan(window[0], window[1]);
+                if (null == plans) {
+                    return null;
+                }
+                // the plans are registered here rather than when they are asked for, so that plans that are never asked for are closed as well
+                synchronized (this) {
+                    if (closed) {
+                        closeQuietly(plans);
+                        return null;
+                    }
+                    planned.add(plans);
+                }
+                return plans;
+            }));
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (Future<CloseableIterable<QueryData>> future : planning) {
+            future.cancel(true);
+        }
+        planning.clear();
+        executor.shutdownNow();
+        
+        first.close();
+        for (CloseableIterable<QueryData> plans : planned) {
+            plans.close();
+        }
+    }
+}
@@ -35,6 +35,8 @@ public class QueryPlan {
     protected int hashCode;
     protected List<String> columnFamilies = Lists.newArrayList();
     protected List<IteratorSetting> settings = Lists.newArrayList();
+    // the number of documents that the global index counted for the ranges, or -1 if unknown
+    protected long estimatedCount = -1;
     
     public QueryPlan(String queryTreeString, JexlNode queryTree, Iterable<Range> ranges) {
         this(queryTreeString, queryTree, ranges, null);
@@ -204,6 +206,14 @@ public class QueryPlan {
         return settings;
     }
     
+    public long getEstimatedCount() {
+        return estimatedCount;
+    }
+    
+    public void setEstimatedCount(long estimatedCount) {
+        this.estimatedCount = estimatedCount;
+    }
+    
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof QueryPlan) {
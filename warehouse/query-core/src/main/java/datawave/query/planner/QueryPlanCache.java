@@ -0,0 +1,310 @@
+package datawave.query.planner;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import datawave.data.type.DiscreteIndexType;
+import datawave.data.type.Type;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.jexl.visitors.RebuildingVisitor;
+import datawave.webservice.query.Query;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+
+/**
+ * A cache of query plans, so that a query that is planned again with the same query string, query logic, parameters, model, auths, datatype filter and date
+ * range skips the visitors run by {@link DefaultQueryPlanner#updateQueryTree}. A plan holds the fully expanded query tree, the configuration derived while
+ * planning it, and the query iterator options before the per-query options are added. The ranges are still looked up in the index for every query.
+ * 
+ * Plans depend on the contents of the metadata table, so plans are keyed by a metadata version which {@link #invalidateAll()} bumps when the metadata table is
+ * reloaded.
+ * 
+ * Plans also depend on the contents of the global index, as the planned tree holds the terms that regexes, ranges and unfielded terms were expanded into, and
+ * the terms that were dropped because the index had no entries for them. Nothing signals a change to the global index, so a cached plan is only used for a
+ * short time after it is cached. Until it expires, a plan misses the terms of data ingested after it was planned.
+ */
+public class QueryPlanCache {
+    
+    private static final Logger log = Logger.getLogger(QueryPlanCache.class);
+    
+    private static final AtomicLong metadataVersion = new AtomicLong();
+    
+    private final Cache<PlanKey,Plan> cache;
+    
+    /**
+     * @param maxPlans
+     *            the max number of plans to hold
+     * @param expire
+     *            how long a plan may be used after it is cached. A plan misses the global index entries written after it was planned, so this should be short,
+     *            on the order of the time between bulk loads of the index.
+     * @param unit
+     *            the unit of the expiration
+     */
+    public QueryPlanCache(int maxPlans, long expire, TimeUnit unit) {
+        this(maxPlans, expire, unit, Ticker.systemTicker());
+    }
+    
+    QueryPlanCache(int maxPlans, long expire, TimeUnit unit, Ticker ticker) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxPlans).expireAfterWrite(expire, unit).ticker(ticker).concurrencyLevel(16).build();
+    }
+    
+    /**
+     * Invalidate every cached plan, for example when the metadata table has been reloaded
+     */
+    public static void invalidateAll() {
+        long version = metadataVersion.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated cached query plans, metadata version is now " + version);
+        }
+    }
+    
+    /**
+     * Create the key for a query. This must be called before the query is planned, as planning updates the configuration.
+     * 
+     * @param config
+     * @param query
+     * @param settings
+     * @return the key
+     */
+    public static PlanKey createKey(ShardQueryConfiguration config, String query, Query settings) {
+        return new PlanKey(metadataVersion.get(), query, settings, config);
+    }
+    
+    public Plan get(PlanKey key) {
+        Plan plan = cache.getIfPresent(key);
+        if (log.isDebugEnabled()) {
+            log.debug((plan == null ? "No cached plan for " : "Found cached plan for ") + key.query);
+        }
+        return plan;
+    }
+    
+    public void put(PlanKey key, Plan plan) {
+        // a plan built while the metadata was being reloaded may be stale, so only keep it if the version did not change
+        if (key.metadataVersion == metadataVersion.get()) {
+            cache.put(key, plan);
+        }
+    }
+    
+    public long size() {
+        return cache.size();
+    }
+    
+    public void clear() {
+        cache.invalidateAll();
+    }
+    
+    /**
+     * The query and the configuration that planning depends on
+     */
+    public static class PlanKey {
+        private final long metadataVersion;
+        private final String query;
+        private final String queryLogicName;
+        private final Set<?> parameters;
+        private final String modelName;
+        private final String modelTableName;
+        private final String metadataTableName;
+        private final String shardTableName;
+        private final Set<Authorizations> auths;
+        private final Set<String> datatypeFilter;
+        private final Date beginDate;
+        private final Date endDate;
+        private final int hashCode;
+        
+        private PlanKey(long metadataVersion, String query, Query settings, ShardQueryConfiguration config) {
+            this.metadataVersion = metadataVersion;
+            this.query = query;
+            this.queryLogicName = (settings == null ? null : settings.getQueryLogicName());
+            this.parameters = (settings == null || settings.getParameters() == null ? null : Sets.newHashSet(settings.getParameters()));
+            this.modelName = config.getModelName();
+            this.modelTableName = config.getModelTableName();
+            this.metadataTableName = config.getMetadataTableName();
+            this.shardTableName = config.getShardTableName();
+            this.auths = (config.getAuthorizations() == null ? null : Sets.newHashSet(config.getAuthorizations()));
+            this.datatypeFilter = (config.getDatatypeFilter() == null ? null : Sets.newHashSet(config.getDatatypeFilter()));
+            this.beginDate = copy(config.getBeginDate());
+            this.endDate = copy(config.getEndDate());
+            this.hashCode = Objects.hashCode(metadataVersion, query, queryLogicName, parameters, modelName, modelTableName, metadataTableName, shardTableName,
+                            auths, datatypeFilter, beginDate, endDate);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            return metadataVersion == other.metadataVersion && Objects.equal(query, other.query) && Objects.equal(queryLogicName, other.queryLogicName)
+                            && Objects.equal(parameters, other.parameters) && Objects.equal(modelName, other.modelName)
+                            && Objects.equal(modelTableName, other.modelTableName) && Objects.equal(metadataTableName, other.metadataTableName)
+                            && Objects.equal(shardTableName, other.shardTableName) && Objects.equal(auths, other.auths)
+                            && Objects.equal(datatypeFilter, other.datatypeFilter) && Objects.equal(beginDate, other.beginDate)
+                            && Objects.equal(endDate, other.endDate);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+    
+    /**
+     * A planned query tree, the configuration derived while planning it, and the query iterator options. Everything handed out is a copy, as the planner and
+     * the query logic go on to modify the tree, the configuration and the options of the query.
+     */
+    public static class Plan {
+        private final ASTJexlScript queryTree;
+        private final IteratorSetting iteratorSetting;
+        
+        private final Date beginDate;
+        private final Date endDate;
+        private final Set<String> projectFields;
+        private final Set<String> blacklistedFields;
+        private final Set<String> groupFields;
+        private final int groupFieldsBatchSize;
+        private final Set<String> uniqueFields;
+        private final Set<String> limitFields;
+        private final boolean includeGroupingContext;
+        private final boolean hitList;
+        private final boolean typeMetadataInHdfs;
+        private final Set<String> indexedFields;
+        private final Multimap<String,Type<?>> queryFieldsDatatypes;
+        private final Multimap<String,Type<?>> normalizedFieldsDatatypes;
+        private final Multimap<String,String> compositeToFieldMap;
+        private final Map<String,Date> compositeTransitionDates;
+        private final Map<String,String> compositeFieldSeparators;
+        private final Map<String,DiscreteIndexType<?>> fieldToDiscreteIndexTypes;
+        private final boolean expandAllTerms;
+        private final boolean containsIndexOnlyTerms;
+        private final boolean containsCompositeTerms;
+        private final boolean sortedUIDs;
+        private final Set<String> queryTermFrequencyFields;
+        private final boolean termFrequenciesRequired;
+        
+        /**
+         * @param queryTree
+         *            the planned query tree, which is held by the plan so must not be modified by the caller
+         * @param config
+         *            the configuration after planning
+         * @param iteratorSetting
+         *            the query iterator before the per-query options are added
+         */
+        public Plan(ASTJexlScript queryTree, ShardQueryConfiguration config, IteratorSetting iteratorSetting) {
+            this.queryTree = queryTree;
+            this.iteratorSetting = copy(iteratorSetting);
+            
+            this.beginDate = copy(config.getBeginDate());
+            this.endDate = copy(config.getEndDate());
+            this.projectFields = copy(config.getProjectFields());
+            this.blacklistedFields = copy(config.getBlacklistedFields());
+            this.groupFields = copy(config.getGroupFields());
+            this.groupFieldsBatchSize = config.getGroupFieldsBatchSize();
+            this.uniqueFields = copy(config.getUniqueFields());
+            this.limitFields = copy(config.getLimitFields());
+            this.includeGroupingContext = config.getIncludeGroupingContext();
+            this.hitList = config.isHitList();
+            this.typeMetadataInHdfs = config.isTypeMetadataInHdfs();
+            this.indexedFields = copy(config.getIndexedFields());
+            this.queryFieldsDatatypes = copy(config.getQueryFieldsDatatypes());
+            this.normalizedFieldsDatatypes = copy(config.getNormalizedFieldsDatatypes());
+            this.compositeToFieldMap = copy(config.getCompositeToFieldMap());
+            this.compositeTransitionDates = copy(config.getCompositeTransitionDates());
+            this.compositeFieldSeparators = copy(config.getCompositeFieldSeparators());
+            this.fieldToDiscreteIndexTypes = copy(config.getFieldToDiscreteIndexTypes());
+            this.expandAllTerms = config.isExpandAllTerms();
+            this.containsIndexOnlyTerms = config.isContainsIndexOnlyTerms();
+            this.containsCompositeTerms = config.isContainsCompositeTerms();
+            this.sortedUIDs = config.isSortedUIDs();
+            this.queryTermFrequencyFields = copy(config.getQueryTermFrequencyFields());
+            this.termFrequenciesRequired = config.isTermFrequenciesRequired();
+        }
+        
+        /**
+         * @return a copy of the planned query tree
+         */
+        public ASTJexlScript getQueryTree() {
+            return (ASTJexlScript) RebuildingVisitor.copy(queryTree);
+        }
+        
+        /**
+         * @return a copy of the query iterator
+         */
+        public IteratorSetting getIteratorSetting() {
+            return copy(iteratorSetting);
+        }
+        
+        /**
+         * Set the configuration that planning would have derived
+         * 
+         * @param config
+         */
+        public void restore(ShardQueryConfiguration config) {
+            config.setBeginDate(copy(beginDate));
+            config.setEndDate(copy(endDate));
+            config.setProjectFields(copy(projectFields));
+            config.setBlacklistedFields(copy(blacklistedFields));
+            config.setGroupFields(copy(groupFields));
+            config.setGroupFieldsBatchSize(groupFieldsBatchSize);
+            config.setUniqueFields(copy(uniqueFields));
+            config.setLimitFields(copy(limitFields));
+            config.setIncludeGroupingContext(includeGroupingContext);
+            config.setHitList(hitList);
+            config.setTypeMetadataInHdfs(typeMetadataInHdfs);
+            if (null != indexedFields) {
+                config.setIndexedFields(copy(indexedFields));
+            }
+            config.setQueryFieldsDatatypes(copy(queryFieldsDatatypes));
+            if (null != normalizedFieldsDatatypes) {
+                config.setNormalizedFieldsDatatypes(copy(normalizedFieldsDatatypes));
+            }
+            config.setCompositeToFieldMap(copy(compositeToFieldMap));
+            config.setCompositeTransitionDates(copy(compositeTransitionDates));
+            config.setCompositeFieldSeparators(copy(compositeFieldSeparators));
+            config.setFieldToDiscreteIndexTypes(copy(fieldToDiscreteIndexTypes));
+            config.setExpandAllTerms(expandAllTerms);
+            config.setContainsIndexOnlyTerms(containsIndexOnlyTerms);
+            config.setContainsCompositeTerms(containsCompositeTerms);
+            config.setSortedUIDs(sortedUIDs);
+            config.setQueryTermFrequencyFields(copy(queryTermFrequencyFields));
+            config.setTermFrequenciesRequired(termFrequenciesRequired);
+        }
+    }
+    
+    private static Date copy(Date date) {
+        return (date == null ? null : new Date(date.getTime()));
+    }
+    
+    private static <T> Set<T> copy(Set<T> set) {
+        return (set == null ? null : Sets.newHashSet(set));
+    }
+    
+    private static <K,V> Multimap<K,V> copy(Multimap<K,V> multimap) {
+        return (multimap == null ? null : HashMultimap.create(multimap));
+    }
+    
+    private static <K,V> Map<K,V> copy(Map<K,V> map) {
+        return (map == null ? null : new HashMap<>(map));
+    }
+    
+    private static IteratorSetting copy(IteratorSetting setting) {
+        return new IteratorSetting(setting.getPriority(), setting.getName(), setting.getIteratorClass(), new HashMap<>(setting.getOptions()));
+    }
+}
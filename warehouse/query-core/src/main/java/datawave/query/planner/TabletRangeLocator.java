@@ -0,0 +1,77 @@
+package datawave.query.planner;
+
+import datawave.accumulo.inmemory.InMemoryInstance;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.webservice.common.logging.ThreadConfigurableLogger;
+
+import org.apache.accumulo.core.client.Instance;
+import org.apache.accumulo.core.client.impl.ClientContext;
+import org.apache.accumulo.core.client.impl.Credentials;
+import org.apache.accumulo.core.client.impl.Tables;
+import org.apache.accumulo.core.client.impl.TabletLocator;
+import org.apache.accumulo.core.client.impl.TabletLocator.TabletLocation;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Function;
+
+/**
+ * Finds the tablet server that hosts the start of a range from the cache of the tablet locator, without waiting for tablets that are not yet located. The
+ * locations are only used to bundle ranges, the ranges are still binned to their tablets when they are scanned.
+ */
+public class TabletRangeLocator implements Function<Range,String> {
+    
+    private static final Logger log = ThreadConfigurableLogger.getLogger(TabletRangeLocator.class);
+    
+    private final TabletLocator locator;
+    private final ClientContext context;
+    
+    public TabletRangeLocator(TabletLocator locator, ClientContext context) {
+        this.locator = locator;
+        this.context = context;
+    }
+    
+    /**
+     * @param config
+     * @return a locator for the shard table, or null if the table can not be located
+     */
+    public static Function<Range,String> create(ShardQueryConfiguration config) {
+        Instance instance = config.getConnector().getInstance();
+        if (instance instanceof InMemoryInstance) {
+            // everything is hosted in the same place
+            return range -> "";
+        }
+        try {
+            Credentials credentials = new Credentials(config.getConnector().whoami(), new PasswordToken(config.getAccumuloPassword()));
+            ClientContext context = new ClientContext(instance, credentials, AccumuloConfiguration.getDefaultConfiguration());
+            return new TabletRangeLocator(TabletLocator.getLocator(context, Tables.getTableId(instance, config.getShardTableName())), context);
+        } catch (Exception e) {
+            log.warn("Unable to locate the tablets of " + config.getShardTableName() + ", ranges will not be bundled by server", e);
+            return null;
+        }
+    }
+    
+    /**
+     * @param range
+     * @return the tablet server hosting the start of the range, or null if it is not known
+     */
+    @Override
+    public String apply(Range range) {
+        Key start = range.getStartKey();
+        if (null == start) {
+            return null;
+        }
+        try {
+            TabletLocation location = locator.locateTablet(context, start.getRow(), false, false);
+            return (null == location ? null : location.tablet_location);
+        } catch (Exception e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Unable to locate " + range, e);
+            }
+            return null;
+        }
+    }
+}
@@ -3,8 +3,11 @@ package datawave.query.planner;
 import datawave.query.CloseableIterable;
 import datawave.webservice.query.Query;
 import datawave.webservice.query.configuration.QueryData;
+import org.apache.accumulo.core.data.Range;
 import org.apache.commons.jexl2.parser.ASTJexlScript;
 
+import com.google.common.base.Function;
+
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Comparator;
@@ -27,6 +30,9 @@ public class ThreadedRangeBundler implements CloseableIterable<QueryData> {
     protected int numRangesToBuffer;
     protected long rangeBufferTimeoutMillis;
     protected long rangeBufferPollMillis;
+    protected Function<Range,String> rangeLocator;
+    protected int maxRangesPerBundle;
+    protected long maxBundleWork;
     
     private ThreadedRangeBundler(Builder builder) {
         this.original = builder.getOriginal();
@@ -41,6 +47,9 @@ public class ThreadedRangeBundler implements CloseableIterable<QueryData> {
         this.numRangesToBuffer = builder.getNumRangesToBuffer();
         this.rangeBufferTimeoutMillis = builder.getRangeBufferTimeoutMillis();
         this.rangeBufferPollMillis = builder.getRangeBufferPollMillis();
+        this.rangeLocator = builder.getRangeLocator();
+        this.maxRangesPerBundle = builder.getMaxRangesPerBundle();
+        this.maxBundleWork = builder.getMaxBundleWork();
     }
     
     /*
@@ -69,6 +78,9 @@ public class ThreadedRangeBundler implements CloseableIterable<QueryData> {
                 .setNumRangesToBuffer(numRangesToBuffer)
                 .setRangeBufferTimeoutMillis(rangeBufferTimeoutMillis)
                 .setRangeBufferPollMillis(rangeBufferPollMillis)
+                .setRangeLocator(rangeLocator)
+                .setMaxRangesPerBundle(maxRangesPerBundle)
+                .setMaxBundleWork(maxBundleWork)
                 .build();
         // @formatter:on
         
@@ -100,6 +112,9 @@ public class ThreadedRangeBundler implements CloseableIterable<QueryData> {
         protected int numRangesToBuffer = 0;
         protected long rangeBufferTimeoutMillis = 0;
         protected long rangeBufferPollMillis = 100;
+        protected Function<Range,String> rangeLocator = null;
+        protected int maxRangesPerBundle = 1;
+        protected long maxBundleWork = 0;
         
         public QueryData getOriginal() {
             return original;
@@ -209,6 +224,38 @@ public class ThreadedRangeBundler implements CloseableIterable<QueryData> {
             return this;
         }
         
+        public Function<Range,String> getRangeLocator() {
+            return rangeLocator;
+        }
+        
+        /**
+         * @param rangeLocator
+         *            finds the tablet server hosting a range, so that the ranges of each server are bundled. Null to not bundle ranges.
+         * @return
+         */
+        public Builder setRangeLocator(Function<Range,String> rangeLocator) {
+            this.rangeLocator = rangeLocator;
+            return this;
+        }
+        
+        public int getMaxRangesPerBundle() {
+            return maxRangesPerBundle;
+        }
+        
+        public Builder setMaxRangesPerBundle(int maxRangesPerBundle) {
+            this.maxRangesPerBundle = maxRangesPerBundle;
+            return this;
+        }
+        
+        public long getMaxBundleWork() {
+            return maxBundleWork;
+        }
+        
+        public Builder setMaxBundleWork(long maxBundleWork) {
+            this.maxBundleWork = maxBundleWork;
+            return this;
+        }
+        
         public ThreadedRangeBundler build() {
             return new ThreadedRangeBundler(this);
         }
@@ -1,5 +1,7 @@
 package datawave.query.planner;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import datawave.common.util.concurrent.BoundedBlockingQueue;
 import datawave.core.iterators.ColumnQualifierRangeIterator;
@@ -56,7 +58,7 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
     private int docsToCombine;
     
     private final Text holder = new Text();
-    private long eventRanges = 0, shardDatatypeRanges = 0, shardRanges = 0, dayRanges = 0;
+    private long eventRanges = 0, shardDatatypeRanges = 0, shardRanges = 0, dayRanges = 0, bundledPlans = 0;
     
     private ASTJexlScript queryTree;
     
@@ -69,6 +71,11 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
     protected long rangeBufferPollMillis;
     protected long startTimeMillis;
     
+    // finds the tablet server hosting a range, to bundle the ranges of each server
+    protected Function<Range,String> rangeLocator;
+    protected int maxRangesPerBundle;
+    protected long maxBundleWork;
+    
     private ThreadedRangeBundlerIterator(Builder builder) {
         
         this.original = builder.getOriginal();
@@ -104,6 +111,10 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
         this.rangeBufferTimeoutMillis = builder.getRangeBufferTimeoutMillis();
         this.rangeBufferPollMillis = builder.getRangeBufferPollMillis();
         
+        this.rangeLocator = builder.getRangeLocator();
+        this.maxRangesPerBundle = builder.getMaxRangesPerBundle();
+        this.maxBundleWork = builder.getMaxBundleWork();
+        
         rangeConsumer = new RangeConsumer(builder.getRanges());
         rangeConsumerThread = new Thread(rangeConsumer);
         if (settings.getId() != null)
@@ -272,6 +283,8 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
                         if (null != plansToCombine && plansToCombine.size() > 1) {
                             plan = combineDocSpecificPlans(plansToCombine);
                         }
+                    } else if (null != rangeLocator && maxRangesPerBundle > 1 && !docSpecific) {
+                        plan = bundleByServer(plan);
                     }
                     
                     next = createNewQueryData(plan);
@@ -387,6 +400,96 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
         
     }
     
+    /**
+     * Adds the ranges of the queued plans for the same query that are hosted by the same tablet server as the plan, so that the server is sent one scan for
+     * all of them rather than one for each. A bundle is limited by its number of ranges and by its work, as estimated from the counts of the global index.
+     * 
+     * @param plan
+     * @return the plan with the ranges of the plans bundled with it
+     */
+    private QueryPlan bundleByServer(QueryPlan plan) {
+        String server = getServer(plan);
+        if (null == server) {
+            return plan;
+        }
+        
+        String query = getQueryString(plan);
+        int numRanges = Iterables.size(plan.getRanges());
+        long work = getWork(plan);
+        List<Range> ranges = Lists.newArrayList(plan.getRanges());
+        for (QueryPlan queued : rangeQueue.toArray(new QueryPlan[0])) {
+            if (numRanges >= maxRangesPerBundle || (maxBundleWork > 0 && work >= maxBundleWork)) {
+                break;
+            }
+            int queuedRanges = Iterables.size(queued.getRanges());
+            long queuedWork = getWork(queued);
+            if (numRanges + queuedRanges > maxRangesPerBundle || (maxBundleWork > 0 && work + queuedWork > maxBundleWork)) {
+                continue;
+            }
+            if (!query.equals(getQueryString(queued)) || !plan.getSettings().equals(queued.getSettings())
+                            || !plan.getColumnFamilies().equals(queued.getColumnFamilies()) || !server.equals(getServer(queued))) {
+                continue;
+            }
+            // the consumer of the queue may have taken it already
+            if (rangeQueue.remove(queued)) {
+                Iterables.addAll(ranges, queued.getRanges());
+                numRanges += queuedRanges;
+                work += queuedWork;
+                bundledPlans++;
+            }
+        }
+        
+        if (ranges.size() > Iterables.size(plan.getRanges())) {
+            Collections.sort(ranges);
+            plan.setRanges(ranges);
+            if (log.isTraceEnabled()) {
+                log.trace("Bundled " + ranges.size() + " ranges with an estimated " + work + " documents for " + server);
+            }
+        }
+        return plan;
+    }
+    
+    /**
+     * @param plan
+     * @return the tablet server hosting all of the ranges of the plan, or null if they are not all within rows hosted by one known server
+     */
+    private String getServer(QueryPlan plan) {
+        String server = null;
+        for (Range range : plan.getRanges()) {
+            // only shard and shard-datatype ranges, which lie within their shard, are bundled
+            if (null == range || range.isInfiniteStartKey() || range.isInfiniteStopKey()
+                            || !range.getEndKey().getRow().toString().startsWith(range.getStartKey().getRow().toString())) {
+                return null;
+            }
+            String rangeServer = rangeLocator.apply(range);
+            if (null == rangeServer || (null != server && !server.equals(rangeServer))) {
+                return null;
+            }
+            server = rangeServer;
+        }
+        return server;
+    }
+    
+    /**
+     * @param plan
+     * @return the query that will be run for the plan
+     */
+    private String getQueryString(QueryPlan plan) {
+        // if the generated query is larger, the original is used
+        if (null != queryTree && (plan.getQueryString().length() > original.getQuery().length())) {
+            return original.getQuery();
+        }
+        return plan.getQueryString();
+    }
+    
+    /**
+     * @param plan
+     * @return the number of documents that the global index counted for the plan, or one for each range if unknown
+     */
+    private static long getWork(QueryPlan plan) {
+        return plan.getEstimatedCount() > 0 ? plan.getEstimatedCount() : Iterables.size(plan.getRanges());
+    }
+    
     /**
      * Determines if we are running a tld query
      * 
@@ -493,7 +596,8 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
                 sb.append(", Event Ranges: ").append(eventRanges);
                 sb.append(", Shard-Datatype Ranges: ").append(shardDatatypeRanges);
                 sb.append(", Shard Ranges: ").append(shardRanges);
-                sb.append(", Day Ranges: ").append(dayRanges).append("}");
+                sb.append(", Day Ranges: ").append(dayRanges);
+                sb.append(", Plans Bundled By Server: ").append(bundledPlans).append("}");
                 log.debug(sb.toString());
             }
         }
@@ -565,6 +669,9 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
         protected int numRangesToBuffer = 0;
         protected long rangeBufferTimeoutMillis = 0;
         protected long rangeBufferPollMillis = 100;
+        protected Function<Range,String> rangeLocator = null;
+        protected int maxRangesPerBundle = 1;
+        protected long maxBundleWork = 0;
         
         public QueryData getOriginal() {
             return original;
@@ -683,6 +790,33 @@ public class ThreadedRangeBundlerIterator implements Iterator<QueryData>, Closea
             return this;
         }
         
+        public Function<Range,String> getRangeLocator() {
+            return rangeLocator;
+        }
+        
+        public Builder setRangeLocator(Function<Range,String> rangeLocator) {
+            this.rangeLocator = rangeLocator;
+            return this;
+        }
+        
+        public int getMaxRangesPerBundle() {
+            return maxRangesPerBundle;
+        }
+        
+        public Builder setMaxRangesPerBundle(int maxRangesPerBundle) {
+            this.maxRangesPerBundle = maxRangesPerBundle;
+            return this;
+        }
+        
+        public long getMaxBundleWork() {
+            return maxBundleWork;
+        }
+        
+        public Builder setMaxBundleWork(long maxBundleWork) {
+            this.maxBundleWork = maxBundleWork;
+            return this;
+        }
+        
         public ThreadedRangeBundlerIterator build() {
             return new ThreadedRangeBundlerIterator(this);
         }
@@ -16,6 +16,7 @@ import datawave.query.attributes.Attribute;
 import datawave.query.attributes.AttributeFactory;
 import datawave.query.attributes.Attributes;
 import datawave.query.attributes.TypeAttribute;
+import datawave.query.attributes.NormalizedValueCache;
 import datawave.query.composite.CompositeMetadata;
 import datawave.query.jexl.JexlASTHelper;
 import datawave.query.util.TypeMetadata;
@@ -56,7 +57,12 @@ public class ValueToAttributes implements Function<Entry<Key,String>,Iterable<En
     private LRUMap cvCache = new LRUMap(256);
     
     public ValueToAttributes(CompositeMetadata compositeMetadata, TypeMetadata typeMetadata, EventDataQueryFilter attrFilter, MarkingFunctions markingFunctions) {
-        this.attrFactory = new AttributeFactory(typeMetadata);
+        this(compositeMetadata, typeMetadata, attrFilter, markingFunctions, null);
+    }
+    
+    public ValueToAttributes(CompositeMetadata compositeMetadata, TypeMetadata typeMetadata, EventDataQueryFilter attrFilter, MarkingFunctions markingFunctions,
+                    NormalizedValueCache normalizedValueCache) {
+        this.attrFactory = new AttributeFactory(typeMetadata, normalizedValueCache);
         this.markingFunctions = markingFunctions;
         this.attrFilter = attrFilter;
         if (compositeMetadata != null) {
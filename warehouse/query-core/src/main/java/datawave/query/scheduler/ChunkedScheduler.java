@@ -0,0 +1,312 @@
+package datawave.query.scheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.tables.ScannerFactory;
+import datawave.query.tables.ShardQueryLogic;
+import datawave.query.tables.stats.ScanSessionStats;
+import datawave.query.util.MetadataHelper;
+import datawave.query.util.MetadataHelperFactory;
+import datawave.webservice.common.logging.ThreadConfigurableLogger;
+import datawave.webservice.query.configuration.QueryData;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Purpose: Scans the chunks of a query planned by the BooleanChunkingQueryPlanner concurrently. Each chunk is scanned by a {@link PushdownScheduler} with a
+ * session of its own, and their results are merged. A document that matches the terms of more than one chunk is only returned once, and the scans of every
+ * chunk stop once the result budget of the query has been returned.
+ */
+public class ChunkedScheduler extends Scheduler {
+    
+    private static final Logger log = ThreadConfigurableLogger.getLogger(ChunkedScheduler.class);
+    
+    // the results buffered from all of the chunks
+    private static final int RESULT_QUEUE_SIZE = 1000;
+    
+    // put on the queue after the last result of a chunk
+    private static final Entry<Key,Value> CHUNK_DONE = Maps.immutableEntry(new Key(), new Value());
+    
+    protected final ShardQueryConfiguration config;
+    protected final ScannerFactory scannerFactory;
+    protected final MetadataHelper metadataHelper;
+    protected final List<Iterator<QueryData>> chunks;
+    
+    private final BlockingQueue<Entry<Key,Value>> results = new ArrayBlockingQueue<>(RESULT_QUEUE_SIZE);
+    private final List<Scheduler> schedulers = Collections.synchronizedList(new ArrayList<>());
+    private ExecutorService executor = null;
+    private volatile Throwable failure = null;
+    private volatile boolean closed = false;
+    
+    public ChunkedScheduler(ShardQueryConfiguration config, ScannerFactory scannerFactory, MetadataHelperFactory metaFactory,
+                    List<Iterator<QueryData>> chunks) {
+        this(config, scannerFactory, metaFactory.createMetadataHelper(config.getConnector(), config.getMetadataTableName(), config.getAuthorizations()),
+                        chunks);
+    }
+    
+    protected ChunkedScheduler(ShardQueryConfiguration config, ScannerFactory scannerFactory, MetadataHelper helper, List<Iterator<QueryData>> chunks) {
+        this.config = config;
+        this.scannerFactory = scannerFactory;
+        this.metadataHelper = helper;
+        this.chunks = chunks;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public synchronized Iterator<Entry<Key,Value>> iterator() {
+        if (null != executor) {
+            throw new IllegalStateException("iterator() was already called once");
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, config.getBooleanChunkThreads()), new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("ChunkedScheduler for " + config.getQuery().getId() + " -%d").build());
+        for (final Iterator<QueryData> chunk : chunks) {
+            executor.submit(() -> scan(chunk));
+        }
+        executor.shutdown();
+        
+        final long budget = config.getBooleanChunkResultBudget();
+        return new AbstractIterator<Entry<Key,Value>>() {
+            private final SeenDocuments seen = new SeenDocuments();
+            private int remaining = chunks.size();
+            private long returned = 0;
+            
+            @Override
+            protected Entry<Key,Value> computeNext() {
+                while (remaining > 0 && (budget <= 0 || returned < budget)) {
+                    Entry<Key,Value> entry;
+                    try {
+                        entry = results.poll(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted while waiting for the results of the chunks", e);
+                    }
+                    if (null != failure) {
+                        throw new RuntimeException("Unable to scan a chunk of the query", failure);
+                    }
+                    if (null == entry) {
+                        continue;
+                    } else if (entry == CHUNK_DONE) {
+                        remaining--;
+                    } else if (seen.add(entry.getKey())) {
+                        returned++;
+                        return entry;
+                    }
+                }
+                if (remaining > 0) {
+                    // the results are truncated, so make that visible
+                    log.info("Returned the result budget of " + budget + " for query " + config.getQuery().getId() + ", stopping the scans of the "
+                                    + remaining + " chunks remaining");
+                    stop();
+                }
+                return endOfData();
+            }
+        };
+    }
+    
+    /**
+     * Scan a chunk, putting its results on the queue
+     * 
+     * @param chunk
+     */
+    private void scan(Iterator<QueryData> chunk) {
+        try {
+            if (closed) {
+                return;
+            }
+            Scheduler scheduler = newChunkScheduler(chunk);
+            schedulers.add(scheduler);
+            
+            Iterator<Entry<Key,Value>> iter = scheduler.iterator();
+            while (!closed && iter.hasNext()) {
+                results.put(iter.next());
+            }
+            scheduler.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            if (!closed) {
+                log.error("Unable to scan a chunk of the query", t);
+                failure = t;
+            }
+        } finally {
+            if (!closed) {
+                try {
+                    results.put(CHUNK_DONE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Create the scheduler that scans a chunk
+     * 
+     * @param chunk
+     *            the plans of the chunk
+     * @return a scheduler with the settings of this one
+     */
+    protected Scheduler newChunkScheduler(final Iterator<QueryData> chunk) {
+        PushdownScheduler scheduler = new PushdownScheduler(config, scannerFactory, metadataHelper) {
+            @Override
+            protected Iterator<QueryData> getQueryDataIterator() {
+                return chunk;
+            }
+        };
+        for (IteratorSetting setting : settings) {
+            scheduler.addSetting(setting);
+        }
+        return scheduler;
+    }
+    
+    private void stop() {
+        closed = true;
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+        synchronized (schedulers) {
+            for (Scheduler scheduler : schedulers) {
+                try {
+                    scheduler.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close the scheduler of a chunk", e);
+                }
+            }
+        }
+        results.clear();
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        log.debug("Scanned " + schedulers.size() + " chunks for a single user query");
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see Scheduler#createBatchScanner(ShardQueryConfiguration, datawave.query.tables.ScannerFactory, datawave.webservice.query.configuration.QueryData)
+     */
+    @Override
+    public BatchScanner createBatchScanner(ShardQueryConfiguration config, ScannerFactory scannerFactory, QueryData qd) throws TableNotFoundException {
+        return ShardQueryLogic.createBatchScanner(config, scannerFactory, qd);
+    }
+    
+    @Override
+    public ScanSessionStats getSchedulerStats() {
+        ScanSessionStats stats = null;
+        synchronized (schedulers) {
+            for (Scheduler scheduler : schedulers) {
+                ScanSessionStats chunkStats = scheduler.getSchedulerStats();
+                if (null != chunkStats) {
+                    stats = (null == stats ? new ScanSessionStats() : stats).merge(chunkStats);
+                }
+            }
+        }
+        return stats;
+    }
+    
+    /**
+     * The documents already returned, kept as 64 bit hashes of their shard and column family in an open addressing table rather than as keys
+     */
+    static class SeenDocuments {
+        
+        private long[] table = new long[1024];
+        private int size = 0;
+        
+        /**
+         * @param key
+         * @return false if the document of the key was already seen
+         */
+        boolean add(Key key) {
+            ByteSequence cf = key.getColumnFamilyData();
+            // only the keys of documents, whose column family is the datatype and uid, are de-duplicated
+            boolean isDocument = false;
+            for (int i = 0; i < cf.length() && !isDocument; i++) {
+                isDocument = (cf.byteAt(i) == 0);
+            }
+            if (!isDocument) {
+                return true;
+            }
+            
+            ByteSequence row = key.getRowData();
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            hasher.putBytes(row.getBackingArray(), row.offset(), row.length());
+            hasher.putByte((byte) 0);
+            hasher.putBytes(cf.getBackingArray(), cf.offset(), cf.length());
+            long hash = hasher.hash().asLong();
+            // zero marks an empty slot
+            if (hash == 0) {
+                hash = 1;
+            }
+            
+            if (2 * (size + 1) > table.length) {
+                grow();
+            }
+            if (!insert(table, hash)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        private boolean insert(long[] slots, long hash) {
+            int mask = slots.length - 1;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (slots[slot] != 0) {
+                if (slots[slot] == hash) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = hash;
+            return true;
+        }
+        
+        private void grow() {
+            long[] grown = new long[table.length * 2];
+            for (long hash : table) {
+                if (hash != 0) {
+                    insert(grown, hash);
+                }
+            }
+            table = grown;
+        }
+    }
+}
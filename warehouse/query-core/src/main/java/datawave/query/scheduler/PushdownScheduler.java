@@ -37,6 +37,7 @@ import com.google.common.collect.Lists;
 import datawave.mr.bulk.RfileResource;
 import datawave.query.tables.BatchScannerSession;
 import datawave.query.tables.ScannerFactory;
+import datawave.query.tables.async.HedgePolicy;
 import datawave.query.tables.async.ScannerChunk;
 import datawave.query.tables.async.event.VisitorFunction;
 import datawave.query.tables.stats.ScanSessionStats;
@@ -152,6 +153,10 @@ public class PushdownScheduler extends Scheduler {
             
             if (config.getSpeculativeScanning()) {
                 session.setSpeculativeScanning(true);
+                if (config.getHedgedScanPercentile() > 0) {
+                    session.setHedgePolicy(new HedgePolicy(tableName, session::getStatistics, config.getHedgedScanPercentile(),
+                                    config.getHedgedScanMaxRate(), config.getHedgedScanMinDelay()));
+                }
             }
             
             session.addVisitor(new VisitorFunction(config, metadataHelper));
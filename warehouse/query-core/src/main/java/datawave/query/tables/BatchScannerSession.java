@@ -41,6 +41,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Service;
 
 import datawave.mr.bulk.RfileResource;
+import datawave.query.tables.async.HedgePolicy;
 import datawave.query.tables.async.Scan;
 import datawave.query.tables.async.ScannerChunk;
 import datawave.query.tables.async.SessionArbiter;
@@ -104,6 +105,8 @@ public class BatchScannerSession extends ScannerSession implements Iterator<Entr
     
     protected boolean speculativeScanning = false;
     
+    protected HedgePolicy hedgePolicy = null;
+    
     protected int threadCount = 5;
     
     private class BatchReaderThreadFactory implements ThreadFactory {
@@ -176,13 +179,6 @@ public class BatchScannerSession extends ScannerSession implements Iterator<Entr
         
     }
     
-    public BatchScannerSession updateThreadService(ExecutorService service) {
-        if (service != null)
-            this.service.shutdownNow();
-        this.service = service;
-        return this;
-    }
-    
     public void setScanLimit(long timeout) {
         this.scanLimitTimeout = timeout;
     }
@@ -364,22 +360,23 @@ public class BatchScannerSession extends ScannerSession implements Iterator<Entr
                 chunk.setQueryId(settings.getId().toString());
                 
                 scan = new SpeculativeScan(localTableName, localAuths, chunk, delegatorReference, delegatedResourceInitializer, resultQueue, listenerService);
+                scan.setHedgePolicy(hedgePolicy);
                 
                 scan.setVisitors(visitorFunctions);
                 
                 Scan childScan = new Scan(localTableName, localAuths, new ScannerChunk(chunk), delegatorReference, BatchResource.class,
-                                ((SpeculativeScan) scan).getQueue(), listenerService);
+                                ((SpeculativeScan) scan).newQueue(), listenerService);
                 
                 childScan.setVisitors(visitorFunctions);
                 
                 ((SpeculativeScan) scan).addScan(childScan);
                 
                 childScan = new Scan(localTableName, localAuths, new ScannerChunk(chunk), delegatorReference, delegatedResourceInitializer,
-                                ((SpeculativeScan) scan).getQueue(), listenerService);
+                                ((SpeculativeScan) scan).newQueue(), listenerService);
                 
                 childScan.setVisitors(visitorFunctions);
                 
-                ((SpeculativeScan) scan).addScan(childScan);
+                ((SpeculativeScan) scan).addHedge(childScan);
                 
             } else {
                 scan = new Scan(localTableName, localAuths, chunk, delegatorReference, delegatedResourceInitializer, resultQueue, listenerService);
@@ -388,6 +385,10 @@ public class BatchScannerSession extends ScannerSession implements Iterator<Entr
             if (backoffEnabled) {
                 scan.setSessionArbiter(this);
             }
+            if (null != hedgePolicy) {
+                scan.setHedgePolicy(hedgePolicy);
+                hedgePolicy.scanSubmitted();
+            }
             scan.setVisitors(visitorFunctions);
             scan.setTimeout(scanLimitTimeout);
             if (log.isTraceEnabled()) {
@@ -424,12 +425,13 @@ public class BatchScannerSession extends ScannerSession implements Iterator<Entr
                     log.trace("Using speculative execution");
                 }
                 scan = new SpeculativeScan(localTableName, localAuths, chunk, delegatorReference, delegatedResourceInitializer, resultQueue, listenerService);
+                scan.setHedgePolicy(hedgePolicy);
                 
                 ((SpeculativeScan) scan).addScan(new Scan(localTableName, localAuths, new ScannerChunk(chunk), delegatorReference, BatchResource.class,
-                                ((SpeculativeScan) scan).getQueue(), listenerService));
+                                ((SpeculativeScan) scan).newQueue(), listenerService));
                 
-                ((SpeculativeScan) scan).addScan(new Scan(localTableName, localAuths, new ScannerChunk(chunk), delegatorReference,
-                                delegatedResourceInitializer, ((SpeculativeScan) scan).getQueue(), listenerService));
+                ((SpeculativeScan) scan).addHedge(new Scan(localTableName, localAuths, new ScannerChunk(chunk), delegatorReference,
+                                delegatedResourceInitializer, ((SpeculativeScan) scan).newQueue(), listenerService));
                 
             } else {
                 scan = new Scan(localTableName, localAuths, chunk, delegatorReference, delegatedResourceInitializer, resultQueue, listenerService);
@@ -438,6 +440,10 @@ public class BatchScannerSession extends ScannerSession implements Iterator<Entr
             if (backoffEnabled) {
                 scan.setSessionArbiter(this);
             }
+            if (null != hedgePolicy) {
+                scan.setHedgePolicy(hedgePolicy);
+                hedgePolicy.scanSubmitted();
+            }
             scan.setVisitors(visitorFunctions);
             scan.setTimeout(scanLimitTimeout);
             if (log.isTraceEnabled()) {
@@ -692,6 +698,15 @@ public class BatchScannerSession extends ScannerSession implements Iterator<Entr
         this.speculativeScanning = speculative;
     }
     
+    /**
+     * Hedge the speculative scans with the policy rather than running every scan of a chunk at once
+     * 
+     * @param hedgePolicy
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+    
     @Override
     public void uncaughtException(Thread t, Throwable e) {
         t.interrupt();
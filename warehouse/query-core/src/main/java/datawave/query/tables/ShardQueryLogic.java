@@ -27,13 +27,16 @@ import datawave.query.language.parser.ParseException;
 import datawave.query.language.parser.QueryParser;
 import datawave.query.language.tree.QueryNode;
 import datawave.query.model.QueryModel;
+import datawave.query.planner.ChunkedQueryPlans;
 import datawave.query.planner.DefaultQueryPlanner;
 import datawave.query.planner.MetadataHelperQueryModelProvider;
 import datawave.query.planner.QueryModelProvider;
 import datawave.query.planner.QueryPlanner;
+import datawave.query.scheduler.ChunkedScheduler;
 import datawave.query.scheduler.PushdownScheduler;
 import datawave.query.scheduler.Scheduler;
 import datawave.query.scheduler.SequentialScheduler;
+import datawave.query.tables.async.IndexLookupScheduler;
 import datawave.query.tables.stats.ScanSessionStats;
 import datawave.query.transformer.DocumentTransformer;
 import datawave.query.transformer.EventQueryDataDecoratorTransformer;
@@ -983,6 +986,8 @@ public class ShardQueryLogic extends BaseQueryLogic<Entry<Key,Value>> {
     protected Scheduler getScheduler(ShardQueryConfiguration config, ScannerFactory scannerFactory) {
         if (config.getSequentialScheduler()) {
             return new SequentialScheduler(config, scannerFactory);
+        } else if (this.queries instanceof ChunkedQueryPlans) {
+            return new ChunkedScheduler(config, scannerFactory, this.metadataHelperFactory, ((ChunkedQueryPlans) this.queries).getChunks());
         } else {
             return new PushdownScheduler(config, scannerFactory, this.metadataHelperFactory);
         }
@@ -1070,6 +1075,10 @@ public class ShardQueryLogic extends BaseQueryLogic<Entry<Key,Value>> {
                     stats.logSummary(log);
                 }
                 
+                if (log.isDebugEnabled()) {
+                    IndexLookupScheduler.Factory.logSummary(log);
+                }
+                
             } catch (IOException e) {
                 log.error("Caught exception trying to close Scheduler", e);
             }
@@ -1560,6 +1569,22 @@ public class ShardQueryLogic extends BaseQueryLogic<Entry<Key,Value>> {
         getConfig().setIvaratorCacheBufferSize(ivaratorCacheBufferSize);
     }
     
+    public boolean isIvaratorCacheOffHeapBuffer() {
+        return getConfig().isIvaratorCacheOffHeapBuffer();
+    }
+    
+    public void setIvaratorCacheOffHeapBuffer(boolean ivaratorCacheOffHeapBuffer) {
+        getConfig().setIvaratorCacheOffHeapBuffer(ivaratorCacheOffHeapBuffer);
+    }
+    
+    public boolean isIvaratorCacheMappedFiles() {
+        return getConfig().isIvaratorCacheMappedFiles();
+    }
+    
+    public void setIvaratorCacheMappedFiles(boolean ivaratorCacheMappedFiles) {
+        getConfig().setIvaratorCacheMappedFiles(ivaratorCacheMappedFiles);
+    }
+    
     public long getIvaratorCacheScanPersistThreshold() {
         return getConfig().getIvaratorCacheScanPersistThreshold();
     }
@@ -1644,6 +1669,14 @@ public class ShardQueryLogic extends BaseQueryLogic<Entry<Key,Value>> {
         getConfig().setMaxPipelineCachedResults(maxCachedResults);
     }
     
+    public boolean isOutOfOrderEvaluationPipeline() {
+        return getConfig().isOutOfOrderEvaluationPipeline();
+    }
+    
+    public void setOutOfOrderEvaluationPipeline(boolean outOfOrderEvaluationPipeline) {
+        getConfig().setOutOfOrderEvaluationPipeline(outOfOrderEvaluationPipeline);
+    }
+    
     public double getMinimumSelectivity() {
         return getConfig().getMinSelectivity();
     }
@@ -1767,6 +1800,238 @@ public class ShardQueryLogic extends BaseQueryLogic<Entry<Key,Value>> {
         getConfig().setCompressServerSideResults(compressServerSideResults);
     }
     
+    public int getResultBatchSize() {
+        return getConfig().getResultBatchSize();
+    }
+    
+    public void setResultBatchSize(int resultBatchSize) {
+        getConfig().setResultBatchSize(resultBatchSize);
+    }
+    
+    public int getResultBatchMaxBytes() {
+        return getConfig().getResultBatchMaxBytes();
+    }
+    
+    public void setResultBatchMaxBytes(int resultBatchMaxBytes) {
+        getConfig().setResultBatchMaxBytes(resultBatchMaxBytes);
+    }
+    
+    public boolean isCompiledEvaluation() {
+        return getConfig().isCompiledEvaluation();
+    }
+    
+    public void setCompiledEvaluation(boolean compiledEvaluation) {
+        getConfig().setCompiledEvaluation(compiledEvaluation);
+    }
+    
+    public boolean isLazyDocumentAssembly() {
+        return getConfig().isLazyDocumentAssembly();
+    }
+    
+    public void setLazyDocumentAssembly(boolean lazyDocumentAssembly) {
+        getConfig().setLazyDocumentAssembly(lazyDocumentAssembly);
+    }
+    
+    public long getNormalizedValueCacheBytes() {
+        return getConfig().getNormalizedValueCacheBytes();
+    }
+    
+    public void setNormalizedValueCacheBytes(long normalizedValueCacheBytes) {
+        getConfig().setNormalizedValueCacheBytes(normalizedValueCacheBytes);
+    }
+    
+    public int getPipelinedPlanningDays() {
+        return getConfig().getPipelinedPlanningDays();
+    }
+    
+    public void setPipelinedPlanningDays(int pipelinedPlanningDays) {
+        getConfig().setPipelinedPlanningDays(pipelinedPlanningDays);
+    }
+    
+    public int getPipelinedPlanningWindowsAhead() {
+        return getConfig().getPipelinedPlanningWindowsAhead();
+    }
+    
+    public void setPipelinedPlanningWindowsAhead(int pipelinedPlanningWindowsAhead) {
+        getConfig().setPipelinedPlanningWindowsAhead(pipelinedPlanningWindowsAhead);
+    }
+    
+    public boolean isOrderTermsByCardinality() {
+        return getConfig().isOrderTermsByCardinality();
+    }
+    
+    public void setOrderTermsByCardinality(boolean orderTermsByCardinality) {
+        getConfig().setOrderTermsByCardinality(orderTermsByCardinality);
+    }
+    
+    public double getMaxTermCardinalityRatio() {
+        return getConfig().getMaxTermCardinalityRatio();
+    }
+    
+    public void setMaxTermCardinalityRatio(double maxTermCardinalityRatio) {
+        getConfig().setMaxTermCardinalityRatio(maxTermCardinalityRatio);
+    }
+    
+    public String getShardFieldBloomFilterTableName() {
+        return getConfig().getShardFieldBloomFilterTableName();
+    }
+    
+    public void setShardFieldBloomFilterTableName(String shardFieldBloomFilterTableName) {
+        getConfig().setShardFieldBloomFilterTableName(shardFieldBloomFilterTableName);
+    }
+    
+    public String getShardFieldBloomFilterStartDate() {
+        return getConfig().getShardFieldBloomFilterStartDate();
+    }
+    
+    public void setShardFieldBloomFilterStartDate(String shardFieldBloomFilterStartDate) {
+        getConfig().setShardFieldBloomFilterStartDate(shardFieldBloomFilterStartDate);
+    }
+    
+    public int getIndexLookupSchedulerThreads() {
+        return getConfig().getIndexLookupSchedulerThreads();
+    }
+    
+    public void setIndexLookupSchedulerThreads(int indexLookupSchedulerThreads) {
+        getConfig().setIndexLookupSchedulerThreads(indexLookupSchedulerThreads);
+    }
+    
+    public String getIndexLookupSchedulerClass() {
+        return getConfig().getIndexLookupSchedulerClass();
+    }
+    
+    public void setIndexLookupSchedulerClass(String indexLookupSchedulerClass) {
+        getConfig().setIndexLookupSchedulerClass(indexLookupSchedulerClass);
+    }
+    
+    public long getIndexLookupSchedulerTargetLatency() {
+        return getConfig().getIndexLookupSchedulerTargetLatency();
+    }
+    
+    public void setIndexLookupSchedulerTargetLatency(long indexLookupSchedulerTargetLatency) {
+        getConfig().setIndexLookupSchedulerTargetLatency(indexLookupSchedulerTargetLatency);
+    }
+    
+    public int getIndexLookupPriority() {
+        return getConfig().getIndexLookupPriority();
+    }
+    
+    public void setIndexLookupPriority(int indexLookupPriority) {
+        getConfig().setIndexLookupPriority(indexLookupPriority);
+    }
+    
+    public boolean isTermDictionaryCacheEnabled() {
+        return getConfig().isTermDictionaryCacheEnabled();
+    }
+    
+    public void setTermDictionaryCacheEnabled(boolean termDictionaryCacheEnabled) {
+        getConfig().setTermDictionaryCacheEnabled(termDictionaryCacheEnabled);
+    }
+    
+    public int getTermDictionaryMaxTerms() {
+        return getConfig().getTermDictionaryMaxTerms();
+    }
+    
+    public void setTermDictionaryMaxTerms(int termDictionaryMaxTerms) {
+        getConfig().setTermDictionaryMaxTerms(termDictionaryMaxTerms);
+    }
+    
+    public long getTermDictionaryExpireMinutes() {
+        return getConfig().getTermDictionaryExpireMinutes();
+    }
+    
+    public void setTermDictionaryExpireMinutes(long termDictionaryExpireMinutes) {
+        getConfig().setTermDictionaryExpireMinutes(termDictionaryExpireMinutes);
+    }
+    
+    public long getTermDictionaryRecentExpireMinutes() {
+        return getConfig().getTermDictionaryRecentExpireMinutes();
+    }
+    
+    public void setTermDictionaryRecentExpireMinutes(long termDictionaryRecentExpireMinutes) {
+        getConfig().setTermDictionaryRecentExpireMinutes(termDictionaryRecentExpireMinutes);
+    }
+    
+    public long getTermDictionaryMaxBytes() {
+        return getConfig().getTermDictionaryMaxBytes();
+    }
+    
+    public void setTermDictionaryMaxBytes(long termDictionaryMaxBytes) {
+        getConfig().setTermDictionaryMaxBytes(termDictionaryMaxBytes);
+    }
+    
+    public int getBooleanChunkSize() {
+        return getConfig().getBooleanChunkSize();
+    }
+    
+    public void setBooleanChunkSize(int booleanChunkSize) {
+        getConfig().setBooleanChunkSize(booleanChunkSize);
+    }
+    
+    public int getBooleanChunkThreads() {
+        return getConfig().getBooleanChunkThreads();
+    }
+    
+    public void setBooleanChunkThreads(int booleanChunkThreads) {
+        getConfig().setBooleanChunkThreads(booleanChunkThreads);
+    }
+    
+    public long getBooleanChunkResultBudget() {
+        return getConfig().getBooleanChunkResultBudget();
+    }
+    
+    public void setBooleanChunkResultBudget(long booleanChunkResultBudget) {
+        getConfig().setBooleanChunkResultBudget(booleanChunkResultBudget);
+    }
+    
+    public double getHedgedScanPercentile() {
+        return getConfig().getHedgedScanPercentile();
+    }
+    
+    public void setHedgedScanPercentile(double hedgedScanPercentile) {
+        getConfig().setHedgedScanPercentile(hedgedScanPercentile);
+    }
+    
+    public double getHedgedScanMaxRate() {
+        return getConfig().getHedgedScanMaxRate();
+    }
+    
+    public void setHedgedScanMaxRate(double hedgedScanMaxRate) {
+        getConfig().setHedgedScanMaxRate(hedgedScanMaxRate);
+    }
+    
+    public long getHedgedScanMinDelay() {
+        return getConfig().getHedgedScanMinDelay();
+    }
+    
+    public void setHedgedScanMinDelay(long hedgedScanMinDelay) {
+        getConfig().setHedgedScanMinDelay(hedgedScanMinDelay);
+    }
+    
+    public boolean isBundleRangesByServer() {
+        return getConfig().isBundleRangesByServer();
+    }
+    
+    public void setBundleRangesByServer(boolean bundleRangesByServer) {
+        getConfig().setBundleRangesByServer(bundleRangesByServer);
+    }
+    
+    public int getMaxRangesPerBundle() {
+        return getConfig().getMaxRangesPerBundle();
+    }
+    
+    public void setMaxRangesPerBundle(int maxRangesPerBundle) {
+        getConfig().setMaxRangesPerBundle(maxRangesPerBundle);
+    }
+    
+    public long getMaxBundleWork() {
+        return getConfig().getMaxBundleWork();
+    }
+    
+    public void setMaxBundleWork(long maxBundleWork) {
+        getConfig().setMaxBundleWork(maxBundleWork);
+    }
+    
     /**
      * Returns a value indicating whether index-only filter functions (e.g., #INCLUDE, #EXCLUDE) should be enabled. If true, the use of such filters can
      * potentially consume a LOT of memory.
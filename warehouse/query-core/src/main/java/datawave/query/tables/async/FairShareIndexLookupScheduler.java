@@ -0,0 +1,439 @@
+package datawave.query.tables.async;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Scheduler that shares its threads fairly between users, and between the lanes of each user by their priority.
+ * 
+ * At most the concurrency limit of tasks run at once. A lane may run its share of the limit: the limit is divided evenly between the users with waiting or
+ * running tasks, and the share of a user between its lanes by their priority, with every lane allowed at least one task. When a thread is free, the next task
+ * is taken from the user running the fewest tasks, and from the lane of that user running the fewest tasks for its priority.
+ * 
+ * When a target latency is given, the limit adapts to the time that the tasks take: it is lowered by a tenth while the average task is slower than the target,
+ * as the tablet servers are then overloaded, and raised by one while the average task takes less than half of the target and tasks are waiting.
+ */
+public class FairShareIndexLookupScheduler implements IndexLookupScheduler {
+    
+    private static final Logger log = Logger.getLogger(FairShareIndexLookupScheduler.class);
+    
+    // the number of finished tasks between changes to the limit
+    private static final int ADJUSTMENT_INTERVAL = 16;
+    // the weight of each finished task in the average latency
+    private static final double LATENCY_WEIGHT = 0.2;
+    
+    private final String name;
+    private final int maxThreads;
+    private final int minThreads;
+    private final long targetLatency;
+    private final ThreadPoolExecutor pool;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskFinished = lock.newCondition();
+    
+    // the lanes with waiting or running tasks
+    private final Set<Lane> activeLanes = new LinkedHashSet<>();
+    // the sum of the priorities of the active lanes of each user
+    private final Map<String,Integer> activePriorities = new HashMap<>();
+    private final Map<String,Integer> runningByUser = new HashMap<>();
+    
+    private int limit;
+    private int queued = 0;
+    private int running = 0;
+    private long started = 0;
+    private long totalWaitNanos = 0;
+    private double averageLatency = -1;
+    private int finishedSinceAdjustment = 0;
+    
+    /**
+     * @param name
+     *            the name of the threads
+     * @param threads
+     *            the most tasks to run at once
+     * @param targetLatency
+     *            the time in milliseconds that a task should take, or 0 to keep the limit at the number of threads
+     */
+    public FairShareIndexLookupScheduler(String name, int threads, long targetLatency) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The scheduler needs at least one thread: " + threads);
+        }
+        this.name = name;
+        this.maxThreads = threads;
+        this.minThreads = Math.max(1, threads / 4);
+        this.targetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+        this.limit = threads;
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new SchedulerThreadFactory());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+    
+    private class SchedulerThreadFactory implements ThreadFactory {
+        
+        private ThreadFactory dtf = Executors.defaultThreadFactory();
+        private AtomicInteger threadNum = new AtomicInteger(1);
+        
+        public Thread newThread(Runnable r) {
+            Thread thread = dtf.newThread(r);
+            thread.setName("Datawave " + name + " Lookup Scheduler -" + threadNum.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
+    @Override
+    public ExecutorService newLane(String user, String queryId, int priority, int maxConcurrency) {
+        return new Lane(user, queryId, Math.max(1, priority), Math.max(1, maxConcurrency));
+    }
+    
+    /**
+     * Starts the next tasks while the limit allows. Must hold the lock.
+     */
+    private void schedule() {
+        while (running < limit && queued > 0 && !pool.isShutdown()) {
+            Lane next = null;
+            int nextUserRunning = Integer.MAX_VALUE;
+            double nextLaneRunning = Double.MAX_VALUE;
+            for (Lane lane : activeLanes) {
+                if (lane.queue.isEmpty() || lane.running >= share(lane)) {
+                    continue;
+                }
+                int userRunning = runningByUser.getOrDefault(lane.user, 0);
+                double laneRunning = (double) lane.running / lane.priority;
+                if (userRunning < nextUserRunning || (userRunning == nextUserRunning && laneRunning < nextLaneRunning)) {
+                    next = lane;
+                    nextUserRunning = userRunning;
+                    nextLaneRunning = laneRunning;
+                }
+            }
+            if (null == next) {
+                // every lane with waiting tasks is running its share
+                return;
+            }
+            
+            Task task = next.queue.poll();
+            queued--;
+            next.running++;
+            next.runningTasks.add(task);
+            running++;
+            runningByUser.merge(next.user, 1, Integer::sum);
+            started++;
+            totalWaitNanos += System.nanoTime() - task.queuedAt;
+            pool.execute(task);
+        }
+    }
+    
+    /**
+     * @param lane
+     * @return the number of tasks that the lane may run at once. Must hold the lock.
+     */
+    private int share(Lane lane) {
+        double userShare = (double) limit / activePriorities.size();
+        int laneShare = (int) (userShare * lane.priority / activePriorities.get(lane.user));
+        return Math.min(lane.maxConcurrency, Math.max(1, laneShare));
+    }
+    
+    private void activate(Lane lane) {
+        if (activeLanes.add(lane)) {
+            activePriorities.merge(lane.user, lane.priority, Integer::sum);
+        }
+    }
+    
+    private void deactivateIfIdle(Lane lane) {
+        if (lane.queue.isEmpty() && lane.running == 0 && activeLanes.remove(lane)) {
+            int remaining = activePriorities.get(lane.user) - lane.priority;
+            if (remaining > 0) {
+                activePriorities.put(lane.user, remaining);
+            } else {
+                activePriorities.remove(lane.user);
+            }
+        }
+    }
+    
+    private void finished(Task task, long latency) {
+        lock.lock();
+        try {
+            Lane lane = task.lane;
+            task.thread = null;
+            lane.runningTasks.remove(task);
+            lane.running--;
+            running--;
+            int userRunning = runningByUser.get(lane.user) - 1;
+            if (userRunning > 0) {
+                runningByUser.put(lane.user, userRunning);
+            } else {
+                runningByUser.remove(lane.user);
+            }
+            if (latency >= 0) {
+                adapt(latency);
+            }
+            deactivateIfIdle(lane);
+            schedule();
+            taskFinished.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Moves the limit towards the target latency. Must hold the lock.
+     * 
+     * @param latency
+     *            the time in nanoseconds that a task took
+     */
+    private void adapt(long latency) {
+        if (targetLatency <= 0) {
+            return;
+        }
+        averageLatency = averageLatency < 0 ? latency : (1 - LATENCY_WEIGHT) * averageLatency + LATENCY_WEIGHT * latency;
+        if (++finishedSinceAdjustment < ADJUSTMENT_INTERVAL) {
+            return;
+        }
+        finishedSinceAdjustment = 0;
+        
+        int previous = limit;
+        if (averageLatency > targetLatency && limit > minThreads) {
+            limit = Math.max(minThreads, limit - Math.max(1, limit / 10));
+        } else if (averageLatency < targetLatency / 2 && limit < maxThreads && queued > 0) {
+            limit++;
+        }
+        if (limit != previous && log.isDebugEnabled()) {
+            log.debug("Changed the " + name + " limit from " + previous + " to " + limit + " for an average latency of "
+                            + TimeUnit.NANOSECONDS.toMillis((long) averageLatency) + "ms, " + this);
+        }
+    }
+    
+    @Override
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public int getActiveTasks() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public int getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public long getStartedTasks() {
+        lock.lock();
+        try {
+            return started;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public long getTotalWaitTime() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+    
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return name + " scheduler: limit " + limit + ", running " + running + ", queued " + queued + ", lanes " + activeLanes.size() + ", started "
+                            + started + ", average wait " + (started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / started)) + "ms";
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private class Task implements Runnable {
+        private final Lane lane;
+        private final Runnable command;
+        private final long queuedAt = System.nanoTime();
+        private Thread thread;
+        
+        private Task(Lane lane, Runnable command) {
+            this.lane = lane;
+            this.command = command;
+        }
+        
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                if (lane.stopped) {
+                    // the lane was stopped after this task was started
+                    thread = null;
+                } else {
+                    thread = Thread.currentThread();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (null == thread) {
+                finished(this, -1);
+                return;
+            }
+            
+            long start = System.nanoTime();
+            try {
+                command.run();
+            } finally {
+                finished(this, System.nanoTime() - start);
+            }
+        }
+    }
+    
+    /**
+     * The tasks of one query
+     */
+    private class Lane extends AbstractExecutorService {
+        private final String user;
+        private final String queryId;
+        private final int priority;
+        private final int maxConcurrency;
+        private final Deque<Task> queue = new ArrayDeque<>();
+        private final Set<Task> runningTasks = new HashSet<>();
+        private int running = 0;
+        private boolean shutdown = false;
+        private boolean stopped = false;
+        
+        private Lane(String user, String queryId, int priority, int maxConcurrency) {
+            this.user = user;
+            this.queryId = queryId;
+            this.priority = priority;
+            this.maxConcurrency = maxConcurrency;
+        }
+        
+        @Override
+        public void execute(Runnable command) {
+            lock.lock();
+            try {
+                if (shutdown || pool.isShutdown()) {
+                    throw new RejectedExecutionException("The lane of " + queryId + " is shut down");
+                }
+                queue.add(new Task(this, command));
+                queued++;
+                activate(this);
+                schedule();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public void shutdown() {
+            lock.lock();
+            try {
+                shutdown = true;
+                taskFinished.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public List<Runnable> shutdownNow() {
+            lock.lock();
+            try {
+                shutdown = true;
+                stopped = true;
+                List<Runnable> waiting = new ArrayList<>(queue.size());
+                for (Task task : queue) {
+                    waiting.add(task.command);
+                }
+                queued -= queue.size();
+                queue.clear();
+                for (Task task : runningTasks) {
+                    if (null != task.thread) {
+                        task.thread.interrupt();
+                    }
+                }
+                deactivateIfIdle(this);
+                schedule();
+                taskFinished.signalAll();
+                return waiting;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public boolean isShutdown() {
+            lock.lock();
+            try {
+                return shutdown;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public boolean isTerminated() {
+            lock.lock();
+            try {
+                return shutdown && queue.isEmpty() && running == 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while (!(shutdown && queue.isEmpty() && running == 0)) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = taskFinished.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
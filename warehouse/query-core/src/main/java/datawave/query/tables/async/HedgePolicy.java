@@ -0,0 +1,108 @@
+package datawave.query.tables.async;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import datawave.query.tables.stats.LatencyHistogram;
+import datawave.query.tables.stats.ScanSessionStats;
+
+/**
+ * Decides when a {@link SpeculativeScan} hedges a scan that is slow to respond. The time that the tablet servers take to start returning the results of a scan
+ * is recorded in a histogram for each table, shared by all of the queries against the table. A scan is hedged once it has been waiting longer than a
+ * percentile of those latencies, and at most a fraction of the scans of a session are hedged so that a struggling cluster is not flooded with extra work.
+ */
+public class HedgePolicy {
+    
+    // the latencies of a table are halved after this many are recorded, so that they follow the current state of the cluster
+    private static final long DECAY_COUNT = 10000;
+    
+    // the fewest latencies of a table that a hedge delay is computed from
+    private static final long MIN_LATENCIES = 20;
+    
+    private static final ConcurrentMap<String,LatencyHistogram> tableLatencies = new ConcurrentHashMap<>();
+    
+    private final LatencyHistogram latencies;
+    private final Supplier<ScanSessionStats> stats;
+    private final double percentile;
+    private final double maxHedgeRate;
+    private final long minHedgeDelay;
+    
+    private final AtomicLong scans = new AtomicLong(0);
+    private final AtomicLong hedges = new AtomicLong(0);
+    
+    /**
+     * @param tableName
+     * @param stats
+     *            the statistics of the session, which also records the latencies of each tablet server
+     * @param percentile
+     *            the percentile of the latencies of the table after which a scan is hedged
+     * @param maxHedgeRate
+     *            the largest fraction of the scans that are hedged
+     * @param minHedgeDelay
+     *            the least time to wait before hedging a scan, in milliseconds
+     */
+    public HedgePolicy(String tableName, Supplier<ScanSessionStats> stats, double percentile, double maxHedgeRate, long minHedgeDelay) {
+        this.latencies = getTableLatencies(tableName);
+        this.stats = stats;
+        this.percentile = percentile;
+        this.maxHedgeRate = maxHedgeRate;
+        this.minHedgeDelay = minHedgeDelay;
+    }
+    
+    public static LatencyHistogram getTableLatencies(String tableName) {
+        return tableLatencies.computeIfAbsent(tableName, t -> new LatencyHistogram(DECAY_COUNT));
+    }
+    
+    /**
+     * @param server
+     *            the tablet server that was scanned
+     * @param millis
+     *            the time until the server started returning results
+     */
+    public void recordLatency(String server, long millis) {
+        latencies.record(millis);
+        ScanSessionStats sessionStats = (null == stats ? null : stats.get());
+        if (null != sessionStats) {
+            sessionStats.recordLatency(server, millis);
+        }
+    }
+    
+    /**
+     * Count a scan that could be hedged
+     */
+    public void scanSubmitted() {
+        scans.incrementAndGet();
+    }
+    
+    /**
+     * @return the milliseconds to wait for a scan to respond before hedging it, or -1 if too few latencies have been recorded for the table
+     */
+    public long getHedgeDelay() {
+        if (latencies.getCount() < MIN_LATENCIES) {
+            return -1;
+        }
+        return Math.max(minHedgeDelay, latencies.getPercentile(percentile));
+    }
+    
+    /**
+     * @return true if the scan can be hedged without the hedges exceeding the max hedge rate of the scans so far, in which case the hedge is counted
+     */
+    public boolean tryHedge() {
+        while (true) {
+            long current = hedges.get();
+            // the first hedge is always allowed, so that a session of a few scans can hedge
+            if (maxHedgeRate <= 0 || (current > 0 && current >= maxHedgeRate * scans.get())) {
+                return false;
+            }
+            if (hedges.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+}
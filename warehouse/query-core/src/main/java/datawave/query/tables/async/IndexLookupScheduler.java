@@ -0,0 +1,138 @@
+package datawave.query.tables.async;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.util.QueryStopwatch;
+import datawave.webservice.query.Query;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A process wide scheduler for the scans that queries make, so that the number of scan threads is bounded by the process rather than by the number of
+ * running queries. Each query gets a lane, an {@link ExecutorService} whose tasks are run on the threads of the scheduler, and the scheduler decides which
+ * lane runs next.
+ * 
+ * The tasks of a lane must give up their thread when they cannot make progress. The shard scans block their thread while the result queue of their query is
+ * full, so they keep their per query threads rather than using a scheduler.
+ * 
+ * Implementations are created once per process by the {@link Factory}, and must have a constructor taking the number of threads and the target task latency
+ * in milliseconds.
+ */
+public interface IndexLookupScheduler {
+    
+    /**
+     * The scheduler shared by the global index lookups of the range stream and of the unfielded and regex term expansion
+     */
+    String INDEX = "index";
+    
+    /**
+     * @param user
+     *            the user that the lane is shared fairly with
+     * @param queryId
+     * @param priority
+     *            the weight of the lane against the other lanes of its user
+     * @param maxConcurrency
+     *            the most tasks of the lane to run at once
+     * @return a lane for the tasks of a query, which must be shut down when the query is done with it
+     */
+    ExecutorService newLane(String user, String queryId, int priority, int maxConcurrency);
+    
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    int getQueueDepth();
+    
+    /**
+     * @return the number of tasks running
+     */
+    int getActiveTasks();
+    
+    /**
+     * @return the number of tasks currently allowed to run at once
+     */
+    int getConcurrencyLimit();
+    
+    /**
+     * @return the number of tasks that have been started
+     */
+    long getStartedTasks();
+    
+    /**
+     * @return the total time in milliseconds that the started tasks waited for a thread
+     */
+    long getTotalWaitTime();
+    
+    void shutdown();
+    
+    class Factory {
+        
+        private static final Map<String,IndexLookupScheduler> schedulers = new ConcurrentHashMap<>();
+        
+        /**
+         * @param name
+         *            the name that the scheduler is shared under
+         * @param className
+         * @param threads
+         * @param targetLatency
+         * @return the scheduler of the name, which is created from the arguments the first time that it is asked for
+         */
+        public static IndexLookupScheduler getScheduler(String name, String className, int threads, long targetLatency) {
+            return schedulers.computeIfAbsent(name, key -> {
+                try {
+                    return Class.forName(className).asSubclass(IndexLookupScheduler.class).getConstructor(String.class, int.class, long.class)
+                                    .newInstance(name, threads, targetLatency);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalArgumentException("Could not create the index lookup scheduler " + className, e);
+                }
+            });
+        }
+        
+        /**
+         * @param config
+         * @param name
+         *            the name of the scheduler
+         * @param maxConcurrency
+         *            the most tasks of the lane to run at once
+         * @return a lane of the scheduler for the query, or null if the query is not configured to use a scheduler
+         */
+        public static ExecutorService newLane(ShardQueryConfiguration config, String name, int maxConcurrency) {
+            if (config.getIndexLookupSchedulerThreads() <= 0) {
+                return null;
+            }
+            IndexLookupScheduler scheduler = getScheduler(name, config.getIndexLookupSchedulerClass(), config.getIndexLookupSchedulerThreads(),
+                            config.getIndexLookupSchedulerTargetLatency());
+            
+            Query query = config.getQuery();
+            String user = null == query || null == query.getOwner() ? "unknown" : query.getOwner();
+            String queryId = null == query || null == query.getId() ? "unknown" : query.getId().toString();
+            return scheduler.newLane(user, queryId, config.getIndexLookupPriority(), maxConcurrency);
+        }
+        
+        /**
+         * Log the metrics of every scheduler
+         * 
+         * @param log
+         */
+        public static void logSummary(Logger log) {
+            for (Map.Entry<String,IndexLookupScheduler> entry : schedulers.entrySet()) {
+                IndexLookupScheduler scheduler = entry.getValue();
+                log.debug(QueryStopwatch.INDENT + "Scheduler " + entry.getKey() + ": queued=" + scheduler.getQueueDepth() + " active="
+                                + scheduler.getActiveTasks() + " limit=" + scheduler.getConcurrencyLimit() + " started=" + scheduler.getStartedTasks()
+                                + " waited=" + scheduler.getTotalWaitTime() + "ms");
+            }
+        }
+        
+        /**
+         * Shuts down and forgets every scheduler, so that the next ones are created again
+         */
+        public static void shutdownAll() {
+            for (IndexLookupScheduler scheduler : schedulers.values()) {
+                scheduler.shutdown();
+            }
+            schedulers.clear();
+        }
+    }
+}
@@ -73,6 +73,13 @@ public class Scan implements Callable<Scan> {
     
     private AccumuloResource delegatedResource = null;
     
+    protected HedgePolicy hedgePolicy = null;
+    
+    /**
+     * Set once the first range has started returning results.
+     */
+    protected volatile boolean responded = false;
+    
     public Scan(String localTableName, Set<Authorizations> localAuths, ScannerChunk chunk, ResourceQueue delegatorReference,
                     Class<? extends AccumuloResource> delegatedResourceInitializer, BlockingQueue<Entry<Key,Value>> results, ExecutorService callingService) {
         myScan = chunk;
@@ -93,6 +100,14 @@ public class Scan implements Callable<Scan> {
         this.timeout = timeout;
     }
     
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+    
+    public boolean hasResponded() {
+        return responded;
+    }
+    
     public void setVisitors(List<Function<ScannerChunk,ScannerChunk>> visitorFunctions) {
         this.visitorFunctions = visitorFunctions;
     }
@@ -243,6 +258,7 @@ public class Scan implements Callable<Scan> {
                     log.trace("Using " + initializer);
                 }
                 
+                long startTime = System.currentTimeMillis();
                 delegatedResource = ResourceFactory.initializeResource(initializer, delegatedResource, localTableName, localAuths, currentRange).setOptions(
                                 myScan.getOptions());
                 
@@ -259,6 +275,12 @@ public class Scan implements Callable<Scan> {
                     lastSeenKey = null;
                 }
                 
+                // rfiles are read directly, so only the latencies of the tablet servers are recorded
+                if (null != hedgePolicy && initializer != RfileResource.class) {
+                    hedgePolicy.recordLatency(getScanLocation(), System.currentTimeMillis() - startTime);
+                }
+                responded = true;
+                
                 Entry<Key,Value> myEntry = null;
                 if (null != myStats)
                     myStats.getTimer(TIMERS.SCANNER_ITERATE).resume();
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -33,7 +34,8 @@ import datawave.query.tables.ResourceQueue;
 import datawave.query.tables.stats.ScanSessionStats;
 
 /**
- * Intended for a single lookup
+ * Intended for a single lookup. Runs several scans of the same chunk, each buffering its own results, and returns the results of the first to finish. With a
+ * {@link HedgePolicy}, the scans added with {@link #addHedge(Scan)} are only started if the first scan has not responded by the time the policy allows.
  *
  */
 public class SpeculativeScan extends Scan implements FutureCallback<Scan>, UncaughtExceptionHandler {
@@ -51,12 +53,16 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
     
     protected ExecutorService service = null;
     
-    protected LinkedBlockingDeque<Entry<Key,Value>> myResultQueue;
-    
     protected ReentrantLock writeControl = new ReentrantLock();
     
     protected Throwable failure = null;
     
+    // the scans that are started if the first scan is slow to respond
+    protected List<Scan> hedges;
+    
+    // the first scan to finish, whose results are returned
+    protected volatile Scan winner = null;
+    
     private class SpeculativeScanThreadFactory implements ThreadFactory {
         
         private ThreadFactory dtf = Executors.defaultThreadFactory();
@@ -86,7 +92,7 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
         super(localTableName, localAuths, chunk, delegatorReference, delegatedResourceInitializer, results, callingService);
         scans = Lists.newArrayList();
         scanFutures = Lists.newArrayList();
-        myResultQueue = new LinkedBlockingDeque<>();
+        hedges = Lists.newArrayList();
         service = Executors.newFixedThreadPool(2, new SpeculativeScanThreadFactory(new StringBuilder(chunk.getQueryId()), this));
         service = MoreExecutors.listeningDecorator(service);
         disableStats();
@@ -100,14 +106,90 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
                 return false;
             
             scan.disableStats();
+            scan.setHedgePolicy(hedgePolicy);
             scans.add(scan);
             ListenableFuture<Scan> future = (ListenableFuture<Scan>) service.submit(scan);
             scanFutures.add(future);
-            Futures.addCallback(future, this);
+            Futures.addCallback(future, new FutureCallback<Scan>() {
+                @Override
+                public void onSuccess(Scan result) {
+                    SpeculativeScan.this.onSuccess(result);
+                }
+                
+                @Override
+                public void onFailure(Throwable t) {
+                    SpeculativeScan.this.onFailure(scan, t);
+                }
+            });
+        }
+        return true;
+    }
+    
+    /**
+     * Add a scan that is started if the first scan has not responded within the delay of the hedge policy. Without a hedge policy, the scan is started right
+     * away.
+     * 
+     * @param scan
+     * @return false if the speculative scan has already finished
+     */
+    public boolean addHedge(Scan scan) {
+        if (null == hedgePolicy) {
+            return addScan(scan);
+        }
+        synchronized (scanFutures) {
+            if (finished.get())
+                return false;
+            hedges.add(scan);
         }
         return true;
     }
     
+    /**
+     * Start the hedges if the first scan has not responded within the delay of the hedge policy
+     * 
+     * @param startTime
+     */
+    protected void checkHedges(long startTime) {
+        Scan primary;
+        synchronized (scanFutures) {
+            if (hedges.isEmpty() || scans.isEmpty())
+                return;
+            primary = scans.get(0);
+            if (primary.hasResponded() || null != winner) {
+                hedges.clear();
+                return;
+            }
+        }
+        
+        long delay = hedgePolicy.getHedgeDelay();
+        if (delay < 0 || System.currentTimeMillis() - startTime < delay)
+            return;
+        
+        if (hedgePolicy.tryHedge()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Hedging a scan of " + primary.getScanLocation() + " that has not responded in " + delay + " ms");
+            }
+            startHedges();
+        } else {
+            // over the hedge rate, so let the first scan run on its own
+            synchronized (scanFutures) {
+                hedges.clear();
+            }
+        }
+    }
+    
+    protected boolean startHedges() {
+        List<Scan> pending;
+        synchronized (scanFutures) {
+            pending = Lists.newArrayList(hedges);
+            hedges.clear();
+        }
+        for (Scan hedge : pending) {
+            addScan(hedge);
+        }
+        return !pending.isEmpty();
+    }
+    
     public boolean finished() {
         return finished.get();
     }
@@ -125,9 +207,13 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
     @Override
     public Scan call() throws Exception {
         
+        final long startTime = System.currentTimeMillis();
         while (!finished.get() && !caller.isShutdown() && !service.isShutdown()) {
             if (log.isTraceEnabled()) {
-                log.trace("here with " + myResultQueue.size() + " " + " " + finished.get() + " " + service.isShutdown());
+                log.trace("here with " + scans.size() + " scans " + finished.get() + " " + service.isShutdown());
+            }
+            if (null != hedgePolicy) {
+                checkHedges(startTime);
             }
             Thread.sleep(10);
             if (Thread.interrupted()) {
@@ -167,18 +253,26 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
         
         if (finished.get())
             return;
-        /**
-         * If we can't acquire the semaphore this means that another thread succeeded and our results are to be ignored.
-         */
-        if (!writeControl.tryLock()) {
             
-            return;
-        }
-        
+        writeControl.lock();
         try {
             
-            while (!myResultQueue.isEmpty()) {
-                results.put(myResultQueue.poll(2, TimeUnit.MILLISECONDS));
+            if (finished.get())
+                return;
+            
+            /**
+             * The first scan to finish wins and the others are cancelled. A winner that was time sliced and resubmitted keeps winning.
+             */
+            if (null == winner) {
+                winner = result;
+                cancelLosers();
+            } else if (winner != result) {
+                return;
+            }
+            
+            BlockingQueue<Entry<Key,Value>> queue = result.results;
+            while (!queue.isEmpty()) {
+                results.put(queue.poll(2, TimeUnit.MILLISECONDS));
                 if (log.isTraceEnabled())
                     log.trace("status" + Thread.interrupted() + " " + caller.isShutdown() + " " + service.isShutdown());
                 if (Thread.interrupted() || caller.isShutdown() || service.isShutdown() || finished.get()) {
@@ -209,6 +303,18 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
         
     }
     
+    protected void cancelLosers() {
+        synchronized (scanFutures) {
+            hedges.clear();
+            for (int i = 0; i < scans.size(); i++) {
+                if (scans.get(i) != winner) {
+                    scanFutures.get(i).cancel(true);
+                    scans.get(i).close();
+                }
+            }
+        }
+    }
+    
     protected void closeScans() {
         for (Scan scan : scans) {
             scan.close();
@@ -218,6 +324,21 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
     
     @Override
     public void onFailure(Throwable t) {
+        onFailure(null, t);
+    }
+    
+    protected void onFailure(Scan scan, Throwable t) {
+        
+        // the losers fail when they are cancelled
+        if (null != scan && null != winner && scan != winner) {
+            return;
+        }
+        
+        // fail over to the hedges that have not been started
+        if (null == winner && startHedges()) {
+            failureCount.incrementAndGet();
+            return;
+        }
         
         // if all failed, then return failure
         if (failureCount.incrementAndGet() >= scans.size()) {
@@ -228,8 +349,11 @@ public class SpeculativeScan extends Scan implements FutureCallback<Scan>, Uncau
         
     }
     
-    public LinkedBlockingDeque<Entry<Key,Value>> getQueue() {
-        return myResultQueue;
+    /**
+     * @return a queue for the results of one of the scans, which are only returned if that scan finishes first
+     */
+    public LinkedBlockingDeque<Entry<Key,Value>> newQueue() {
+        return new LinkedBlockingDeque<>();
     }
     
     protected void setClose() {
@@ -0,0 +1,114 @@
+package datawave.query.tables.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in milliseconds. The latencies are counted in buckets that grow exponentially, four for each doubling, so that a
+ * percentile is reported to within 19% of its value.
+ */
+public class LatencyHistogram {
+    
+    private static final int BUCKETS_PER_DOUBLING = 4;
+    
+    // enough buckets for latencies of up to 2^32 ms
+    private static final int NUM_BUCKETS = 32 * BUCKETS_PER_DOUBLING + 1;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final long decayCount;
+    
+    public LatencyHistogram() {
+        this(0);
+    }
+    
+    /**
+     * @param decayCount
+     *            the counts are halved each time this many latencies have been recorded, so that the histogram follows the recent latencies. 0 to keep every
+     *            latency.
+     */
+    public LatencyHistogram(long decayCount) {
+        this.decayCount = decayCount;
+    }
+    
+    /**
+     * @param millis
+     * @return the first bucket whose upper bound is not less than the latency
+     */
+    static int getBucket(long millis) {
+        if (millis <= 1) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log(millis) / Math.log(2) * BUCKETS_PER_DOUBLING);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+    
+    static long getUpperBound(int bucket) {
+        return (long) Math.ceil(Math.pow(2, (double) bucket / BUCKETS_PER_DOUBLING));
+    }
+    
+    public void record(long millis) {
+        counts.incrementAndGet(getBucket(millis));
+        if (count.incrementAndGet() >= decayCount && decayCount > 0) {
+            decay();
+        }
+    }
+    
+    private synchronized void decay() {
+        if (count.get() < decayCount) {
+            return;
+        }
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long bucketCount = counts.get(i);
+            total += counts.addAndGet(i, -(bucketCount - bucketCount / 2));
+        }
+        count.set(total);
+    }
+    
+    /**
+     * @return the number of latencies in the histogram
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @param percentile
+     *            between 0 and 1
+     * @return the upper bound of the bucket of the latency at the percentile, or -1 if no latencies have been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return getUpperBound(i);
+            }
+        }
+        return getUpperBound(NUM_BUCKETS - 1);
+    }
+    
+    public LatencyHistogram merge(LatencyHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts.addAndGet(i, other.counts.get(i));
+        }
+        count.addAndGet(other.getCount());
+        return this;
+    }
+    
+    @Override
+    public String toString() {
+        return "p50=" + getPercentile(0.5) + "ms p95=" + getPercentile(0.95) + "ms p99=" + getPercentile(0.99) + "ms count=" + getCount();
+    }
+}
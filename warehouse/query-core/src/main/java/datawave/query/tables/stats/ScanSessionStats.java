@@ -5,6 +5,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import datawave.query.util.QueryStopwatch;
@@ -30,6 +31,9 @@ public class ScanSessionStats {
     
     protected MutableLong keysSeen;
     
+    // the latencies of the scans started against each tablet server
+    protected Map<String,LatencyHistogram> serverLatencies = new ConcurrentHashMap<>();
+    
     public ScanSessionStats() {
         timers = new EnumMap<>(TIMERS.class);
         
@@ -52,6 +56,9 @@ public class ScanSessionStats {
             long otherTimer = other.getValue(timer);
             timerValue.add(otherTimer);
         }
+        for (Map.Entry<String,LatencyHistogram> latencies : other.serverLatencies.entrySet()) {
+            serverLatencies.computeIfAbsent(latencies.getKey(), server -> new LatencyHistogram()).merge(latencies.getValue());
+        }
         return this;
     }
     
@@ -71,6 +78,20 @@ public class ScanSessionStats {
         keysSeen.add(keys);
     }
     
+    /**
+     * Record the time that a tablet server took to start returning the results of a scan
+     * 
+     * @param server
+     * @param millis
+     */
+    public void recordLatency(String server, long millis) {
+        serverLatencies.computeIfAbsent(server, s -> new LatencyHistogram()).record(millis);
+    }
+    
+    public Map<String,LatencyHistogram> getServerLatencies() {
+        return serverLatencies;
+    }
+    
     public void initializeTimers() {
         timers.get(TIMERS.HASNEXT).start();
         timers.get(TIMERS.HASNEXT).suspend();
@@ -124,6 +145,10 @@ public class ScanSessionStats {
         sb.append(QueryStopwatch.INDENT).append("Total elapsed: ").append(formatMillis(totalDurationMillis));
         logToUse.debug(sb.toString());
         
+        for (Map.Entry<String,LatencyHistogram> latencies : serverLatencies.entrySet()) {
+            logToUse.debug(QueryStopwatch.INDENT + "Scan latency on " + latencies.getKey() + ": " + latencies.getValue());
+        }
+        
     }
     
     protected String formatMillis(long elapsedMillis) {
@@ -3,10 +3,12 @@ package datawave.query.transformer;
 import com.google.common.base.Preconditions;
 import datawave.marking.MarkingFunctions;
 import datawave.query.attributes.Document;
+import datawave.query.function.deserializer.FlatDocumentDeserializer;
 import datawave.util.StringUtils;
 import datawave.webservice.query.Query;
 import datawave.webservice.query.exception.EmptyObjectException;
 import datawave.webservice.query.logic.BaseQueryLogic;
+import datawave.webservice.query.logic.BatchedResults;
 import datawave.webservice.query.logic.Flushable;
 import datawave.webservice.query.logic.WritesQueryMetrics;
 import datawave.webservice.query.logic.WritesResultCardinalities;
@@ -21,6 +23,7 @@ import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -32,10 +35,13 @@ import java.util.Map.Entry;
  *
  */
 public class DocumentTransformer extends DocumentTransformerSupport<Entry<Key,Value>,EventBase> implements WritesQueryMetrics, WritesResultCardinalities,
-                Flushable<EventBase> {
+                Flushable<EventBase>, BatchedResults<EventBase> {
     
     private static final Logger log = Logger.getLogger(DocumentTransformerSupport.class);
     
+    // the documents of a batched value that have not been transformed yet
+    private Iterator<Entry<Key,Document>> batchedDocuments = null;
+    
     /**
      * By default, assume each cell still has the visibility attached to it
      *
@@ -88,7 +94,34 @@ public class DocumentTransformer extends DocumentTransformerSupport<Entry<Key,Va
     @Override
     public EventBase transform(Entry<Key,Value> entry) throws EmptyObjectException {
         
-        Entry<Key,Document> documentEntry = deserializer.apply(entry);
+        Entry<Key,Document> documentEntry;
+        if (deserializer instanceof FlatDocumentDeserializer) {
+            // the value may hold a batch of documents, the rest of which are returned by nextBatchedResult()
+            batchedDocuments = ((FlatDocumentDeserializer) deserializer).deserializeBatch(entry).iterator();
+            if (!batchedDocuments.hasNext()) {
+                // an empty batch is skipped like a document that the transforms dropped
+                batchedDocuments = null;
+                throw new EmptyObjectException();
+            }
+            documentEntry = batchedDocuments.next();
+        } else {
+            documentEntry = deserializer.apply(entry);
+        }
+        
+        return _transform(applyTransforms(documentEntry));
+    }
+    
+    @Override
+    public EventBase nextBatchedResult() throws EmptyObjectException {
+        if (batchedDocuments == null || !batchedDocuments.hasNext()) {
+            batchedDocuments = null;
+            return null;
+        }
+        
+        return _transform(applyTransforms(batchedDocuments.next()));
+    }
+    
+    private Entry<Key,Document> applyTransforms(Entry<Key,Document> documentEntry) {
         for (DocumentTransform transform : transforms) {
             if (documentEntry != null) {
                 documentEntry = transform.apply(documentEntry);
@@ -96,8 +129,7 @@ public class DocumentTransformer extends DocumentTransformerSupport<Entry<Key,Va
                 break;
             }
         }
-        
-        return _transform(documentEntry);
+        return documentEntry;
     }
     
     private EventBase _transform(Entry<Key,Document> documentEntry) throws EmptyObjectException {
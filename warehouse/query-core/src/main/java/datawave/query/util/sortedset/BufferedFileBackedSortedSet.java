@@ -32,6 +32,7 @@ public class BufferedFileBackedSortedSet<E extends Serializable> implements Sort
     protected int size = 0;
     
     protected SortedSetFileHandlerFactory handlerFactory;
+    protected SortedSetBufferFactory<E> bufferFactory;
     protected int bufferPersistThreshold;
     
     /**
@@ -44,10 +45,17 @@ public class BufferedFileBackedSortedSet<E extends Serializable> implements Sort
         SortedSetFileHandler createHandler() throws IOException;
     }
     
+    /**
+     * A factory for the in-memory sorted sets used to buffer entries before they are persisted
+     */
+    public interface SortedSetBufferFactory<E> {
+        SortedSet<E> createBuffer(Comparator<? super E> comparator);
+    }
+    
     public BufferedFileBackedSortedSet(BufferedFileBackedSortedSet<E> other) {
-        this(other.comparator, other.bufferPersistThreshold, other.maxOpenFiles, other.handlerFactory);
+        this(other.comparator, other.bufferPersistThreshold, other.maxOpenFiles, other.handlerFactory, other.bufferFactory);
         for (SortedSet<E> subSet : other.set.getSets()) {
-            FileSortedSet<E> clone = new FileSortedSet<>((FileSortedSet<E>) subSet);
+            FileSortedSet<E> clone = ((FileSortedSet<E>) subSet).copy();
             this.set.addSet(clone);
             if (!clone.isPersisted()) {
                 this.buffer = clone;
@@ -67,8 +75,24 @@ public class BufferedFileBackedSortedSet<E extends Serializable> implements Sort
     
     public BufferedFileBackedSortedSet(Comparator<? super E> comparator, int bufferPersistThreshold, int maxOpenFiles,
                     SortedSetFileHandlerFactory handlerFactory) {
+        this(comparator, bufferPersistThreshold, maxOpenFiles, handlerFactory, null);
+    }
+    
+    /**
+     * Create a buffered file backed sorted set
+     * 
+     * @param comparator
+     * @param bufferPersistThreshold
+     * @param maxOpenFiles
+     * @param handlerFactory
+     * @param bufferFactory
+     *            the factory for the in-memory buffers. If null, then TreeSets are used
+     */
+    public BufferedFileBackedSortedSet(Comparator<? super E> comparator, int bufferPersistThreshold, int maxOpenFiles,
+                    SortedSetFileHandlerFactory handlerFactory, SortedSetBufferFactory<E> bufferFactory) {
         this.comparator = comparator;
         this.handlerFactory = handlerFactory;
+        this.bufferFactory = bufferFactory;
         this.bufferPersistThreshold = bufferPersistThreshold;
         this.maxOpenFiles = maxOpenFiles;
     }
@@ -209,7 +233,28 @@ public class BufferedFileBackedSortedSet<E extends Serializable> implements Sort
         }
     }
     
-    private FileSortedSet<E> compact(MultiSetBackedSortedSet<E> setToCompact) throws IOException {
+    /**
+     * Create a new unpersisted FileSortedSet to buffer entries in memory
+     * 
+     * @return the buffer
+     * @throws IOException
+     */
+    protected FileSortedSet<E> createBuffer() throws IOException {
+        if (bufferFactory == null) {
+            return new FileSortedSet<>(comparator, handlerFactory.createHandler(), false);
+        } else {
+            return FileSortedSet.withBuffer(bufferFactory.createBuffer(comparator), handlerFactory.createHandler());
+        }
+    }
+    
+    /**
+     * Create a new FileSortedSet that is persisted directly from the supplied set
+     * 
+     * @param setToCompact
+     * @return the persisted set
+     * @throws IOException
+     */
+    protected FileSortedSet<E> compact(MultiSetBackedSortedSet<E> setToCompact) throws IOException {
         return new FileSortedSet<>(setToCompact, handlerFactory.createHandler(), true);
     }
     
@@ -227,7 +272,7 @@ public class BufferedFileBackedSortedSet<E extends Serializable> implements Sort
     public boolean add(E e) {
         if (buffer == null) {
             try {
-                buffer = new FileSortedSet<>(comparator, handlerFactory.createHandler(), false);
+                buffer = createBuffer();
             } catch (Exception ex) {
                 throw new IllegalStateException("Unable to create an underlying FileSortedSet", ex);
             }
@@ -253,7 +298,7 @@ public class BufferedFileBackedSortedSet<E extends Serializable> implements Sort
     public boolean addAll(Collection<? extends E> c) {
         if (buffer == null) {
             try {
-                buffer = new FileSortedSet<>(comparator, handlerFactory.createHandler(), false);
+                buffer = createBuffer();
             } catch (Exception ex) {
                 throw new IllegalStateException("Unable to create an underlying FileSortedSet", ex);
             }
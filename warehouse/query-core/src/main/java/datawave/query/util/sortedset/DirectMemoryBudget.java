@@ -0,0 +1,202 @@
+package datawave.query.util.sortedset;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bound on the direct memory allocated by the off heap sorted sets of a JVM. Every set reserves its slabs against one shared budget, so that many sets
+ * buffering at once, such as the ivarators of concurrent queries, cannot exhaust the direct memory of the tablet server. An allocation that does not fit in
+ * what is left of the budget is refused, and the set falls back to a slab on the heap.
+ * 
+ * Slabs are freed explicitly when their set is cleared, rather than when the garbage collector gets to them. A set that is dropped without being cleared has
+ * its reservation returned to the budget once the set is collected.
+ * 
+ * The budget defaults to a quarter of the maximum heap, which is also the default limit of direct memory, and can be set with the
+ * {@value #MAX_BYTES_PROPERTY} system property or {@link #setMaxBytes}.
+ */
+public class DirectMemoryBudget {
+    
+    private static final Logger log = Logger.getLogger(DirectMemoryBudget.class);
+    
+    public static final String MAX_BYTES_PROPERTY = "datawave.query.sortedset.maxDirectBytes";
+    
+    private static final DirectMemoryBudget INSTANCE = new DirectMemoryBudget(Long.getLong(MAX_BYTES_PROPERTY, Runtime.getRuntime().maxMemory() / 4));
+    
+    // Unsafe.invokeCleaner releases a buffer on java 9 and later, where the cleaner of a buffer is no longer accessible
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (Exception e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+    
+    private volatile long maxBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    // the reservations are held here, so that they outlive their owners and get enqueued
+    private final Set<Reservation> reservations = ConcurrentHashMap.newKeySet();
+    
+    DirectMemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    public static DirectMemoryBudget getInstance() {
+        return INSTANCE;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    /**
+     * Change the bound. Lowering it does not free anything, it only refuses allocations until enough has been freed.
+     * 
+     * @param maxBytes
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * @return the number of bytes of direct memory reserved by the sets that have not yet been freed
+     */
+    public long getReservedBytes() {
+        expunge();
+        return reservedBytes.get();
+    }
+    
+    /**
+     * Register the owner of the buffers that will be allocated with the returned reservation
+     * 
+     * @param owner
+     * @return the reservation of the owner
+     */
+    public Reservation register(Object owner) {
+        Reservation reservation = new Reservation(owner, collected);
+        reservations.add(reservation);
+        return reservation;
+    }
+    
+    /**
+     * Allocate a direct buffer if it fits in the budget
+     * 
+     * @param reservation
+     * @param capacity
+     * @return the buffer, or null if the budget is spent
+     */
+    public ByteBuffer allocate(Reservation reservation, int capacity) {
+        expunge();
+        long reserved;
+        do {
+            reserved = reservedBytes.get();
+            if (reserved + capacity > maxBytes) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Direct memory budget of " + maxBytes + " bytes is spent, " + reserved + " bytes are reserved");
+                }
+                return null;
+            }
+        } while (!reservedBytes.compareAndSet(reserved, reserved + capacity));
+        
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+            reservation.bytes.addAndGet(capacity);
+            return buffer;
+        } catch (OutOfMemoryError e) {
+            reservedBytes.addAndGet(-capacity);
+            log.warn("Could not allocate " + capacity + " bytes of direct memory", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Free a buffer allocated with the reservation, returning it to the budget. Buffers on the heap are left to the garbage collector.
+     * 
+     * @param reservation
+     * @param buffer
+     */
+    public void free(Reservation reservation, ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            reservation.bytes.addAndGet(-buffer.capacity());
+            reservedBytes.addAndGet(-buffer.capacity());
+            clean(buffer);
+        }
+    }
+    
+    /**
+     * Return the reservations of the owners that have been collected to the budget. Their buffers were collected with them.
+     */
+    private void expunge() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            Reservation reservation = (Reservation) reference;
+            if (reservations.remove(reservation)) {
+                reservedBytes.addAndGet(-reservation.bytes.getAndSet(0));
+            }
+        }
+    }
+    
+    /**
+     * Release the memory of a direct or mapped buffer now rather than when it is collected. The buffer must not be used afterwards.
+     * 
+     * @param buffer
+     */
+    public static void clean(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            if (null != INVOKE_CLEANER) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // the buffer will be released when it is collected instead
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to release a " + buffer.getClass().getName(), e);
+            }
+        }
+    }
+    
+    /**
+     * The direct memory held by the buffers of one owner
+     */
+    public static class Reservation extends PhantomReference<Object> {
+        private final AtomicLong bytes = new AtomicLong();
+        
+        private Reservation(Object owner, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+        }
+        
+        public long getBytes() {
+            return bytes.get();
+        }
+    }
+}
@@ -113,6 +113,19 @@ public class FileSortedSet<E extends Serializable> implements SortedSet<E> {
         this.persisted = false;
     }
     
+    /**
+     * Create an unpersisted sorted set that uses the supplied set as its in-memory storage in place of a TreeSet. The set is used as is (not copied).
+     * 
+     * @param buffer
+     * @param handler
+     * @return the file sorted set
+     */
+    public static <E extends Serializable> FileSortedSet<E> withBuffer(SortedSet<E> buffer, SortedSetFileHandler handler) {
+        FileSortedSet<E> fileSortedSet = new FileSortedSet<>(buffer.comparator(), handler, false);
+        fileSortedSet.set = buffer;
+        return fileSortedSet;
+    }
+    
     /**
      * Create an sorted set out of another sorted set. If persist is true, then the set will be directly persisted using the set's iterator which avoid pulling
      * all of its entries into memory at once.
@@ -132,6 +145,15 @@ public class FileSortedSet<E extends Serializable> implements SortedSet<E> {
         }
     }
     
+    /**
+     * Create a copy of this file sorted set that shares the same underlying file
+     * 
+     * @return the copy
+     */
+    public FileSortedSet<E> copy() {
+        return new FileSortedSet<>(this);
+    }
+    
     /**
      * This will dump the set to the file, making the set "persisted"
      * 
@@ -148,7 +170,7 @@ public class FileSortedSet<E extends Serializable> implements SortedSet<E> {
     /**
      * Persist the supplied set to a file as defined by this classes sorted set file handler.
      */
-    private void persist(SortedSet<E> set) throws IOException {
+    protected void persist(SortedSet<E> set) throws IOException {
         boolean verified = false;
         Exception failure = null;
         if (log.isDebugEnabled()) {
@@ -219,7 +241,7 @@ public class FileSortedSet<E extends Serializable> implements SortedSet<E> {
      * @return the size (in terms of objects)
      * @throws IOException
      */
-    private int readSize() throws IOException {
+    protected int readSize() throws IOException {
         long bytesToSkip = handler.getSize() - 4;
         InputStream inStream = handler.getInputStream();
         try {
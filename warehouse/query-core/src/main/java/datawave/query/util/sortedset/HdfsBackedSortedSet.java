@@ -33,7 +33,12 @@ public class HdfsBackedSortedSet<E extends Serializable> extends BufferedFileBac
     
     public HdfsBackedSortedSet(Comparator<? super E> comparator, int bufferPersistThreshold, FileSystem fs, Path uniqueDir, int maxOpenFiles)
                     throws IOException {
-        super(comparator, bufferPersistThreshold, maxOpenFiles, new SortedSetHdfsFileHandlerFactory(fs, uniqueDir));
+        this(comparator, bufferPersistThreshold, fs, uniqueDir, maxOpenFiles, null);
+    }
+    
+    public HdfsBackedSortedSet(Comparator<? super E> comparator, int bufferPersistThreshold, FileSystem fs, Path uniqueDir, int maxOpenFiles,
+                    SortedSetBufferFactory<E> bufferFactory) throws IOException {
+        super(comparator, bufferPersistThreshold, maxOpenFiles, new SortedSetHdfsFileHandlerFactory(fs, uniqueDir), bufferFactory);
         
         // now load up this sorted set with any existing files
         FileStatus[] files = fs.listStatus(uniqueDir);
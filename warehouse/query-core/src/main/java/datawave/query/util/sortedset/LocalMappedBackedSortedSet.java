@@ -0,0 +1,122 @@
+package datawave.query.util.sortedset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+
+import datawave.query.util.sortedset.FileSortedSet.SortedSetFileHandler;
+import datawave.query.util.sortedset.MappedFileSortedSet.ElementCodec;
+import datawave.query.util.sortedset.MappedFileSortedSet.SortedSetMappedFileHandler;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A buffered file backed sorted set that spills to memory mapped block files (see MappedFileSortedSet) in a directory on the local disk. This is the local disk
+ * counterpart to the HdfsBackedSortedSet, and avoids going through the hadoop FileSystem for every read of a persisted file.
+ * 
+ * @param <E>
+ */
+public class LocalMappedBackedSortedSet<E extends Serializable> extends BufferedFileBackedSortedSet<E> implements SortedSet<E> {
+    private static final Logger log = Logger.getLogger(LocalMappedBackedSortedSet.class);
+    private static final String FILENAME_PREFIX = "MappedSortedSetFile.";
+    
+    protected final ElementCodec<E> codec;
+    protected final int blockSize;
+    
+    public LocalMappedBackedSortedSet(LocalMappedBackedSortedSet<E> other) {
+        super(other);
+        this.codec = other.codec;
+        this.blockSize = other.blockSize;
+    }
+    
+    public LocalMappedBackedSortedSet(Comparator<? super E> comparator, int bufferPersistThreshold, File uniqueDir, int maxOpenFiles, ElementCodec<E> codec)
+                    throws IOException {
+        this(comparator, bufferPersistThreshold, uniqueDir, maxOpenFiles, codec, MappedFileSortedSet.DEFAULT_BLOCK_SIZE, null);
+    }
+    
+    public LocalMappedBackedSortedSet(Comparator<? super E> comparator, int bufferPersistThreshold, File uniqueDir, int maxOpenFiles, ElementCodec<E> codec,
+                    int blockSize, SortedSetBufferFactory<E> bufferFactory) throws IOException {
+        super(comparator, bufferPersistThreshold, maxOpenFiles, new SortedSetMappedFileHandlerFactory(uniqueDir), bufferFactory);
+        this.codec = codec;
+        this.blockSize = blockSize;
+        
+        // now load up this sorted set with any existing files
+        File[] files = uniqueDir.listFiles();
+        int count = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().startsWith(FILENAME_PREFIX)) {
+                    count++;
+                    addSet(new MappedFileSortedSet<>(comparator, new SortedSetMappedFileHandler(file), codec, blockSize, true));
+                }
+            }
+        }
+        
+        ((SortedSetMappedFileHandlerFactory) (this.handlerFactory)).setFileCount(count);
+    }
+    
+    @Override
+    protected FileSortedSet<E> createBuffer() throws IOException {
+        SortedSetMappedFileHandler handler = (SortedSetMappedFileHandler) handlerFactory.createHandler();
+        if (bufferFactory == null) {
+            return new MappedFileSortedSet<>(comparator, handler, codec, blockSize, false);
+        } else {
+            return MappedFileSortedSet.withBuffer(bufferFactory.createBuffer(comparator), handler, codec, blockSize);
+        }
+    }
+    
+    @Override
+    protected FileSortedSet<E> compact(MultiSetBackedSortedSet<E> setToCompact) throws IOException {
+        return MappedFileSortedSet.createPersisted(setToCompact, (SortedSetMappedFileHandler) handlerFactory.createHandler(), codec, blockSize);
+    }
+    
+    @Override
+    public void clear() {
+        // This will be a new ArrayList<>() containing the same FileSortedSets
+        List<FileSortedSet<E>> sortedSets = super.getSets();
+        // Clear will call clear on each of the FileSortedSets, clear the container, and null the buffer
+        super.clear();
+        // ensure the persisted files are gone
+        for (FileSortedSet<E> fss : sortedSets) {
+            if (fss.isPersisted()) {
+                fss.handler.deleteFile();
+            }
+        }
+    }
+    
+    public static class SortedSetMappedFileHandlerFactory implements SortedSetFileHandlerFactory {
+        private File uniqueDir;
+        private int fileCount = 0;
+        
+        public SortedSetMappedFileHandlerFactory(File uniqueDir) {
+            this.uniqueDir = uniqueDir;
+        }
+        
+        void setFileCount(int count) {
+            this.fileCount = count;
+        }
+        
+        @Override
+        public SortedSetFileHandler createHandler() throws IOException {
+            if (!uniqueDir.exists() && !uniqueDir.mkdirs() && !uniqueDir.exists()) {
+                throw new IOException("Unable to create directory " + uniqueDir);
+            }
+            // generate a unique file name
+            fileCount++;
+            File file = new File(uniqueDir, FILENAME_PREFIX + fileCount + '.' + System.currentTimeMillis());
+            if (log.isDebugEnabled()) {
+                log.debug("Creating " + file);
+            }
+            return new SortedSetMappedFileHandler(file);
+        }
+        
+        @Override
+        public String toString() {
+            return uniqueDir + " (fileCount=" + fileCount + ')';
+        }
+        
+    }
+}
@@ -0,0 +1,853 @@
+package datawave.query.util.sortedset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+import datawave.webservice.query.exception.DatawaveErrorCode;
+import datawave.webservice.query.exception.QueryException;
+import org.apache.log4j.Logger;
+
+/**
+ * A FileSortedSet that persists to a file on the local disk as a sequence of fixed size blocks, and reads the persisted file back through memory mapped
+ * buffers. The first element of every block is kept in a small block index so that tailSet, subSet, and contains only have to scan the one block that may
+ * contain the element instead of the whole file. Iterating over a persisted set reads straight out of the page cache without going through an object stream.
+ * 
+ * The persisted file is laid out as follows:
+ * <ul>
+ * <li>blocks: each block is blockSize bytes (or a multiple thereof for an element larger than a block) containing length prefixed encoded elements, terminated
+ * by a -1 length if there is room</li>
+ * <li>block index: the number of blocks, then for each block its offset, the ordinal of its first element, and its first element (length prefixed)</li>
+ * <li>trailer: the number of elements, the offset of the block index, and a magic number</li>
+ * </ul>
+ * 
+ * @param <E>
+ */
+public class MappedFileSortedSet<E extends Serializable> extends FileSortedSet<E> {
+    private static final Logger log = Logger.getLogger(MappedFileSortedSet.class);
+    
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    
+    private static final int MAGIC = 0x4d465353;
+    private static final int TRAILER_SIZE = 16;
+    private static final int END_OF_BLOCK = -1;
+    
+    // the largest region that will be mapped at once
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+    
+    protected final ElementCodec<E> codec;
+    protected final int blockSize;
+    
+    // the reader for the persisted file, opened lazily
+    private MappedRun run = null;
+    
+    /**
+     * Converts elements to and from the bytes stored in the blocks
+     * 
+     * @param <E>
+     */
+    public interface ElementCodec<E> {
+        byte[] encode(E element) throws IOException;
+        
+        E decode(byte[] bytes) throws IOException;
+    }
+    
+    /**
+     * A codec for KeyValueSerializable using the compact OffHeapKeyValueSortedSet encoding
+     */
+    public static class KeyValueCodec implements ElementCodec<KeyValueSerializable> {
+        @Override
+        public byte[] encode(KeyValueSerializable element) {
+            return OffHeapKeyValueSortedSet.encode(element);
+        }
+        
+        @Override
+        public KeyValueSerializable decode(byte[] bytes) {
+            return OffHeapKeyValueSortedSet.decode(bytes);
+        }
+    }
+    
+    /**
+     * A codec for any serializable element using java serialization. A null element is written as the NULL_OBJECT placeholder.
+     * 
+     * @param <E>
+     */
+    public static class SerializationCodec<E extends Serializable> implements ElementCodec<E> {
+        @Override
+        public byte[] encode(E element) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+                stream.writeObject(element == null ? NULL_OBJECT : element);
+            }
+            return bytes.toByteArray();
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public E decode(byte[] bytes) throws IOException {
+            try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                Object o = stream.readObject();
+                return (o instanceof NullObject ? null : (E) o);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unable to decode element", e);
+            }
+        }
+    }
+    
+    /**
+     * A file handler for a file on the local disk
+     */
+    public static class SortedSetMappedFileHandler implements SortedSetFileHandler {
+        private final File file;
+        
+        public SortedSetMappedFileHandler(File file) {
+            this.file = file;
+        }
+        
+        public File getFile() {
+            return file;
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FileInputStream(file);
+        }
+        
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return new FileOutputStream(file);
+        }
+        
+        @Override
+        public long getSize() {
+            return (file.exists() ? file.length() : -1);
+        }
+        
+        @Override
+        public void deleteFile() {
+            if (log.isDebugEnabled()) {
+                log.debug("Deleting " + file);
+            }
+            if (file.exists() && !file.delete()) {
+                log.error("Failed to delete file " + file);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+    }
+    
+    /**
+     * Create a mapped file sorted set from another one
+     * 
+     * @param other
+     */
+    public MappedFileSortedSet(MappedFileSortedSet<E> other) {
+        super(other);
+        this.codec = other.codec;
+        this.blockSize = other.blockSize;
+    }
+    
+    /**
+     * Create a mapped file sorted set
+     * 
+     * @param comparator
+     * @param handler
+     * @param codec
+     * @param blockSize
+     * @param persisted
+     */
+    public MappedFileSortedSet(Comparator<? super E> comparator, SortedSetMappedFileHandler handler, ElementCodec<E> codec, int blockSize, boolean persisted) {
+        super(comparator, handler, persisted);
+        this.codec = codec;
+        this.blockSize = blockSize;
+    }
+    
+    /**
+     * Create an unpersisted mapped file sorted set that uses the supplied set as its in-memory storage in place of a TreeSet. The set is used as is (not
+     * copied).
+     * 
+     * @param buffer
+     * @param handler
+     * @param codec
+     * @param blockSize
+     * @return the mapped file sorted set
+     */
+    public static <E extends Serializable> MappedFileSortedSet<E> withBuffer(SortedSet<E> buffer, SortedSetMappedFileHandler handler, ElementCodec<E> codec,
+                    int blockSize) {
+        MappedFileSortedSet<E> fileSortedSet = new MappedFileSortedSet<>(buffer.comparator(), handler, codec, blockSize, false);
+        fileSortedSet.set = buffer;
+        return fileSortedSet;
+    }
+    
+    /**
+     * Create a persisted mapped file sorted set directly from another sorted set using the set's iterator, which avoids pulling all of its entries into memory
+     * at once.
+     * 
+     * @param set
+     * @param handler
+     * @param codec
+     * @param blockSize
+     * @return the persisted mapped file sorted set
+     * @throws IOException
+     */
+    public static <E extends Serializable> MappedFileSortedSet<E> createPersisted(SortedSet<E> set, SortedSetMappedFileHandler handler, ElementCodec<E> codec,
+                    int blockSize) throws IOException {
+        MappedFileSortedSet<E> fileSortedSet = new MappedFileSortedSet<>(set.comparator(), handler, codec, blockSize, false);
+        fileSortedSet.persist(set);
+        fileSortedSet.persisted = true;
+        return fileSortedSet;
+    }
+    
+    @Override
+    public FileSortedSet<E> copy() {
+        return new MappedFileSortedSet<>(this);
+    }
+    
+    protected File getFile() {
+        return ((SortedSetMappedFileHandler) handler).getFile();
+    }
+    
+    /**
+     * Write the supplied set out as a sequence of blocks followed by the block index.
+     */
+    @Override
+    protected void persist(SortedSet<E> set) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Persisting " + handler);
+        }
+        long start = System.currentTimeMillis();
+        closeRun();
+        
+        List<Long> blockOffsets = new ArrayList<>();
+        List<Integer> blockOrdinals = new ArrayList<>();
+        List<byte[]> blockFirsts = new ArrayList<>();
+        
+        int count = 0;
+        long position = 0;
+        try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            ByteBuffer block = ByteBuffer.allocate(blockSize);
+            for (E element : set) {
+                byte[] bytes = codec.encode(element);
+                int needed = 4 + bytes.length;
+                if (block.position() > 0 && block.remaining() < needed) {
+                    position += writeBlock(channel, block);
+                }
+                if (block.position() == 0) {
+                    blockOffsets.add(position);
+                    blockOrdinals.add(count);
+                    blockFirsts.add(bytes);
+                }
+                if (needed > blockSize) {
+                    // an element larger than a block gets a run of blocks to itself
+                    ByteBuffer large = ByteBuffer.allocate((int) roundUp(needed + 4, blockSize));
+                    large.putInt(bytes.length).put(bytes);
+                    position += writeBlock(channel, large);
+                } else {
+                    block.putInt(bytes.length).put(bytes);
+                }
+                count++;
+            }
+            if (block.position() > 0) {
+                position += writeBlock(channel, block);
+            }
+            
+            // now the block index and the trailer
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            ByteBuffer entry = ByteBuffer.allocate(16);
+            entry.putInt(blockOffsets.size());
+            index.write(entry.array(), 0, entry.position());
+            for (int i = 0; i < blockOffsets.size(); i++) {
+                entry.clear();
+                entry.putLong(blockOffsets.get(i)).putInt(blockOrdinals.get(i)).putInt(blockFirsts.get(i).length);
+                index.write(entry.array(), 0, entry.position());
+                index.write(blockFirsts.get(i));
+            }
+            entry.clear();
+            entry.putInt(count).putLong(position).putInt(MAGIC);
+            index.write(entry.array(), 0, entry.position());
+            
+            ByteBuffer buffer = ByteBuffer.wrap(index.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        
+        // verify that the trailer can be read back
+        MappedRun verify = new MappedRun();
+        if (verify.size != count) {
+            throw new IOException("Failed to verify file size was written for " + handler);
+        }
+        this.run = verify;
+        
+        if (log.isDebugEnabled()) {
+            long delta = System.currentTimeMillis() - start;
+            log.debug("Persisting " + handler + " took " + delta + "ms");
+        }
+    }
+    
+    /**
+     * Write out a full block, padding it with an end of block marker if there is room
+     * 
+     * @return the number of bytes written
+     */
+    private static long writeBlock(FileChannel channel, ByteBuffer block) throws IOException {
+        if (block.remaining() >= 4) {
+            block.putInt(END_OF_BLOCK);
+        }
+        block.clear();
+        long written = 0;
+        while (block.hasRemaining()) {
+            written += channel.write(block);
+        }
+        block.clear();
+        return written;
+    }
+    
+    private static long roundUp(long value, int multiple) {
+        return ((value + multiple - 1) / multiple) * multiple;
+    }
+    
+    @Override
+    protected int readSize() throws IOException {
+        return getRun().size;
+    }
+    
+    private MappedRun getRun() throws IOException {
+        if (run == null) {
+            run = new MappedRun();
+        }
+        return run;
+    }
+    
+    private void closeRun() {
+        if (run != null) {
+            run.close();
+            run = null;
+        }
+    }
+    
+    private MappedRun getPersistedRun() {
+        try {
+            return getRun();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read file " + handler, e);
+        }
+    }
+    
+    @Override
+    public void load() throws IOException, ClassNotFoundException {
+        if (persisted) {
+            try {
+                for (Iterator<E> it = getRun().iterator(0); it.hasNext();) {
+                    set.add(it.next());
+                }
+            } catch (Exception e) {
+                throw new IOException("Unable to read file into a complete set", e);
+            }
+            closeRun();
+            handler.deleteFile();
+            persisted = false;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean contains(Object o) {
+        if (persisted) {
+            E t = (E) o;
+            Iterator<E> it = getPersistedRun().tailIterator(t);
+            return it.hasNext() && compare(it.next(), t) == 0;
+        } else {
+            return set.contains(o);
+        }
+    }
+    
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (persisted) {
+            for (Object o : c) {
+                if (!contains(o)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return set.containsAll(c);
+        }
+    }
+    
+    @Override
+    public Iterator<E> iterator() {
+        if (persisted) {
+            return getPersistedRun().iterator(0);
+        } else {
+            return set.iterator();
+        }
+    }
+    
+    @Override
+    public Object[] toArray() {
+        if (persisted) {
+            return toArray(new Object[0]);
+        } else {
+            return set.toArray();
+        }
+    }
+    
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public <T> T[] toArray(T[] a) {
+        if (persisted) {
+            MappedRun mappedRun = getPersistedRun();
+            T[] dest = (a.length >= mappedRun.size ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), mappedRun.size));
+            int i = 0;
+            for (Iterator<E> it = mappedRun.iterator(0); it.hasNext();) {
+                dest[i++] = (T) it.next();
+            }
+            // ensure extra elements are set to null
+            for (; i < dest.length; i++) {
+                dest[i] = null;
+            }
+            return dest;
+        } else {
+            return set.toArray(a);
+        }
+    }
+    
+    @Override
+    public void clear() {
+        closeRun();
+        super.clear();
+    }
+    
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        if (persisted) {
+            return new MappedRunView(fromElement, true, toElement, true);
+        } else {
+            return set.subSet(fromElement, toElement);
+        }
+    }
+    
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        if (persisted) {
+            return new MappedRunView(null, false, toElement, true);
+        } else {
+            return set.headSet(toElement);
+        }
+    }
+    
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        if (persisted) {
+            return new MappedRunView(fromElement, true, null, false);
+        } else {
+            return set.tailSet(fromElement);
+        }
+    }
+    
+    @Override
+    public E first() {
+        if (persisted) {
+            Iterator<E> it = getPersistedRun().iterator(0);
+            if (it.hasNext()) {
+                return it.next();
+            }
+            QueryException qe = new QueryException(DatawaveErrorCode.FETCH_FIRST_ELEMENT_ERROR);
+            throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+        } else {
+            return super.first();
+        }
+    }
+    
+    @Override
+    public E last() {
+        if (persisted) {
+            MappedRun mappedRun = getPersistedRun();
+            E last = null;
+            boolean gotLast = false;
+            // only the last block needs to be read
+            for (Iterator<E> it = mappedRun.iterator(Math.max(0, mappedRun.blockOffsets.length - 1)); it.hasNext();) {
+                last = it.next();
+                gotLast = true;
+            }
+            if (gotLast) {
+                return last;
+            }
+            QueryException qe = new QueryException(DatawaveErrorCode.FETCH_LAST_ELEMENT_ERROR);
+            throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+        } else {
+            return super.last();
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private int compare(E o1, E o2) {
+        Comparator<? super E> comparator = set.comparator();
+        if (comparator != null) {
+            return comparator.compare(o1, o2);
+        }
+        return ((Comparable<? super E>) o1).compareTo(o2);
+    }
+    
+    /********* Some sub classes ***********/
+    
+    /**
+     * The reader for a persisted file. The block index is read into memory and the blocks are mapped in segments of whole blocks.
+     */
+    protected class MappedRun {
+        private final int size;
+        private final long[] blockOffsets;
+        private final int[] blockOrdinals;
+        private final List<E> blockFirsts;
+        private final long dataEnd;
+        
+        // the mapped segments, each holding a run of whole blocks
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        private final List<Long> segmentOffsets = new ArrayList<>();
+        private final int[] blockSegments;
+        private boolean closed = false;
+        
+        MappedRun() throws IOException {
+            try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ)) {
+                long fileSize = channel.size();
+                if (fileSize < TRAILER_SIZE) {
+                    throw new IOException("File is too small to contain a trailer: " + handler);
+                }
+                ByteBuffer trailer = read(channel, fileSize - TRAILER_SIZE, TRAILER_SIZE);
+                this.size = trailer.getInt();
+                this.dataEnd = trailer.getLong();
+                if (trailer.getInt() != MAGIC) {
+                    throw new IOException("File does not contain a valid trailer: " + handler);
+                }
+                
+                ByteBuffer index = read(channel, dataEnd, (int) (fileSize - TRAILER_SIZE - dataEnd));
+                int numBlocks = index.getInt();
+                this.blockOffsets = new long[numBlocks];
+                this.blockOrdinals = new int[numBlocks];
+                this.blockFirsts = new ArrayList<>(numBlocks);
+                for (int i = 0; i < numBlocks; i++) {
+                    blockOffsets[i] = index.getLong();
+                    blockOrdinals[i] = index.getInt();
+                    byte[] bytes = new byte[index.getInt()];
+                    index.get(bytes);
+                    blockFirsts.add(codec.decode(bytes));
+                }
+                
+                // map the blocks in segments, never splitting a block across segments
+                this.blockSegments = new int[numBlocks];
+                int block = 0;
+                while (block < numBlocks) {
+                    long segmentStart = blockOffsets[block];
+                    int next = block + 1;
+                    while (next < numBlocks && blockOffsets[next] + blockLength(next) - segmentStart <= MAX_SEGMENT_SIZE) {
+                        next++;
+                    }
+                    long segmentEnd = (next < numBlocks ? blockOffsets[next] : dataEnd);
+                    segments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+                    segmentOffsets.add(segmentStart);
+                    for (int i = block; i < next; i++) {
+                        blockSegments[i] = segments.size() - 1;
+                    }
+                    block = next;
+                }
+            }
+        }
+        
+        private ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file " + handler);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+        
+        private long blockLength(int block) {
+            return (block + 1 < blockOffsets.length ? blockOffsets[block + 1] : dataEnd) - blockOffsets[block];
+        }
+        
+        /**
+         * Get a view of a block
+         */
+        private ByteBuffer getBlock(int block) {
+            checkOpen();
+            ByteBuffer buffer = segments.get(blockSegments[block]).duplicate();
+            int start = (int) (blockOffsets[block] - segmentOffsets.get(blockSegments[block]));
+            buffer.position(start);
+            buffer.limit(start + (int) blockLength(block));
+            return buffer.slice();
+        }
+        
+        /**
+         * Find the last block whose first element is less than or equal to the element
+         * 
+         * @return the block, or -1 if the element precedes the first block
+         */
+        private int findBlock(E element) {
+            int low = 0;
+            int high = blockOffsets.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (compare(blockFirsts.get(mid), element) <= 0) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+        
+        Iterator<E> iterator(int block) {
+            return new MappedRunIterator(block);
+        }
+        
+        /**
+         * Get an iterator positioned at the first element greater than or equal to the supplied element
+         */
+        Iterator<E> tailIterator(E fromElement) {
+            MappedRunIterator it = new MappedRunIterator(Math.max(0, findBlock(fromElement)));
+            it.skipTo(fromElement);
+            return it;
+        }
+        
+        /**
+         * Unmap the segments now, rather than when they are garbage collected, so that the file can be deleted and its pages released. Reading an unmapped
+         * segment would crash the JVM, so the iterators of a closed run fail instead.
+         */
+        void close() {
+            closed = true;
+            for (MappedByteBuffer segment : segments) {
+                DirectMemoryBudget.clean(segment);
+            }
+            segments.clear();
+            segmentOffsets.clear();
+        }
+        
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("The mapped file " + handler + " has been closed");
+            }
+        }
+        
+        /**
+         * This is the iterator for a persisted MappedFileSortedSet
+         */
+        protected class MappedRunIterator implements Iterator<E> {
+            private int block;
+            private ByteBuffer buffer = null;
+            private E next = null;
+            private boolean hasNext = false;
+            
+            MappedRunIterator(int block) {
+                this.block = block;
+                if (block < blockOffsets.length) {
+                    this.buffer = getBlock(block);
+                }
+                advance();
+            }
+            
+            private void advance() {
+                checkOpen();
+                hasNext = false;
+                next = null;
+                while (buffer != null) {
+                    if (buffer.remaining() >= 4) {
+                        int length = buffer.getInt();
+                        if (length != END_OF_BLOCK) {
+                            byte[] bytes = new byte[length];
+                            buffer.get(bytes);
+                            try {
+                                next = codec.decode(bytes);
+                            } catch (IOException e) {
+                                throw new IllegalStateException("Unable to get next element from file " + handler, e);
+                            }
+                            hasNext = true;
+                            return;
+                        }
+                    }
+                    block++;
+                    buffer = (block < blockOffsets.length ? getBlock(block) : null);
+                }
+            }
+            
+            void skipTo(E fromElement) {
+                while (hasNext && compare(next, fromElement) < 0) {
+                    advance();
+                }
+            }
+            
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+            
+            @Override
+            public E next() {
+                if (!hasNext) {
+                    QueryException qe = new QueryException(DatawaveErrorCode.FETCH_NEXT_ELEMENT_ERROR);
+                    throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+                }
+                E result = next;
+                advance();
+                return result;
+            }
+            
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Cannot remove elements from a persisted file.  Please call load() first.");
+            }
+        }
+    }
+    
+    /**
+     * A read only view of a range of a persisted MappedFileSortedSet
+     */
+    protected class MappedRunView extends AbstractSet<E> implements SortedSet<E> {
+        private final E from;
+        private final boolean hasFrom;
+        private final E to;
+        private final boolean hasTo;
+        
+        MappedRunView(E from, boolean hasFrom, E to, boolean hasTo) {
+            if (hasFrom && hasTo && compare(from, to) > 0) {
+                throw new IllegalArgumentException("The start is greater than the end");
+            }
+            this.from = from;
+            this.hasFrom = hasFrom;
+            this.to = to;
+            this.hasTo = hasTo;
+        }
+        
+        private boolean inRange(E element) {
+            return (!hasFrom || compare(element, from) >= 0) && (!hasTo || compare(element, to) < 0);
+        }
+        
+        @Override
+        public Iterator<E> iterator() {
+            final Iterator<E> it = (hasFrom ? getPersistedRun().tailIterator(from) : getPersistedRun().iterator(0));
+            return new Iterator<E>() {
+                private E next = null;
+                private boolean hasNext = advance();
+                
+                private boolean advance() {
+                    if (it.hasNext()) {
+                        next = it.next();
+                        return (!hasTo || compare(next, to) < 0);
+                    }
+                    return false;
+                }
+                
+                @Override
+                public boolean hasNext() {
+                    return hasNext;
+                }
+                
+                @Override
+                public E next() {
+                    if (!hasNext) {
+                        QueryException qe = new QueryException(DatawaveErrorCode.FETCH_NEXT_ELEMENT_ERROR);
+                        throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+                    }
+                    E result = next;
+                    hasNext = advance();
+                    return result;
+                }
+            };
+        }
+        
+        @Override
+        public int size() {
+            int count = 0;
+            for (Iterator<E> it = iterator(); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean contains(Object o) {
+            return inRange((E) o) && MappedFileSortedSet.this.contains(o);
+        }
+        
+        @Override
+        public Comparator<? super E> comparator() {
+            return MappedFileSortedSet.this.comparator();
+        }
+        
+        @Override
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return new MappedRunView(max(fromElement), true, min(toElement), true);
+        }
+        
+        @Override
+        public SortedSet<E> headSet(E toElement) {
+            return new MappedRunView(from, hasFrom, min(toElement), true);
+        }
+        
+        @Override
+        public SortedSet<E> tailSet(E fromElement) {
+            return new MappedRunView(max(fromElement), true, to, hasTo);
+        }
+        
+        private E max(E fromElement) {
+            return (hasFrom && compare(from, fromElement) > 0 ? from : fromElement);
+        }
+        
+        private E min(E toElement) {
+            return (hasTo && compare(to, toElement) < 0 ? to : toElement);
+        }
+        
+        @Override
+        public E first() {
+            return iterator().next();
+        }
+        
+        @Override
+        public E last() {
+            E last = null;
+            boolean gotLast = false;
+            for (E element : this) {
+                last = element;
+                gotLast = true;
+            }
+            if (!gotLast) {
+                QueryException qe = new QueryException(DatawaveErrorCode.FETCH_LAST_ELEMENT_ERROR);
+                throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+            }
+            return last;
+        }
+    }
+}
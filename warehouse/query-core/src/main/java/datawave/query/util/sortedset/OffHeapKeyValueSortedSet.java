@@ -0,0 +1,224 @@
+package datawave.query.util.sortedset;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.SortedSet;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+
+/**
+ * A sorted set of KeyValueSerializable objects that are held in an OffHeapSortedByteSet. Each key/value is encoded into a byte array whose order under the
+ * ByteArrayComparator is the same as the natural ordering of KeyValueSerializable, so the set can be used anywhere a TreeSet of KeyValueSerializable would be
+ * used (e.g. as the in-memory buffer of an HdfsBackedSortedSet) while keeping the buffered entries off of the heap.
+ * 
+ * The encoding is as follows:
+ * <ul>
+ * <li>row, column family, column qualifier, and column visibility: each byte is flipped into signed order, with 0x80 escaped as 0x80 0x81, and the field is
+ * terminated by 0x80 0x80</li>
+ * <li>timestamp: 8 bytes that sort in descending timestamp order</li>
+ * <li>deleted flag: 0x00 if deleted, 0x01 otherwise</li>
+ * <li>value: the raw bytes</li>
+ * </ul>
+ * 
+ * This class is not thread safe.
+ */
+public class OffHeapKeyValueSortedSet extends AbstractSet<KeyValueSerializable> implements SortedSet<KeyValueSerializable> {
+    private static final byte ESCAPE = (byte) 0x80;
+    private static final byte TERMINATOR = (byte) 0x80;
+    private static final byte ESCAPED = (byte) 0x81;
+    
+    protected final SortedSet<byte[]> set;
+    
+    public OffHeapKeyValueSortedSet() {
+        this(new OffHeapSortedByteSet());
+    }
+    
+    public OffHeapKeyValueSortedSet(int capacity) {
+        this(new OffHeapSortedByteSet(capacity));
+    }
+    
+    protected OffHeapKeyValueSortedSet(SortedSet<byte[]> set) {
+        this.set = set;
+    }
+    
+    @Override
+    public int size() {
+        return set.size();
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return set.isEmpty();
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof KeyValueSerializable) {
+            return set.contains(encode((KeyValueSerializable) o));
+        }
+        return false;
+    }
+    
+    @Override
+    public Iterator<KeyValueSerializable> iterator() {
+        final Iterator<byte[]> it = set.iterator();
+        return new Iterator<KeyValueSerializable>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+            
+            @Override
+            public KeyValueSerializable next() {
+                return decode(it.next());
+            }
+            
+            @Override
+            public void remove() {
+                it.remove();
+            }
+        };
+    }
+    
+    @Override
+    public boolean add(KeyValueSerializable e) {
+        return set.add(encode(e));
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        if (o instanceof KeyValueSerializable) {
+            return set.remove(encode((KeyValueSerializable) o));
+        }
+        return false;
+    }
+    
+    @Override
+    public void clear() {
+        set.clear();
+    }
+    
+    /**
+     * The entries are kept in their natural ordering
+     * 
+     * @return null
+     */
+    @Override
+    public Comparator<? super KeyValueSerializable> comparator() {
+        return null;
+    }
+    
+    @Override
+    public SortedSet<KeyValueSerializable> subSet(KeyValueSerializable fromElement, KeyValueSerializable toElement) {
+        return new OffHeapKeyValueSortedSet(set.subSet(encode(fromElement), encode(toElement)));
+    }
+    
+    @Override
+    public SortedSet<KeyValueSerializable> headSet(KeyValueSerializable toElement) {
+        return new OffHeapKeyValueSortedSet(set.headSet(encode(toElement)));
+    }
+    
+    @Override
+    public SortedSet<KeyValueSerializable> tailSet(KeyValueSerializable fromElement) {
+        return new OffHeapKeyValueSortedSet(set.tailSet(encode(fromElement)));
+    }
+    
+    @Override
+    public KeyValueSerializable first() {
+        return decode(set.first());
+    }
+    
+    @Override
+    public KeyValueSerializable last() {
+        return decode(set.last());
+    }
+    
+    /**
+     * Encode a key/value into a byte array that sorts the same as the key/value
+     * 
+     * @param keyValue
+     * @return the encoded key/value
+     */
+    public static byte[] encode(KeyValueSerializable keyValue) {
+        Key key = keyValue.key;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(key.getSize() + keyValue.value.length + 24);
+        encodeField(key.getRowData(), out);
+        encodeField(key.getColumnFamilyData(), out);
+        encodeField(key.getColumnQualifierData(), out);
+        encodeField(key.getColumnVisibilityData(), out);
+        
+        // descending timestamp order, with each byte flipped into signed order
+        long timestamp = ~key.getTimestamp() ^ Long.MIN_VALUE;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (timestamp >>> shift) ^ 0x80);
+        }
+        
+        // deleted keys sort first
+        out.write(key.isDeleted() ? 0 : 1);
+        
+        out.write(keyValue.value, 0, keyValue.value.length);
+        return out.toByteArray();
+    }
+    
+    /**
+     * Decode a key/value that was encoded by encode
+     * 
+     * @param bytes
+     * @return the key/value
+     */
+    public static KeyValueSerializable decode(byte[] bytes) {
+        int[] offset = new int[] {0};
+        byte[] row = decodeField(bytes, offset);
+        byte[] cf = decodeField(bytes, offset);
+        byte[] cq = decodeField(bytes, offset);
+        byte[] cv = decodeField(bytes, offset);
+        
+        long timestamp = 0;
+        for (int i = 0; i < 8; i++) {
+            timestamp = (timestamp << 8) | ((bytes[offset[0]++] ^ 0x80) & 0xFF);
+        }
+        timestamp = ~(timestamp ^ Long.MIN_VALUE);
+        
+        boolean deleted = (bytes[offset[0]++] == 0);
+        
+        byte[] value = new byte[bytes.length - offset[0]];
+        System.arraycopy(bytes, offset[0], value, 0, value.length);
+        
+        return new KeyValueSerializable(new Key(row, cf, cq, cv, timestamp, deleted, false), value);
+    }
+    
+    private static void encodeField(ByteSequence field, ByteArrayOutputStream out) {
+        for (int i = 0; i < field.length(); i++) {
+            byte b = (byte) (field.byteAt(i) ^ 0x80);
+            if (b == ESCAPE) {
+                out.write(ESCAPE);
+                out.write(ESCAPED);
+            } else {
+                out.write(b);
+            }
+        }
+        out.write(ESCAPE);
+        out.write(TERMINATOR);
+    }
+    
+    private static byte[] decodeField(byte[] bytes, int[] offset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = offset[0];
+        while (true) {
+            byte b = bytes[i++];
+            if (b == ESCAPE) {
+                if (bytes[i++] == TERMINATOR) {
+                    break;
+                }
+                out.write(0x00);
+            } else {
+                out.write(b ^ 0x80);
+            }
+        }
+        offset[0] = i;
+        return out.toByteArray();
+    }
+}
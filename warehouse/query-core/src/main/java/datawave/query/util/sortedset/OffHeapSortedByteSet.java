@@ -0,0 +1,681 @@
+package datawave.query.util.sortedset;
+
+import datawave.webservice.query.exception.DatawaveErrorCode;
+import datawave.webservice.query.exception.QueryException;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * This is a sorted set of byte arrays whose contents are stored outside of the java heap in direct byte buffer slabs. Only a handful of primitive arrays (entry
+ * addresses, lengths, hashes, a hash table and the sorted order) are kept on the heap, regardless of the number of entries, which keeps the garbage collector
+ * out of the picture when buffering large numbers of entries.
+ * 
+ * Adds are appended to the current slab and de-duplicated through an open addressing hash table. The sorted order (as defined by the ByteArrayComparator) is
+ * only computed when an operation requires it, and newly added entries are merged into the previously sorted entries. Removed entries are dropped from the
+ * index and the sorted order, but their space in the slabs is not reclaimed until the set is cleared.
+ * 
+ * The slabs are reserved against the {@link DirectMemoryBudget} shared by all of the sets, and are freed as soon as the set is cleared. Once the budget is
+ * spent, new slabs are allocated on the heap instead.
+ * 
+ * This class is not thread safe.
+ */
+public class OffHeapSortedByteSet extends AbstractSet<byte[]> implements SortedSet<byte[]> {
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+    public static final int DEFAULT_CAPACITY = 1024;
+    
+    private static final ByteArrayComparator COMPARATOR = new ByteArrayComparator();
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    
+    protected final int slabSize;
+    protected final DirectMemoryBudget budget;
+    protected final DirectMemoryBudget.Reservation reservation;
+    protected final List<ByteBuffer> slabs = new ArrayList<>();
+    protected ByteBuffer currentSlab = null;
+    
+    // per entry (in insertion order): the slab index in the upper 32 bits and offset in the lower 32 bits, the length (-1 if removed), and the hash
+    protected long[] addresses;
+    protected int[] lengths;
+    protected int[] hashes;
+    protected int entries = 0;
+    
+    // open addressing hash table of entry index + 1 (0 is empty, -1 is a removed entry)
+    protected int[] table;
+    protected int tableUsed = 0;
+    
+    // the entry indices in sorted order, valid for the first sortedEntries entries which cover the entries appended before entriesSorted
+    protected int[] order;
+    protected int sortedEntries = 0;
+    protected int entriesSorted = 0;
+    protected boolean orderValid = true;
+    
+    protected int size = 0;
+    protected int modCount = 0;
+    
+    public OffHeapSortedByteSet() {
+        this(DEFAULT_CAPACITY, DEFAULT_SLAB_SIZE);
+    }
+    
+    public OffHeapSortedByteSet(int capacity) {
+        this(capacity, DEFAULT_SLAB_SIZE);
+    }
+    
+    public OffHeapSortedByteSet(int capacity, int slabSize) {
+        this(capacity, slabSize, DirectMemoryBudget.getInstance());
+    }
+    
+    public OffHeapSortedByteSet(int capacity, int slabSize, DirectMemoryBudget budget) {
+        capacity = Math.max(capacity, 16);
+        this.slabSize = slabSize;
+        this.budget = budget;
+        this.reservation = budget.register(this);
+        this.addresses = new long[capacity];
+        this.lengths = new int[capacity];
+        this.hashes = new int[capacity];
+        this.order = new int[capacity];
+        this.table = new int[tableSize(capacity)];
+    }
+    
+    /************************** Overridden methods *************************/
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof byte[]) {
+            return find((byte[]) o, hash((byte[]) o)) >= 0;
+        }
+        return false;
+    }
+    
+    @Override
+    public Iterator<byte[]> iterator() {
+        ensureSorted();
+        return new OffHeapSortedByteSetIterator(0, size);
+    }
+    
+    @Override
+    public boolean add(byte[] e) {
+        int hash = hash(e);
+        if (find(e, hash) >= 0) {
+            return false;
+        }
+        modCount++;
+        int entry = append(e, hash);
+        insert(entry);
+        size++;
+        return true;
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof byte[])) {
+            return false;
+        }
+        byte[] term = (byte[]) o;
+        int slot = findSlot(term, hash(term));
+        if (slot < 0) {
+            return false;
+        }
+        removeEntry(slot);
+        return true;
+    }
+    
+    @Override
+    public void clear() {
+        modCount++;
+        for (ByteBuffer slab : slabs) {
+            budget.free(reservation, slab);
+        }
+        slabs.clear();
+        currentSlab = null;
+        entries = 0;
+        size = 0;
+        sortedEntries = 0;
+        entriesSorted = 0;
+        orderValid = true;
+        tableUsed = 0;
+        Arrays.fill(table, EMPTY);
+    }
+    
+    @Override
+    public Comparator<? super byte[]> comparator() {
+        return COMPARATOR;
+    }
+    
+    @Override
+    public SortedSet<byte[]> subSet(byte[] fromElement, byte[] toElement) {
+        return new OffHeapSortedByteSubSet(fromElement, toElement);
+    }
+    
+    @Override
+    public SortedSet<byte[]> headSet(byte[] toElement) {
+        return new OffHeapSortedByteSubSet(null, toElement);
+    }
+    
+    @Override
+    public SortedSet<byte[]> tailSet(byte[] fromElement) {
+        return new OffHeapSortedByteSubSet(fromElement, null);
+    }
+    
+    @Override
+    public byte[] first() {
+        if (size == 0) {
+            QueryException qe = new QueryException(DatawaveErrorCode.FETCH_FIRST_ELEMENT_ERROR);
+            throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+        }
+        return get(0);
+    }
+    
+    @Override
+    public byte[] last() {
+        if (size == 0) {
+            QueryException qe = new QueryException(DatawaveErrorCode.FETCH_LAST_ELEMENT_ERROR);
+            throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+        }
+        return get(size - 1);
+    }
+    
+    /***************************** Other public methods *************************/
+    
+    /**
+     * Get the element at the specified position in sorted order
+     * 
+     * @param index
+     * @return a copy of the element
+     */
+    public byte[] get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index is out of range");
+        }
+        ensureSorted();
+        return read(order[index]);
+    }
+    
+    /**
+     * Get the number of bytes of memory currently allocated by this set for its slabs, whether direct or on the heap
+     * 
+     * @return the number of allocated bytes
+     */
+    public long getAllocatedBytes() {
+        long allocated = 0;
+        for (ByteBuffer slab : slabs) {
+            allocated += slab.capacity();
+        }
+        return allocated;
+    }
+    
+    /******************************* The protected stuff ***************************/
+    
+    protected static int tableSize(int capacity) {
+        return Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+    }
+    
+    protected static int hash(byte[] term) {
+        int hash = Arrays.hashCode(term);
+        // spread the bits as the table size is a power of 2
+        return hash ^ (hash >>> 16);
+    }
+    
+    /**
+     * Copy the term into the slabs and record a new entry for it
+     * 
+     * @param term
+     * @param hash
+     * @return the new entry index
+     */
+    protected int append(byte[] term, int hash) {
+        if (currentSlab == null || currentSlab.remaining() < term.length) {
+            int capacity = Math.max(slabSize, term.length);
+            currentSlab = budget.allocate(reservation, capacity);
+            if (currentSlab == null) {
+                currentSlab = ByteBuffer.allocate(capacity);
+            }
+            slabs.add(currentSlab);
+        }
+        int offset = currentSlab.position();
+        currentSlab.put(term);
+        
+        if (entries == addresses.length) {
+            int newCapacity = (addresses.length * 3) / 2 + 1;
+            addresses = Arrays.copyOf(addresses, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+            hashes = Arrays.copyOf(hashes, newCapacity);
+            order = Arrays.copyOf(order, newCapacity);
+        }
+        int entry = entries++;
+        addresses[entry] = (((long) (slabs.size() - 1)) << 32) | offset;
+        lengths[entry] = term.length;
+        hashes[entry] = hash;
+        return entry;
+    }
+    
+    /**
+     * Add the entry to the hash table, growing the table as needed
+     * 
+     * @param entry
+     */
+    protected void insert(int entry) {
+        if ((tableUsed + 1) * 4 > table.length * 3) {
+            rehash(tableSize(size + 1));
+        }
+        int mask = table.length - 1;
+        int slot = hashes[entry] & mask;
+        while (table[slot] != EMPTY && table[slot] != DELETED) {
+            slot = (slot + 1) & mask;
+        }
+        if (table[slot] == EMPTY) {
+            tableUsed++;
+        }
+        table[slot] = entry + 1;
+        orderValid = false;
+    }
+    
+    protected void rehash(int newTableSize) {
+        table = new int[newTableSize];
+        tableUsed = 0;
+        int mask = newTableSize - 1;
+        for (int entry = 0; entry < entries; entry++) {
+            if (lengths[entry] >= 0) {
+                int slot = hashes[entry] & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry + 1;
+                tableUsed++;
+            }
+        }
+    }
+    
+    protected void removeEntry(int slot) {
+        modCount++;
+        int entry = table[slot] - 1;
+        if (entry < entriesSorted) {
+            // close the gap in the sorted order, which stays sorted, rather than sorting everything again
+            int index = indexOf(entry);
+            System.arraycopy(order, index + 1, order, index, sortedEntries - index - 1);
+            sortedEntries--;
+        }
+        table[slot] = DELETED;
+        lengths[entry] = -1;
+        size--;
+    }
+    
+    /**
+     * A binary search of the sorted order for an entry that is in it
+     * 
+     * @param entry
+     * @return the index of the entry in the sorted order
+     */
+    protected int indexOf(int entry) {
+        int start = 0;
+        int end = sortedEntries - 1;
+        while (start <= end) {
+            int middle = (start + end) >>> 1;
+            int comparison = compare(order[middle], entry);
+            
+            if (comparison < 0)
+                start = middle + 1;
+            else if (comparison > 0)
+                end = middle - 1;
+            else
+                return middle;
+        }
+        throw new IllegalStateException("Entry " + entry + " is not in the sorted order");
+    }
+    
+    /**
+     * Find the hash table slot for the term
+     * 
+     * @param term
+     * @param hash
+     * @return the slot, -1 if not found
+     */
+    protected int findSlot(byte[] term, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != EMPTY) {
+            int entry = table[slot] - 1;
+            if (entry >= 0 && hashes[entry] == hash && compare(entry, term) == 0) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    /**
+     * Find the entry for the term
+     * 
+     * @param term
+     * @param hash
+     * @return the entry index, -1 if not found
+     */
+    protected int find(byte[] term, int hash) {
+        int slot = findSlot(term, hash);
+        return (slot < 0 ? -1 : table[slot] - 1);
+    }
+    
+    protected byte[] read(int entry) {
+        long address = addresses[entry];
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        byte[] term = new byte[lengths[entry]];
+        for (int i = 0; i < term.length; i++) {
+            term[i] = slab.get(offset + i);
+        }
+        return term;
+    }
+    
+    /**
+     * Compare an entry to a term in place, consistent with the ByteArrayComparator
+     */
+    protected int compare(int entry, byte[] term) {
+        long address = addresses[entry];
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        int dataSize = lengths[entry];
+        int minSize = Math.min(dataSize, term.length);
+        for (int i = 0; i < minSize; i++) {
+            int comparison = slab.get(offset + i) - term[i];
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return dataSize - term.length;
+    }
+    
+    /**
+     * Compare two entries in place, consistent with the ByteArrayComparator
+     */
+    protected int compare(int entry1, int entry2) {
+        long address1 = addresses[entry1];
+        long address2 = addresses[entry2];
+        ByteBuffer slab1 = slabs.get((int) (address1 >>> 32));
+        ByteBuffer slab2 = slabs.get((int) (address2 >>> 32));
+        int offset1 = (int) address1;
+        int offset2 = (int) address2;
+        int minSize = Math.min(lengths[entry1], lengths[entry2]);
+        for (int i = 0; i < minSize; i++) {
+            int comparison = slab1.get(offset1 + i) - slab2.get(offset2 + i);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return lengths[entry1] - lengths[entry2];
+    }
+    
+    /**
+     * Bring the sorted order up to date. The entries added since the last sort are sorted and then merged with the previously sorted entries.
+     */
+    protected void ensureSorted() {
+        if (orderValid) {
+            return;
+        }
+        
+        // gather the entries that are not yet in the sorted order. Entries are only ever appended, so these are the ones added since the last sort.
+        int[] pending = new int[size - sortedEntries];
+        int count = 0;
+        for (int entry = entriesSorted; entry < entries; entry++) {
+            if (lengths[entry] >= 0) {
+                pending[count++] = entry;
+            }
+        }
+        
+        int[] scratch = new int[count];
+        mergeSort(pending, scratch, 0, count);
+        
+        // merge the newly sorted entries into the previously sorted ones, back to front
+        int i = sortedEntries - 1;
+        int j = count - 1;
+        for (int k = sortedEntries + count - 1; j >= 0; k--) {
+            if (i >= 0 && compare(order[i], pending[j]) > 0) {
+                order[k] = order[i--];
+            } else {
+                order[k] = pending[j--];
+            }
+        }
+        
+        sortedEntries = size;
+        entriesSorted = entries;
+        orderValid = true;
+    }
+    
+    protected void mergeSort(int[] values, int[] scratch, int start, int end) {
+        int length = end - start;
+        if (length < 2) {
+            return;
+        }
+        if (length <= 16) {
+            // insertion sort for the small runs
+            for (int i = start + 1; i < end; i++) {
+                int value = values[i];
+                int j = i - 1;
+                while (j >= start && compare(values[j], value) > 0) {
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                values[j + 1] = value;
+            }
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        mergeSort(values, scratch, start, middle);
+        mergeSort(values, scratch, middle, end);
+        if (compare(values[middle - 1], values[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(values, start, scratch, start, length);
+        int i = start;
+        int j = middle;
+        for (int k = start; k < end; k++) {
+            if (j >= end || (i < middle && compare(scratch[i], scratch[j]) <= 0)) {
+                values[k] = scratch[i++];
+            } else {
+                values[k] = scratch[j++];
+            }
+        }
+    }
+    
+    /**
+     * A binary search of the sorted order
+     * 
+     * @param term
+     * @return the index if found, otherwise -(insertion point + 1)
+     */
+    protected int binarySearch(byte[] term) {
+        ensureSorted();
+        int start = 0;
+        int end = size - 1;
+        while (start <= end) {
+            int middle = (start + end) >>> 1;
+            int comparison = compare(order[middle], term);
+            
+            if (comparison < 0)
+                start = middle + 1;
+            else if (comparison > 0)
+                end = middle - 1;
+            else
+                return middle;
+        }
+        // return a negative index if not found so we know where it should go
+        return -(start + 1);
+    }
+    
+    protected class OffHeapSortedByteSetIterator implements Iterator<byte[]> {
+        protected int index;
+        protected int end;
+        protected int expectedModCount;
+        protected byte[] last = null;
+        
+        public OffHeapSortedByteSetIterator(int start, int end) {
+            this.expectedModCount = modCount;
+            this.index = start;
+            this.end = end;
+        }
+        
+        final void checkModCount() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            checkModCount();
+            return index < end;
+        }
+        
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                QueryException qe = new QueryException(DatawaveErrorCode.FETCH_NEXT_ELEMENT_ERROR);
+                throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+            }
+            last = read(order[index++]);
+            return last;
+        }
+        
+        @Override
+        public void remove() {
+            checkModCount();
+            if (last == null) {
+                throw new IllegalStateException("next needs to be called first");
+            }
+            OffHeapSortedByteSet.this.remove(last);
+            // the removed entry is dropped from the sorted order, so everything after it moves back one place
+            index--;
+            end--;
+            last = null;
+            expectedModCount = modCount;
+        }
+    }
+    
+    protected class OffHeapSortedByteSubSet extends AbstractSet<byte[]> implements SortedSet<byte[]> {
+        protected byte[] from;
+        protected byte[] to;
+        
+        public OffHeapSortedByteSubSet(byte[] from, byte[] to) {
+            if (from != null && to != null && COMPARATOR.compare(from, to) > 0) {
+                throw new IllegalArgumentException("The start is greater than the end");
+            }
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        public Comparator<? super byte[]> comparator() {
+            return COMPARATOR;
+        }
+        
+        @Override
+        public SortedSet<byte[]> subSet(byte[] fromElement, byte[] toElement) {
+            if ((from != null && COMPARATOR.compare(fromElement, from) < 0) || (to != null && COMPARATOR.compare(to, toElement) < 0)) {
+                throw new IllegalArgumentException("Cannot create subset outside of the range of this subset");
+            }
+            return OffHeapSortedByteSet.this.subSet(fromElement, toElement);
+        }
+        
+        @Override
+        public SortedSet<byte[]> headSet(byte[] toElement) {
+            return subSet(from, toElement);
+        }
+        
+        @Override
+        public SortedSet<byte[]> tailSet(byte[] fromElement) {
+            return subSet(fromElement, to);
+        }
+        
+        @Override
+        public byte[] first() {
+            int[] range = getRange();
+            if (range[0] >= range[1]) {
+                QueryException qe = new QueryException(DatawaveErrorCode.FETCH_FIRST_ELEMENT_ERROR);
+                throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+            }
+            return get(range[0]);
+        }
+        
+        @Override
+        public byte[] last() {
+            int[] range = getRange();
+            if (range[0] >= range[1]) {
+                QueryException qe = new QueryException(DatawaveErrorCode.FETCH_LAST_ELEMENT_ERROR);
+                throw (NoSuchElementException) (new NoSuchElementException().initCause(qe));
+            }
+            return get(range[1] - 1);
+        }
+        
+        @Override
+        public Iterator<byte[]> iterator() {
+            int[] range = getRange();
+            return new OffHeapSortedByteSetIterator(range[0], range[1]);
+        }
+        
+        @Override
+        public int size() {
+            int[] range = getRange();
+            return Math.max(0, range[1] - range[0]);
+        }
+        
+        @Override
+        public boolean contains(Object o) {
+            return inRange(o) && OffHeapSortedByteSet.this.contains(o);
+        }
+        
+        @Override
+        public boolean add(byte[] e) {
+            if (!inRange(e)) {
+                throw new IllegalArgumentException("Cannot add element outside of subset range");
+            }
+            return OffHeapSortedByteSet.this.add(e);
+        }
+        
+        @Override
+        public boolean remove(Object o) {
+            return inRange(o) && OffHeapSortedByteSet.this.remove(o);
+        }
+        
+        protected boolean inRange(Object o) {
+            if (!(o instanceof byte[])) {
+                return false;
+            }
+            byte[] e = (byte[]) o;
+            return (from == null || COMPARATOR.compare(e, from) >= 0) && (to == null || COMPARATOR.compare(e, to) < 0);
+        }
+        
+        /**
+         * Get the range of elements in the sorted order
+         * 
+         * @return int[] {firstIndex, endIndex (exclusive)}
+         */
+        protected int[] getRange() {
+            ensureSorted();
+            int start = (from == null ? 0 : binarySearch(from));
+            if (start < 0) {
+                start = -1 - start;
+            }
+            int end = (to == null ? size : binarySearch(to));
+            if (end < 0) {
+                end = -1 - end;
+            }
+            return new int[] {start, end};
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package datawave.query.attributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import datawave.query.DocumentSerialization;
+import datawave.query.function.deserializer.FlatDocumentDeserializer;
+import datawave.query.function.serializer.FlatDocumentSerializer;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class FlatDocumentTest {
+    
+    private static Document createDocument(String uid) {
+        Key eventKey = new Key("20190101_0", "datatype\0" + uid, "", "A&B", 1000L);
+        Key otherKey = new Key("20190101_0", "datatype\0" + uid, "", "C", 2000L);
+        
+        Document d = new Document(eventKey, true);
+        d.put("NAME", new Content("alice", eventKey, true));
+        d.put("NAME", new Content("bob", otherKey, true));
+        d.put("AGE", new Numeric("42", otherKey, true));
+        d.put("RECORD_ID", new Content(uid, eventKey, false));
+        
+        Document child = new Document(otherKey, true);
+        child.put("CHILD_NAME", new Content("carol", otherKey, true));
+        d.put("CHILD", child);
+        d.put("ZIP", new Content("12345", eventKey, true));
+        return d;
+    }
+    
+    /**
+     * @return the document as it would be read back from the Writable serialization
+     */
+    private static Document writableCopy(Document d, boolean reducedResponse) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        d.write(new DataOutputStream(bytes), reducedResponse);
+        Document copy = new Document();
+        copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        return copy;
+    }
+    
+    @Test
+    public void testRoundTrip() throws IOException {
+        Document d = createDocument("uid0");
+        
+        FlatDocumentWriter writer = new FlatDocumentWriter(false);
+        writer.add(d);
+        FlatDocumentReader reader = new FlatDocumentReader(writer.toByteArray());
+        
+        Assert.assertEquals(1, reader.size());
+        Document read = reader.get(0).toDocument();
+        Assert.assertEquals(writableCopy(d, false), read);
+        Assert.assertEquals(d.size(), read.size());
+        Assert.assertEquals(d.sizeInBytes(), read.sizeInBytes());
+        Assert.assertEquals(d.shardTimestamp, read.shardTimestamp);
+        
+        Attribute<?> zip = read.get("ZIP");
+        Assert.assertEquals(new ColumnVisibility("A&B"), zip.getColumnVisibility());
+        Assert.assertEquals(1000L, zip.getTimestamp());
+        
+        // a nested document keeps its metadata as well
+        Attribute<?> child = read.get("CHILD");
+        Assert.assertTrue(child.isMetadataSet());
+        Assert.assertEquals(d.get("CHILD").getColumnVisibility(), child.getColumnVisibility());
+        Assert.assertEquals(d.get("CHILD").getTimestamp(), child.getTimestamp());
+    }
+    
+    @Test
+    public void testReducedResponse() throws IOException {
+        Document d = createDocument("uid0");
+        
+        FlatDocumentWriter writer = new FlatDocumentWriter(true);
+        writer.add(d);
+        Document read = new FlatDocumentReader(writer.toByteArray()).get(0).toDocument();
+        
+        Assert.assertEquals(writableCopy(d, true), read);
+        Assert.assertFalse(read.get("ZIP").isMetadataSet());
+        Assert.assertFalse(read.get("CHILD").isMetadataSet());
+    }
+    
+    @Test
+    public void testLazyFields() throws IOException {
+        Document d = createDocument("uid0");
+        
+        FlatDocumentWriter writer = new FlatDocumentWriter(false);
+        writer.add(d);
+        FlatDocument flat = new FlatDocumentReader(writer.toByteArray()).get(0);
+        
+        Assert.assertEquals(Arrays.asList("AGE", "CHILD", "NAME", "RECORD_ID", "ZIP"), flat.getFieldNames());
+        Assert.assertEquals(d.size(), flat.getAttributeCount());
+        Assert.assertTrue(flat.containsKey("NAME"));
+        Assert.assertFalse(flat.containsKey("MISSING"));
+        Assert.assertNull(flat.get("MISSING"));
+        
+        Document expected = writableCopy(d, false);
+        for (String field : flat.getFieldNames()) {
+            Assert.assertEquals(expected.get(field), flat.get(field));
+        }
+        Assert.assertTrue(flat.get("NAME") instanceof Attributes);
+        Assert.assertTrue(flat.get("CHILD") instanceof Document);
+    }
+    
+    @Test
+    public void testBatch() throws IOException {
+        FlatDocumentWriter writer = new FlatDocumentWriter(false);
+        for (int i = 0; i < 10; i++) {
+            writer.add(createDocument("uid" + i));
+        }
+        int batchSize = writer.toByteArray().length;
+        
+        FlatDocumentReader reader = new FlatDocumentReader(writer.toByteArray());
+        Assert.assertEquals(10, reader.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("uid" + i, reader.get(i).get("RECORD_ID").getData().toString());
+            Assert.assertEquals(writableCopy(createDocument("uid" + i), false), reader.get(i).toDocument());
+        }
+        
+        // the dictionaries are written once for the batch
+        writer.reset();
+        writer.add(createDocument("uid0"));
+        Assert.assertTrue(batchSize < 10 * writer.toByteArray().length);
+    }
+    
+    @Test
+    public void testSerializer() {
+        Key key = new Key("20190101_0", "datatype\0uid0");
+        
+        // the small document is written uncompressed either way, the large one is over the minimum compression size
+        Document small = createDocument("uid0");
+        Document large = createDocument("uid0");
+        Key eventKey = new Key("20190101_0", "datatype\0uid0", "", "A&B", 1000L);
+        for (int i = 0; i < 1000; i++) {
+            large.put("TEXT", new Content("some text value " + i, eventKey, true));
+        }
+            
+        for (Document d : new Document[] {small, large}) {
+            for (boolean compress : new boolean[] {false, true}) {
+                FlatDocumentSerializer serializer = new FlatDocumentSerializer(false, compress);
+                Entry<Key,Value> serialized = serializer.apply(Maps.immutableEntry(key, d));
+                
+                boolean compressed = compress && d == large;
+                byte compression = compressed ? DocumentSerialization.GZIP : DocumentSerialization.NONE;
+                Assert.assertEquals(compression, serialized.getValue().get()[2]);
+                
+                FlatDocumentDeserializer deserializer = new FlatDocumentDeserializer();
+                Entry<Key,Document> deserialized = deserializer.apply(serialized);
+                Assert.assertEquals(key, deserialized.getKey());
+                Assert.assertEquals(writableCopy(d), deserialized.getValue());
+                Assert.assertEquals(deserialized.getValue(), deserializer.read(serialized.getValue()).get(0).toDocument());
+            }
+        }
+    }
+    
+    private static Document writableCopy(Document d) {
+        try {
+            return writableCopy(d, false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
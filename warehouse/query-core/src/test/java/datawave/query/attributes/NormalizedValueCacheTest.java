@@ -0,0 +1,72 @@
+package datawave.query.attributes;
+
+import datawave.data.type.LcNoDiacriticsType;
+import datawave.query.iterator.profile.QuerySpan;
+import datawave.query.util.TypeMetadata;
+import org.apache.accumulo.core.data.Key;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NormalizedValueCacheTest {
+    
+    private static final Key KEY = new Key("20190101_0", "datatype\u0000uid", "FOO\u0000Bar", "A");
+    
+    private static TypeMetadata typeMetadata() {
+        return new TypeMetadata().put("FOO", "datatype", LcNoDiacriticsType.class.getName());
+    }
+    
+    @Test
+    public void testSharedAcrossFactories() {
+        NormalizedValueCache cache = new NormalizedValueCache(1024 * 1024);
+        AttributeFactory first = new AttributeFactory(typeMetadata(), cache);
+        AttributeFactory second = new AttributeFactory(typeMetadata(), cache);
+        AttributeFactory uncached = new AttributeFactory(typeMetadata());
+        
+        Attribute<?> expected = uncached.create("FOO", "Bar", KEY, true);
+        Attribute<?> miss = first.create("FOO", "Bar", KEY, true);
+        Attribute<?> hit = second.create("FOO", "Bar", KEY, true);
+        
+        Assert.assertEquals(expected, miss);
+        Assert.assertEquals(expected, hit);
+        Assert.assertEquals("bar", ((TypeAttribute<?>) hit).getType().getNormalizedValue());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.size());
+        
+        first.create("FOO", "Baz", KEY, true);
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get(LcNoDiacriticsType.class, "Baz"));
+    }
+    
+    @Test
+    public void testBounded() {
+        NormalizedValueCache cache = new NormalizedValueCache(1024);
+        AttributeFactory factory = new AttributeFactory(typeMetadata(), cache);
+        for (int i = 0; i < 100; i++) {
+            factory.create("FOO", "value" + i, KEY, true);
+        }
+        Assert.assertTrue(cache.size() < 100);
+    }
+    
+    @Test
+    public void testRecordStats() {
+        NormalizedValueCache cache = new NormalizedValueCache(1024 * 1024);
+        AttributeFactory factory = new AttributeFactory(typeMetadata(), cache);
+        factory.create("FOO", "Bar", KEY, true);
+        factory.create("FOO", "Bar", KEY, true);
+        factory.create("FOO", "Bar", KEY, true);
+        
+        QuerySpan querySpan = new QuerySpan(null);
+        cache.recordStats(querySpan);
+        Assert.assertEquals(2, querySpan.getNormalizedValueCacheHits());
+        Assert.assertEquals(1, querySpan.getNormalizedValueCacheMisses());
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+        
+        factory.create("FOO", "Bar", KEY, true);
+        cache.recordStats(querySpan);
+        Assert.assertEquals(3, querySpan.getNormalizedValueCacheHits());
+        Assert.assertEquals(1, querySpan.getNormalizedValueCacheMisses());
+    }
+}
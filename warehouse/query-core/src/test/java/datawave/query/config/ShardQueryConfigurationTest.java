@@ -18,6 +18,7 @@ import datawave.query.DocumentSerialization;
 import datawave.query.function.DocumentPermutation;
 import datawave.query.function.DocumentProjection;
 import datawave.query.model.QueryModel;
+import datawave.query.tables.async.FairShareIndexLookupScheduler;
 import datawave.util.TableName;
 import datawave.webservice.query.QueryImpl;
 import org.junit.Assert;
@@ -159,6 +160,8 @@ public class ShardQueryConfigurationTest {
         Assert.assertNull(config.getIvaratorCacheBaseURIs());
         Assert.assertNull(config.getIvaratorFstHdfsBaseURIs());
         Assert.assertEquals(10000, config.getIvaratorCacheBufferSize());
+        Assert.assertFalse(config.isIvaratorCacheOffHeapBuffer());
+        Assert.assertFalse(config.isIvaratorCacheMappedFiles());
         Assert.assertEquals(100000, config.getIvaratorCacheScanPersistThreshold());
         Assert.assertEquals(3600000, config.getIvaratorCacheScanTimeout());
         Assert.assertEquals(11, config.getMaxFieldIndexRangeSplit());
@@ -166,6 +169,7 @@ public class ShardQueryConfigurationTest {
         Assert.assertEquals(33, config.getMaxIvaratorSources());
         Assert.assertEquals(25, config.getMaxEvaluationPipelines());
         Assert.assertEquals(25, config.getMaxPipelineCachedResults());
+        Assert.assertFalse(config.isOutOfOrderEvaluationPipeline());
         Assert.assertFalse(config.isExpandAllTerms());
         Assert.assertNull(config.getQueryModel());
         Assert.assertNull(config.getModelName());
@@ -173,6 +177,35 @@ public class ShardQueryConfigurationTest {
         Assert.assertFalse(config.isExpansionLimitedToModelContents());
         Assert.assertEquals(new QueryImpl(), config.getQuery());
         Assert.assertFalse(config.isCompressServerSideResults());
+        Assert.assertEquals(1, config.getResultBatchSize());
+        Assert.assertEquals(1024 * 1024, config.getResultBatchMaxBytes());
+        Assert.assertFalse(config.isCompiledEvaluation());
+        Assert.assertFalse(config.isLazyDocumentAssembly());
+        Assert.assertEquals(0, config.getNormalizedValueCacheBytes());
+        Assert.assertEquals(0, config.getPipelinedPlanningDays());
+        Assert.assertEquals(1, config.getPipelinedPlanningWindowsAhead());
+        Assert.assertFalse(config.isOrderTermsByCardinality());
+        Assert.assertEquals(0, config.getMaxTermCardinalityRatio(), 0);
+        Assert.assertNull(config.getShardFieldBloomFilterTableName());
+        Assert.assertNull(config.getShardFieldBloomFilterStartDate());
+        Assert.assertEquals(0, config.getIndexLookupSchedulerThreads());
+        Assert.assertEquals(FairShareIndexLookupScheduler.class.getName(), config.getIndexLookupSchedulerClass());
+        Assert.assertEquals(0, config.getIndexLookupSchedulerTargetLatency());
+        Assert.assertEquals(1, config.getIndexLookupPriority());
+        Assert.assertFalse(config.isTermDictionaryCacheEnabled());
+        Assert.assertEquals(100000, config.getTermDictionaryMaxTerms());
+        Assert.assertEquals(60, config.getTermDictionaryExpireMinutes());
+        Assert.assertEquals(5, config.getTermDictionaryRecentExpireMinutes());
+        Assert.assertEquals(256L * 1024 * 1024, config.getTermDictionaryMaxBytes());
+        Assert.assertEquals(0, config.getBooleanChunkSize());
+        Assert.assertEquals(4, config.getBooleanChunkThreads());
+        Assert.assertEquals(0, config.getBooleanChunkResultBudget());
+        Assert.assertEquals(0.95, config.getHedgedScanPercentile(), 0);
+        Assert.assertEquals(0.05, config.getHedgedScanMaxRate(), 0);
+        Assert.assertEquals(10, config.getHedgedScanMinDelay());
+        Assert.assertFalse(config.isBundleRangesByServer());
+        Assert.assertEquals(32, config.getMaxRangesPerBundle());
+        Assert.assertEquals(100000, config.getMaxBundleWork());
         Assert.assertFalse(config.isIndexOnlyFilterFunctionsEnabled());
         Assert.assertFalse(config.isCompositeFilterFunctionsEnabled());
         Assert.assertEquals(0, config.getGroupFieldsBatchSize());
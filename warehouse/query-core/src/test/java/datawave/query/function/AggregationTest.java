@@ -0,0 +1,65 @@
+package datawave.query.function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import datawave.query.attributes.Document;
+import datawave.query.iterator.aggregation.DocumentData;
+import datawave.query.predicate.TimeFilter;
+import datawave.query.util.TypeMetadata;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class AggregationTest {
+    
+    private static final Key DOC_KEY = new Key("20190101_0", "datatype\u0000uid", "", "A");
+    
+    private static DocumentData createDocumentData() {
+        List<Entry<Key,Value>> data = new ArrayList<>();
+        data.add(Maps.immutableEntry(new Key("20190101_0", "datatype\u0000uid", "BAR\u0000b1", "A"), new Value(new byte[0])));
+        data.add(Maps.immutableEntry(new Key("20190101_0", "datatype\u0000uid", "BAZ.1\u0000z1", "A"), new Value(new byte[0])));
+        data.add(Maps.immutableEntry(new Key("20190101_0", "datatype\u0000uid", "FOO\u0000f1", "A"), new Value(new byte[0])));
+        data.add(Maps.immutableEntry(new Key("20190101_0", "datatype\u0000uid", "FOO\u0000f2", "A"), new Value(new byte[0])));
+        return new DocumentData(DOC_KEY, Collections.singleton(DOC_KEY), data);
+    }
+    
+    private static Document aggregate(Aggregation aggregation) {
+        return aggregation.apply(Maps.immutableEntry(createDocumentData(), new Document())).getValue();
+    }
+    
+    @Test
+    public void testLazyAssembly() {
+        Document eager = aggregate(new Aggregation(TimeFilter.alwaysTrue(), new TypeMetadata(), null, false, false, false, null, true));
+        Assert.assertFalse(eager.hasDeferredRawData());
+        
+        Document lazy = aggregate(new Aggregation(TimeFilter.alwaysTrue(), new TypeMetadata(), null, false, false, false, null, true, Sets.newHashSet("FOO")));
+        Assert.assertTrue(lazy.hasDeferredRawData());
+        Assert.assertTrue(lazy.containsKey("FOO"));
+        Assert.assertEquals(eager.get("FOO"), lazy.get("FOO"));
+        Assert.assertFalse(lazy.containsKey("BAR"));
+        Assert.assertFalse(lazy.containsKey("BAZ"));
+        
+        lazy.consumeDeferredRawData();
+        Assert.assertFalse(lazy.hasDeferredRawData());
+        Assert.assertEquals(eager.getDictionary().keySet(), lazy.getDictionary().keySet());
+        Assert.assertEquals(eager.size(), lazy.size());
+        for (String field : eager.getDictionary().keySet()) {
+            Assert.assertEquals(eager.get(field), lazy.get(field));
+        }
+    }
+    
+    @Test
+    public void testNothingDeferred() {
+        Document lazy = aggregate(new Aggregation(TimeFilter.alwaysTrue(), new TypeMetadata(), null, false, false, false, null, true, Sets.newHashSet("FOO",
+                        "BAR", "BAZ")));
+        Assert.assertFalse(lazy.hasDeferredRawData());
+        Assert.assertTrue(lazy.containsKey("BAZ"));
+    }
+}
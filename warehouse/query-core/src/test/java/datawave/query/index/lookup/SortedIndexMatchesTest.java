@@ -0,0 +1,70 @@
+package datawave.query.index.lookup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import datawave.query.jexl.JexlNodeFactory;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+public class SortedIndexMatchesTest {
+    
+    private static ImmutableSortedSet<IndexMatch> buildMatches(String field, int start, int end, int step) {
+        JexlNode node = JexlNodeFactory.buildEQNode(field, "value");
+        ImmutableSortedSet.Builder<IndexMatch> builder = ImmutableSortedSet.naturalOrder();
+        for (int i = start; i < end; i += step) {
+            builder.add(new IndexMatch(String.format("uid%05d", i), node));
+        }
+        return builder.build();
+    }
+    
+    @Test
+    public void testGallop() {
+        List<IndexMatch> matches = buildMatches("FOO", 0, 100, 2).asList();
+        Assert.assertEquals(0, SortedIndexMatches.gallop(matches, 0, "uid00000"));
+        Assert.assertEquals(1, SortedIndexMatches.gallop(matches, 0, "uid00001"));
+        Assert.assertEquals(21, SortedIndexMatches.gallop(matches, 3, "uid00042"));
+        Assert.assertEquals(22, SortedIndexMatches.gallop(matches, 3, "uid00043"));
+        Assert.assertEquals(49, SortedIndexMatches.gallop(matches, 10, "uid00098"));
+        Assert.assertEquals(50, SortedIndexMatches.gallop(matches, 10, "uid00099"));
+        Assert.assertEquals(30, SortedIndexMatches.gallop(matches, 30, "uid00010"));
+    }
+    
+    @Test
+    public void testIntersectMatchesHashedIntersection() {
+        ImmutableSortedSet<IndexMatch> left = buildMatches("FOO", 0, 1000, 3);
+        ImmutableSortedSet<IndexMatch> right = buildMatches("BAR", 500, 600, 2);
+        List<JexlNode> delayedNodes = Collections.singletonList(JexlNodeFactory.buildEQNode("BAZ", "value"));
+        
+        Set<IndexMatch> sorted = new IndexInfo().intersect(left, right, delayedNodes);
+        Set<IndexMatch> hashed = new IndexInfo().intersect(new HashSet<>(left), new HashSet<>(right), delayedNodes);
+        Assert.assertEquals(16, sorted.size());
+        Assert.assertEquals(hashed, sorted);
+        for (IndexMatch match : sorted) {
+            Assert.assertEquals(3, match.myNodes.size());
+        }
+    }
+    
+    @Test
+    public void testUnion() {
+        IndexInfo left = new IndexInfo(buildMatches("FOO", 0, 10, 2));
+        left.applyNode(JexlNodeFactory.buildEQNode("FOO", "value"));
+        IndexInfo right = new IndexInfo(buildMatches("BAR", 5, 15, 1));
+        right.applyNode(JexlNodeFactory.buildEQNode("BAR", "value"));
+        
+        IndexInfo merged = left.union(right);
+        List<String> uids = new ArrayList<>();
+        for (IndexMatch match : merged.uids()) {
+            uids.add(match.getUid());
+        }
+        Assert.assertEquals(13, merged.count());
+        Assert.assertEquals("uid00000", uids.get(0));
+        Assert.assertEquals("uid00014", uids.get(12));
+    }
+}
@@ -0,0 +1,152 @@
+package datawave.query.iterator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import datawave.data.type.util.NumericalEncoder;
+import datawave.query.attributes.Content;
+import datawave.query.attributes.Document;
+import datawave.query.function.deserializer.FlatDocumentDeserializer;
+import datawave.query.function.serializer.FlatDocumentSerializer;
+import datawave.query.jexl.functions.KeyAdjudicator;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.YieldCallback;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class DocumentBatchingIteratorTest {
+    
+    private static List<Entry<Key,Document>> createDocuments(int count) {
+        List<Entry<Key,Document>> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Key key = new Key("20190101_0", "datatype\0uid" + i, "", "A", 1000L);
+            Document d = new Document(key, true);
+            d.put("UID", new Content("uid" + i, key, true));
+            documents.add(Maps.immutableEntry(key, d));
+        }
+        return documents;
+    }
+    
+    private static List<Entry<Key,Document>> unpack(Iterator<Entry<Key,Value>> batches, List<Integer> batchSizes) {
+        FlatDocumentDeserializer deserializer = new FlatDocumentDeserializer();
+        List<Entry<Key,Document>> documents = new ArrayList<>();
+        while (batches.hasNext()) {
+            Entry<Key,Value> batch = batches.next();
+            List<Entry<Key,Document>> unpacked = deserializer.deserializeBatch(batch);
+            // the batch is returned under the key of its last document
+            Assert.assertEquals(unpacked.get(unpacked.size() - 1).getKey(), batch.getKey());
+            batchSizes.add(unpacked.size());
+            documents.addAll(unpacked);
+        }
+        return documents;
+    }
+    
+    @Test
+    public void testBatchSize() {
+        List<Entry<Key,Document>> documents = createDocuments(25);
+        DocumentBatchingIterator batches = new DocumentBatchingIterator(documents.iterator(), new FlatDocumentSerializer(false, false), 10, Long.MAX_VALUE,
+                        null);
+        
+        List<Integer> batchSizes = new ArrayList<>();
+        Assert.assertEquals(documents, unpack(batches, batchSizes));
+        Assert.assertEquals(3, batchSizes.size());
+        Assert.assertEquals(10, batchSizes.get(0).intValue());
+        Assert.assertEquals(10, batchSizes.get(1).intValue());
+        Assert.assertEquals(5, batchSizes.get(2).intValue());
+    }
+    
+    @Test
+    public void testBatchBytes() {
+        List<Entry<Key,Document>> documents = createDocuments(25);
+        DocumentBatchingIterator batches = new DocumentBatchingIterator(documents.iterator(), new FlatDocumentSerializer(false, true), 100, 1, null);
+        
+        // every document is over the byte budget on its own
+        List<Integer> batchSizes = new ArrayList<>();
+        Assert.assertEquals(documents, unpack(batches, batchSizes));
+        Assert.assertEquals(25, batchSizes.size());
+    }
+    
+    @Test
+    public void testDocumentsCountedBeforeBatching() {
+        List<Entry<Key,Document>> documents = createDocuments(25);
+        // a scan resuming after 5 results
+        Iterator<Entry<Key,Document>> counted = new ResultCountingIterator<>(documents.iterator(), 5, null);
+        DocumentBatchingIterator batches = new DocumentBatchingIterator(counted, new FlatDocumentSerializer(false, false), 10, Long.MAX_VALUE, null);
+        
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Entry<Key,Document>> unpacked = unpack(batches, batchSizes);
+        Assert.assertEquals(3, batchSizes.size());
+        Assert.assertEquals(25, unpacked.size());
+        
+        // every document is counted, so a scan torn down after any batch resumes with the count of the documents returned
+        for (int i = 0; i < unpacked.size(); i++) {
+            String[] parts = StringUtils.split(unpacked.get(i).getKey().getColumnFamily().toString(), '\0');
+            Assert.assertEquals(6 + i, NumericalEncoder.decode(parts[0]).longValue());
+            Assert.assertEquals(documents.get(i).getKey().getColumnFamily().toString(), parts[1] + '\0' + parts[2]);
+        }
+    }
+    
+    @Test
+    public void testDocumentsAdjudicatedBeforeBatching() {
+        List<Entry<Key,Document>> documents = createDocuments(25);
+        Iterator<Entry<Key,Document>> adjudicated = new KeyAdjudicator<>(documents.iterator(), null);
+        DocumentBatchingIterator batches = new DocumentBatchingIterator(adjudicated, new FlatDocumentSerializer(false, false), 10, Long.MAX_VALUE, null);
+        
+        List<Entry<Key,Document>> unpacked = unpack(batches, new ArrayList<>());
+        Assert.assertEquals(25, unpacked.size());
+        for (Entry<Key,Document> document : unpacked) {
+            Assert.assertEquals(KeyAdjudicator.COLUMN_QUALIFIER_SUFFIX, document.getKey().getColumnQualifier());
+        }
+    }
+    
+    @Test
+    public void testYieldHeldForPartialBatch() {
+        final List<Entry<Key,Document>> documents = createDocuments(15);
+        final YieldCallback<Key> yield = new YieldCallback<>();
+        final Key yieldKey = documents.get(11).getKey();
+        
+        // a source that yields after returning 12 documents
+        Iterator<Entry<Key,Document>> source = new Iterator<Entry<Key,Document>>() {
+            private int index = 0;
+            
+            @Override
+            public boolean hasNext() {
+                if (index == 12) {
+                    if (!yield.hasYielded()) {
+                        yield.yield(yieldKey);
+                    }
+                    return false;
+                }
+                return true;
+            }
+            
+            @Override
+            public Entry<Key,Document> next() {
+                return documents.get(index++);
+            }
+        };
+        
+        DocumentBatchingIterator batches = new DocumentBatchingIterator(source, new FlatDocumentSerializer(false, false), 10, Long.MAX_VALUE, yield);
+        
+        Assert.assertTrue(batches.hasNext());
+        batches.next();
+        Assert.assertFalse(yield.hasYielded());
+        
+        // the partial batch is returned before the yield
+        Assert.assertTrue(batches.hasNext());
+        Assert.assertFalse(yield.hasYielded());
+        Entry<Key,Value> partial = batches.next();
+        Assert.assertEquals(documents.subList(10, 12), new FlatDocumentDeserializer().deserializeBatch(partial));
+        
+        Assert.assertFalse(batches.hasNext());
+        Assert.assertTrue(yield.hasYielded());
+        Assert.assertEquals(yieldKey, yield.getPositionAndReset());
+    }
+}
@@ -0,0 +1,280 @@
+package datawave.query.iterator.logic;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import datawave.query.attributes.Document;
+import datawave.query.iterator.NestedIterator;
+import datawave.query.iterator.Util;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.log4j.Logger;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.google.common.collect.TreeMultimap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoserTreeTest {
+    private static final Logger log = Logger.getLogger(LoserTreeTest.class);
+    
+    private final Random random = new Random(7);
+    
+    @Test
+    public void testAndIterator() {
+        for (int trial = 0; trial < 20; trial++) {
+            List<List<Key>> includes = randomSources(1 + random.nextInt(6), 2000, 1500);
+            List<List<Key>> excludes = randomSources(random.nextInt(3), 2000, 200);
+            
+            SortedSet<Key> expected = null;
+            for (List<Key> include : includes) {
+                SortedSet<Key> keys = toRowColfam(include);
+                if (expected == null) {
+                    expected = keys;
+                } else {
+                    expected.retainAll(keys);
+                }
+            }
+            for (List<Key> exclude : excludes) {
+                expected.removeAll(toRowColfam(exclude));
+            }
+            
+            AndIterator<Key> and = new AndIterator<>(toIterators(includes), excludes.isEmpty() ? null : toIterators(excludes));
+            and.initialize();
+            assertEquals(new ArrayList<>(expected), drain(and));
+        }
+    }
+    
+    @Test
+    public void testOrIterator() {
+        for (int trial = 0; trial < 20; trial++) {
+            List<List<Key>> includes = randomSources(1 + random.nextInt(6), 2000, 300);
+            List<List<Key>> excludes = randomSources(random.nextInt(3), 2000, 200);
+            
+            SortedSet<Key> expected = new TreeSet<>();
+            for (List<Key> include : includes) {
+                expected.addAll(toRowColfam(include));
+            }
+            for (List<Key> exclude : excludes) {
+                expected.removeAll(toRowColfam(exclude));
+            }
+            
+            OrIterator<Key> or = new OrIterator<>(toIterators(includes), excludes.isEmpty() ? null : toIterators(excludes), true);
+            or.initialize();
+            assertEquals(new ArrayList<>(expected), drain(or));
+        }
+    }
+    
+    @Test
+    public void testMove() {
+        List<List<Key>> includes = randomSources(3, 500, 400);
+        SortedSet<Key> union = new TreeSet<>();
+        for (List<Key> include : includes) {
+            union.addAll(toRowColfam(include));
+        }
+        
+        OrIterator<Key> or = new OrIterator<>(toIterators(includes), true);
+        or.initialize();
+        Key target = uidKey(250);
+        Key moved = or.move(target);
+        assertEquals(union.tailSet(target).first(), rowColfam(moved));
+        
+        AndIterator<Key> and = new AndIterator<>(toIterators(includes));
+        and.initialize();
+        assertNull(and.move(uidKey(100000)));
+        assertFalse(and.hasNext());
+    }
+    
+    /**
+     * A check of the allocations made per next() by the multimap merge that AndIterator and OrIterator used to use (a TreeMultimap of transformed keys) versus
+     * the LoserTree, over the same sources. Each merge is measured a few times and the least is kept, so that the allocations of the JIT and the class loader
+     * during a single run do not decide the outcome.
+     */
+    @Test
+    public void testAllocationsPerNext() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        
+        List<List<Key>> sources = randomSources(32, 100000, 2000);
+        
+        // warm up both paths
+        mergeWithMultimap(sources);
+        mergeWithLoserTree(sources);
+        
+        long multimapCount = 0;
+        long multimapBytes = Long.MAX_VALUE;
+        long loserTreeCount = 0;
+        long loserTreeBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            multimapCount = mergeWithMultimap(sources);
+            multimapBytes = Math.min(multimapBytes, threadBean.getThreadAllocatedBytes(threadId) - start);
+            
+            start = threadBean.getThreadAllocatedBytes(threadId);
+            loserTreeCount = mergeWithLoserTree(sources);
+            loserTreeBytes = Math.min(loserTreeBytes, threadBean.getThreadAllocatedBytes(threadId) - start);
+        }
+        
+        assertEquals(multimapCount, loserTreeCount);
+        log.info("Bytes allocated per next(): multimap=" + (multimapBytes / multimapCount) + ", loser tree=" + (loserTreeBytes / loserTreeCount));
+        assertTrue("loser tree allocated " + loserTreeBytes + " bytes vs " + multimapBytes, loserTreeBytes * 10 < multimapBytes);
+    }
+    
+    private long mergeWithMultimap(List<List<Key>> sources) {
+        Util.Transformer<Key> transformer = Util.keyTransformer();
+        TreeMultimap<Key,NestedIterator<Key>> heads = TreeMultimap.create(Util.keyComparator(), Util.hashComparator());
+        for (NestedIterator<Key> itr : toIterators(sources)) {
+            heads.put(transformer.transform(itr.next()), itr);
+        }
+        long count = 0;
+        while (!heads.isEmpty()) {
+            Key lowest = heads.keySet().first();
+            for (NestedIterator<Key> itr : heads.removeAll(lowest)) {
+                count++;
+                if (itr.hasNext()) {
+                    heads.put(transformer.transform(itr.next()), itr);
+                }
+            }
+        }
+        return count;
+    }
+    
+    private long mergeWithLoserTree(List<List<Key>> sources) {
+        LoserTree<Key> heads = new LoserTree<>(toIterators(sources), Util.keyComparator());
+        for (int i = 0; i < heads.size(); i++) {
+            heads.set(i, heads.source(i).next());
+        }
+        heads.build();
+        long count = 0;
+        while (!heads.isEmpty()) {
+            NestedIterator<Key> itr = heads.source(heads.winner());
+            count++;
+            heads.replaceWinner(itr.hasNext() ? itr.next() : null);
+        }
+        return count;
+    }
+    
+    private List<List<Key>> randomSources(int numSources, int uidRange, int keysPerSource) {
+        List<List<Key>> sources = new ArrayList<>();
+        for (int i = 0; i < numSources; i++) {
+            SortedSet<Integer> uids = new TreeSet<>();
+            while (uids.size() < keysPerSource) {
+                uids.add(random.nextInt(uidRange));
+            }
+            List<Key> keys = new ArrayList<>();
+            for (Integer uid : uids) {
+                // vary the column qualifier per source; only the row and column family take part in the merge
+                keys.add(new Key(uidKey(uid).getRow().toString(), uidKey(uid).getColumnFamily().toString(), "FIELD" + i + "\0value"));
+            }
+            sources.add(keys);
+        }
+        return sources;
+    }
+    
+    private static Key uidKey(int uid) {
+        return new Key("20190101_1", String.format("datatype\0uid.%08d", uid));
+    }
+    
+    private static Key rowColfam(Key key) {
+        return new Key(key.getRow(), key.getColumnFamily());
+    }
+    
+    private static SortedSet<Key> toRowColfam(List<Key> keys) {
+        SortedSet<Key> rowColfams = new TreeSet<>();
+        for (Key key : keys) {
+            rowColfams.add(rowColfam(key));
+        }
+        return rowColfams;
+    }
+    
+    private static List<NestedIterator<Key>> toIterators(List<List<Key>> sources) {
+        List<NestedIterator<Key>> iterators = new ArrayList<>();
+        for (List<Key> source : sources) {
+            iterators.add(new KeyListIterator(source));
+        }
+        return iterators;
+    }
+    
+    private static List<Key> drain(NestedIterator<Key> iterator) {
+        List<Key> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Key key = iterator.next();
+            assertTrue(keys.isEmpty() || keys.get(keys.size() - 1).compareTo(key, PartialKey.ROW_COLFAM) < 0);
+            keys.add(rowColfam(key));
+        }
+        return keys;
+    }
+    
+    /**
+     * A NestedIterator over a sorted list of keys that does not allocate as it moves
+     */
+    static class KeyListIterator implements NestedIterator<Key> {
+        private final List<Key> keys;
+        private final Document document = new Document();
+        private int index = 0;
+        
+        KeyListIterator(List<Key> keys) {
+            this.keys = keys;
+        }
+        
+        @Override
+        public void initialize() {
+            index = 0;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return index < keys.size();
+        }
+        
+        @Override
+        public Key next() {
+            return keys.get(index++);
+        }
+        
+        @Override
+        public Key move(Key minimum) {
+            while (index < keys.size()) {
+                Key key = keys.get(index++);
+                if (key.compareTo(minimum, PartialKey.ROW_COLFAM) >= 0) {
+                    return key;
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        public Collection<NestedIterator<Key>> leaves() {
+            return Collections.singletonList(this);
+        }
+        
+        @Override
+        public Collection<NestedIterator<Key>> children() {
+            return Collections.emptyList();
+        }
+        
+        @Override
+        public Document document() {
+            return document;
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
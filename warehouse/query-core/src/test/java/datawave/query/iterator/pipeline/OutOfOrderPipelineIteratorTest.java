@@ -0,0 +1,272 @@
+package datawave.query.iterator.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import datawave.query.attributes.Document;
+import datawave.query.iterator.NestedQueryIterator;
+import datawave.query.iterator.QueryIterator;
+import datawave.query.iterator.SortedListKeyValueIterator;
+import datawave.query.iterator.logic.ArrayIterator;
+import datawave.query.iterator.profile.QuerySpanCollector;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.YieldCallback;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class OutOfOrderPipelineIteratorTest {
+    
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    
+    // the work done by the evaluation of each document, which returns false for a document that is filtered out
+    private final Map<Key,Evaluator> evaluators = new HashMap<>();
+    
+    private interface Evaluator {
+        boolean evaluate() throws Exception;
+    }
+    
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    private static Key key(int i) {
+        return new Key("20190101_0", "datatype\0uid" + i);
+    }
+    
+    private OutOfOrderPipelineIterator createIterator(int documents, int maxPipelines, int maxCachedResults, YieldCallback<Key> yield, long yieldThresholdMs) {
+        Key[] keys = new Key[documents];
+        for (int i = 0; i < documents; i++) {
+            keys[i] = key(i);
+        }
+        QueryIterator sourceIterator = new QueryIterator() {
+            @Override
+            public Iterator<Entry<Key,Document>> createDocumentPipeline(SortedKeyValueIterator<Key,Value> deepSourceCopy,
+                            NestedQueryIterator<Key> documentSpecificSource, QuerySpanCollector querySpanCollector) {
+                return new Iterator<Entry<Key,Document>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return documentSpecificSource.hasNext();
+                    }
+                    
+                    @Override
+                    public Entry<Key,Document> next() {
+                        Key key = documentSpecificSource.next();
+                        Evaluator evaluator = evaluators.get(key);
+                        try {
+                            if (evaluator != null && !evaluator.evaluate()) {
+                                return null;
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException("Failed evaluating " + key, e);
+                        }
+                        return Maps.immutableEntry(key, new Document());
+                    }
+                };
+            }
+        };
+        OutOfOrderPipelineIterator iterator = new OutOfOrderPipelineIterator(new ArrayIterator<>(keys), maxPipelines, maxCachedResults, null, null,
+                        sourceIterator, new SortedListKeyValueIterator(Collections.emptyList()), null, yield, yieldThresholdMs) {
+            @Override
+            protected Future<?> execute(Runnable evaluation, String name) {
+                return executor.submit(evaluation);
+            }
+        };
+        iterator.startPipeline();
+        return iterator;
+    }
+    
+    private static List<Key> drain(Iterator<Entry<Key,Document>> iterator) {
+        List<Key> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().getKey());
+        }
+        return keys;
+    }
+    
+    private static void assertAllCheckedIn(OutOfOrderPipelineIterator iterator) {
+        Assert.assertTrue(iterator.pipelines.checkedOut.isEmpty());
+        Assert.assertTrue(iterator.running.isEmpty());
+        Assert.assertTrue(iterator.completed.isEmpty());
+    }
+    
+    @Test
+    public void testIdlePipelinesPassASlowEvaluation() throws Exception {
+        CountDownLatch slow = new CountDownLatch(1);
+        CountDownLatch passed = new CountDownLatch(1);
+        evaluators.put(key(0), () -> slow.await(10, TimeUnit.SECONDS));
+        evaluators.put(key(2), () -> {
+            passed.countDown();
+            return true;
+        });
+        
+        OutOfOrderPipelineIterator iterator = createIterator(4, 2, 1, null, 0);
+        Future<List<Key>> results = executor.submit(() -> drain(iterator));
+        
+        // the pipeline that evaluated the second document moves on to the third while the first is still being evaluated
+        Assert.assertTrue(passed.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(results.isDone());
+        
+        slow.countDown();
+        Assert.assertEquals(Arrays.asList(key(0), key(1), key(2), key(3)), results.get(10, TimeUnit.SECONDS));
+        assertAllCheckedIn(iterator);
+    }
+    
+    @Test
+    public void testResultsAreReleasedInDocumentOrder() {
+        Set<Key> filtered = new HashSet<>(Arrays.asList(key(2), key(4)));
+        for (int i = 0; i < 6; i++) {
+            Key key = key(i);
+            // the later documents complete first
+            long sleep = (6 - i) * 20;
+            evaluators.put(key, () -> {
+                Thread.sleep(sleep);
+                return !filtered.contains(key);
+            });
+        }
+        
+        OutOfOrderPipelineIterator iterator = createIterator(6, 3, 2, null, 0);
+        Assert.assertEquals(Arrays.asList(key(0), key(1), key(3), key(5)), drain(iterator));
+        Assert.assertEquals(key(5), iterator.lastKeyEvaluated);
+        assertAllCheckedIn(iterator);
+    }
+    
+    @Test
+    public void testFailureWaitsForRunningEvaluations() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        // an evaluation that does not stop when interrupted
+        evaluators.put(key(0), () -> {
+            started.countDown();
+            while (true) {
+                try {
+                    release.await();
+                    return true;
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        });
+        evaluators.put(key(1), () -> {
+            started.await();
+            throw new IllegalStateException("failed");
+        });
+        
+        OutOfOrderPipelineIterator iterator = createIterator(4, 2, 1, null, 0);
+        Future<Boolean> hasNext = executor.submit(iterator::hasNext);
+        
+        // the pipeline of the first document must not be checked in while it is still running
+        try {
+            hasNext.get(500, TimeUnit.MILLISECONDS);
+            Assert.fail("The failure was thrown before the running evaluation stopped");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        Assert.assertTrue(interrupted.get());
+        
+        release.countDown();
+        try {
+            hasNext.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected the failure to be thrown");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RuntimeException);
+        }
+        assertAllCheckedIn(iterator);
+        Assert.assertEquals(2, iterator.pipelines.checkedIn.size());
+    }
+    
+    @Test
+    public void testFailureAbandonsStuckEvaluations() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // an evaluation that ignores interrupts until the end of the test
+        evaluators.put(key(0), () -> {
+            started.countDown();
+            while (true) {
+                try {
+                    release.await();
+                    return true;
+                } catch (InterruptedException e) {
+                    // keep waiting
+                }
+            }
+        });
+        evaluators.put(key(1), () -> {
+            started.await();
+            throw new IllegalStateException("failed");
+        });
+        
+        OutOfOrderPipelineIterator iterator = createIterator(4, 2, 1, null, 0);
+        iterator.cancelTimeoutMs = 200;
+        try {
+            Future<Boolean> hasNext = executor.submit(iterator::hasNext);
+            try {
+                hasNext.get(10, TimeUnit.SECONDS);
+                Assert.fail("Expected the failure to be thrown");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RuntimeException);
+            }
+            
+            // the pipeline of the stuck evaluation is dropped rather than reused
+            Assert.assertTrue(iterator.pipelines.checkedOut.isEmpty());
+            Assert.assertTrue(iterator.running.isEmpty());
+            Assert.assertEquals(1, iterator.pipelines.checkedIn.size());
+        } finally {
+            release.countDown();
+        }
+    }
+    
+    @Test
+    public void testYieldCancelsRunningEvaluations() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        evaluators.put(key(1), () -> {
+            started.countDown();
+            try {
+                never.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+            }
+            return true;
+        });
+        
+        YieldCallback<Key> yield = new YieldCallback<>();
+        OutOfOrderPipelineIterator iterator = createIterator(4, 2, 1, yield, 100);
+        
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(key(0), iterator.next().getKey());
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        
+        // the second document never completes, so the iterator yields after the first
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertTrue(yield.hasYielded());
+        Assert.assertEquals(key(0), yield.getPositionAndReset());
+        Assert.assertTrue(interrupted.get());
+        assertAllCheckedIn(iterator);
+    }
+}
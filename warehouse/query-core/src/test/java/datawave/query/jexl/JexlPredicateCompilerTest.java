@@ -0,0 +1,142 @@
+package datawave.query.jexl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import datawave.query.attributes.Content;
+import datawave.query.attributes.ValueTuple;
+import datawave.query.collections.FunctionalSet;
+import org.apache.accumulo.core.data.Key;
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.Script;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+
+public class JexlPredicateCompilerTest {
+    
+    private static final String[] QUERIES = {"FOO == 'bar'", "FOO != 'bar'", "FOO == 'bar' && BAZ == 'qux'", "FOO == 'bar' || BAZ == 'qux'",
+            "FOO =~ 'ba.*'", "FOO !~ 'ba.*'", "!(FOO == 'bar')", "(FOO == 'bar' || FOO == 'baz') && !(BAZ == 'qux')", "NUM >= '5' && NUM <= '7'",
+            "NUM > 5 && NUM < 7", "FOO == 'bar' && (NUM >= '1' && NUM <= '3')", "filter:includeRegex(FOO, 'b.*')", "filter:excludeRegex(FOO, 'b.*')",
+            "filter:includeText(FOO, 'bar')", "filter:isNull(MISSING)", "filter:isNotNull(FOO)", "filter:isNull(FOO) || BAZ == 'qux'",
+            "FOO == 'bar' && filter:includeRegex(BAZ, 'q.*')", "MISSING == 'bar' || filter:isNotNull(MISSING)", "true && FOO == 'bar'",
+            "false || FOO == 'bar'"};
+    
+    private static DatawaveJexlContext[] contexts() {
+        DatawaveJexlContext empty = new DatawaveJexlContext();
+        
+        DatawaveJexlContext single = new DatawaveJexlContext();
+        single.set("FOO", "bar");
+        single.set("BAZ", "qux");
+        single.set("NUM", "6");
+        
+        DatawaveJexlContext other = new DatawaveJexlContext();
+        other.set("FOO", "baz");
+        other.set("BAZ", "quux");
+        other.set("NUM", "2");
+        
+        DatawaveJexlContext multi = new DatawaveJexlContext();
+        multi.set("FOO", Arrays.asList("bar", "baz"));
+        multi.set("BAZ", Arrays.asList("abc", "qux"));
+        multi.set("NUM", Arrays.asList("2", "9"));
+        
+        return new DatawaveJexlContext[] {empty, single, other, multi};
+    }
+    
+    /**
+     * @return the same contexts, with the values as the ValueTuples that a document puts into the context
+     */
+    private static DatawaveJexlContext[] tupleContexts() {
+        DatawaveJexlContext empty = new DatawaveJexlContext();
+        
+        DatawaveJexlContext single = new DatawaveJexlContext();
+        single.set("FOO", tuples("FOO", "bar"));
+        single.set("BAZ", tuples("BAZ", "qux"));
+        single.set("NUM", tuples("NUM", "6"));
+        
+        DatawaveJexlContext other = new DatawaveJexlContext();
+        other.set("FOO", tuples("FOO", "baz"));
+        other.set("BAZ", tuples("BAZ", "quux"));
+        other.set("NUM", tuples("NUM", "2"));
+        
+        DatawaveJexlContext multi = new DatawaveJexlContext();
+        multi.set("FOO", tuples("FOO", "bar", "baz"));
+        multi.set("BAZ", tuples("BAZ", "abc", "qux"));
+        multi.set("NUM", tuples("NUM", "2", "9"));
+        
+        return new DatawaveJexlContext[] {empty, single, other, multi};
+    }
+    
+    private static FunctionalSet<ValueTuple> tuples(String field, String... values) {
+        List<ValueTuple> tuples = new ArrayList<>();
+        for (String value : values) {
+            tuples.add(new ValueTuple(field, value, value, new Content(value, new Key("shard", "datatype\0uid"), true)));
+        }
+        return new FunctionalSet<>(tuples);
+    }
+    
+    @Test
+    public void testCompiledMatchesInterpreted() {
+        DefaultArithmetic arithmetic = new DefaultArithmetic();
+        DatawaveJexlEngine engine = ArithmeticJexlEngines.getEngine(arithmetic);
+        for (String query : QUERIES) {
+            Script script = engine.createScript(query);
+            Predicate<JexlContext> compiled = JexlPredicateCompiler.compile(engine, arithmetic, engine.parse(query));
+            Assert.assertNotNull("Unable to compile " + query, compiled);
+            for (DatawaveJexlContext context : contexts()) {
+                boolean expected = DatawaveInterpreter.isMatched(script.execute(context));
+                Assert.assertEquals(query + " against " + context, expected, compiled.apply(context));
+            }
+        }
+    }
+    
+    @Test
+    public void testCompiledHitsMatchInterpreted() {
+        HitListArithmetic arithmetic = new HitListArithmetic();
+        DatawaveJexlEngine engine = ArithmeticJexlEngines.getEngine(arithmetic);
+        for (String query : QUERIES) {
+            Script script = engine.createScript(query);
+            Predicate<JexlContext> compiled = JexlPredicateCompiler.compile(engine, arithmetic, engine.parse(query));
+            Assert.assertNotNull("Unable to compile " + query, compiled);
+            for (DatawaveJexlContext context : tupleContexts()) {
+                arithmetic.clear();
+                boolean expected = DatawaveInterpreter.isMatched(script.execute(context));
+                Set<String> expectedHits = arithmetic.getHitSet();
+                
+                arithmetic.clear();
+                Assert.assertEquals(query + " against " + context, expected, compiled.apply(context));
+                Assert.assertEquals("Hits of " + query + " against " + context, expectedHits, arithmetic.getHitSet());
+            }
+        }
+    }
+    
+    @Test
+    public void testInterpretedSubtree() {
+        String query = "((GEO == '0321+bE4.4' || GEO == '0334+bE4.4') && ((ASTDelayedPredicate = true) && ((GEO >= '030a' && GEO <= '0335')"
+                        + " && (WKT_BYTE_LENGTH >= '+AE0' && WKT_BYTE_LENGTH < '+bE8'))))";
+        DefaultArithmetic arithmetic = new DefaultArithmetic();
+        DatawaveJexlEngine engine = ArithmeticJexlEngines.getEngine(arithmetic);
+        
+        DatawaveJexlContext context = new DatawaveJexlContext();
+        context.set("GEO", "0321+bE4.4");
+        context.set("WKT_BYTE_LENGTH", "+bE4.4");
+        
+        Predicate<JexlContext> compiled = JexlPredicateCompiler.compile(engine, arithmetic, engine.parse(query));
+        Assert.assertNotNull(compiled);
+        Assert.assertTrue(compiled.apply(context));
+        
+        context.set("WKT_BYTE_LENGTH", "+bE9");
+        Assert.assertFalse(compiled.apply(context));
+    }
+    
+    @Test
+    public void testUnsupportedQuery() {
+        DefaultArithmetic arithmetic = new DefaultArithmetic();
+        DatawaveJexlEngine engine = ArithmeticJexlEngines.getEngine(arithmetic);
+        Assert.assertNull(JexlPredicateCompiler.compile(engine, arithmetic, engine.parse("filter:includeRegex(FOO, 'b.*').size() > 0")));
+        Assert.assertNull(JexlPredicateCompiler.compile(engine, arithmetic, engine.parse("FOO = 'bar'")));
+    }
+}
@@ -0,0 +1,273 @@
+package datawave.query.jexl.lookups;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+import datawave.accumulo.inmemory.InMemoryInstance;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.jexl.LiteralRange;
+import datawave.query.tables.ScannerFactory;
+import datawave.query.util.MockMetadataHelper;
+import datawave.util.time.DateHelper;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+
+import static datawave.util.TableName.SHARD_INDEX;
+
+public class TermDictionaryCacheTest {
+    
+    private static Connector connector;
+    
+    private ShardQueryConfiguration config;
+    private ScannerFactory scannerFactory;
+    private MockMetadataHelper helper;
+    
+    private static class CountingCache extends TermDictionaryCache {
+        private final List<SortedSet<String>> loads = new ArrayList<>();
+        private final List<String> loadedRanges = new ArrayList<>();
+        private LoadStatus status = null;
+        
+        CountingCache() {
+            super(DEFAULT_MAX_BYTES);
+        }
+        
+        @Override
+        protected LoadStatus load(ShardQueryConfiguration config, ScannerFactory scannerFactory, String field, SortedSet<String> days, String start,
+                        String end, Map<String,TermDictionary.Builder> builders, long timeout) throws TableNotFoundException, IOException {
+            loads.add(days);
+            loadedRanges.add(start + ".." + end);
+            return null == status ? super.load(config, scannerFactory, field, days, start, end, builders, timeout) : status;
+        }
+    }
+    
+    private static Mutation buildMutation(String fieldName, String fieldValue, String shard, String datatype) {
+        Mutation mutation = new Mutation(fieldValue);
+        mutation.put(fieldName, shard + '\u0000' + datatype, new ColumnVisibility("A"), new Value(new byte[0]));
+        return mutation;
+    }
+    
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        InMemoryInstance instance = new InMemoryInstance();
+        connector = instance.getConnector("", new PasswordToken(new byte[0]));
+        connector.tableOperations().create(SHARD_INDEX);
+        
+        BatchWriter bw = connector.createBatchWriter(SHARD_INDEX, new BatchWriterConfig().setMaxMemory(1024L).setMaxWriteThreads(1));
+        bw.addMutation(buildMutation("FOO", "bar", "20190314_0", "datatype1"));
+        bw.addMutation(buildMutation("FOO", "baz", "20190314_1", "datatype2"));
+        bw.addMutation(buildMutation("FOO", "boo", "20190315_0", "datatype1"));
+        bw.addMutation(buildMutation("FOO", "cat", "20190316_0", "datatype1"));
+        bw.addMutation(buildMutation("BAR", "bat", "20190314_0", "datatype1"));
+        bw.close();
+    }
+    
+    @Before
+    public void setup() throws Exception {
+        config = new ShardQueryConfiguration();
+        config.setBeginDate(DateHelper.parse("20190314"));
+        config.setEndDate(DateHelper.parse("20190315"));
+        config.setAuthorizations(Sets.newHashSet(new Authorizations("A")));
+        config.setIndexTableName(SHARD_INDEX);
+        scannerFactory = new ScannerFactory(connector, 1);
+        
+        // FOO is known to have few terms on each day, and BAR has no counts
+        helper = new MockMetadataHelper();
+        helper.addDataTypes(Lists.newArrayList("datatype1", "datatype2"));
+        helper.setIndexedFields(Sets.newHashSet("FOO", "BAR"));
+        Map<Map.Entry<String,String>,Map<String,Long>> counts = new HashMap<>();
+        for (String day : Lists.newArrayList("20190314", "20190315", "20190316")) {
+            counts.put(Maps.immutableEntry("FOO", day), Collections.singletonMap("datatype1", 2L));
+        }
+        helper.setCardinalities(counts);
+    }
+    
+    private List<TermDictionary> getDictionaries(TermDictionaryCache cache, String field) {
+        return cache.getDictionaries(config, scannerFactory, helper, field, null, null, 0);
+    }
+    
+    private static List<String> terms(List<TermDictionary> dictionaries) {
+        List<String> terms = new ArrayList<>();
+        for (TermDictionary dictionary : dictionaries) {
+            dictionary.forEachTerm(null, null, -1L, terms::add);
+        }
+        return terms;
+    }
+    
+    @Test
+    public void testGetDays() {
+        Assert.assertEquals(Lists.newArrayList("20190228", "20190301", "20190302"),
+                        TermDictionaryCache.getDays(DateHelper.parse("20190228"), DateHelper.parse("20190302")));
+    }
+    
+    @Test
+    public void testCachedDays() {
+        CountingCache cache = new CountingCache();
+        List<TermDictionary> dictionaries = getDictionaries(cache, "FOO");
+        Assert.assertEquals(Lists.newArrayList("bar", "baz", "boo"), terms(dictionaries));
+        Assert.assertEquals(1, cache.loads.size());
+        Assert.assertEquals(2, cache.size());
+        
+        // the cached days are not scanned again
+        dictionaries = getDictionaries(cache, "FOO");
+        Assert.assertEquals(Lists.newArrayList("bar", "baz", "boo"), terms(dictionaries));
+        Assert.assertEquals(1, cache.loads.size());
+        
+        // only the new day is scanned when the query range grows
+        config.setEndDate(DateHelper.parse("20190316"));
+        dictionaries = getDictionaries(cache, "FOO");
+        Assert.assertEquals(Lists.newArrayList("bar", "baz", "boo", "cat"), terms(dictionaries));
+        Assert.assertEquals(2, cache.loads.size());
+        Assert.assertEquals(Sets.newTreeSet(Lists.newArrayList("20190316")), cache.loads.get(1));
+        
+        // the days are cached for each field and set of authorizations
+        Assert.assertEquals(Lists.newArrayList("bat"), terms(cache.getDictionaries(config, scannerFactory, helper, "BAR", "b", "c", 0)));
+        config.setAuthorizations(Sets.newHashSet(new Authorizations("B")));
+        Assert.assertEquals(Lists.newArrayList(), terms(getDictionaries(cache, "FOO")));
+        Assert.assertEquals(4, cache.loads.size());
+    }
+    
+    @Test
+    public void testSmallFieldLoadsAllTerms() {
+        CountingCache cache = new CountingCache();
+        Assert.assertEquals(Lists.newArrayList("bar", "baz", "boo"), terms(cache.getDictionaries(config, scannerFactory, helper, "FOO", "ba", "bb", 0)));
+        Assert.assertEquals(Lists.newArrayList("null..null"), cache.loadedRanges);
+        
+        // every other range of the field is served by the same load
+        Assert.assertEquals(Lists.newArrayList("bar", "baz", "boo"), terms(cache.getDictionaries(config, scannerFactory, helper, "FOO", "bo", "bp", 0)));
+        Assert.assertEquals(1, cache.loads.size());
+    }
+    
+    @Test
+    public void testLoadsAreBoundedByTheLookup() {
+        CountingCache cache = new CountingCache();
+        
+        // a field that is not known to be small is not scanned across the whole index
+        Assert.assertNull(getDictionaries(cache, "BAR"));
+        Assert.assertNull(cache.getDictionaries(config, scannerFactory, null, "FOO", null, null, 0));
+        Assert.assertEquals(0, cache.loads.size());
+        
+        Assert.assertEquals(Lists.newArrayList("bar", "baz"), terms(cache.getDictionaries(config, scannerFactory, null, "FOO", "ba", "bb", 0)));
+        Assert.assertEquals(Lists.newArrayList("ba..bb"), cache.loadedRanges);
+        
+        // the same range is served from the cache, and another range is loaded
+        cache.getDictionaries(config, scannerFactory, null, "FOO", "ba", "bb", 0);
+        Assert.assertEquals(1, cache.loads.size());
+        Assert.assertEquals(Lists.newArrayList("boo"), terms(cache.getDictionaries(config, scannerFactory, null, "FOO", "bo", "bp", 0)));
+        Assert.assertEquals(Lists.newArrayList("ba..bb", "bo..bp"), cache.loadedRanges);
+        
+        // the ranges are cached side by side rather than replacing each other
+        Assert.assertEquals(4, cache.size());
+        Assert.assertEquals(Lists.newArrayList("bar", "baz"), terms(cache.getDictionaries(config, scannerFactory, null, "FOO", "ba", "bb", 0)));
+        Assert.assertEquals(2, cache.loads.size());
+    }
+    
+    @Test
+    public void testInstanceSize() {
+        TermDictionaryCache instance = TermDictionaryCache.getInstance(TermDictionaryCache.DEFAULT_MAX_BYTES);
+        Assert.assertSame(instance, TermDictionaryCache.getInstance(TermDictionaryCache.DEFAULT_MAX_BYTES));
+        
+        // another size replaces the shared cache
+        TermDictionaryCache resized = TermDictionaryCache.getInstance(1024L * 1024);
+        Assert.assertNotSame(instance, resized);
+        Assert.assertEquals(1024L * 1024, resized.getMaxBytes());
+        Assert.assertSame(resized, TermDictionaryCache.getInstance());
+        
+        TermDictionaryCache.getInstance(TermDictionaryCache.DEFAULT_MAX_BYTES);
+    }
+    
+    @Test
+    public void testTimedOut() {
+        CountingCache cache = new CountingCache();
+        cache.status = TermDictionaryCache.LoadStatus.TIMED_OUT;
+        long now = System.currentTimeMillis();
+        Assert.assertNull(getDictionaries(cache, "FOO"));
+        
+        // the days are only remembered briefly rather than for the full expiry
+        long expiresAt = cache.getExpiresAt(config, "FOO", "20190314");
+        Assert.assertTrue(expiresAt > now);
+        Assert.assertTrue(expiresAt <= System.currentTimeMillis() + TermDictionaryCache.TIMED_OUT_EXPIRE_MILLIS);
+        
+        cache.status = TermDictionaryCache.LoadStatus.TOO_MANY_TERMS;
+        cache.clear();
+        Assert.assertNull(getDictionaries(cache, "FOO"));
+        Assert.assertTrue(cache.getExpiresAt(config, "FOO", "20190314") > System.currentTimeMillis() + TermDictionaryCache.TIMED_OUT_EXPIRE_MILLIS);
+    }
+    
+    @Test
+    public void testRegexOfReverseIndexedField() {
+        TermDictionaryCache.getInstance().clear();
+        config.setTermDictionaryCacheEnabled(true);
+        helper.setReverseIndexFields(Sets.newHashSet("FOO", "REV"));
+        Multimap<String,Range> forwardMap = ArrayListMultimap.create();
+        forwardMap.put("ba.*", new Range(new Key("ba"), true, new Key("bb"), false));
+        
+        LookupTermsFromRegex lookup = new LookupTermsFromRegex("FOO", Sets.newHashSet("ba.*"), helper);
+        IndexLookupMap terms = lookup.lookupCachedTerms(config, scannerFactory, forwardMap, Collections.emptySet(), 0);
+        Assert.assertEquals(Sets.newHashSet("bar", "baz"), terms.get("FOO"));
+        
+        // the terms of a field that is only reverse indexed are not in the forward index, so they are looked up in the reverse index
+        lookup = new LookupTermsFromRegex("REV", Sets.newHashSet("ba.*"), helper);
+        Assert.assertNull(lookup.lookupCachedTerms(config, scannerFactory, forwardMap, Collections.emptySet(), 0));
+        TermDictionaryCache.getInstance().clear();
+    }
+    
+    @Test
+    public void testExpiredDays() {
+        CountingCache cache = new CountingCache();
+        config.setTermDictionaryExpireMinutes(0);
+        getDictionaries(cache, "FOO");
+        getDictionaries(cache, "FOO");
+        Assert.assertEquals(2, cache.loads.size());
+    }
+    
+    @Test
+    public void testTooManyTerms() {
+        CountingCache cache = new CountingCache();
+        config.setTermDictionaryMaxTerms(1);
+        Assert.assertNull(cache.getDictionaries(config, scannerFactory, helper, "FOO", "a", "z", 0));
+        
+        // the days are remembered as too large until they expire
+        config.setTermDictionaryMaxTerms(10);
+        Assert.assertNull(cache.getDictionaries(config, scannerFactory, helper, "FOO", "a", "z", 0));
+        Assert.assertEquals(1, cache.loads.size());
+    }
+    
+    @Test
+    public void testBoundedRangeFromCache() {
+        TermDictionaryCache.getInstance().clear();
+        config.setTermDictionaryCacheEnabled(true);
+        config.setDatatypeFilter(Sets.newHashSet("datatype1"));
+        
+        LiteralRange<String> range = new LiteralRange<>("ba", true, "bz", false, "FOO", LiteralRange.NodeOperand.AND);
+        IndexLookupMap terms = new LookupBoundedRangeForTerms(range).lookup(config, scannerFactory, TimeUnit.SECONDS.toMillis(10));
+        Assert.assertEquals(Sets.newHashSet("bar", "boo"), terms.get("FOO"));
+        Assert.assertEquals(2, TermDictionaryCache.getInstance().size());
+        TermDictionaryCache.getInstance().clear();
+    }
+}
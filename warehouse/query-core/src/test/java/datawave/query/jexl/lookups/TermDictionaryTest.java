@@ -0,0 +1,97 @@
+package datawave.query.jexl.lookups;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class TermDictionaryTest {
+    
+    private static TermDictionary build(List<String> terms, String datatype) {
+        TermDictionary.Builder builder = new TermDictionary.Builder();
+        // the builder sorts the terms
+        List<String> shuffled = new ArrayList<>(terms);
+        Collections.shuffle(shuffled);
+        for (String term : shuffled) {
+            builder.add(term, datatype);
+        }
+        return builder.build();
+    }
+    
+    private static List<String> visit(TermDictionary dictionary, String start, String end, long mask) {
+        List<String> visited = new ArrayList<>();
+        dictionary.forEachTerm(start, end, mask, term -> visited.add(term));
+        return visited;
+    }
+    
+    @Test
+    public void testFrontCoding() {
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            terms.add(String.format("prefix%03d", i));
+        }
+        terms.add("\u00e9t\u00e9");
+        Collections.sort(terms);
+        
+        TermDictionary dictionary = build(terms, "datatype1");
+        Assert.assertEquals(101, dictionary.size());
+        Assert.assertEquals(terms, visit(dictionary, null, null, -1L));
+        
+        // the shared prefixes are not stored again, so the terms take less than half of their 9 bytes each
+        long overhead = 64 + 48 + 8 * 101 + 4 * 7;
+        Assert.assertTrue(dictionary.getSizeInBytes() - overhead < 101 * 9 / 2);
+    }
+    
+    @Test
+    public void testForEachTermBounds() {
+        TermDictionary dictionary = build(Lists.newArrayList("apple", "banana", "bandana", "bar", "baz", "cat"), "datatype1");
+        
+        Assert.assertEquals(Lists.newArrayList("banana", "bandana", "bar", "baz"), visit(dictionary, "ba", "bb", -1L));
+        Assert.assertEquals(Lists.newArrayList("bar", "baz", "cat"), visit(dictionary, "bar", null, -1L));
+        Assert.assertEquals(Lists.newArrayList("apple", "banana", "bandana"), visit(dictionary, null, "bar", -1L));
+        Assert.assertEquals(Collections.emptyList(), visit(dictionary, "d", null, -1L));
+        
+        // stop when the visitor returns false
+        List<String> visited = new ArrayList<>();
+        Assert.assertFalse(dictionary.forEachTerm(null, null, -1L, term -> visited.add(term) && visited.size() < 2));
+        Assert.assertEquals(Lists.newArrayList("apple", "banana"), visited);
+    }
+    
+    @Test
+    public void testDatatypes() {
+        TermDictionary.Builder builder = new TermDictionary.Builder();
+        builder.add("a", "datatype1");
+        builder.add("b", "datatype2");
+        builder.add("c", "datatype1");
+        builder.add("c", "datatype2");
+        TermDictionary dictionary = builder.build();
+        
+        Assert.assertEquals(Lists.newArrayList("datatype1", "datatype2"), dictionary.getDatatypes());
+        Assert.assertEquals(Lists.newArrayList("a", "c"), visit(dictionary, null, null, dictionary.getDatatypeMask(Sets.newHashSet("datatype1"))));
+        Assert.assertEquals(Lists.newArrayList("b", "c"), visit(dictionary, null, null, dictionary.getDatatypeMask(Sets.newHashSet("datatype2"))));
+        Assert.assertEquals(Lists.newArrayList("a", "b", "c"), visit(dictionary, null, null, dictionary.getDatatypeMask(null)));
+        Assert.assertEquals(Collections.emptyList(), visit(dictionary, null, null, dictionary.getDatatypeMask(Sets.newHashSet("datatype3"))));
+    }
+    
+    @Test
+    public void testTooManyDatatypes() {
+        TermDictionary.Builder builder = new TermDictionary.Builder();
+        for (int i = 0; i < TermDictionary.MAX_DATATYPES; i++) {
+            Assert.assertTrue(builder.add("term", "datatype" + i));
+        }
+        Assert.assertFalse(builder.add("term", "datatype" + TermDictionary.MAX_DATATYPES));
+        Assert.assertTrue(builder.add("other", "datatype0"));
+    }
+    
+    @Test
+    public void testEmpty() {
+        TermDictionary dictionary = new TermDictionary.Builder().build();
+        Assert.assertEquals(0, dictionary.size());
+        Assert.assertTrue(visit(dictionary, "a", null, -1L).isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+package datawave.query.jexl.visitors;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import datawave.data.MetadataCardinalityCounts;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.index.stats.FieldCardinalityStats;
+import datawave.query.jexl.JexlASTHelper;
+import datawave.query.util.MockMetadataHelper;
+import datawave.util.time.DateHelper;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class OrderByCardinalityVisitorTest {
+    
+    private MockMetadataHelper helper;
+    private ShardQueryConfiguration config;
+    
+    @Before
+    public void setup() {
+        Map<Map.Entry<String,String>,Map<String,Long>> cardinalities = new HashMap<>();
+        cardinalities.put(Maps.immutableEntry("RARE", "20190101"), ImmutableMap.of("dt1", 5L));
+        cardinalities.put(Maps.immutableEntry("MEDIUM", "20190101"), ImmutableMap.of("dt1", 50L, "dt2", 20L));
+        cardinalities.put(Maps.immutableEntry("COMMON", "20190101"), ImmutableMap.of("dt1", 5000L));
+        cardinalities.put(Maps.immutableEntry("COMMON", "20190102"), ImmutableMap.of("dt1", 5000L));
+        cardinalities.put(Maps.immutableEntry("COMMON", "20190105"), ImmutableMap.of("dt1", 100000L));
+        cardinalities.put(Maps.immutableEntry("INDEXONLY", "20190101"), ImmutableMap.of("dt1", 20000L));
+        cardinalities.put(Maps.immutableEntry("NOCOUNTS", "20190101"), ImmutableMap.of("dt1", 100000L));
+        
+        // the share of its field that each value has, and the number of distinct values of the field
+        Map<String,Map<String,MetadataCardinalityCounts>> termCounts = new HashMap<>();
+        termCounts.put("RARE", ImmutableMap.of("a", counts("RARE", "a", 1, 1, 1)));
+        termCounts.put("MEDIUM", ImmutableMap.of("b", counts("MEDIUM", "b", 1, 1, 1)));
+        termCounts.put("COMMON", ImmutableMap.of("c", counts("COMMON", "c", 900, 1000, 2), "x", counts("COMMON", "x", 1, 1000, 2)));
+        termCounts.put("INDEXONLY", ImmutableMap.of("d", counts("INDEXONLY", "d", 1, 1, 1)));
+        
+        helper = new MockMetadataHelper();
+        helper.setCardinalities(cardinalities);
+        helper.setTermCounts(termCounts);
+        helper.setIndexedFields(Sets.newHashSet("RARE", "MEDIUM", "COMMON", "INDEXONLY", "NOCOUNTS"));
+        helper.setIndexOnlyFields(Sets.newHashSet("INDEXONLY"));
+        
+        config = ShardQueryConfiguration.create();
+        config.setBeginDate(DateHelper.parse("20190101"));
+        config.setEndDate(new Date(DateHelper.parse("20190103").getTime() - 1));
+        config.setMaxTermCardinalityRatio(0);
+    }
+    
+    private static MetadataCardinalityCounts counts(String field, String value, long valueCount, long fieldCount, long distinctValues) {
+        return new MetadataCardinalityCounts(field, value, valueCount, fieldCount, distinctValues, 0, 0, 0);
+    }
+    
+    private String order(String query) throws Exception {
+        ASTJexlScript script = JexlASTHelper.parseJexlQuery(query);
+        return JexlStringBuildingVisitor.buildQuery(OrderByCardinalityVisitor.order(script, config, helper));
+    }
+    
+    @Test
+    public void testCardinality() {
+        FieldCardinalityStats stats = new FieldCardinalityStats(helper, config.getBeginDate(), config.getEndDate(), null);
+        Assert.assertEquals(10000L, stats.getCardinality("COMMON"));
+        Assert.assertEquals(70L, stats.getCardinality("MEDIUM"));
+        Assert.assertEquals(0L, stats.getCardinality("MISSING"));
+        
+        stats = new FieldCardinalityStats(helper, config.getBeginDate(), config.getEndDate(), Sets.newHashSet("dt2"));
+        Assert.assertEquals(20L, stats.getCardinality("MEDIUM"));
+    }
+    
+    @Test
+    public void testTermCardinality() {
+        FieldCardinalityStats stats = new FieldCardinalityStats(helper, config.getBeginDate(), config.getEndDate(), null);
+        Assert.assertEquals(9000L, stats.getCardinality("COMMON", "c"));
+        Assert.assertEquals(10L, stats.getCardinality("COMMON", "x"));
+        // a value without a count of its own gets an even share of the distinct values of its field
+        Assert.assertEquals(5000L, stats.getCardinality("COMMON", "f"));
+        Assert.assertEquals(FieldCardinalityStats.UNKNOWN, stats.getCardinality("NOCOUNTS", "z"));
+    }
+    
+    @Test
+    public void testOrder() throws Exception {
+        Assert.assertEquals("RARE == 'a' && MEDIUM == 'b' && COMMON == 'c'", order("COMMON == 'c' && MEDIUM == 'b' && RARE == 'a'"));
+        Assert.assertEquals("RARE == 'a' && COMMON == 'c' && UNINDEXED == 'd' && filter:includeRegex(FOO, 'bar.*')",
+                        order("UNINDEXED == 'd' && COMMON == 'c' && filter:includeRegex(FOO, 'bar.*') && RARE == 'a'"));
+    }
+    
+    @Test
+    public void testNestedOrder() throws Exception {
+        // the union costs the sum of its terms, and the nested intersection the least of its terms
+        Assert.assertEquals("(RARE == 'a' && COMMON == 'c') && (MEDIUM == 'b' || RARE == 'e') && COMMON == 'f'",
+                        order("COMMON == 'f' && (MEDIUM == 'b' || RARE == 'e') && (COMMON == 'c' && RARE == 'a')"));
+        Assert.assertEquals("COMMON == 'c' && (MEDIUM == 'b' || UNINDEXED == 'e')", order("(MEDIUM == 'b' || UNINDEXED == 'e') && COMMON == 'c'"));
+    }
+    
+    @Test
+    public void testDelay() throws Exception {
+        config.setMaxTermCardinalityRatio(100);
+        String query = order("COMMON == 'c' && MEDIUM == 'b' && RARE == 'a' && INDEXONLY == 'd'");
+        // index only terms cannot be evaluated against the event, so they are not delayed
+        Assert.assertTrue(query, query.startsWith("RARE == 'a' && MEDIUM == 'b' && "));
+        Assert.assertTrue(query, query.contains("(ASTDelayedPredicate = true) && (COMMON == 'c')"));
+        Assert.assertTrue(query, query.endsWith("INDEXONLY == 'd'"));
+        Assert.assertEquals(query, query.indexOf("ASTDelayedPredicate"), query.lastIndexOf("ASTDelayedPredicate"));
+        
+        // nothing is delayed against a term without a cost
+        Assert.assertEquals("COMMON == 'c' && UNINDEXED == 'd'", order("UNINDEXED == 'd' && COMMON == 'c'"));
+    }
+    
+    @Test
+    public void testSelectiveValueOfCommonField() throws Exception {
+        config.setMaxTermCardinalityRatio(100);
+        // a rare value of a common field anchors the intersection and is never delayed
+        Assert.assertEquals("COMMON == 'x' && MEDIUM == 'b'", order("MEDIUM == 'b' && COMMON == 'x'"));
+    }
+    
+    @Test
+    public void testNoDelayOnFieldCardinality() throws Exception {
+        config.setMaxTermCardinalityRatio(100);
+        // without term counts the field's cardinality still orders the term, but is not enough to delay it
+        Assert.assertEquals("RARE == 'a' && NOCOUNTS == 'z'", order("NOCOUNTS == 'z' && RARE == 'a'"));
+    }
+}
@@ -0,0 +1,38 @@
+package datawave.query.planner;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class BooleanChunkingQueryPlannerTest {
+    
+    @Test
+    public void testChunkTopLevelOr() {
+        List<String> chunks = BooleanChunkingQueryPlanner.chunkQuery("FOO == 'a' || FOO == 'b' || FOO == 'c' || FOO == 'd' || FOO == 'e'", 2);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertTrue(chunks.get(0), chunks.get(0).contains("FOO == 'a'") && chunks.get(0).contains("FOO == 'b'"));
+        Assert.assertTrue(chunks.get(1), chunks.get(1).contains("FOO == 'c'") && chunks.get(1).contains("FOO == 'd'"));
+        Assert.assertTrue(chunks.get(2), chunks.get(2).contains("FOO == 'e'") && !chunks.get(2).contains("||"));
+    }
+    
+    @Test
+    public void testChunkLiftedOr() {
+        List<String> chunks = BooleanChunkingQueryPlanner.chunkQuery("BAR == 'x' && (FOO == 'a' || FOO == 'b' || FOO == 'c')", 2);
+        Assert.assertEquals(2, chunks.size());
+        for (String chunk : chunks) {
+            Assert.assertTrue(chunk, chunk.contains("BAR == 'x'"));
+        }
+    }
+    
+    @Test
+    public void testSmallQueryIsNotChunked() {
+        String query = "FOO == 'a' || FOO == 'b'";
+        Assert.assertEquals(Lists.newArrayList(query), BooleanChunkingQueryPlanner.chunkQuery(query, 2));
+        
+        query = "FOO == 'a' && FOO == 'b'";
+        Assert.assertEquals(Lists.newArrayList(query), BooleanChunkingQueryPlanner.chunkQuery(query, 1));
+    }
+}
@@ -0,0 +1,136 @@
+package datawave.query.planner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.iterator.CloseableListIterable;
+import datawave.webservice.query.QueryImpl;
+import datawave.webservice.query.configuration.QueryData;
+import org.apache.accumulo.core.data.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkedQueryPlansTest {
+    
+    private static class Plans extends CloseableListIterable<QueryData> {
+        private volatile boolean closed = false;
+        
+        private Plans(String... queries) {
+            super(Collections.<QueryData> emptyList());
+            for (String query : queries) {
+                add(new QueryData(query, Collections.<Range> emptyList(), Collections.emptyList()));
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+    
+    private static List<String> queries(Iterable<QueryData> plans) {
+        List<String> queries = new ArrayList<>();
+        for (QueryData plan : plans) {
+            queries.add(plan.getQuery());
+        }
+        return queries;
+    }
+    
+    private static void assertClosed(Plans plans) throws InterruptedException {
+        for (int i = 0; i < 100 && !plans.closed; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(plans.closed);
+    }
+    
+    @Test
+    public void testChunksInOrder() throws IOException {
+        Map<String,Plans> planned = new ConcurrentHashMap<>();
+        ChunkedQueryPlans.ChunkPlanner planner = chunk -> {
+            Plans plans = new Plans(chunk + "1", chunk + "2");
+            planned.put(chunk, plans);
+            return plans;
+        };
+        
+        Plans first = new Plans("a");
+        ChunkedQueryPlans plans = new ChunkedQueryPlans(first, Arrays.asList("b", "c"), 2, planner, new QueryImpl());
+        Assert.assertEquals(3, plans.size());
+        Assert.assertEquals(Arrays.asList("a", "b1", "b2", "c1", "c2"), queries(plans));
+        
+        plans.close();
+        Assert.assertTrue(first.closed);
+        Assert.assertTrue(planned.get("b").closed);
+        Assert.assertTrue(planned.get("c").closed);
+    }
+    
+    @Test
+    public void testPlanningFailure() throws IOException {
+        ChunkedQueryPlans.ChunkPlanner planner = chunk -> {
+            if (chunk.equals("c")) {
+                throw new IllegalStateException("failed");
+            }
+            return new Plans(chunk);
+        };
+        
+        ChunkedQueryPlans plans = new ChunkedQueryPlans(new Plans("a"), Arrays.asList("b", "c"), 2, planner, new QueryImpl());
+        List<String> queries = new ArrayList<>();
+        try {
+            for (QueryData plan : plans) {
+                queries.add(plan.getQuery());
+            }
+            Assert.fail("Expected the failure to plan a chunk to be thrown");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(Arrays.asList("a", "b"), queries);
+        plans.close();
+    }
+    
+    @Test
+    public void testCloseDuringPlanning() throws Exception {
+        CountDownLatch planning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String,Plans> planned = new ConcurrentHashMap<>();
+        ChunkedQueryPlans.ChunkPlanner planner = chunk -> {
+            if (chunk.equals("b")) {
+                planning.countDown();
+                // a planner that does not stop when it is interrupted
+                boolean released = false;
+                while (!released) {
+                    try {
+                        released = release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // keep planning
+                    }
+                }
+            }
+            Plans plans = new Plans(chunk);
+            planned.put(chunk, plans);
+            return plans;
+        };
+        
+        Plans first = new Plans("a");
+        ChunkedQueryPlans plans = new ChunkedQueryPlans(first, Arrays.asList("b", "c"), 2, planner, new QueryImpl());
+        Assert.assertTrue(planning.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && !planned.containsKey("c"); i++) {
+            Thread.sleep(100);
+        }
+        plans.close();
+        Assert.assertTrue(first.closed);
+        
+        // the plans of a chunk that was never asked for, and of a chunk that finished planning after the close, are both closed
+        release.countDown();
+        for (int i = 0; i < 100 && !planned.containsKey("b"); i++) {
+            Thread.sleep(100);
+        }
+        assertClosed(planned.get("b"));
+        assertClosed(planned.get("c"));
+    }
+}
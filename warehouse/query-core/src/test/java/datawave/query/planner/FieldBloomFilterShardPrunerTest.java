@@ -0,0 +1,174 @@
+package datawave.query.planner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import datawave.data.FieldValueBloomFilter;
+import datawave.query.Constants;
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.iterator.CloseableListIterable;
+import datawave.query.jexl.JexlASTHelper;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class FieldBloomFilterShardPrunerTest {
+    
+    private ShardQueryConfiguration config;
+    private Map<String,Map<String,FieldValueBloomFilter>> filtersByDay;
+    
+    @Before
+    public void setup() {
+        config = ShardQueryConfiguration.create();
+        config.setIndexedFields(Sets.newHashSet("INDEXED"));
+        
+        // the value is only in the second shard of each day, and the third shard has no filter
+        filtersByDay = new HashMap<>();
+        for (String day : Arrays.asList("20190101", "20190102")) {
+            Map<String,FieldValueBloomFilter> filters = new HashMap<>();
+            FieldValueBloomFilter without = new FieldValueBloomFilter(1024, 3);
+            without.add("other");
+            filters.put(day + "_0", without);
+            FieldValueBloomFilter with = new FieldValueBloomFilter(1024, 3);
+            with.add("value");
+            filters.put(day + "_1", with);
+            filtersByDay.put(day, filters);
+        }
+    }
+    
+    private List<QueryPlan> prune(String query, Range... ranges) throws Exception {
+        QueryPlan plan = new QueryPlan(JexlASTHelper.parseJexlQuery(query), Arrays.asList(ranges), Collections.emptyList());
+        FieldBloomFilterShardPruner pruner = new FieldBloomFilterShardPruner(new CloseableListIterable<>(Collections.singletonList(plan)), config, null, null) {
+            @Override
+            protected Map<String,FieldValueBloomFilter> readFilters(String field, String day) {
+                return "UNINDEXED".equals(field) && filtersByDay.containsKey(day) ? filtersByDay.get(day) : Collections.emptyMap();
+            }
+        };
+        return Lists.newArrayList(pruner);
+    }
+    
+    private static Range shard(String shard) {
+        return new Range(shard, true, shard + '\u0000', false);
+    }
+    
+    private static Range day(String day) {
+        return new Range(day + "_0", true, day + Constants.MAX_UNICODE_STRING, false);
+    }
+    
+    private static List<Range> ranges(QueryPlan plan) {
+        return Lists.newArrayList(plan.getRanges());
+    }
+    
+    private static Map.Entry<Key,Value> filter(String shard, String datatype, String... values) {
+        FieldValueBloomFilter filter = new FieldValueBloomFilter(1024, 3);
+        for (String value : values) {
+            filter.add(value);
+        }
+        return Maps.immutableEntry(new Key(shard, "UNINDEXED", datatype), filter.toValue());
+    }
+    
+    @Test
+    public void testPrunableTerms() throws Exception {
+        FieldBloomFilterShardPruner pruner = new FieldBloomFilterShardPruner(null, config, null, null);
+        Assert.assertEquals(Arrays.asList(Maps.immutableEntry("UNINDEXED", "a"), Maps.immutableEntry("INDEXED", "c")), pruner.getPrunableTerms(JexlASTHelper
+                        .parseJexlQuery("UNINDEXED == 'a' && INDEXED == 'b' && ((ASTDelayedPredicate = true) && (INDEXED == 'c')) && !(UNINDEXED == 'd')")));
+        // a term within a union is not required
+        Assert.assertEquals(Collections.emptyList(), pruner.getPrunableTerms(JexlASTHelper.parseJexlQuery("UNINDEXED == 'a' || INDEXED == 'b'")));
+    }
+    
+    @Test
+    public void testExclude() {
+        Range range = new Range("20190101_0", true, "20190101" + Constants.MAX_UNICODE_STRING, false);
+        List<Range> ranges = FieldBloomFilterShardPruner.exclude(range, new TreeSet<>(Arrays.asList("20190101_1", "20190101_3")));
+        Assert.assertEquals(3, ranges.size());
+        Assert.assertEquals(new Range(new Key("20190101_0"), true, new Key("20190101_1"), false), ranges.get(0));
+        Assert.assertEquals(new Range(new Key("20190101_1\0"), true, new Key("20190101_3"), false), ranges.get(1));
+        Assert.assertEquals(new Range(new Key("20190101_3\0"), true, new Key("20190101" + Constants.MAX_UNICODE_STRING), false), ranges.get(2));
+        
+        // a range within an excluded shard is removed
+        Assert.assertEquals(Collections.emptyList(), FieldBloomFilterShardPruner.exclude(shard("20190101_1"), new TreeSet<>(Arrays.asList("20190101_1"))));
+        Range document = new Range(new Key("20190101_1", "dt\0uid"), true, new Key("20190101_1", "dt\0uid\0"), false);
+        Assert.assertEquals(Collections.emptyList(), FieldBloomFilterShardPruner.exclude(document, new TreeSet<>(Arrays.asList("20190101_1"))));
+    }
+    
+    @Test
+    public void testPruneShards() throws Exception {
+        List<QueryPlan> plans = prune("UNINDEXED == 'value' && INDEXED == 'b'", shard("20190101_0"), shard("20190101_1"), shard("20190101_2"));
+        Assert.assertEquals(1, plans.size());
+        Assert.assertEquals(Arrays.asList(shard("20190101_1"), shard("20190101_2")), ranges(plans.get(0)));
+        
+        // a plan without a shard that can hold the value is dropped
+        Assert.assertEquals(Collections.emptyList(), prune("UNINDEXED == 'missing'", shard("20190101_0"), shard("20190101_1")));
+        
+        // nothing is pruned for indexed terms
+        Assert.assertEquals(Arrays.asList(shard("20190101_0")), ranges(prune("INDEXED == 'missing'", shard("20190101_0")).get(0)));
+    }
+    
+    @Test
+    public void testMergeFilters() {
+        List<Map.Entry<Key,Value>> entries = new ArrayList<>();
+        entries.add(filter("20190101_0", "dt1", "a"));
+        entries.add(filter("20190101_0", "dt2", "b"));
+        // a shard without the filter of one of the datatypes
+        entries.add(filter("20190101_1", "dt1", "a"));
+        // a shard with an unreadable filter followed by a readable one
+        entries.add(Maps.immutableEntry(new Key("20190101_2", "UNINDEXED", "dt1"), new Value("garbage".getBytes())));
+        entries.add(filter("20190101_2", "dt2", "b"));
+        // a shard with a readable filter followed by an unknown one
+        entries.add(filter("20190101_3", "dt1", "a"));
+        entries.add(Maps.immutableEntry(new Key("20190101_3", "UNINDEXED", "dt2"), FieldValueBloomFilter.unknown(1024, 3).toValue()));
+        // a shard with filters of different sizes
+        entries.add(filter("20190101_4", "dt1", "a"));
+        entries.add(Maps.immutableEntry(new Key("20190101_4", "UNINDEXED", "dt2"), new FieldValueBloomFilter(2048, 3).toValue()));
+        // a datatype outside of the query
+        entries.add(filter("20190101_5", "dt1", "a"));
+        entries.add(filter("20190101_5", "dt2", "b"));
+        entries.add(filter("20190101_5", "dt3", "c"));
+        
+        Map<String,FieldValueBloomFilter> filters = FieldBloomFilterShardPruner.mergeFilters("UNINDEXED", entries, Sets.newHashSet("dt1", "dt2"));
+        Assert.assertEquals(Sets.newHashSet("20190101_0", "20190101_5"), filters.keySet());
+        Assert.assertTrue(filters.get("20190101_0").mightContain("a"));
+        Assert.assertTrue(filters.get("20190101_0").mightContain("b"));
+        Assert.assertFalse(filters.get("20190101_5").mightContain("c"));
+        
+        // only the shards with a filter for the one datatype that may hold the field
+        filters = FieldBloomFilterShardPruner.mergeFilters("UNINDEXED", entries, Sets.newHashSet("dt1"));
+        Assert.assertEquals(Sets.newHashSet("20190101_0", "20190101_1", "20190101_3", "20190101_4", "20190101_5"), filters.keySet());
+    }
+    
+    @Test
+    public void testStartDate() throws Exception {
+        // the filters of the first day were only written for part of it
+        config.setShardFieldBloomFilterStartDate("20190102");
+        List<QueryPlan> plans = prune("UNINDEXED == 'value'", shard("20190101_0"), shard("20190102_0"), shard("20190102_1"));
+        Assert.assertEquals(Arrays.asList(shard("20190101_0"), shard("20190102_1")), ranges(plans.get(0)));
+    }
+    
+    @Test
+    public void testPruneDays() throws Exception {
+        List<QueryPlan> plans = prune("UNINDEXED == 'value'", day("20190101"));
+        List<Range> expected = new ArrayList<>();
+        expected.add(new Range(new Key("20190101_0\0"), true, new Key("20190101" + Constants.MAX_UNICODE_STRING), false));
+        Assert.assertEquals(expected, ranges(plans.get(0)));
+        
+        // the full scan range of a date range
+        plans = prune("UNINDEXED == 'other'", new Range("20190101", true, "20190103", false));
+        expected.clear();
+        expected.add(new Range(new Key("20190101"), true, new Key("20190101_1"), false));
+        expected.add(new Range(new Key("20190101_1\0"), true, new Key("20190102_1"), false));
+        expected.add(new Range(new Key("20190102_1\0"), true, new Key("20190103"), false));
+        Assert.assertEquals(expected, ranges(plans.get(0)));
+    }
+}
@@ -0,0 +1,164 @@
+package datawave.query.planner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import datawave.query.iterator.CloseableListIterable;
+import datawave.webservice.query.QueryImpl;
+import datawave.webservice.query.configuration.QueryData;
+import org.apache.accumulo.core.data.Range;
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PipelinedQueryPlansTest {
+    
+    private static final long DAY = DateUtils.MILLIS_PER_DAY;
+    
+    private static class Plans extends CloseableListIterable<QueryData> {
+        private volatile boolean closed = false;
+        
+        private Plans(String... queries) {
+            super(Collections.<QueryData> emptyList());
+            for (String query : queries) {
+                add(new QueryData(query, Collections.<Range> emptyList(), Collections.emptyList()));
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+    
+    private static List<String> queries(Iterable<QueryData> plans) {
+        List<String> queries = new ArrayList<>();
+        for (QueryData plan : plans) {
+            queries.add(plan.getQuery());
+        }
+        return queries;
+    }
+    
+    @Test
+    public void testSplitDateRange() {
+        Date begin = new Date(DAY + 1000);
+        Date end = new Date(4 * DAY + 5000);
+        
+        List<Date[]> windows = PipelinedQueryPlans.splitDateRange(begin, end, 2);
+        Assert.assertEquals(3, windows.size());
+        Assert.assertEquals(begin, windows.get(0)[0]);
+        Assert.assertEquals(new Date(3 * DAY - 1), windows.get(0)[1]);
+        Assert.assertEquals(new Date(3 * DAY), windows.get(1)[0]);
+        Assert.assertEquals(new Date(5 * DAY - 1), windows.get(1)[1]);
+        Assert.assertEquals(new Date(5 * DAY), windows.get(2)[0]);
+        Assert.assertEquals(end, windows.get(2)[1]);
+        
+        Assert.assertEquals(1, PipelinedQueryPlans.splitDateRange(begin, new Date(DAY + 2000), 1).size());
+    }
+    
+    @Test
+    public void testWindowsInOrder() throws IOException {
+        List<Date[]> windows = PipelinedQueryPlans.splitDateRange(new Date(DAY), new Date(5 * DAY - 1), 1);
+        final AtomicInteger planned = new AtomicInteger();
+        PipelinedQueryPlans.WindowPlanner planner = (begin, end) -> {
+            planned.incrementAndGet();
+            long day = begin.getTime() / DAY;
+            return day == 3 ? new Plans() : new Plans("day" + day + "a", "day" + day + "b");
+        };
+        
+        PipelinedQueryPlans plans = new PipelinedQueryPlans(new Plans("day0"), windows, 2, planner, new QueryImpl());
+        Assert.assertEquals(Arrays.asList("day0", "day1a", "day1b", "day2a", "day2b", "day4a", "day4b"), queries(plans));
+        Assert.assertEquals(4, planned.get());
+        plans.close();
+    }
+    
+    @Test
+    public void testClose() throws IOException {
+        List<Date[]> windows = PipelinedQueryPlans.splitDateRange(new Date(DAY), new Date(3 * DAY - 1), 1);
+        final List<Plans> windowPlans = Collections.synchronizedList(new ArrayList<>());
+        PipelinedQueryPlans.WindowPlanner planner = (begin, end) -> {
+            Plans window = new Plans("day" + begin.getTime() / DAY);
+            windowPlans.add(window);
+            return window;
+        };
+        
+        Plans first = new Plans("day0");
+        PipelinedQueryPlans plans = new PipelinedQueryPlans(first, windows, 1, planner, new QueryImpl());
+        Assert.assertEquals(Arrays.asList("day0", "day1", "day2"), queries(plans));
+        
+        plans.close();
+        Assert.assertTrue(first.closed);
+        Assert.assertEquals(2, windowPlans.size());
+        for (Plans window : windowPlans) {
+            Assert.assertTrue(window.closed);
+        }
+    }
+    
+    private static void assertClosed(Plans plans) throws InterruptedException {
+        for (int i = 0; i < 100 && !plans.closed; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(plans.closed);
+    }
+    
+    @Test
+    public void testCloseDuringPlanning() throws Exception {
+        List<Date[]> windows = PipelinedQueryPlans.splitDateRange(new Date(DAY), new Date(3 * DAY - 1), 1);
+        CountDownLatch planning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<Long,Plans> planned = new ConcurrentHashMap<>();
+        PipelinedQueryPlans.WindowPlanner planner = (begin, end) -> {
+            long day = begin.getTime() / DAY;
+            if (day == 2) {
+                planning.countDown();
+                // a planner that does not stop when it is interrupted
+                boolean released = false;
+                while (!released) {
+                    try {
+                        released = release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // keep planning
+                    }
+                }
+            }
+            Plans window = new Plans("day" + day);
+            planned.put(day, window);
+            return window;
+        };
+        
+        Plans first = new Plans("day0");
+        PipelinedQueryPlans plans = new PipelinedQueryPlans(first, windows, 2, planner, new QueryImpl());
+        Assert.assertTrue(planning.await(10, TimeUnit.SECONDS));
+        plans.close();
+        Assert.assertTrue(first.closed);
+        
+        // the plans of a window that was never asked for, and of a window that finished planning after the close, are both closed
+        release.countDown();
+        for (int i = 0; i < 100 && !planned.containsKey(2L); i++) {
+            Thread.sleep(100);
+        }
+        assertClosed(planned.get(1L));
+        assertClosed(planned.get(2L));
+    }
+    
+    @Test(expected = RuntimeException.class)
+    public void testPlanningFailure() throws IOException {
+        List<Date[]> windows = PipelinedQueryPlans.splitDateRange(new Date(DAY), new Date(2 * DAY - 1), 1);
+        PipelinedQueryPlans.WindowPlanner planner = (begin, end) -> {
+            throw new IllegalStateException("planning failed");
+        };
+        
+        try (PipelinedQueryPlans plans = new PipelinedQueryPlans(new Plans("day0"), windows, 1, planner, new QueryImpl())) {
+            queries(plans);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package datawave.query.planner;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.iterator.QueryIterator;
+import datawave.query.jexl.JexlASTHelper;
+import datawave.query.jexl.visitors.JexlStringBuildingVisitor;
+import datawave.webservice.query.QueryImpl;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Sets;
+
+public class QueryPlanCacheTest {
+    
+    private static final String QUERY = "FOO == 'bar'";
+    
+    private ShardQueryConfiguration config;
+    private QueryImpl settings;
+    
+    @Before
+    public void setup() {
+        config = ShardQueryConfiguration.create();
+        config.setAuthorizations(Collections.singleton(new Authorizations("A", "B")));
+        config.setBeginDate(new Date(0));
+        config.setEndDate(new Date(1000));
+        
+        settings = new QueryImpl();
+        settings.setQueryLogicName("EventQuery");
+        settings.addParameter("query.syntax", "JEXL");
+    }
+    
+    private QueryPlanCache.Plan createPlan() throws Exception {
+        IteratorSetting cfg = new IteratorSetting(100, "query", QueryIterator.class);
+        cfg.addOption("option", "value");
+        return new QueryPlanCache.Plan(JexlASTHelper.parseJexlQuery(QUERY), config, cfg);
+    }
+    
+    @Test
+    public void testKey() {
+        QueryPlanCache.PlanKey key = QueryPlanCache.createKey(config, QUERY, settings);
+        Assert.assertEquals(key, QueryPlanCache.createKey(config, QUERY, settings));
+        Assert.assertEquals(key.hashCode(), QueryPlanCache.createKey(config, QUERY, settings).hashCode());
+        Assert.assertNotEquals(key, QueryPlanCache.createKey(config, "FOO == 'baz'", settings));
+        
+        config.setAuthorizations(Collections.singleton(new Authorizations("A")));
+        Assert.assertNotEquals(key, QueryPlanCache.createKey(config, QUERY, settings));
+        config.setAuthorizations(Collections.singleton(new Authorizations("A", "B")));
+        
+        config.setEndDate(new Date(2000));
+        Assert.assertNotEquals(key, QueryPlanCache.createKey(config, QUERY, settings));
+        config.setEndDate(new Date(1000));
+        
+        settings.addParameter("unique.fields", "FOO");
+        Assert.assertNotEquals(key, QueryPlanCache.createKey(config, QUERY, settings));
+    }
+    
+    @Test
+    public void testGetAndInvalidate() throws Exception {
+        QueryPlanCache cache = new QueryPlanCache(10, 60, TimeUnit.SECONDS);
+        QueryPlanCache.PlanKey key = QueryPlanCache.createKey(config, QUERY, settings);
+        Assert.assertNull(cache.get(key));
+        
+        QueryPlanCache.Plan plan = createPlan();
+        cache.put(key, plan);
+        Assert.assertSame(plan, cache.get(key));
+        
+        QueryPlanCache.invalidateAll();
+        QueryPlanCache.PlanKey newKey = QueryPlanCache.createKey(config, QUERY, settings);
+        Assert.assertNull(cache.get(newKey));
+        
+        // a plan built before the invalidation is not kept
+        cache.put(key, plan);
+        Assert.assertNull(cache.get(newKey));
+        cache.put(newKey, plan);
+        Assert.assertSame(plan, cache.get(newKey));
+    }
+    
+    @Test
+    public void testPlansExpire() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        QueryPlanCache cache = new QueryPlanCache(10, 60, TimeUnit.SECONDS, ticker);
+        QueryPlanCache.PlanKey key = QueryPlanCache.createKey(config, QUERY, settings);
+        QueryPlanCache.Plan plan = createPlan();
+        cache.put(key, plan);
+        
+        nanos.set(TimeUnit.SECONDS.toNanos(59));
+        Assert.assertSame(plan, cache.get(key));
+        
+        // the plan may no longer match the global index
+        nanos.set(TimeUnit.SECONDS.toNanos(60));
+        Assert.assertNull(cache.get(key));
+    }
+    
+    @Test
+    public void testRestore() throws Exception {
+        config.setIndexedFields(Sets.newHashSet("FOO"));
+        config.setProjectFields(Sets.newHashSet("FOO", "BAR"));
+        config.setSortedUIDs(false);
+        config.setContainsIndexOnlyTerms(true);
+        config.setQueryTermFrequencyFields(Sets.newHashSet("BAR"));
+        QueryPlanCache.Plan plan = createPlan();
+        
+        ShardQueryConfiguration other = ShardQueryConfiguration.create();
+        plan.restore(other);
+        Assert.assertEquals(Sets.newHashSet("FOO"), other.getIndexedFields());
+        Assert.assertEquals(Sets.newHashSet("FOO", "BAR"), other.getProjectFields());
+        Assert.assertFalse(other.isSortedUIDs());
+        Assert.assertTrue(other.isContainsIndexOnlyTerms());
+        Assert.assertEquals(Sets.newHashSet("BAR"), other.getQueryTermFrequencyFields());
+        Assert.assertEquals(new Date(0), other.getBeginDate());
+        Assert.assertEquals(new Date(1000), other.getEndDate());
+        
+        // changes to the restored configuration, tree and options do not change the plan
+        other.getIndexedFields().add("BAZ");
+        ASTJexlScript tree = plan.getQueryTree();
+        tree.jjtAddChild(JexlASTHelper.parseJexlQuery("BAZ == 'qux'").jjtGetChild(0), 1);
+        plan.getIteratorSetting().addOption("other", "value");
+        
+        ShardQueryConfiguration another = ShardQueryConfiguration.create();
+        plan.restore(another);
+        Assert.assertEquals(Sets.newHashSet("FOO"), another.getIndexedFields());
+        Assert.assertEquals(JexlStringBuildingVisitor.buildQuery(JexlASTHelper.parseJexlQuery(QUERY)), JexlStringBuildingVisitor.buildQuery(plan
+                        .getQueryTree()));
+        Assert.assertEquals(Collections.singletonMap("option", "value"), plan.getIteratorSetting().getOptions());
+    }
+}
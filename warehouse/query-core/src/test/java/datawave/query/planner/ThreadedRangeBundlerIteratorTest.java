@@ -0,0 +1,119 @@
+package datawave.query.planner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import datawave.query.index.lookup.TupleToRange;
+import datawave.query.iterator.CloseableListIterable;
+import datawave.query.jexl.JexlASTHelper;
+import datawave.webservice.query.QueryImpl;
+import datawave.webservice.query.configuration.QueryData;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+public class ThreadedRangeBundlerIteratorTest {
+    
+    // the even shards are on server0 and the odd shards on server1
+    private static final Function<Range,String> locator = range -> {
+        String row = range.getStartKey().getRow().toString();
+        return "server" + (Integer.parseInt(row.substring(row.indexOf('_') + 1)) % 2);
+    };
+    
+    private static QueryPlan shardPlan(String query, int shard, long count) throws Exception {
+        String row = "20190101_" + shard;
+        QueryPlan plan = new QueryPlan(JexlASTHelper.parseJexlQuery(query), new Range(row, true, row + TupleToRange.NULL_BYTE_STRING, false));
+        plan.setEstimatedCount(count);
+        return plan;
+    }
+    
+    private static List<List<String>> bundle(List<QueryPlan> plans, int maxRangesPerBundle, long maxBundleWork) throws Exception {
+        QueryImpl settings = new QueryImpl();
+        QueryData original = new QueryData("FOO == 'bar'", Collections.<Range> emptyList(), Collections.<IteratorSetting> emptyList());
+        
+        // @formatter:off
+        ThreadedRangeBundlerIterator iterator = new ThreadedRangeBundlerIterator.Builder()
+                .setOriginal(original)
+                .setRanges(new CloseableListIterable<>(plans))
+                .setMaxRanges(100)
+                .setMaxWaitValue(10)
+                .setMaxWaitUnit(TimeUnit.MILLISECONDS)
+                .setSettings(settings)
+                .setNumRangesToBuffer(plans.size())
+                .setRangeBufferTimeoutMillis(TimeUnit.SECONDS.toMillis(10))
+                .setRangeBufferPollMillis(10)
+                .setRangeLocator(locator)
+                .setMaxRangesPerBundle(maxRangesPerBundle)
+                .setMaxBundleWork(maxBundleWork)
+                .build();
+        // @formatter:on
+        
+        List<List<String>> bundles = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                List<String> rows = new ArrayList<>();
+                for (Range range : iterator.next().getRanges()) {
+                    rows.add(range.getStartKey().getRow().toString());
+                }
+                bundles.add(rows);
+            }
+        } finally {
+            iterator.close();
+        }
+        return bundles;
+    }
+    
+    private static List<QueryPlan> shardPlans(String query, int shards, long count) throws Exception {
+        List<QueryPlan> plans = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            plans.add(shardPlan(query, shard, count));
+        }
+        return plans;
+    }
+    
+    @Test
+    public void testBundleByServer() throws Exception {
+        List<List<String>> bundles = bundle(shardPlans("FOO == 'bar'", 6, 10), 32, 0);
+        Assert.assertEquals(Lists.newArrayList(Lists.newArrayList("20190101_0", "20190101_2", "20190101_4"),
+                        Lists.newArrayList("20190101_1", "20190101_3", "20190101_5")), bundles);
+    }
+    
+    @Test
+    public void testMaxRangesPerBundle() throws Exception {
+        List<List<String>> bundles = bundle(shardPlans("FOO == 'bar'", 6, 10), 2, 0);
+        Assert.assertEquals(Lists.newArrayList(Lists.newArrayList("20190101_0", "20190101_2"), Lists.newArrayList("20190101_1", "20190101_3"),
+                        Lists.newArrayList("20190101_4"), Lists.newArrayList("20190101_5")), bundles);
+    }
+    
+    @Test
+    public void testMaxBundleWork() throws Exception {
+        List<QueryPlan> plans = shardPlans("FOO == 'bar'", 6, 10);
+        plans.get(0).setEstimatedCount(60);
+        plans.get(2).setEstimatedCount(30);
+        plans.get(4).setEstimatedCount(30);
+        
+        List<List<String>> bundles = bundle(plans, 32, 100);
+        Assert.assertEquals(Lists.newArrayList(Lists.newArrayList("20190101_0", "20190101_2"),
+                        Lists.newArrayList("20190101_1", "20190101_3", "20190101_5"), Lists.newArrayList("20190101_4")), bundles);
+    }
+    
+    @Test
+    public void testOnlySameQueryBundled() throws Exception {
+        List<QueryPlan> plans = shardPlans("FOO == 'bar'", 4, 10);
+        plans.set(2, shardPlan("FOO == 'baz'", 2, 10));
+        // a day range spans the tablets of the day
+        plans.add(new QueryPlan(JexlASTHelper.parseJexlQuery("FOO == 'bar'"), new Range("20190102_0", true, "20190102" + TupleToRange.MAX_UNICODE_STRING,
+                        false)));
+        
+        List<List<String>> bundles = bundle(plans, 32, 0);
+        Assert.assertEquals(Lists.newArrayList(Lists.newArrayList("20190101_0"), Lists.newArrayList("20190101_1", "20190101_3"),
+                        Lists.newArrayList("20190101_2"), Lists.newArrayList("20190102_0")), bundles);
+    }
+}
@@ -0,0 +1,246 @@
+package datawave.query.scheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import datawave.query.config.ShardQueryConfiguration;
+import datawave.query.tables.ScannerFactory;
+import datawave.query.tables.stats.ScanSessionStats;
+import datawave.query.util.MetadataHelper;
+import datawave.webservice.query.QueryImpl;
+import datawave.webservice.query.configuration.QueryData;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+
+public class ChunkedSchedulerTest {
+    
+    /**
+     * Returns the results of a chunk without scanning
+     */
+    private static class StubScheduler extends Scheduler {
+        private final Iterator<Entry<Key,Value>> results;
+        private volatile boolean closed = false;
+        
+        private StubScheduler(Iterator<Entry<Key,Value>> results) {
+            this.results = results;
+        }
+        
+        @Override
+        public Iterator<Entry<Key,Value>> iterator() {
+            return results;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+        
+        @Override
+        public BatchScanner createBatchScanner(ShardQueryConfiguration config, ScannerFactory scannerFactory, QueryData qd) {
+            return null;
+        }
+        
+        @Override
+        public ScanSessionStats getSchedulerStats() {
+            return null;
+        }
+    }
+    
+    private final ShardQueryConfiguration config = ShardQueryConfiguration.create();
+    private final Map<String,StubScheduler> schedulers = new HashMap<>();
+    
+    private static Entry<Key,Value> document(String uid) {
+        return Maps.immutableEntry(new Key("20190314_0", "datatype1\u0000" + uid), new Value());
+    }
+    
+    /**
+     * @return the results of every document of the uids
+     */
+    private static Iterator<Entry<Key,Value>> documents(String... uids) {
+        List<Entry<Key,Value>> documents = new ArrayList<>();
+        for (String uid : uids) {
+            documents.add(document(uid));
+        }
+        return documents.iterator();
+    }
+    
+    /**
+     * @return the results of an endless chunk
+     */
+    private static Iterator<Entry<Key,Value>> endless(String prefix) {
+        return new Iterator<Entry<Key,Value>>() {
+            private long uid = 0;
+            
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+            
+            @Override
+            public Entry<Key,Value> next() {
+                return document(prefix + uid++);
+            }
+        };
+    }
+    
+    /**
+     * @param results
+     *            the results of each chunk
+     * @return a scheduler over chunks that return the results
+     */
+    private ChunkedScheduler createScheduler(Map<String,Iterator<Entry<Key,Value>>> results) {
+        QueryImpl query = new QueryImpl();
+        query.setId(UUID.randomUUID());
+        config.setQuery(query);
+        config.setBooleanChunkThreads(results.size());
+        
+        List<Iterator<QueryData>> chunks = new ArrayList<>();
+        for (String chunk : results.keySet()) {
+            chunks.add(Iterators.singletonIterator(new QueryData(chunk, Collections.<Range> emptyList(), Collections.emptyList())));
+        }
+        return new ChunkedScheduler(config, null, (MetadataHelper) null, chunks) {
+            @Override
+            protected Scheduler newChunkScheduler(Iterator<QueryData> chunk) {
+                String name = chunk.next().getQuery();
+                StubScheduler scheduler = new StubScheduler(results.get(name));
+                synchronized (schedulers) {
+                    schedulers.put(name, scheduler);
+                }
+                return scheduler;
+            }
+        };
+    }
+    
+    private static List<Key> keys(Iterator<Entry<Key,Value>> results) {
+        List<Key> keys = new ArrayList<>();
+        while (results.hasNext()) {
+            keys.add(results.next().getKey());
+        }
+        return keys;
+    }
+    
+    private static boolean threadsRunning(String query) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("ChunkedScheduler for " + query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Test
+    public void testDuplicatesAcrossChunks() throws IOException {
+        Map<String,Iterator<Entry<Key,Value>>> results = new HashMap<>();
+        results.put("a", documents("uid1", "uid2"));
+        results.put("b", documents("uid2", "uid3"));
+        List<Entry<Key,Value>> c = new ArrayList<>();
+        c.add(document("uid1"));
+        c.add(Maps.immutableEntry(new Key("20190314_0", "summary"), new Value()));
+        results.put("c", c.iterator());
+        
+        ChunkedScheduler scheduler = createScheduler(results);
+        List<Key> keys = keys(scheduler.iterator());
+        
+        // every document is returned once, whichever chunk returns it first
+        Assert.assertEquals(4, keys.size());
+        Assert.assertTrue(keys.containsAll(Arrays.asList(document("uid1").getKey(), document("uid2").getKey(), document("uid3").getKey(),
+                        new Key("20190314_0", "summary"))));
+        scheduler.close();
+        Assert.assertTrue(schedulers.get("a").closed);
+        Assert.assertTrue(schedulers.get("b").closed);
+        Assert.assertTrue(schedulers.get("c").closed);
+    }
+    
+    @Test
+    public void testResultBudget() throws Exception {
+        Map<String,Iterator<Entry<Key,Value>>> results = new HashMap<>();
+        results.put("a", endless("a"));
+        results.put("b", endless("b"));
+        config.setBooleanChunkResultBudget(10);
+        
+        ChunkedScheduler scheduler = createScheduler(results);
+        Assert.assertEquals(10, keys(scheduler.iterator()).size());
+        
+        // the scans of the chunks are stopped once the budget is returned
+        String query = config.getQuery().getId().toString();
+        for (int i = 0; i < 100 && threadsRunning(query); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertFalse(threadsRunning(query));
+        synchronized (schedulers) {
+            for (StubScheduler chunk : schedulers.values()) {
+                Assert.assertTrue(chunk.closed);
+            }
+        }
+        scheduler.close();
+    }
+    
+    @Test
+    public void testChunkFailure() throws IOException {
+        Map<String,Iterator<Entry<Key,Value>>> results = new HashMap<>();
+        results.put("a", documents("uid1"));
+        results.put("b", new Iterator<Entry<Key,Value>>() {
+            @Override
+            public boolean hasNext() {
+                throw new IllegalStateException("failed");
+            }
+            
+            @Override
+            public Entry<Key,Value> next() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        
+        ChunkedScheduler scheduler = createScheduler(results);
+        try {
+            keys(scheduler.iterator());
+            Assert.fail("Expected the failure of a chunk to be thrown");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        scheduler.close();
+    }
+    
+    @Test
+    public void testSeenDocuments() {
+        ChunkedScheduler.SeenDocuments seen = new ChunkedScheduler.SeenDocuments();
+        Assert.assertTrue(seen.add(new Key("20190314_0", "datatype1\u0000uid1", "FOO\u0000bar")));
+        Assert.assertFalse(seen.add(new Key("20190314_0", "datatype1\u0000uid1", "FOO\u0000baz")));
+        Assert.assertTrue(seen.add(new Key("20190314_1", "datatype1\u0000uid1")));
+        Assert.assertTrue(seen.add(new Key("20190314_0", "datatype2\u0000uid1")));
+        Assert.assertEquals(3, seen.size());
+        
+        // keys that are not documents are always returned
+        Assert.assertTrue(seen.add(new Key("20190314_0", "summary")));
+        Assert.assertTrue(seen.add(new Key("20190314_0", "summary")));
+        Assert.assertEquals(3, seen.size());
+    }
+    
+    @Test
+    public void testSeenDocumentsGrow() {
+        ChunkedScheduler.SeenDocuments seen = new ChunkedScheduler.SeenDocuments();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(seen.add(new Key("20190314_0", "datatype1\u0000uid" + i)));
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertFalse(seen.add(new Key("20190314_0", "datatype1\u0000uid" + i)));
+        }
+        Assert.assertEquals(10000, seen.size());
+    }
+}
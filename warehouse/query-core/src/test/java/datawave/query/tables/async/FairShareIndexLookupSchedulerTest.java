@@ -0,0 +1,140 @@
+package datawave.query.tables.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FairShareIndexLookupSchedulerTest {
+    
+    private FairShareIndexLookupScheduler scheduler;
+    
+    @After
+    public void shutdown() {
+        if (null != scheduler) {
+            scheduler.shutdown();
+        }
+    }
+    
+    private static void waitFor(List<String> started, int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (started.size() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, started.size());
+    }
+    
+    @Test
+    public void testFairShare() throws Exception {
+        scheduler = new FairShareIndexLookupScheduler("test", 2, 0);
+        final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        final Semaphore finish = new Semaphore(0);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        
+        ExecutorService laneA = scheduler.newLane("userA", "queryA", 1, 10);
+        ExecutorService laneB = scheduler.newLane("userB", "queryB", 1, 10);
+        List<Future<?>> futures = new ArrayList<>();
+        for (ExecutorService lane : new ExecutorService[] {laneA, laneA, laneA, laneB, laneB}) {
+            final String user = lane == laneA ? "A" : "B";
+            futures.add(lane.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.add(user);
+                finish.acquireUninterruptibly();
+                running.decrementAndGet();
+            }));
+        }
+        
+        // the first user takes both threads until the second user has tasks
+        waitFor(started, 2);
+        Assert.assertEquals(3, scheduler.getQueueDepth());
+        Assert.assertEquals(2, scheduler.getActiveTasks());
+        
+        // the next free thread goes to the user running the fewest tasks
+        finish.release();
+        waitFor(started, 3);
+        Assert.assertEquals("B", started.get(2));
+        
+        finish.release(4);
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(2, maxRunning.get());
+        Assert.assertEquals(5, scheduler.getStartedTasks());
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+        laneA.shutdown();
+        laneB.shutdown();
+        Assert.assertTrue(laneA.awaitTermination(10, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testLaneShare() throws Exception {
+        scheduler = new FairShareIndexLookupScheduler("test", 4, 0);
+        final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        final Semaphore finish = new Semaphore(0);
+        
+        // a lane runs no more than its own limit even when threads are free
+        ExecutorService lane = scheduler.newLane("user", "query", 1, 1);
+        for (int i = 0; i < 3; i++) {
+            lane.submit(() -> {
+                started.add("task");
+                finish.acquireUninterruptibly();
+            });
+        }
+        waitFor(started, 1);
+        Thread.sleep(50);
+        Assert.assertEquals(1, started.size());
+        Assert.assertEquals(2, scheduler.getQueueDepth());
+        
+        finish.release(3);
+        lane.shutdown();
+        Assert.assertTrue(lane.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(3, started.size());
+    }
+    
+    @Test
+    public void testShutdownNow() throws Exception {
+        scheduler = new FairShareIndexLookupScheduler("test", 1, 0);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        
+        ExecutorService lane = scheduler.newLane("user", "query", 1, 1);
+        lane.submit(() -> {
+            running.countDown();
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        lane.submit(() -> {});
+        lane.submit(() -> {});
+        Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+        
+        Assert.assertEquals(2, lane.shutdownNow().size());
+        Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(lane.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+        
+        try {
+            lane.submit(() -> {});
+            Assert.fail("A shut down lane should reject tasks");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        
+        // the threads are free for the other lanes
+        Future<String> future = scheduler.newLane("other", "query2", 1, 1).submit(() -> "done");
+        Assert.assertEquals("done", future.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,51 @@
+package datawave.query.tables.async;
+
+import datawave.query.tables.stats.ScanSessionStats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HedgePolicyTest {
+    
+    @Test
+    public void testHedgeDelay() {
+        ScanSessionStats stats = new ScanSessionStats();
+        HedgePolicy policy = new HedgePolicy("testHedgeDelay", () -> stats, 0.95, 0.05, 10);
+        
+        // no delay until enough latencies have been recorded
+        for (int i = 0; i < 19; i++) {
+            policy.recordLatency("server1", 100);
+        }
+        Assert.assertEquals(-1, policy.getHedgeDelay());
+        policy.recordLatency("server2", 100);
+        long delay = policy.getHedgeDelay();
+        Assert.assertTrue(Long.toString(delay), delay >= 100 && delay <= 120);
+        
+        // the latencies are shared by the policies of the table, and recorded for each server of the session
+        HedgePolicy other = new HedgePolicy("testHedgeDelay", null, 0.95, 0.05, 500);
+        Assert.assertEquals(500, other.getHedgeDelay());
+        Assert.assertEquals(19, stats.getServerLatencies().get("server1").getCount());
+        Assert.assertEquals(1, stats.getServerLatencies().get("server2").getCount());
+    }
+    
+    @Test
+    public void testMaxHedgeRate() {
+        HedgePolicy policy = new HedgePolicy("testMaxHedgeRate", null, 0.95, 0.1, 10);
+        policy.scanSubmitted();
+        
+        // the first hedge is always allowed
+        Assert.assertTrue(policy.tryHedge());
+        Assert.assertFalse(policy.tryHedge());
+        
+        for (int i = 0; i < 19; i++) {
+            policy.scanSubmitted();
+        }
+        Assert.assertTrue(policy.tryHedge());
+        Assert.assertFalse(policy.tryHedge());
+        Assert.assertEquals(2, policy.getHedgeCount());
+        
+        HedgePolicy disabled = new HedgePolicy("testMaxHedgeRate", null, 0.95, 0, 10);
+        disabled.scanSubmitted();
+        Assert.assertFalse(disabled.tryHedge());
+    }
+}
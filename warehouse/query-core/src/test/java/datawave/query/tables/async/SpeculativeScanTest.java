@@ -0,0 +1,153 @@
+package datawave.query.tables.async;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class SpeculativeScanTest {
+    
+    private final ExecutorService caller = Executors.newCachedThreadPool();
+    private final ArrayBlockingQueue<Entry<Key,Value>> results = new ArrayBlockingQueue<>(10);
+    private ScannerChunk chunk;
+    
+    /**
+     * A scan that returns a single entry named after it, fails, or blocks until it is interrupted
+     */
+    private static class StubScan extends Scan {
+        private final String name;
+        private final boolean fail;
+        private final boolean block;
+        private volatile boolean started = false;
+        private volatile boolean interrupted = false;
+        private volatile boolean closed = false;
+        
+        private StubScan(ScannerChunk chunk, ExecutorService caller, String name, boolean fail, boolean block) {
+            super("table", Collections.<Authorizations> emptySet(), chunk, null, null, new ArrayBlockingQueue<>(10), caller);
+            this.name = name;
+            this.fail = fail;
+            this.block = block;
+        }
+        
+        @Override
+        public Scan call() throws Exception {
+            started = true;
+            if (block) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    throw e;
+                }
+            }
+            if (fail) {
+                throw new IOException(name + " failed");
+            }
+            responded = true;
+            results.put(Maps.immutableEntry(new Key(name), new Value(new byte[0])));
+            return this;
+        }
+        
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+    
+    @Before
+    public void setup() {
+        chunk = new ScannerChunk(null, Collections.singletonList(new Range()));
+        chunk.setQueryId("query");
+    }
+    
+    @After
+    public void shutdown() {
+        caller.shutdownNow();
+    }
+    
+    private static HedgePolicy createHedgePolicy(String tableName, long minHedgeDelay) {
+        HedgePolicy policy = new HedgePolicy(tableName, null, 0.95, 0.05, minHedgeDelay);
+        for (int i = 0; i < 20; i++) {
+            policy.recordLatency("server", 1);
+        }
+        return policy;
+    }
+    
+    private List<String> run(SpeculativeScan scan) throws Exception {
+        Future<Scan> future = caller.submit(scan);
+        Assert.assertSame(scan, future.get(10, TimeUnit.SECONDS));
+        
+        List<String> rows = new ArrayList<>();
+        for (Entry<Key,Value> entry : results) {
+            rows.add(entry.getKey().getRow().toString());
+        }
+        return rows;
+    }
+    
+    @Test
+    public void testPrimaryWins() throws Exception {
+        SpeculativeScan scan = new SpeculativeScan("table", Collections.emptySet(), chunk, null, null, results, caller);
+        scan.setHedgePolicy(createHedgePolicy("testPrimaryWins", 60000));
+        StubScan primary = new StubScan(chunk, caller, "primary", false, false);
+        StubScan hedge = new StubScan(chunk, caller, "hedge", false, false);
+        scan.addScan(primary);
+        scan.addHedge(hedge);
+        
+        Assert.assertEquals(Collections.singletonList("primary"), run(scan));
+        Assert.assertFalse(hedge.started);
+        Assert.assertTrue(primary.closed);
+    }
+    
+    @Test
+    public void testHedgeWins() throws Exception {
+        SpeculativeScan scan = new SpeculativeScan("table", Collections.emptySet(), chunk, null, null, results, caller);
+        scan.setHedgePolicy(createHedgePolicy("testHedgeWins", 10));
+        StubScan primary = new StubScan(chunk, caller, "primary", false, true);
+        StubScan hedge = new StubScan(chunk, caller, "hedge", false, false);
+        scan.addScan(primary);
+        scan.addHedge(hedge);
+        
+        // the primary does not respond within the hedge delay, so the hedge is started and wins
+        Assert.assertEquals(Collections.singletonList("hedge"), run(scan));
+        Assert.assertTrue(hedge.started);
+        
+        // the loser is cancelled and closed
+        Assert.assertTrue(primary.closed);
+        for (int i = 0; i < 100 && !primary.interrupted; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(primary.interrupted);
+    }
+    
+    @Test
+    public void testPrimaryFailsBeforeResponding() throws Exception {
+        SpeculativeScan scan = new SpeculativeScan("table", Collections.emptySet(), chunk, null, null, results, caller);
+        scan.setHedgePolicy(createHedgePolicy("testPrimaryFailsBeforeResponding", 60000));
+        StubScan primary = new StubScan(chunk, caller, "primary", true, false);
+        StubScan hedge = new StubScan(chunk, caller, "hedge", false, false);
+        scan.addHedge(hedge);
+        scan.addScan(primary);
+        
+        // the hedge is started as soon as the primary fails rather than after the hedge delay
+        Assert.assertEquals(Collections.singletonList("hedge"), run(scan));
+        Assert.assertTrue(hedge.started);
+    }
+}
@@ -0,0 +1,77 @@
+package datawave.query.tables.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    
+    @Test
+    public void testBuckets() {
+        Assert.assertEquals(0, LatencyHistogram.getBucket(0));
+        Assert.assertEquals(0, LatencyHistogram.getBucket(1));
+        for (long millis = 2; millis < 100000; millis += 7) {
+            long upperBound = LatencyHistogram.getUpperBound(LatencyHistogram.getBucket(millis));
+            Assert.assertTrue(millis + " > " + upperBound, upperBound >= millis);
+            Assert.assertTrue(millis + " * 1.2 < " + upperBound, upperBound <= millis * 1.2 + 1);
+        }
+        // latencies beyond the last bucket are counted in it
+        Assert.assertEquals(LatencyHistogram.getBucket(Long.MAX_VALUE), LatencyHistogram.getBucket(Long.MAX_VALUE / 2));
+    }
+    
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(-1, histogram.getPercentile(0.95));
+        
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        assertNear(50, histogram.getPercentile(0.5));
+        assertNear(95, histogram.getPercentile(0.95));
+        assertNear(100, histogram.getPercentile(1.0));
+        Assert.assertEquals(1, histogram.getPercentile(0));
+    }
+    
+    @Test
+    public void testMerge() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            fast.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            slow.record(1000);
+        }
+        fast.merge(slow);
+        Assert.assertEquals(100, fast.getCount());
+        assertNear(10, fast.getPercentile(0.9));
+        assertNear(1000, fast.getPercentile(0.95));
+    }
+    
+    @Test
+    public void testDecay() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        Assert.assertEquals(99, histogram.getCount());
+        
+        // the old latencies are halved, so the new ones soon outweigh them
+        histogram.record(1000);
+        Assert.assertEquals(50, histogram.getCount());
+        for (int i = 0; i < 49; i++) {
+            histogram.record(10);
+        }
+        Assert.assertEquals(99, histogram.getCount());
+        histogram.record(10);
+        for (int i = 0; i < 50; i++) {
+            histogram.record(10);
+        }
+        assertNear(10, histogram.getPercentile(0.5));
+    }
+    
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue(expected + " != " + actual, actual >= expected && actual <= expected * 1.2 + 1);
+    }
+}
@@ -5,9 +5,11 @@ import datawave.query.Constants;
 import datawave.query.DocumentSerialization;
 import datawave.query.attributes.Document;
 import datawave.query.attributes.Numeric;
+import datawave.query.function.deserializer.FlatDocumentDeserializer;
 import datawave.query.function.deserializer.KryoDocumentDeserializer;
 import datawave.webservice.query.Query;
 import datawave.webservice.query.QueryImpl;
+import datawave.webservice.query.exception.EmptyObjectException;
 import datawave.webservice.query.logic.BaseQueryLogic;
 import datawave.webservice.query.result.event.ResponseObjectFactory;
 import datawave.webservice.query.result.event.SimpleEvent;
@@ -255,4 +257,32 @@ public class DocumentTransformerTest { // extends EasyMockSupport {
         Assert.assertTrue(foundFields.containsAll(expectedFields));
         Assert.assertTrue(expectedFields.containsAll(foundFields));
     }
+    
+    @Test
+    public void transform_emptyBatchTest() throws MarkingFunctions.Exception {
+        Key key = new Key("shard", "dataType" + Constants.NULL + "uid");
+        Value value = new Value();
+        AbstractMap.SimpleEntry<Key,Value> entry = new AbstractMap.SimpleEntry<>(key, value);
+        
+        FlatDocumentDeserializer flatDeserializer = PowerMock.createMock(FlatDocumentDeserializer.class);
+        PowerMock.mockStatic(DocumentSerialization.class);
+        EasyMock.expect(DocumentSerialization.getDocumentDeserializer(mockQuery)).andReturn(flatDeserializer);
+        EasyMock.expect(mockLogic.getTableName()).andReturn("table1");
+        EasyMock.expect(mockQuery.getQueryAuthorizations()).andReturn("A,B,C");
+        EasyMock.expect(mockQuery.findParameter("log.timing.details")).andReturn(new QueryImpl.Parameter("", ""));
+        EasyMock.expect(flatDeserializer.deserializeBatch(entry)).andReturn(Collections.<Map.Entry<Key,Document>> emptyList());
+        
+        PowerMock.replayAll();
+        
+        transformer = new DocumentTransformer(mockLogic, mockQuery, mockMarkingFunctions, mockResponseFactory, true);
+        try {
+            transformer.transform(entry);
+            Assert.fail("Expected an empty batch to be skipped");
+        } catch (EmptyObjectException e) {
+            // expected
+        }
+        Assert.assertNull(transformer.nextBatchedResult());
+        
+        PowerMock.verifyAll();
+    }
 }
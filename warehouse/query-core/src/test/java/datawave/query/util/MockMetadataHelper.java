@@ -35,7 +35,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 
 public class MockMetadataHelper extends MetadataHelper {
@@ -343,6 +345,17 @@ public class MockMetadataHelper extends MetadataHelper {
         return sum;
     }
     
+    @Override
+    public SortedMap<String,Map<String,Long>> getCountsByDayAndType(String fieldName) {
+        SortedMap<String,Map<String,Long>> countsByDay = new TreeMap<>();
+        for (Map.Entry<Map.Entry<String,String>,Map<String,Long>> entry : this.cardinalityByDataTypeForFieldAndDate.entrySet()) {
+            if (entry.getKey().getKey().equals(fieldName)) {
+                countsByDay.put(entry.getKey().getValue(), entry.getValue());
+            }
+        }
+        return countsByDay;
+    }
+    
     @Override
     protected Multimap<String,String> loadAllFields() throws TableNotFoundException {
         return HashMultimap.create();
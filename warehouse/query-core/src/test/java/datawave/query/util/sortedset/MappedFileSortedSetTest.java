@@ -0,0 +1,185 @@
+package datawave.query.util.sortedset;
+
+import org.apache.accumulo.core.data.Key;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedFileSortedSetTest {
+    
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private final Random random = new Random(42);
+    
+    @Test
+    public void testPersistedReads() throws Exception {
+        TreeSet<KeyValueSerializable> expected = new TreeSet<>();
+        for (int i = 0; i < 5000; i++) {
+            expected.add(randomKeyValue());
+        }
+        
+        // use a small block size to get many blocks
+        File file = new File(temporaryFolder.getRoot(), "sortedset");
+        MappedFileSortedSet<KeyValueSerializable> set = new MappedFileSortedSet<>(null, new MappedFileSortedSet.SortedSetMappedFileHandler(file),
+                        new MappedFileSortedSet.KeyValueCodec(), 1024, false);
+        set.addAll(expected);
+        set.persist();
+        assertTrue(set.isPersisted());
+        
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), toList(set));
+        assertEquals(expected.first(), set.first());
+        assertEquals(expected.last(), set.last());
+        
+        List<KeyValueSerializable> all = new ArrayList<>(expected);
+        for (int i = 0; i < 100; i++) {
+            KeyValueSerializable from = all.get(random.nextInt(all.size()));
+            KeyValueSerializable to = all.get(random.nextInt(all.size()));
+            if (from.compareTo(to) > 0) {
+                KeyValueSerializable swap = from;
+                from = to;
+                to = swap;
+            }
+            assertEquals(new ArrayList<>(expected.subSet(from, to)), toList(set.subSet(from, to)));
+            assertEquals(new ArrayList<>(expected.tailSet(from)), toList(set.tailSet(from)));
+            assertEquals(new ArrayList<>(expected.headSet(to)), toList(set.headSet(to)));
+            assertTrue(set.contains(from));
+        }
+        
+        for (int i = 0; i < 100; i++) {
+            KeyValueSerializable keyValue = randomKeyValue();
+            assertEquals(expected.contains(keyValue), set.contains(keyValue));
+        }
+        
+        set.load();
+        assertFalse(set.isPersisted());
+        assertFalse(file.exists());
+        assertEquals(new ArrayList<>(expected), toList(set));
+    }
+    
+    @Test
+    public void testBackedSortedSet() throws Exception {
+        TreeSet<KeyValueSerializable> expected = new TreeSet<>();
+        File dir = temporaryFolder.newFolder();
+        LocalMappedBackedSortedSet<KeyValueSerializable> set = new LocalMappedBackedSortedSet<>(null, 100, dir, 3, new MappedFileSortedSet.KeyValueCodec());
+        for (int i = 0; i < 2000; i++) {
+            KeyValueSerializable keyValue = randomKeyValue();
+            expected.add(keyValue);
+            set.add(keyValue);
+        }
+        set.persist();
+        assertTrue(set.hasPersistedData());
+        
+        // the iterator will compact down to the max open files
+        assertEquals(new ArrayList<>(expected), toList(set));
+        assertTrue(dir.listFiles().length <= 3);
+        
+        // a new set over the same directory should pick up the persisted files
+        LocalMappedBackedSortedSet<KeyValueSerializable> reloaded = new LocalMappedBackedSortedSet<>(null, 100, dir, 3,
+                        new MappedFileSortedSet.KeyValueCodec());
+        assertEquals(new ArrayList<>(expected), toList(reloaded));
+        
+        reloaded.clear();
+        assertEquals(0, dir.listFiles().length);
+    }
+    
+    @Test
+    public void testLargeElements() throws Exception {
+        TreeSet<KeyValueSerializable> expected = new TreeSet<>();
+        for (int i = 0; i < 50; i++) {
+            Key key = new Key(randomBytes(4), randomBytes(4), randomBytes(4), new byte[0], i, false, false);
+            byte[] value = new byte[random.nextInt(3000)];
+            random.nextBytes(value);
+            expected.add(new KeyValueSerializable(key, value));
+        }
+        MappedFileSortedSet<KeyValueSerializable> set = MappedFileSortedSet.createPersisted(expected,
+                        new MappedFileSortedSet.SortedSetMappedFileHandler(temporaryFolder.newFile()), new MappedFileSortedSet.KeyValueCodec(), 1024);
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), toList(set));
+        assertEquals(expected.last(), set.last());
+    }
+    
+    @Test
+    public void testSubSetBounds() throws Exception {
+        TreeSet<KeyValueSerializable> expected = new TreeSet<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(randomKeyValue());
+        }
+        MappedFileSortedSet<KeyValueSerializable> set = MappedFileSortedSet.createPersisted(expected,
+                        new MappedFileSortedSet.SortedSetMappedFileHandler(temporaryFolder.newFile()), new MappedFileSortedSet.KeyValueCodec(), 1024);
+        List<KeyValueSerializable> all = new ArrayList<>(expected);
+        KeyValueSerializable from = all.get(20);
+        KeyValueSerializable to = all.get(80);
+        
+        try {
+            set.subSet(to, from);
+            fail("Expected the start being greater than the end to fail, as it does for a TreeSet");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            set.tailSet(from).subSet(to, from);
+            fail("Expected the start being greater than the end to fail for a view");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(new ArrayList<>(expected.subSet(from, from)), toList(set.subSet(from, from)));
+    }
+    
+    @Test
+    public void testIteratorFailsOnceUnmapped() throws Exception {
+        TreeSet<KeyValueSerializable> expected = new TreeSet<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(randomKeyValue());
+        }
+        MappedFileSortedSet<KeyValueSerializable> set = MappedFileSortedSet.createPersisted(expected,
+                        new MappedFileSortedSet.SortedSetMappedFileHandler(temporaryFolder.newFile()), new MappedFileSortedSet.KeyValueCodec(), 1024);
+        Iterator<KeyValueSerializable> it = set.iterator();
+        assertEquals(expected.first(), it.next());
+        
+        // loading the set back into memory unmaps the file, which must not be read afterwards
+        set.load();
+        try {
+            it.next();
+            fail("Expected an iterator over an unmapped file to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(new ArrayList<>(expected), toList(set));
+    }
+    
+    /**
+     * Walk the iterator (an ArrayList copy would go through toArray instead)
+     */
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        List<T> list = new ArrayList<>();
+        for (T t : iterable) {
+            list.add(t);
+        }
+        return list;
+    }
+    
+    private KeyValueSerializable randomKeyValue() {
+        Key key = new Key(randomBytes(4), randomBytes(4), randomBytes(4), randomBytes(2), random.nextInt(10), false, false);
+        return new KeyValueSerializable(key, randomBytes(8));
+    }
+    
+    private byte[] randomBytes(int maxLength) {
+        byte[] bytes = new byte[random.nextInt(maxLength) + 1];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
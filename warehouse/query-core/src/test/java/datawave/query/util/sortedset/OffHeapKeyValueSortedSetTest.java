@@ -0,0 +1,117 @@
+package datawave.query.util.sortedset;
+
+import org.apache.accumulo.core.data.Key;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapKeyValueSortedSetTest {
+    
+    private final Random random = new Random(42);
+    
+    private static final long[] TIMESTAMPS = {Long.MIN_VALUE, -1L, 0L, 1L, 5L, 1L << 40, Long.MAX_VALUE};
+    
+    @Test
+    public void testOrderingMatchesTreeSet() {
+        OffHeapKeyValueSortedSet set = new OffHeapKeyValueSortedSet();
+        TreeSet<KeyValueSerializable> expected = new TreeSet<>();
+        for (int i = 0; i < 10000; i++) {
+            KeyValueSerializable keyValue = randomKeyValue();
+            assertEquals(expected.add(keyValue), set.add(keyValue));
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertEquals(expected.first(), set.first());
+        assertEquals(expected.last(), set.last());
+    }
+    
+    @Test
+    public void testEncodingRoundTrip() {
+        for (int i = 0; i < 1000; i++) {
+            KeyValueSerializable keyValue = randomKeyValue();
+            assertEquals(keyValue, OffHeapKeyValueSortedSet.decode(OffHeapKeyValueSortedSet.encode(keyValue)));
+        }
+    }
+    
+    @Test
+    public void testSubSets() {
+        OffHeapKeyValueSortedSet set = new OffHeapKeyValueSortedSet();
+        TreeSet<KeyValueSerializable> expected = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            KeyValueSerializable keyValue = randomKeyValue();
+            set.add(keyValue);
+            expected.add(keyValue);
+        }
+        List<KeyValueSerializable> all = new ArrayList<>(expected);
+        KeyValueSerializable from = all.get(100);
+        KeyValueSerializable to = all.get(700);
+        assertEquals(new ArrayList<>(expected.subSet(from, to)), new ArrayList<>(set.subSet(from, to)));
+        assertEquals(new ArrayList<>(expected.headSet(to)), new ArrayList<>(set.headSet(to)));
+        assertEquals(new ArrayList<>(expected.tailSet(from)), new ArrayList<>(set.tailSet(from)));
+    }
+    
+    @Test
+    public void testRemove() {
+        OffHeapSortedByteSet set = new OffHeapSortedByteSet(16, 64);
+        SortedSet<byte[]> expected = new TreeSet<>(new ByteArrayComparator());
+        for (int i = 0; i < 2000; i++) {
+            byte[] bytes = randomBytes(6);
+            assertEquals(expected.add(bytes), set.add(bytes));
+            if (i % 5 == 0) {
+                byte[] other = randomBytes(6);
+                assertEquals(expected.remove(other), set.remove(other));
+            }
+        }
+        Iterator<byte[]> it = set.iterator();
+        Iterator<byte[]> expectedIt = expected.iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            assertArrayEquals(expectedIt.next(), it.next());
+            if (count++ % 3 == 0) {
+                it.remove();
+                expectedIt.remove();
+            }
+        }
+        assertFalse(expectedIt.hasNext());
+        assertEquals(expected.size(), set.size());
+        it = set.iterator();
+        for (byte[] bytes : expected) {
+            assertArrayEquals(bytes, it.next());
+        }
+        
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.getAllocatedBytes());
+    }
+    
+    private KeyValueSerializable randomKeyValue() {
+        Key key = new Key(randomBytes(3), randomBytes(3), randomBytes(3), randomBytes(2), TIMESTAMPS[random.nextInt(TIMESTAMPS.length)], random.nextBoolean(),
+                        false);
+        return new KeyValueSerializable(key, randomBytes(3));
+    }
+    
+    /**
+     * Random bytes, biased towards the values that need escaping or that sort differently when signed
+     */
+    private byte[] randomBytes(int maxLength) {
+        byte[] bytes = new byte[random.nextInt(maxLength)];
+        for (int i = 0; i < bytes.length; i++) {
+            if (random.nextInt(4) == 0) {
+                bytes[i] = (byte) (random.nextBoolean() ? 0x00 : 0x80);
+            } else {
+                bytes[i] = (byte) random.nextInt(256);
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,119 @@
+package datawave.query.util.sortedset;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapSortedByteSetTest {
+    
+    private final Random random = new Random(42);
+    
+    @Test
+    public void testBudgetFallsBackToHeap() {
+        DirectMemoryBudget budget = new DirectMemoryBudget(3000);
+        OffHeapSortedByteSet set = new OffHeapSortedByteSet(16, 1000, budget);
+        TreeSet<byte[]> expected = new TreeSet<>(new ByteArrayComparator());
+        for (int i = 0; i < 2000; i++) {
+            byte[] term = randomTerm();
+            assertEquals(expected.add(term), set.add(term));
+        }
+        
+        // only three slabs fit in the budget, the rest are on the heap
+        assertTrue(set.getAllocatedBytes() > 3000);
+        assertEquals(3000, budget.getReservedBytes());
+        assertEquals(3000, set.reservation.getBytes());
+        assertSameElements(expected, set);
+        
+        // clearing frees the slabs now, rather than when they are collected
+        set.clear();
+        assertEquals(0, budget.getReservedBytes());
+        assertEquals(0, set.getAllocatedBytes());
+    }
+    
+    @Test
+    public void testBudgetIsShared() {
+        DirectMemoryBudget budget = new DirectMemoryBudget(2000);
+        OffHeapSortedByteSet set1 = new OffHeapSortedByteSet(16, 1000, budget);
+        OffHeapSortedByteSet set2 = new OffHeapSortedByteSet(16, 1000, budget);
+        set1.add(randomTerm());
+        set2.add(randomTerm());
+        assertEquals(2000, budget.getReservedBytes());
+        
+        OffHeapSortedByteSet set3 = new OffHeapSortedByteSet(16, 1000, budget);
+        set3.add(randomTerm());
+        assertEquals(2000, budget.getReservedBytes());
+        assertEquals(0, set3.reservation.getBytes());
+        
+        set1.clear();
+        set3.clear();
+        set3.add(randomTerm());
+        assertEquals(1000, set3.reservation.getBytes());
+        assertEquals(2000, budget.getReservedBytes());
+    }
+    
+    @Test
+    public void testRemoveKeepsOrder() {
+        OffHeapSortedByteSet set = new OffHeapSortedByteSet(16, 1000, new DirectMemoryBudget(Long.MAX_VALUE));
+        TreeSet<byte[]> expected = new TreeSet<>(new ByteArrayComparator());
+        for (int i = 0; i < 2000; i++) {
+            byte[] term = randomTerm();
+            expected.add(term);
+            set.add(term);
+            if (i % 7 == 0) {
+                // remove from both the sorted entries and those added since the last sort
+                if (i % 14 == 0) {
+                    set.first();
+                }
+                byte[] removed = expected.pollFirst();
+                assertTrue(set.remove(removed));
+            }
+        }
+        assertSameElements(expected, set);
+    }
+    
+    @Test
+    public void testIteratorRemove() {
+        OffHeapSortedByteSet set = new OffHeapSortedByteSet(16, 1000, new DirectMemoryBudget(Long.MAX_VALUE));
+        TreeSet<byte[]> expected = new TreeSet<>(new ByteArrayComparator());
+        for (int i = 0; i < 2000; i++) {
+            byte[] term = randomTerm();
+            expected.add(term);
+            set.add(term);
+        }
+        
+        Iterator<byte[]> it = set.iterator();
+        Iterator<byte[]> expectedIt = expected.iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            assertArrayEquals(expectedIt.next(), it.next());
+            if (count++ % 3 == 0) {
+                it.remove();
+                expectedIt.remove();
+            }
+        }
+        assertSameElements(expected, set);
+    }
+    
+    private byte[] randomTerm() {
+        byte[] term = new byte[1 + random.nextInt(6)];
+        random.nextBytes(term);
+        return term;
+    }
+    
+    private static void assertSameElements(TreeSet<byte[]> expected, OffHeapSortedByteSet set) {
+        assertEquals(expected.size(), set.size());
+        List<byte[]> actual = new ArrayList<>(set);
+        int i = 0;
+        for (byte[] term : expected) {
+            assertArrayEquals(term, actual.get(i++));
+        }
+    }
+}
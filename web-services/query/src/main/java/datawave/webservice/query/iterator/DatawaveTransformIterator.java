@@ -1,5 +1,6 @@
 package datawave.webservice.query.iterator;
 
+import datawave.webservice.query.logic.BatchedResults;
 import datawave.webservice.query.logic.Flushable;
 import java.util.Iterator;
 
@@ -51,6 +52,18 @@ public class DatawaveTransformIterator<I,O> extends TransformIterator<I,O> {
         
         boolean done = false;
         O o = null;
+        // return any results left over from the last input that the transformer unpacked
+        if (getTransformer() instanceof BatchedResults) {
+            while (!done) {
+                try {
+                    o = ((BatchedResults<O>) getTransformer()).nextBatchedResult();
+                    done = true;
+                } catch (EmptyObjectException e) {
+                    // not yet done, so continue fetching the batched results
+                }
+            }
+            done = (o != null);
+        }
         while (super.hasNext() && !done) {
             try {
                 o = super.next();
@@ -0,0 +1,18 @@
+package datawave.webservice.query.logic;
+
+import datawave.webservice.query.exception.EmptyObjectException;
+
+public interface BatchedResults<T> {
+    
+    /**
+     * A transformer may unpack more than one result from a single input to transform(Object). This method is used to return the rest of those results, and will
+     * be called before the next input is transformed until a null is returned. If EmptyObjectException is thrown instead of returning null, then this method
+     * will be called again.
+     * 
+     * @return The next result unpacked from the last input, or null if no more exist.
+     * @throws EmptyObjectException
+     *             if the current result is empty, and this method should be called again.
+     */
+    T nextBatchedResult() throws EmptyObjectException;
+    
+}